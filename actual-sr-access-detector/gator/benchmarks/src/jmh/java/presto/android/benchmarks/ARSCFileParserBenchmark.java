@@ -0,0 +1,63 @@
+/*
+ * ARSCFileParserBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import presto.android.resources.ARSCFileParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Parsing of the resources.arsc of an APK or of a platform android.jar
+ * (-Dgator.arsc). The table is read into memory first, so only the parsing
+ * is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ARSCFileParserBenchmark {
+  private byte[] table;
+
+  @Setup(Level.Trial)
+  public void read() throws IOException {
+    String file = System.getProperty("gator.arsc");
+    if (file == null) {
+      throw new IllegalStateException("-Dgator.arsc is not set");
+    }
+    try (ZipFile zip = new ZipFile(file)) {
+      ZipEntry entry = zip.getEntry("resources.arsc");
+      if (entry == null) {
+        throw new IllegalStateException("No resources.arsc in " + file);
+      }
+      try (InputStream in = zip.getInputStream(entry)) {
+        table = ByteStreams.toByteArray(in);
+      }
+    }
+  }
+
+  @Benchmark
+  public ARSCFileParser parse() throws IOException {
+    ARSCFileParser parser = new ARSCFileParser();
+    parser.parse(new ByteArrayInputStream(table));
+    return parser;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * AppState.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import presto.android.AnalysisServer;
+import presto.android.gui.GUIAnalysisClient;
+import presto.android.gui.GUIAnalysisOutput;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An app analyzed once per fork, for the benchmarks that need real soot
+ * bodies and a real flowgraph. The app is given by -Dgator.args, a command
+ * line of Main without -client. The analysis runs in this JVM like a job of
+ * AnalysisServer, and the output is grabbed with a client of our own.
+ */
+@State(Scope.Benchmark)
+public class AppState {
+  private static GUIAnalysisOutput captured;
+
+  public GUIAnalysisOutput output;
+
+  public static class Capture implements GUIAnalysisClient {
+    @Override
+    public void run(GUIAnalysisOutput output) {
+      captured = output;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void load() {
+    String args = System.getProperty("gator.args");
+    if (args == null || args.trim().isEmpty()) {
+      throw new IllegalStateException("-Dgator.args is not set");
+    }
+    List<String> jobArgs = Lists.newArrayList(Arrays.asList(args.trim().split("\\s+")));
+    jobArgs.add("-client");
+    jobArgs.add(Capture.class.getName());
+    captured = null;
+    AnalysisServer.runJob(jobArgs.toArray(new String[0]));
+    if (captured == null) {
+      throw new IllegalStateException("The analysis did not get to the clients: " + args);
+    }
+    output = captured;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * CFGTraversalBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import presto.android.gui.wtg.analyzer.CFGTraversal;
+import presto.android.gui.wtg.flowgraph.FlowgraphRebuilder;
+import presto.android.gui.wtg.util.Filter;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.UnitGraph;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward traversal from the largest application methods of the app of
+ * AppState, over the call graph built by FlowgraphRebuilder. The filter never
+ * matches, so each traversal covers everything reachable from its handler.
+ * The control flow graphs are built once in the setup and shared, as they are
+ * across the handlers of CFGAnalyzer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CFGTraversalBenchmark {
+  @Param({"20"})
+  public int handlers;
+
+  private final List<SootMethod> methods = Lists.newArrayList();
+  private final Map<SootMethod, UnitGraph> methodToCFG = Maps.newHashMap();
+  private final Filter<Stmt, SootMethod> filter = new Filter<Stmt, SootMethod>() {
+  };
+
+  @Setup(Level.Trial)
+  public void pickMethods(AppState app) {
+    FlowgraphRebuilder.v(app.output);
+    for (SootClass c : Scene.v().getApplicationClasses()) {
+      for (SootMethod m : c.getMethods()) {
+        if (m.isConcrete()) {
+          m.retrieveActiveBody();
+          methods.add(m);
+        }
+      }
+    }
+    Collections.sort(methods, new Comparator<SootMethod>() {
+      @Override
+      public int compare(SootMethod m1, SootMethod m2) {
+        return m2.getActiveBody().getUnits().size() - m1.getActiveBody().getUnits().size();
+      }
+    });
+    if (methods.size() > handlers) {
+      methods.subList(handlers, methods.size()).clear();
+    }
+    // warm up the CFG cache
+    traverse(null);
+  }
+
+  @Benchmark
+  public void forwardTraversal(Blackhole bh) {
+    traverse(bh);
+  }
+
+  private void traverse(Blackhole bh) {
+    for (SootMethod handler : methods) {
+      Map<Stmt, SootMethod> visitedStmts = Maps.newHashMap();
+      Set<Stmt> escapedStmts = Sets.newHashSet();
+      CFGTraversal.v().forwardTraversal(handler, visitedStmts, escapedStmts, methodToCFG,
+              filter, HashMultimap.<Stmt, Stmt>create(), HashMultimap.<Stmt, SootMethod>create());
+      if (bh != null) {
+        bh.consume(visitedStmts);
+      }
+    }
+  }
+}
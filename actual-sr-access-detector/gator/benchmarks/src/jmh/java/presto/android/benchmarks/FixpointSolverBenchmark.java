@@ -0,0 +1,54 @@
+/*
+ * FixpointSolverBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import presto.android.Hierarchy;
+import presto.android.gui.FixpointSolver;
+import presto.android.gui.Flowgraph;
+import presto.android.gui.GUIAnalysis;
+import presto.android.gui.graph.NNode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fixed-point computation on the flowgraph of the app of AppState. The
+ * solver adds edges and parent/child relations to the graph, so every
+ * iteration gets a freshly built flowgraph and solves it once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FixpointSolverBenchmark {
+  private Flowgraph flowgraph;
+
+  @Setup(Level.Iteration)
+  public void buildFlowgraph(AppState app) {
+    GUIAnalysis analysis = GUIAnalysis.v();
+    NNode.reset();
+    flowgraph = new Flowgraph(Hierarchy.v(), analysis.allLayoutIds, analysis.allMenuIds,
+            analysis.allWidgetIds, analysis.allStringIds, analysis.allPreferenceIds,
+            analysis.allPreferenceHeaderIds, analysis.allPreferenceKeys);
+    flowgraph.build();
+  }
+
+  @Benchmark
+  public FixpointSolver solve() {
+    FixpointSolver solver = new FixpointSolver(flowgraph);
+    solver.solve();
+    return solver;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * GraphUtilBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import presto.android.gui.GraphUtil;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.graph.NOpNode;
+import presto.android.gui.graph.NVarNode;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward and backward reachability on a random graph of variable nodes with
+ * some operation nodes mixed in, where the traversal stops.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GraphUtilBenchmark {
+  @Param({"10000", "100000"})
+  public int nodes;
+
+  @Param({"3"})
+  public int fanOut;
+
+  // percentage of the nodes that are operation nodes
+  @Param({"5"})
+  public int opPercent;
+
+  private NNode[] graph;
+
+  static class Op extends NOpNode {
+    Op() {
+      super(null, true);
+    }
+
+    @Override
+    public boolean hasReceiver() {
+      return false;
+    }
+
+    @Override
+    public boolean hasParameter() {
+      return false;
+    }
+
+    @Override
+    public boolean hasLhs() {
+      return false;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void build() {
+    NNode.reset();
+    Random random = new Random(42);
+    graph = new NNode[nodes];
+    for (int i = 0; i < nodes; i++) {
+      graph[i] = random.nextInt(100) < opPercent ? new Op() : new NVarNode();
+    }
+    for (int i = 0; i < nodes; i++) {
+      // a chain, so that most of the graph is reachable from both ends
+      if (i + 1 < nodes) {
+        graph[i].addEdgeTo(graph[i + 1]);
+      }
+      for (int j = 1; j < fanOut; j++) {
+        NNode target = graph[random.nextInt(nodes)];
+        if (target != graph[i]) {
+          graph[i].addEdgeTo(target);
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public Set<NNode> reachableNodes() {
+    return GraphUtil.v().reachableNodes(graph[0]);
+  }
+
+  @Benchmark
+  public Set<NNode> backwardReachableNodes() {
+    return GraphUtil.v().backwardReachableNodes(graph[nodes - 1]);
+  }
+}
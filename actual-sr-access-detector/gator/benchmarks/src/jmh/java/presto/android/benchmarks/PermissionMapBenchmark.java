@@ -0,0 +1,98 @@
+/*
+ * PermissionMapBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import presto.android.Configs;
+import presto.android.permission.PermissionMap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in the permission map (-Dgator.permissionMap), the way the
+ * permission analysis does them for every call site: by signature, and by
+ * searching the text of a statement for a protected signature. A share of
+ * the queries are protected APIs, the rest are not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionMapBenchmark {
+  @Param({"1000"})
+  public int queries;
+
+  // percentage of the queries that are protected APIs
+  @Param({"10"})
+  public int hitPercent;
+
+  private PermissionMap map;
+  private final List<String> signatures = Lists.newArrayList();
+  private final List<String> statements = Lists.newArrayList();
+
+  @Setup(Level.Trial)
+  public void load() throws IOException {
+    String file = System.getProperty("gator.permissionMap");
+    if (file == null) {
+      throw new IllegalStateException("-Dgator.permissionMap is not set");
+    }
+    Configs.permissionMapFile = file;
+    map = PermissionMap.v();
+
+    List<String> protectedSigs = Lists.newArrayList();
+    for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+      if (!line.startsWith("Permission:") && !line.isEmpty()) {
+        protectedSigs.add(line);
+      }
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < queries; i++) {
+      String sig;
+      if (random.nextInt(100) < hitPercent) {
+        sig = protectedSigs.get(random.nextInt(protectedSigs.size()));
+      } else {
+        sig = "<com.example.app.Class" + i + ": void method" + i + "(android.os.Bundle)>";
+      }
+      signatures.add(sig);
+      statements.add("virtualinvoke $r" + i + "." + sig + "($r0)");
+    }
+    Collections.shuffle(signatures, random);
+    Collections.shuffle(statements, random);
+  }
+
+  @Benchmark
+  public void isPermissionCalled(Blackhole bh) {
+    for (String sig : signatures) {
+      bh.consume(map.isPermissionCalled(sig));
+    }
+  }
+
+  @Benchmark
+  public void isContainedPermissionCalled(Blackhole bh) {
+    for (String stmt : statements) {
+      bh.consume(map.isContainedPermissionCalled(stmt));
+    }
+  }
+}
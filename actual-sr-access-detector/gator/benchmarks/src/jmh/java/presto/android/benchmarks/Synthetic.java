@@ -0,0 +1,33 @@
+/*
+ * Synthetic.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import presto.android.Configs;
+
+/**
+ * Configuration shared by the benchmarks on generated graphs. The synthetic
+ * scenes read the listener specification and the permission map.
+ */
+final class Synthetic {
+  private Synthetic() {
+  }
+
+  static void configure() {
+    Configs.listenerSpecFile = property("gator.listenerSpecFile");
+    Configs.permissionMapFile = property("gator.permissionMap");
+  }
+
+  private static String property(String name) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      throw new IllegalStateException("-D" + name + " is not set");
+    }
+    return value;
+  }
+}
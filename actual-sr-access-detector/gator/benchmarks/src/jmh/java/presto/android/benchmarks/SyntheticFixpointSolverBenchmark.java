@@ -0,0 +1,66 @@
+/*
+ * SyntheticFixpointSolverBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import presto.android.gui.FixpointSolver;
+import presto.android.gui.Flowgraph;
+import presto.android.gui.synthetic.FlowgraphGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fixed-point computation on generated flowgraphs, so that its scaling
+ * can be measured without an app. As in FixpointSolverBenchmark, every
+ * iteration solves a freshly generated graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SyntheticFixpointSolverBenchmark {
+  @Param({"2000", "5000"})
+  public int nodes;
+
+  @Param({"2"})
+  public int fanOut;
+
+  @Param({"10"})
+  public int opPercent;
+
+  @Param({"0.01"})
+  public double cycleDensity;
+
+  private Flowgraph flowgraph;
+
+  @Setup(Level.Iteration)
+  public void generate() {
+    Synthetic.configure();
+    FlowgraphGenerator generator = new FlowgraphGenerator();
+    generator.nodes = nodes;
+    generator.fanOut = fanOut;
+    generator.opPercent = opPercent;
+    generator.cycleDensity = cycleDensity;
+    flowgraph = generator.generate();
+  }
+
+  @Benchmark
+  public FixpointSolver solve() {
+    FixpointSolver solver = new FixpointSolver(flowgraph);
+    solver.solve();
+    return solver;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * WTGPathBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import presto.android.gui.clients.energy.DFSGenericPathGenerator;
+import presto.android.gui.clients.energy.IPathFilter;
+import presto.android.gui.graph.NObjectNode;
+import presto.android.gui.synthetic.WTGGenerator;
+import presto.android.gui.wtg.ds.WTGEdge;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enumeration of all WTG paths of up to K edges from the launcher, on
+ * generated window transition graphs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WTGPathBenchmark {
+  @Param({"50", "200"})
+  public int windows;
+
+  @Param({"3"})
+  public int fanOut;
+
+  @Param({"3"})
+  public int stackDepth;
+
+  @Param({"6"})
+  public int k;
+
+  private WTGEdge launchEdge;
+  private int paths;
+
+  private final IPathFilter countingFilter = new IPathFilter() {
+    @Override
+    public boolean match(List<WTGEdge> P, Stack<NObjectNode> S) {
+      paths++;
+      return false;
+    }
+
+    @Override
+    public String getFilterName() {
+      return "count";
+    }
+  };
+
+  @Setup(Level.Trial)
+  public void generate() {
+    Synthetic.configure();
+    WTGGenerator generator = new WTGGenerator();
+    generator.windows = windows;
+    generator.fanOut = fanOut;
+    generator.stackDepth = stackDepth;
+    generator.generate();
+    launchEdge = generator.launchEdge;
+  }
+
+  @Benchmark
+  public int dfsPaths() {
+    paths = 0;
+    DFSGenericPathGenerator.create(Collections.singletonList(countingFilter), null,
+            Collections.singletonList(launchEdge), k).doPathGeneration();
+    return paths;
+  }
+}
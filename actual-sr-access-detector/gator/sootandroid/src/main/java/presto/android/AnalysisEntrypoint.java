@@ -83,11 +83,17 @@ public class AnalysisEntrypoint {
     // Analysis
     // TODO: use reflection to allow nice little extensions.
     if (Configs.guiAnalysis) {
-      GUIAnalysis guiAnalysis = GUIAnalysis.v();
-      guiAnalysis.run();
+      try {
+        GUIAnalysis guiAnalysis = GUIAnalysis.v();
+        guiAnalysis.run();
+      } finally {
+        Metrics.v().write();
+      }
       Date endTime = new Date();
       System.out.println("Soot stopped on " + endTime);
-      System.exit(0);
+      if (!Configs.serverMode) {
+        System.exit(0);
+      }
     }
   }
 
@@ -0,0 +1,182 @@
+/*
+ * AnalysisServer.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android;
+
+import presto.android.cache.FlowgraphFragments;
+import presto.android.cache.ResultCache;
+import presto.android.gui.DemandVariableValueQuery;
+import presto.android.gui.GUIAnalysis;
+import presto.android.gui.IDNameExtractor;
+import presto.android.gui.JimpleUtil;
+import presto.android.gui.PropertyManager;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.listener.ListenerSpecification;
+import presto.android.gui.rep.GUIHierarchy;
+import presto.android.gui.wtg.analyzer.CFGTraversal;
+import presto.android.gui.wtg.ds.WTGHelper;
+import presto.android.gui.wtg.flowgraph.AndroidCallGraph;
+import presto.android.gui.wtg.flowgraph.FlowgraphRebuilder;
+import presto.android.gui.wtg.intent.IntentAnalysis;
+import presto.android.gui.wtg.intent.IntentFilterManager;
+import presto.android.gui.wtg.util.ProcessTracker;
+import presto.android.gui.wtg.util.QueryHelper;
+import presto.android.gui.wtg.util.WTGUtil;
+import presto.android.resources.ResourceProvider;
+import presto.android.xml.PrerunXMLParser;
+import presto.android.xml.XMLParser;
+import soot.G;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Long-running variant of Main. Each input line is one job, written exactly
+ * like the command line of Main (whitespace separated). Jobs are read from
+ * stdin, or from a loopback socket with "-port N". After each job, a single
+ * line "#gator-result OK <benchmark> <ms>" or "#gator-result FAIL <benchmark>
+ * <reason>" is written back. The line "quit" stops the server.
+ *
+ * Jobs run one at a time since soot keeps its state in globals. Between jobs,
+ * soot is reset and every per-app singleton is dropped; what survives is the
+ * warmed-up JVM, the widget map and the permission map.
+ */
+public class AnalysisServer {
+  private static final String TAG = AnalysisServer.class.getSimpleName();
+
+  public static final String RESULT_PREFIX = "#gator-result ";
+  public static final String QUIT = "quit";
+
+  public static void main(String[] args) throws IOException {
+    int port = -1;
+    for (int i = 0; i < args.length; i++) {
+      if ("-port".equals(args[i])) {
+        port = Integer.parseInt(args[++i]);
+      } else {
+        throw new RuntimeException("Unknown option: " + args[i]);
+      }
+    }
+    if (port < 0) {
+      BufferedReader in = new BufferedReader(
+              new InputStreamReader(System.in, StandardCharsets.UTF_8));
+      PrintWriter out = new PrintWriter(System.out, true);
+      serve(in, out);
+      return;
+    }
+    ServerSocket serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+    Logger.verb(TAG, "Listening on " + serverSocket.getLocalSocketAddress());
+    while (true) {
+      try (Socket socket = serverSocket.accept()) {
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        if (!serve(in, out)) {
+          break;
+        }
+      }
+    }
+    serverSocket.close();
+  }
+
+  /**
+   * Handles jobs until the input ends (returns true) or "quit" is read
+   * (returns false).
+   */
+  static boolean serve(BufferedReader in, PrintWriter out) throws IOException {
+    String line;
+    while ((line = in.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (QUIT.equals(line)) {
+        return false;
+      }
+      String[] jobArgs = line.split("\\s+");
+      long start = System.currentTimeMillis();
+      try {
+        runJob(jobArgs);
+        long duration = System.currentTimeMillis() - start;
+        Logger.stat("Job " + Configs.benchmarkName + " finished in " + duration + "ms");
+        out.println(RESULT_PREFIX + "OK " + Configs.benchmarkName + " " + duration);
+      } catch (Exception e) {
+        Logger.err(TAG, "Job " + Configs.benchmarkName + " failed: " + e);
+        e.printStackTrace();
+        out.println(RESULT_PREFIX + "FAIL " + Configs.benchmarkName + " " + e);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Runs one job in this JVM. Also used by the benchmarks to load an app.
+   */
+  public static void runJob(String[] args) {
+    resetPerAppState();
+    Configs.serverMode = true;
+    Debug.v().setStartTime();
+    Main.parseArgs(args);
+    Main.checkAndPrintEnvironmentInformation(args);
+    Main.analyze();
+  }
+
+  /**
+   * Drops everything that was computed for the previous app. Anything that
+   * holds soot objects (classes, methods, statements) has to go, since
+   * G.reset() replaces the Scene.
+   */
+  static void resetPerAppState() {
+    Configs.reset();
+    Logger.setTracing(false);
+    resetAnalysisState();
+  }
+
+  /**
+   * Like resetPerAppState(), but keeps the options, e.g., for loading a
+   * FlowgraphSnapshot into a fresh Scene.
+   */
+  public static void resetAnalysisState() {
+    G.reset();
+
+    NNode.reset();
+    Hierarchy.reset();
+    JimpleUtil.reset();
+    ListenerSpecification.reset();
+    XMLParser.Factory.reset();
+    PrerunXMLParser.reset();
+    GUIAnalysis.reset();
+    DemandVariableValueQuery.reset();
+    PropertyManager.reset();
+    IDNameExtractor.reset();
+    GUIHierarchy.reset();
+    ResultCache.reset();
+    FlowgraphFragments.reset();
+    ResourceProvider.reset();
+    Metrics.reset();
+    MemoryGovernor.reset();
+    StatementTrace.reset();
+
+    FlowgraphRebuilder.reset();
+    AndroidCallGraph.reset();
+    WTGUtil.reset();
+    WTGHelper.reset();
+    CFGTraversal.reset();
+    ProcessTracker.reset();
+    QueryHelper.reset();
+    IntentFilterManager.reset();
+    IntentAnalysis.resetMotherIntentAnalysis();
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ * BatchDriver.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a manifest of APKs on a pool of AnalysisServer worker JVMs.
+ *
+ * Usage: BatchDriver -manifest FILE [-workers N] [-timeout SEC] [-heap 12G]
+ * [-jobsPerWorker N] [-logDir DIR] [-results FILE] [-- ARGS...]
+ *
+ * Every manifest line is "APK [ARGS...]". The job sent to a worker is the
+ * shared ARGS given after "--", followed by "-project APK -benchmarkName
+ * NAME" and the ARGS of the line. NAME, which also names the log, is the
+ * file name of the APK, followed by "-" and the manifest line number when
+ * several lines have an APK of that name. Each worker is a separate JVM with its own
+ * heap limit, so a crash or an out-of-memory error only loses one APK. A job
+ * running longer than the timeout gets its worker killed and replaced; a
+ * worker is also replaced after jobsPerWorker jobs to bound any leak.
+ *
+ * As soon as an APK finishes, its log is closed and one tab-separated line
+ * "APK STATUS MILLIS LOG" is written to the results file (stdout by default),
+ * where STATUS is OK, FAIL, TIMEOUT or CRASH. CRASH is also reported when
+ * the worker cannot be started or the log cannot be written.
+ */
+public class BatchDriver {
+  private static final String TAG = BatchDriver.class.getSimpleName();
+
+  // Marks the end of a worker's output stream in the line queue
+  private static final String EOF = new String("<eof>");
+
+  private static String manifestFile;
+  private static int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+  private static int timeout = 1800;
+  private static String heap = "12G";
+  private static int jobsPerWorker = 50;
+  private static String logDir = "logs";
+  private static String resultsFile;
+  private static List<String> sharedArgs = Lists.newArrayList();
+
+  private static PrintStream results;
+
+  public static void main(String[] args) throws Exception {
+    parseArgs(args);
+    if (manifestFile == null) {
+      throw new RuntimeException("-manifest is required");
+    }
+    new File(logDir).mkdirs();
+    results = resultsFile == null
+            ? System.out
+            : new PrintStream(new FileOutputStream(resultsFile, true), true, "UTF-8");
+
+    List<Job> manifest = Lists.newArrayList();
+    Multiset<String> names = HashMultiset.create();
+    try (BufferedReader br = new BufferedReader(new FileReader(manifestFile))) {
+      String line;
+      int lineNumber = 0;
+      while ((line = br.readLine()) != null) {
+        lineNumber++;
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          Job job = new Job(line, lineNumber);
+          manifest.add(job);
+          names.add(job.name);
+        }
+      }
+    }
+    final BlockingQueue<Job> jobs = new LinkedBlockingQueue<>();
+    for (Job job : manifest) {
+      if (names.count(job.name) > 1) {
+        // same-named APKs from different directories, or the same APK twice
+        job.name += "-" + job.lineNumber;
+      }
+      jobs.add(job);
+    }
+    Logger.verb(TAG, jobs.size() + " APKs, " + workers + " workers, timeout "
+            + timeout + "s, heap " + heap);
+
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    for (int i = 0; i < workers; i++) {
+      final int workerId = i;
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          new Worker(workerId).drain(jobs);
+        }
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    if (results != System.out) {
+      results.close();
+    }
+  }
+
+  static void parseArgs(String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      String s = args[i];
+      if ("-manifest".equals(s)) {
+        manifestFile = args[++i];
+      } else if ("-workers".equals(s)) {
+        workers = Integer.parseInt(args[++i]);
+      } else if ("-timeout".equals(s)) {
+        timeout = Integer.parseInt(args[++i]);
+      } else if ("-heap".equals(s)) {
+        heap = args[++i];
+      } else if ("-jobsPerWorker".equals(s)) {
+        jobsPerWorker = Integer.parseInt(args[++i]);
+      } else if ("-logDir".equals(s)) {
+        logDir = args[++i];
+      } else if ("-results".equals(s)) {
+        resultsFile = args[++i];
+      } else if ("--".equals(s)) {
+        for (i++; i < args.length; i++) {
+          sharedArgs.add(args[i]);
+        }
+      } else {
+        throw new RuntimeException("Unknown option: " + s);
+      }
+    }
+  }
+
+  static synchronized void report(String apk, String status, long millis, File log) {
+    results.println(apk + "\t" + status + "\t" + millis + "\t" + log.getPath());
+  }
+
+  /**
+   * A manifest line.
+   */
+  static class Job {
+    final String[] tokens;
+    final String apk;
+    final int lineNumber;
+    // -benchmarkName, and the name of the log
+    String name;
+
+    Job(String line, int lineNumber) {
+      this.tokens = line.split("\\s+");
+      this.apk = tokens[0];
+      this.lineNumber = lineNumber;
+      this.name = new File(apk).getName();
+    }
+
+    File log() {
+      return new File(logDir, name + ".log");
+    }
+  }
+
+  /**
+   * One worker JVM running AnalysisServer on its stdin/stdout. Owned by a
+   * single driver thread.
+   */
+  static class Worker {
+    final int id;
+    Process process;
+    PrintWriter toWorker;
+    BlockingQueue<String> fromWorker;
+    int jobsDone;
+
+    Worker(int id) {
+      this.id = id;
+    }
+
+    void drain(BlockingQueue<Job> jobs) {
+      Job job;
+      while ((job = jobs.poll()) != null) {
+        long start = System.currentTimeMillis();
+        try {
+          runOne(job);
+        } catch (Exception e) {
+          Logger.err(TAG, "worker " + id + " failed on " + job.apk + ": " + e);
+          kill();
+          report(job.apk, "CRASH", System.currentTimeMillis() - start, job.log());
+        }
+      }
+      stop();
+    }
+
+    void runOne(Job job) throws IOException, InterruptedException {
+      String[] tokens = job.tokens;
+      String apk = job.apk;
+      String name = job.name;
+      File log = job.log();
+
+      if (process == null || jobsDone >= jobsPerWorker) {
+        stop();
+        start();
+      }
+      StringBuilder line = new StringBuilder();
+      for (String a : sharedArgs) {
+        line.append(a).append(' ');
+      }
+      line.append("-project ").append(apk).append(" -benchmarkName ").append(name);
+      for (int i = 1; i < tokens.length; i++) {
+        line.append(' ').append(tokens[i]);
+      }
+
+      long start = System.currentTimeMillis();
+      long deadline = start + TimeUnit.SECONDS.toMillis(timeout);
+      String status = null;
+      try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+              new FileOutputStream(log), StandardCharsets.UTF_8))) {
+        toWorker.println(line);
+        while (status == null) {
+          long left = deadline - System.currentTimeMillis();
+          String s = left > 0 ? fromWorker.poll(left, TimeUnit.MILLISECONDS) : null;
+          if (s == null) {
+            status = "TIMEOUT";
+            kill();
+          } else if (s == EOF) {
+            status = "CRASH";
+            kill();
+          } else if (s.startsWith(AnalysisServer.RESULT_PREFIX)) {
+            String rest = s.substring(AnalysisServer.RESULT_PREFIX.length());
+            status = rest.startsWith("OK") ? "OK" : "FAIL";
+            jobsDone++;
+          } else {
+            out.write(s);
+            out.newLine();
+          }
+        }
+      }
+      report(apk, status, System.currentTimeMillis() - start, log);
+    }
+
+    void start() throws IOException {
+      String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+      ProcessBuilder pb = new ProcessBuilder(java, "-Xmx" + heap,
+              "-cp", System.getProperty("java.class.path"),
+              AnalysisServer.class.getName());
+      pb.redirectErrorStream(true);
+      process = pb.start();
+      toWorker = new PrintWriter(new OutputStreamWriter(
+              process.getOutputStream(), StandardCharsets.UTF_8), true);
+      fromWorker = new LinkedBlockingQueue<>();
+      jobsDone = 0;
+
+      final BufferedReader in = new BufferedReader(
+              new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+      final BlockingQueue<String> lines = fromWorker;
+      Thread pump = new Thread("worker-" + id + "-output") {
+        @Override
+        public void run() {
+          try {
+            String s;
+            while ((s = in.readLine()) != null) {
+              lines.add(s);
+            }
+          } catch (IOException e) {
+            // worker went away; reported through EOF below
+          }
+          lines.add(EOF);
+        }
+      };
+      pump.setDaemon(true);
+      pump.start();
+      Logger.trace(TAG, "worker " + id + " started");
+    }
+
+    void stop() {
+      if (process == null) {
+        return;
+      }
+      toWorker.println(AnalysisServer.QUIT);
+      toWorker.close();
+      try {
+        if (!process.waitFor(5, TimeUnit.SECONDS)) {
+          process.destroyForcibly();
+        }
+      } catch (InterruptedException e) {
+        process.destroyForcibly();
+      }
+      process = null;
+    }
+
+    void kill() {
+      if (process == null) {
+        return;
+      }
+      process.destroyForcibly();
+      process = null;
+    }
+  }
+}
@@ -12,6 +12,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import presto.android.resources.ApkResourceProvider;
 import soot.options.Options;
 
 import javax.swing.text.html.Option;
@@ -92,6 +93,13 @@ public class Configs {
   // [wtg analysis] number of threads building wtg edges
   public static int workerNum = 16;
 
+  // number of threads preparing methods for the flowgraph construction
+  public static int flowgraphWorkers = Runtime.getRuntime().availableProcessors();
+
+  // number of threads finding views for FindView nodes in a round of the
+  // fixed-point solver; 1 evaluates them one by one
+  public static int solverWorkers = 1;
+
   // [wtg analysis] detect resource leak
   public static int detectLeak = -1;
 
@@ -155,6 +163,121 @@ public class Configs {
   public static String iccModelFile = "";
   public static int timeOut = 10;
 
+  // on-disk cache of client output, see ResultCache; disabled when empty
+  public static String resultCacheDir = "";
+  public static long resultCacheMaxMB = 4096;
+
+  // on-disk flowgraph fragments of earlier versions of an app, see
+  // FlowgraphFragments; disabled when empty
+  public static String fragmentCacheDir = "";
+  public static long fragmentCacheMaxMB = 1024;
+
+  // write the built flowgraph to this file, see FlowgraphSnapshot; off when
+  // empty
+  public static String flowgraphSnapshot = "";
+  // solve the flowgraph of this snapshot instead of analyzing an app
+  public static String replaySnapshot = "";
+
+  // skip apps whose dex files reference no protected API, see DexPrefilter
+  public static boolean dexPrefilter = false;
+
+  // decode res/ and the manifest from the APK in memory, see ApkResourceProvider
+  public static boolean resourcesFromApk = false;
+
+  // long-running server mode (see AnalysisServer); do not exit after one app
+  public static boolean serverMode = false;
+
+  // shed caches and degrade precision when the heap fills up, see MemoryGovernor
+  public static boolean memoryGovernor = false;
+
+  // Gzipped trace of the statements the flowgraph construction visits; off
+  // when empty. See StatementTrace.
+  public static String traceFile = "";
+  // Only trace classes / method signatures containing a match of the regex
+  public static String traceClasses = "";
+  public static String traceMethods = "";
+  // Trace every N-th statement
+  public static int traceSample = 1;
+
+  /**
+   * Restores every per-app option to its declared default, so that the next
+   * job handled by AnalysisServer does not see flags of the previous one.
+   * Framework-side data (widgetMap) is kept. Keep in sync with the fields
+   * above.
+   */
+  public static void reset() {
+    minSdkVersion = null;
+    maxSdkVersion = null;
+    targetSdkVersion = null;
+    benchmarkName = null;
+    project = null;
+    apkMode = false;
+    fastMode = false;
+    manifestLocation = null;
+    resourceLocation = null;
+    resourceLocationList = Lists.newArrayList();
+    sdkDir = null;
+    apiLevel = null;
+    numericApiLevel = 0;
+    sysProj = null;
+    bytecodes = null;
+    depJars = null;
+    extLibs = null;
+    android = null;
+    jre = "";
+    listenerSpecFile = null;
+    verbose = false;
+    guiAnalysis = false;
+    debugCodes = Sets.newHashSet();
+    clients = Sets.newHashSet();
+    withCHA = false;
+    wtgSpecFile = null;
+    implicitIntent = false;
+    resolveContext = true;
+    trackWholeExec = false;
+    hardwareEvent = true;
+    workerNum = 16;
+    flowgraphWorkers = Runtime.getRuntime().availableProcessors();
+    solverWorkers = 1;
+    detectLeak = -1;
+    sDepth = 4;
+    asyncStrategy = AsyncOpStrategy.Default_EventHandler_Async;
+    genTestCase = false;
+    allowLoop = false;
+    epDepth = 3;
+    sanityCheck = false;
+    testGenStrategy = null;
+    instrument = false;
+    mockScene = false;
+    clientParams = Sets.newHashSet();
+    pathoutfilename = "";
+    monitoredClass = "";
+    sootAndroidDir = null;
+    libraryPackageFile = "";
+    libraryPackages = null;
+    preRun = false;
+    onDemandClassSet = Sets.newHashSet();
+    flowgraphOutput = "";
+    enableStringAnalysis = false;
+    enableSetTextAnalysis = false;
+    permissionMapFile = null;
+    iccModelFile = "";
+    timeOut = 10;
+    resultCacheDir = "";
+    resultCacheMaxMB = 4096;
+    fragmentCacheDir = "";
+    fragmentCacheMaxMB = 1024;
+    flowgraphSnapshot = "";
+    replaySnapshot = "";
+    dexPrefilter = false;
+    resourcesFromApk = false;
+    memoryGovernor = false;
+    traceFile = "";
+    traceClasses = "";
+    traceMethods = "";
+    traceSample = 1;
+  }
+
   public static void addLibraryPackage(String packageName) {
     if (libraryPackages == null) {
       libraryPackages = Lists.newArrayList();
@@ -201,6 +324,10 @@ public class Configs {
     }
 
     if (project.endsWith(".apk")) {
+      if (resourcesFromApk) {
+        manifestLocation = ApkResourceProvider.manifestPath(project);
+        resourceLocation = ApkResourceProvider.resourceRoot(project);
+      }
       apkModeProcessing();
       //return;
     } else {
@@ -251,19 +378,23 @@ public class Configs {
 
   final static String GOOGLE_API_PREFIX = "Google Inc.:Google APIs:";
 
+  /**
+   * Throws if a String option is unset. Does not exit, so that the
+   * AnalysisServer can report the job as failed and go on.
+   */
   public static void validate() {
     Class<Configs> cls = Configs.class;
     for (Field f : cls.getFields()) {
       if (f.getType().equals(String.class)) {
+        Object res;
         try {
-          Object res = f.get(null);
-          if (res == null) {
-            System.err.println("[Configs] You need to set `Configs."
-                    + f.getName() + "'");
-            System.exit(-1);
-          }
-        } catch (Exception e) {
+          res = f.get(null);
+        } catch (IllegalAccessException e) {
           e.printStackTrace();
+          continue;
+        }
+        if (res == null) {
+          throw new RuntimeException("You need to set `Configs." + f.getName() + "'");
         }
       }
     }
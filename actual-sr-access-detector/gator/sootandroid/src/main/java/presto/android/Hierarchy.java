@@ -265,6 +265,10 @@ public class Hierarchy {
     return instance;
   }
 
+  public static synchronized void reset() {
+    instance = null;
+  }
+
   private Hierarchy() {
     Scene scene = Scene.v();
 
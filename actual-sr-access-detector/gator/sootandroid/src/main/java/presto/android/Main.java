@@ -11,12 +11,17 @@ package presto.android;
 import org.junit.Assert;
 import presto.android.Configs.AsyncOpStrategy;
 import presto.android.Configs.TestGenStrategy;
+import presto.android.cache.ResultCache;
+import presto.android.gui.GUIAnalysis;
+import presto.android.gui.clients.GUIHierarchyPrinterClient;
+import presto.android.permission.DexPrefilter;
 import soot.Pack;
 import soot.PackManager;
 import soot.SceneTransformer;
 import soot.Transform;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
@@ -34,9 +39,50 @@ public class Main {
     Debug.v().setStartTime();
     parseArgs(args);
     checkAndPrintEnvironmentInformation(args);
+    analyze();
+  }
+
+  /**
+   * Runs what the parsed options ask for: replays a snapshot, restores a
+   * cached result, or analyzes the app. Shared with AnalysisServer.runJob().
+   */
+  static void analyze() {
+    if (!Configs.replaySnapshot.isEmpty()) {
+      try {
+        GUIAnalysis.replay(new File(Configs.replaySnapshot));
+      } catch (IOException e) {
+        throw new RuntimeException("Cannot replay " + Configs.replaySnapshot, e);
+      }
+      return;
+    }
+    if (ResultCache.v().restore() || skippedByDexPrefilter()) {
+      return;
+    }
     setupAndInvokeSoot();
   }
 
+  /**
+   * With -dexPrefilter, checks the dex files of the APK before loading it into
+   * soot. Returns true, after writing an empty result, if no protected API is
+   * referenced.
+   */
+  static boolean skippedByDexPrefilter() {
+    if (!Configs.dexPrefilter || !Configs.apkMode) {
+      return false;
+    }
+    try {
+      if (DexPrefilter.v().referencesProtectedApi(Configs.project)) {
+        return false;
+      }
+    } catch (IOException e) {
+      Logger.warn("MAIN", "Dex pre-filter failed, running the full analysis: " + e.getMessage());
+      return false;
+    }
+    Logger.stat("No protected API referenced: " + Configs.project);
+    GUIHierarchyPrinterClient.dumpEmptyResult();
+    return true;
+  }
+
   /**
    * Parse the command line arguments for flag values. We, intentionally, do not
    * use any flag library so that everything is explicit and clear.
@@ -82,6 +128,12 @@ public class Main {
       } else if ("-worker".equals(s)) {
         Configs.workerNum = Integer.parseInt(args[++i]);
         Assert.assertTrue("[Error]: number of workers should be >= 1", Configs.workerNum > 0);
+      } else if ("-flowgraphWorkers".equals(s)) {
+        Configs.flowgraphWorkers = Integer.parseInt(args[++i]);
+        Assert.assertTrue("[Error]: number of workers should be >= 1", Configs.flowgraphWorkers > 0);
+      } else if ("-solverWorkers".equals(s)) {
+        Configs.solverWorkers = Integer.parseInt(args[++i]);
+        Assert.assertTrue("[Error]: number of workers should be >= 1", Configs.solverWorkers > 0);
       } else if ("-mockScene".equals(s)) {
         Configs.mockScene = true;
       } else if ("-hardwareEvent".equals(s)) {
@@ -139,12 +191,41 @@ public class Main {
         Configs.maxSdkVersion = args[++i];
       } else if ("-targetSdkVersion".equals(s)) {
         Configs.targetSdkVersion = args[++i];
+      } else if ("-dexPrefilter".equals(s)) {
+        Configs.dexPrefilter = true;
+      } else if ("-resourcesFromApk".equals(s)) {
+        Configs.resourcesFromApk = true;
+      } else if ("-memoryGovernor".equals(s)) {
+        Configs.memoryGovernor = true;
+      } else if ("-traceFile".equals(s)) {
+        Configs.traceFile = args[++i];
+      } else if ("-traceClasses".equals(s)) {
+        Configs.traceClasses = args[++i];
+      } else if ("-traceMethods".equals(s)) {
+        Configs.traceMethods = args[++i];
+      } else if ("-traceSample".equals(s)) {
+        Configs.traceSample = Integer.parseInt(args[++i]);
+        Assert.assertTrue("[Error]: trace sample should be >= 1", Configs.traceSample > 0);
+      } else if ("-resultCache".equals(s)) {
+        Configs.resultCacheDir = args[++i];
+      } else if ("-resultCacheSize".equals(s)) {
+        Configs.resultCacheMaxMB = Long.parseLong(args[++i]);
+      } else if ("-fragmentCache".equals(s)) {
+        Configs.fragmentCacheDir = args[++i];
+      } else if ("-fragmentCacheSize".equals(s)) {
+        Configs.fragmentCacheMaxMB = Long.parseLong(args[++i]);
+      } else if ("-flowgraphSnapshot".equals(s)) {
+        Configs.flowgraphSnapshot = args[++i];
+      } else if ("-replaySnapshot".equals(s)) {
+        Configs.replaySnapshot = args[++i];
       }
       else {
         throw new RuntimeException("Unknown option: " + s);
       }
     }
-    Configs.processing();
+    if (Configs.replaySnapshot.isEmpty()) {
+      Configs.processing();
+    }
   }
 
   /**
@@ -253,12 +334,16 @@ public class Main {
    */
   static void setupAndInvokeSootHelper(String packName, String phaseName,
                                        String[] sootArgs) {
+    // Loading classes (and CHA, with -withCHA) until our phase is reached
+    final Metrics.Phase sootLoad = Metrics.v().begin("soot.load");
+
     // Create the phase and add it to the pack
     Pack pack = PackManager.v().getPack(packName);
     pack.add(new Transform(phaseName, new SceneTransformer() {
       @Override
       protected void internalTransform(String phaseName,
                                        Map<String, String> options) {
+        sootLoad.end();
         AnalysisEntrypoint.v().run();
         //PrerunEntrypoint.v().run();
       }
@@ -279,6 +364,10 @@ public class Main {
   }
 
   static void readWidgetMap() {
+    // Already loaded by an earlier job in server mode
+    if (!Configs.widgetMap.isEmpty()) {
+      return;
+    }
     //This is an ondemand implementation of signature patch
     try {
       FileReader fr = new FileReader(Configs.sootAndroidDir
@@ -0,0 +1,230 @@
+/*
+ * MemoryGovernor.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android;
+
+import com.google.common.collect.Lists;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the heap occupancy left after garbage collections and, as it
+ * crosses thresholds, releases memory the analysis can do without instead of
+ * running out of heap. Enabled by -memoryGovernor; otherwise it stays at
+ * NORMAL and never sheds anything.
+ *
+ * Components register what they can release together with the level at which
+ * to release it. The JMX notification thread only records the level. The
+ * shedding happens in checkpoint(), which the analysis calls from its main
+ * thread between phases, when none of the registered structures is in use.
+ *
+ * Once the heap is CRITICAL the run is degraded for good: stages that trade
+ * memory for precision skip their refinements (see isDegraded()), and the
+ * results are not stored in the ResultCache.
+ */
+public class MemoryGovernor {
+  private static final String TAG = MemoryGovernor.class.getSimpleName();
+
+  // Occupancy after GC, in percent of the maximum heap
+  static final int PRESSURE_PERCENT = 75;
+  static final int CRITICAL_PERCENT = 90;
+
+  public enum Level {
+    NORMAL,
+    // release caches that are cheap to recompute
+    PRESSURE,
+    // release everything that can go, and degrade precision
+    CRITICAL,
+  }
+
+  public interface Sheddable {
+    /**
+     * Releases memory. Returns the number of released items, for the log.
+     */
+    int shed();
+  }
+
+  private static class Registration {
+    final String what;
+    final Level level;
+    final Sheddable sheddable;
+
+    Registration(String what, Level level, Sheddable sheddable) {
+      this.what = what;
+      this.level = level;
+      this.sheddable = sheddable;
+    }
+  }
+
+  private static MemoryGovernor instance;
+
+  private final boolean enabled;
+  private final List<MemoryPoolMXBean> pools = Lists.newArrayList();
+  private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+  private final NotificationListener listener = new NotificationListener() {
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+      if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+              notification.getType())) {
+        update();
+      }
+    }
+  };
+
+  private volatile Level level = Level.NORMAL;
+  private volatile boolean degraded;
+
+  private MemoryGovernor(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      return;
+    }
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()
+              && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+        pools.add(pool);
+      }
+    }
+    setThresholds(PRESSURE_PERCENT);
+    ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+            .addNotificationListener(listener, null, null);
+    Logger.verb(TAG, "watching " + pools.size() + " heap pools, max heap "
+            + (Runtime.getRuntime().maxMemory() >> 20) + "MB");
+  }
+
+  public static synchronized MemoryGovernor v() {
+    if (instance == null) {
+      instance = new MemoryGovernor(Configs.memoryGovernor);
+    }
+    return instance;
+  }
+
+  public static synchronized void reset() {
+    if (instance != null) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  private void stop() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+              .removeNotificationListener(listener);
+    } catch (ListenerNotFoundException e) {
+      // already removed
+    }
+    for (MemoryPoolMXBean pool : pools) {
+      pool.setCollectionUsageThreshold(0);
+    }
+  }
+
+  private void setThresholds(int percent) {
+    for (MemoryPoolMXBean pool : pools) {
+      pool.setCollectionUsageThreshold(pool.getUsage().getMax() / 100 * percent);
+    }
+  }
+
+  public void register(String what, Level level, Sheddable sheddable) {
+    if (enabled) {
+      registrations.add(new Registration(what, level, sheddable));
+    }
+  }
+
+  public void unregister(Sheddable sheddable) {
+    for (Registration r : registrations) {
+      if (r.sheddable == sheddable) {
+        registrations.remove(r);
+      }
+    }
+  }
+
+  public Level level() {
+    return level;
+  }
+
+  /**
+   * Whether -memoryGovernor is on. Caches that nothing but the governor
+   * would ever release should only be kept when it is.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * True at PRESSURE and above; caches should stop growing.
+   */
+  public boolean underPressure() {
+    return level != Level.NORMAL;
+  }
+
+  public boolean isDegraded() {
+    return degraded;
+  }
+
+  /**
+   * Recomputes the level from the occupancy after the last collection.
+   */
+  private synchronized void update() {
+    int percent = 0;
+    for (MemoryPoolMXBean pool : pools) {
+      MemoryUsage afterGC = pool.getCollectionUsage();
+      if (afterGC != null) {
+        percent = Math.max(percent, (int) (afterGC.getUsed() * 100 / pool.getUsage().getMax()));
+      }
+    }
+    Level newLevel = percent >= CRITICAL_PERCENT ? Level.CRITICAL
+            : percent >= PRESSURE_PERCENT ? Level.PRESSURE : Level.NORMAL;
+    if (newLevel == level) {
+      return;
+    }
+    Logger.verb(TAG, level + " -> " + newLevel + " (" + percent + "% of the heap in use after GC)");
+    level = newLevel;
+    // get notified again when the next level is reached
+    setThresholds(newLevel == Level.NORMAL ? PRESSURE_PERCENT : CRITICAL_PERCENT);
+    if (newLevel == Level.CRITICAL && !degraded) {
+      degraded = true;
+      Logger.warn(TAG, "heap is critical, continuing with degraded precision");
+    }
+  }
+
+  /**
+   * Sheds whatever is registered for the current level. Call between phases,
+   * from the thread that owns the registered structures.
+   */
+  public void checkpoint() {
+    if (!enabled) {
+      return;
+    }
+    update();
+    Level current = level;
+    if (current == Level.NORMAL) {
+      return;
+    }
+    for (Registration r : registrations) {
+      if (r.level.compareTo(current) <= 0) {
+        int released = r.sheddable.shed();
+        if (released > 0) {
+          Logger.verb(TAG, current + ": released " + released + " " + r.what);
+        }
+      }
+    }
+  }
+}
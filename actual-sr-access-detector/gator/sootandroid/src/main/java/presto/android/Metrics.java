@@ -0,0 +1,296 @@
+/*
+ * Metrics.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wall time, CPU time, allocated bytes and peak heap of the phases of one
+ * analysis run. Usage:
+ *
+ * <pre>
+ *   Metrics.Phase phase = Metrics.v().begin("flowgraph.build");
+ *   ...
+ *   phase.end();
+ * </pre>
+ *
+ * CPU time is that of the whole process, so the work of the flowgraph,
+ * solver and WTG worker threads is counted. Allocation is process-wide too:
+ * the growth of the heap plus what the collections in between freed, as
+ * reported by GC notifications. Those arrive shortly after each collection,
+ * so reading it waits (briefly) for the ones still in flight. Peak heap is the sum of the peaks of the heap memory
+ * pools while the phase was open.
+ *
+ * The record is rewritten to BENCHMARK.metrics.json next to the output file
+ * whenever a phase begins or ends, so a run that crashes or gets killed
+ * leaves the unfinished phase in the file with "done": false.
+ */
+public class Metrics {
+  private static final String TAG = Metrics.class.getSimpleName();
+
+  private static Metrics instance;
+
+  private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+  private final List<MemoryPoolMXBean> heapPools = Lists.newArrayList();
+  private final Set<String> heapPoolNames = Sets.newHashSet();
+  private final List<GarbageCollectorMXBean> collectors =
+          ManagementFactory.getGarbageCollectorMXBeans();
+  // Bytes freed by the collections since this run began
+  private final AtomicLong collectedBytes = new AtomicLong();
+  // Collections counted into collectedBytes, including those before this run
+  private final AtomicLong collectionsSeen = new AtomicLong();
+  private final NotificationListener gcListener = new NotificationListener() {
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+      if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+              notification.getType())) {
+        return;
+      }
+      GcInfo gc = GarbageCollectionNotificationInfo.from(
+              (CompositeData) notification.getUserData()).getGcInfo();
+      long freed = 0;
+      for (Map.Entry<String, MemoryUsage> before : gc.getMemoryUsageBeforeGc().entrySet()) {
+        MemoryUsage after = gc.getMemoryUsageAfterGc().get(before.getKey());
+        if (heapPoolNames.contains(before.getKey()) && after != null) {
+          freed += before.getValue().getUsed() - after.getUsed();
+        }
+      }
+      collectedBytes.addAndGet(freed);
+      collectionsSeen.incrementAndGet();
+    }
+  };
+
+  // in the order they began
+  private final List<Phase> phases = Lists.newArrayList();
+  private final List<Phase> open = Lists.newArrayList();
+  private final long startNanos = System.nanoTime();
+
+  private Metrics() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        heapPools.add(pool);
+        heapPoolNames.add(pool.getName());
+      }
+    }
+    collectionsSeen.set(collectionCount());
+    for (GarbageCollectorMXBean gc : collectors) {
+      if (gc instanceof NotificationEmitter) {
+        ((NotificationEmitter) gc).addNotificationListener(gcListener, null, null);
+      }
+    }
+  }
+
+  private void stop() {
+    for (GarbageCollectorMXBean gc : collectors) {
+      if (gc instanceof NotificationEmitter) {
+        try {
+          ((NotificationEmitter) gc).removeNotificationListener(gcListener);
+        } catch (ListenerNotFoundException e) {
+          // not registered with this collector
+        }
+      }
+    }
+  }
+
+  public static synchronized Metrics v() {
+    if (instance == null) {
+      instance = new Metrics();
+    }
+    return instance;
+  }
+
+  public static synchronized void reset() {
+    if (instance != null) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  public class Phase {
+    final String name;
+    final long wallStart;
+    final long cpuStart;
+    final long allocStart;
+    long wallNanos = -1;
+    long cpuNanos = -1;
+    long allocatedBytes = -1;
+    long peakHeapBytes;
+    boolean done;
+
+    Phase(String name) {
+      this.name = name;
+      this.wallStart = System.nanoTime();
+      this.cpuStart = cpuTime();
+      this.allocStart = allocatedBytes();
+    }
+
+    public void end() {
+      synchronized (Metrics.this) {
+        if (done) {
+          return;
+        }
+        updatePeaks();
+        wallNanos = System.nanoTime() - wallStart;
+        long cpu = cpuTime();
+        cpuNanos = cpu < 0 ? -1 : cpu - cpuStart;
+        long alloc = allocatedBytes();
+        allocatedBytes = alloc < 0 ? -1 : alloc - allocStart;
+        done = true;
+        open.remove(this);
+        Logger.verb(TAG, name + ": " + wallNanos / 1000000 + "ms wall, "
+                + cpuNanos / 1000000 + "ms cpu, " + (allocatedBytes >> 20) + "MB allocated, "
+                + (peakHeapBytes >> 20) + "MB peak heap");
+        write();
+      }
+    }
+  }
+
+  public synchronized Phase begin(String name) {
+    // fold the peak so far into the enclosing phases before restarting it
+    updatePeaks();
+    Phase phase = new Phase(name);
+    phases.add(phase);
+    open.add(phase);
+    write();
+    return phase;
+  }
+
+  private void updatePeaks() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      peak += pool.getPeakUsage().getUsed();
+      pool.resetPeakUsage();
+    }
+    for (Phase phase : open) {
+      phase.peakHeapBytes = Math.max(phase.peakHeapBytes, peak);
+    }
+  }
+
+  private long cpuTime() {
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  private long allocatedBytes() {
+    // The notification of a collection comes from another thread a little
+    // after the counts move; without it the freed bytes would go missing.
+    long deadline = System.nanoTime() + 200000000L;
+    while (collectionsSeen.get() < collectionCount() && System.nanoTime() < deadline) {
+      Thread.yield();
+    }
+    long used = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      used += pool.getUsage().getUsed();
+    }
+    return used + collectedBytes.get();
+  }
+
+  private long collectionCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : collectors) {
+      count += Math.max(gc.getCollectionCount(), 0);
+    }
+    return count;
+  }
+
+  public File getFile() {
+    return new File(Configs.pathoutfilename + Configs.benchmarkName + ".metrics.json");
+  }
+
+  /**
+   * Writes the record of the current run. Called on every phase change, and
+   * once more when the run finishes.
+   */
+  public synchronized void write() {
+    if (Configs.benchmarkName == null) {
+      return;
+    }
+    File file = getFile();
+    File tmp = new File(file.getPath() + ".tmp");
+    try {
+      if (file.getParentFile() != null) {
+        file.getParentFile().mkdirs();
+      }
+      try (PrintWriter out = new PrintWriter(tmp, StandardCharsets.UTF_8.name())) {
+        out.print(toJson());
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot write " + file + ": " + e.getMessage());
+    }
+  }
+
+  String toJson() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n");
+    sb.append("  \"benchmark\": ").append(quote(Configs.benchmarkName)).append(",\n");
+    sb.append("  \"project\": ").append(quote(Configs.project)).append(",\n");
+    sb.append("  \"wallMs\": ").append((System.nanoTime() - startNanos) / 1000000).append(",\n");
+    sb.append("  \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append(",\n");
+    sb.append("  \"phases\": [");
+    for (int i = 0; i < phases.size(); i++) {
+      Phase p = phases.get(i);
+      sb.append(i == 0 ? "\n" : ",\n");
+      sb.append("    {\"name\": ").append(quote(p.name));
+      sb.append(", \"done\": ").append(p.done);
+      sb.append(", \"wallMs\": ").append(p.done ? p.wallNanos / 1000000 : -1);
+      sb.append(", \"cpuMs\": ").append(p.cpuNanos < 0 ? -1 : p.cpuNanos / 1000000);
+      sb.append(", \"allocatedBytes\": ").append(p.allocatedBytes);
+      sb.append(", \"peakHeapBytes\": ").append(p.peakHeapBytes);
+      sb.append('}');
+    }
+    sb.append("\n  ]\n}\n");
+    return sb.toString();
+  }
+
+  static String quote(String s) {
+    if (s == null) {
+      return "null";
+    }
+    StringBuilder sb = new StringBuilder("\"");
+    for (char c : s.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * StatementTrace.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android;
+
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.Stmt;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Trace of the classes and statements a whole-program pass visits, for
+ * debugging the flowgraph construction. Off unless -traceFile is given:
+ * then traceClass() and traceStmt() cost a field read.
+ *
+ * -traceClasses and -traceMethods restrict the trace to the classes whose
+ * name and the methods whose signature contain a match of the regex, and
+ * -traceSample N keeps every N-th of the remaining statements. Records go
+ * through a bounded ring buffer to a background thread, which formats them
+ * and writes them gzipped to the trace file. A full buffer makes the
+ * producer wait instead of dropping records.
+ */
+public class StatementTrace {
+  private static final String TAG = StatementTrace.class.getSimpleName();
+
+  // Capacity of the ring buffer, a power of 2
+  static final int CAPACITY = 1 << 16;
+
+  private static StatementTrace instance;
+
+  private final boolean enabled;
+  private final Pattern classFilter;
+  private final Pattern methodFilter;
+  private final int sample;
+
+  // Filter results of the last class and method, which the passes visit one
+  // after the other
+  private SootClass lastClass;
+  private boolean lastClassMatches;
+  private SootMethod lastMethod;
+  private boolean lastMethodMatches;
+  private long sampleCounter;
+
+  // Producers claim slots at head; the writer thread consumes at tail
+  private final AtomicReferenceArray<Object> ring;
+  private final AtomicLong head = new AtomicLong();
+  private volatile long tail;
+  private volatile boolean closed;
+  private Thread writer;
+  private Thread shutdownHook;
+  private IOException failure;
+
+  private static class StmtRecord {
+    final SootMethod method;
+    final Stmt stmt;
+
+    StmtRecord(SootMethod method, Stmt stmt) {
+      this.method = method;
+      this.stmt = stmt;
+    }
+  }
+
+  private StatementTrace() {
+    enabled = !Configs.traceFile.isEmpty();
+    classFilter = Configs.traceClasses.isEmpty() ? null : Pattern.compile(Configs.traceClasses);
+    methodFilter = Configs.traceMethods.isEmpty() ? null : Pattern.compile(Configs.traceMethods);
+    sample = Math.max(1, Configs.traceSample);
+    ring = enabled ? new AtomicReferenceArray<Object>(CAPACITY) : null;
+  }
+
+  public static synchronized StatementTrace v() {
+    if (instance == null) {
+      instance = new StatementTrace();
+    }
+    return instance;
+  }
+
+  public static synchronized void reset() {
+    if (instance != null) {
+      instance.close();
+      instance = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Records that a pass starts on class c.
+   */
+  public void traceClass(SootClass c) {
+    if (enabled && classMatches(c)) {
+      put(c);
+    }
+  }
+
+  public void traceStmt(SootMethod m, Stmt s) {
+    if (enabled && methodMatches(m) && sampleCounter++ % sample == 0) {
+      put(new StmtRecord(m, s));
+    }
+  }
+
+  private boolean classMatches(SootClass c) {
+    if (c != lastClass) {
+      lastClass = c;
+      lastClassMatches = classFilter == null || classFilter.matcher(c.getName()).find();
+    }
+    return lastClassMatches;
+  }
+
+  private boolean methodMatches(SootMethod m) {
+    if (m != lastMethod) {
+      lastMethod = m;
+      lastMethodMatches = classMatches(m.getDeclaringClass())
+              && (methodFilter == null || methodFilter.matcher(m.getSignature()).find());
+    }
+    return lastMethodMatches;
+  }
+
+  private void put(Object record) {
+    if (closed) {
+      return;
+    }
+    startWriter();
+    long slot = head.getAndIncrement();
+    // wait for the writer to free the slot
+    while (slot - tail >= CAPACITY) {
+      if (closed) {
+        return;
+      }
+      LockSupport.parkNanos(100000L);
+    }
+    ring.set((int) (slot & (CAPACITY - 1)), record);
+  }
+
+  private synchronized void startWriter() {
+    if (writer != null) {
+      return;
+    }
+    writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "gator-trace");
+    writer.setDaemon(true);
+    writer.start();
+    shutdownHook = new Thread() {
+      @Override
+      public void run() {
+        close();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    Logger.verb(TAG, "tracing statements to " + Configs.traceFile);
+  }
+
+  private void drain() {
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(new FileOutputStream(Configs.traceFile), 1 << 16),
+            StandardCharsets.UTF_8), 1 << 16)) {
+      while (true) {
+        long t = tail;
+        int index = (int) (t & (CAPACITY - 1));
+        Object record = ring.get(index);
+        if (record == null) {
+          // the producers are done once the trace is closed, so an empty
+          // slot then is one that was never filled
+          if (closed && ring.get(index) == null) {
+            break;
+          }
+          LockSupport.parkNanos(1000000L);
+          continue;
+        }
+        ring.set(index, null);
+        tail = t + 1;
+        write(out, record);
+      }
+    } catch (IOException e) {
+      failure = e;
+      closed = true;
+    }
+  }
+
+  private void write(Writer out, Object record) throws IOException {
+    if (record instanceof StmtRecord) {
+      StmtRecord r = (StmtRecord) record;
+      out.write(r.method.getSignature());
+      out.write(':');
+      out.write(r.stmt.toString());
+    } else {
+      SootClass c = (SootClass) record;
+      out.write(c.getName());
+      out.write(" extends ");
+      out.write(c.hasSuperclass() ? c.getSuperclass().getName() : "-");
+    }
+    out.write('\n');
+  }
+
+  /**
+   * Writes out the buffered records and closes the trace file.
+   */
+  public void close() {
+    Thread w;
+    synchronized (this) {
+      if (closed && writer == null) {
+        return;
+      }
+      closed = true;
+      w = writer;
+      writer = null;
+    }
+    if (w == null) {
+      return;
+    }
+    try {
+      w.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException e) {
+        // already shutting down
+      }
+    }
+    if (failure != null) {
+      Logger.warn(TAG, "could not write " + Configs.traceFile + ": " + failure.getMessage());
+    }
+  }
+}
@@ -0,0 +1,482 @@
+/*
+ * FlowgraphFragments.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.cache;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import presto.android.Configs;
+import presto.android.Hierarchy;
+import presto.android.Logger;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Value;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.Stmt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * On-disk fragments of the flowgraph construction, one file per application
+ * class, for re-scans of later versions of an app. Enabled with
+ * "-fragmentCache DIR".
+ *
+ * For every method, a fragment records what the calls in its body turned out
+ * to be: either plain calls, with the application methods the flow was
+ * propagated to, or calls that create operation nodes or are recorded for
+ * later (listeners, dialogs, list views, menus, permissions). A method whose
+ * Jimple is unchanged replays the plain calls without going through the
+ * recognizers and the virtual dispatch again, and rebuilds the others, so the
+ * listener and dialog bookkeeping of the Flowgraph is recomputed from the
+ * statements of the current version. Statements other than calls are cheap and
+ * always rebuilt.
+ *
+ * Fragments are only valid for the configuration and the specification files
+ * they were recorded with; these go into the name of the class files, so a
+ * change there starts over with an empty cache. Each replayed call also
+ * records the digest of what its classification and dispatch looked at (see
+ * callContext()), so a change to the classes of the app only rebuilds the
+ * calls that depend on them. Nodes are keyed by soot objects, so the bodies
+ * are still loaded; what is saved is the per-call work of
+ * processApplicationClasses().
+ */
+public class FlowgraphFragments {
+  private static final String TAG = FlowgraphFragments.class.getSimpleName();
+
+  private static final int MAGIC = 0x47465247;
+  private static final int VERSION = 2;
+  private static final String SUFFIX = ".frag";
+
+  /**
+   * What processApplicationClasses() did at the calls of one method.
+   */
+  public static class MethodFragment {
+    final String subsig;
+    final String digest;
+    // Index of a call in the statements of the method -> signatures of the
+    // methods the flow went to, or null for a call that is rebuilt
+    final Map<Integer, List<String>> calls = Maps.newTreeMap();
+    // Index of a call -> callContext() when it was recorded
+    final Map<Integer, String> contexts = Maps.newHashMap();
+    // Whether record() changed a fragment that was read from disk
+    boolean updated;
+
+    MethodFragment(String subsig, String digest) {
+      this.subsig = subsig;
+      this.digest = digest;
+    }
+
+    /**
+     * The methods the flow of the call at index goes to, or null when the
+     * call has to be rebuilt, or was recorded in another context.
+     */
+    public List<SootMethod> replay(int index, String context) {
+      List<String> signatures = calls.get(index);
+      if (signatures == null || !context.equals(contexts.get(index))) {
+        return null;
+      }
+      List<SootMethod> targets = Lists.newArrayListWithCapacity(signatures.size());
+      for (String signature : signatures) {
+        SootMethod target = Scene.v().grabMethod(signature);
+        if (target == null) {
+          return null;
+        }
+        targets.add(target);
+      }
+      return targets;
+    }
+
+    /**
+     * Records the call at index; targets is null for a call that has to be
+     * rebuilt, otherwise context is its callContext().
+     */
+    public void record(int index, List<SootMethod> targets, String context) {
+      List<String> signatures = null;
+      if (targets != null) {
+        signatures = Lists.newArrayListWithCapacity(targets.size());
+        for (SootMethod target : targets) {
+          signatures.add(target.getSignature());
+        }
+      } else {
+        context = null;
+      }
+      List<String> previous = calls.put(index, signatures);
+      String previousContext = contexts.put(index, context);
+      updated |= !Objects.equals(previous, signatures)
+              || !Objects.equals(previousContext, context);
+    }
+
+    public boolean isUpdated() {
+      return updated;
+    }
+  }
+
+  private static FlowgraphFragments instance;
+
+  // null when no fragments are used for the current app
+  private String context;
+  private final Map<SootClass, Map<String, MethodFragment>> loaded = Maps.newConcurrentMap();
+  private Hierarchy hier;
+  // Digests for callContext(), by class
+  private final Map<SootClass, String> supertypeDigests = Maps.newHashMap();
+  private final Map<SootClass, String> dispatchDigests = Maps.newHashMap();
+
+  private FlowgraphFragments() {
+  }
+
+  public static synchronized FlowgraphFragments v() {
+    if (instance == null) {
+      instance = new FlowgraphFragments();
+    }
+    return instance;
+  }
+
+  public static synchronized void reset() {
+    instance = null;
+  }
+
+  public boolean isEnabled() {
+    return context != null;
+  }
+
+  /**
+   * Computes the context of the fragments. Call once the hierarchy is known.
+   */
+  public void open(Hierarchy hier) {
+    context = null;
+    loaded.clear();
+    supertypeDigests.clear();
+    dispatchDigests.clear();
+    this.hier = hier;
+    if (Configs.fragmentCacheDir.isEmpty()) {
+      return;
+    }
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      for (String file : new String[] {
+              Configs.listenerSpecFile, Configs.wtgSpecFile, Configs.permissionMapFile}) {
+        if (file != null && new File(file).isFile()) {
+          ResultCache.update(md, new File(file));
+        }
+      }
+      StringBuilder sb = new StringBuilder();
+      sb.append(VERSION).append('|');
+      sb.append(Configs.apiLevel).append('|');
+      sb.append(Configs.libraryPackages).append('|');
+      sb.append(Configs.withCHA).append('|');
+      sb.append(Configs.enableStringAnalysis).append('|');
+      sb.append(Configs.enableSetTextAnalysis).append('|');
+      sb.append(Configs.implicitIntent).append('|');
+      md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+      context = ResultCache.toHex(md.digest());
+      new File(Configs.fragmentCacheDir).mkdirs();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      Logger.warn(TAG, "Flowgraph fragments disabled: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Digest of what the recognizers and the virtual dispatch saw at the call s
+   * of caller: the declarations of the caller's class, of the classes of the
+   * method reference, the receiver and the arguments, and of all their
+   * supertypes; for a virtual call also those of the concrete subtypes of the
+   * receiver type. constants tells which resource ids, if any, the constant
+   * arguments are. Call from the thread that builds the flowgraph.
+   */
+  public String callContext(SootMethod caller, Stmt s, String constants) {
+    InvokeExpr ie = s.getInvokeExpr();
+    StringBuilder sb = new StringBuilder();
+    sb.append(supertypeDigest(caller.getDeclaringClass())).append('|');
+    sb.append(supertypeDigest(ie.getMethodRef().getDeclaringClass())).append('|');
+    for (Value v : ie.getArgs()) {
+      if (v.getType() instanceof RefType) {
+        sb.append(supertypeDigest(((RefType) v.getType()).getSootClass()));
+      }
+      sb.append(',');
+    }
+    if (ie instanceof InstanceInvokeExpr) {
+      Type rcv_t = ((InstanceInvokeExpr) ie).getBase().getType();
+      if (rcv_t instanceof RefType) {
+        SootClass stc = ((RefType) rcv_t).getSootClass();
+        sb.append('|').append(supertypeDigest(stc));
+        if (!(ie instanceof SpecialInvokeExpr)) {
+          sb.append('|').append(dispatchDigest(stc));
+        }
+      }
+    }
+    sb.append('|').append(constants);
+    return sha256(sb.toString());
+  }
+
+  private String supertypeDigest(SootClass c) {
+    String digest = supertypeDigests.get(c);
+    if (digest == null) {
+      Set<SootClass> supertypes = hier.getSupertypes(c);
+      digest = declarations(supertypes == null ? Collections.singleton(c) : supertypes);
+      supertypeDigests.put(c, digest);
+    }
+    return digest;
+  }
+
+  private String dispatchDigest(SootClass c) {
+    String digest = dispatchDigests.get(c);
+    if (digest == null) {
+      Set<SootClass> classes = Sets.newHashSet();
+      Set<SootClass> subtypes = hier.getConcreteSubtypes(c);
+      if (subtypes != null) {
+        for (SootClass sub : subtypes) {
+          Set<SootClass> supertypes = hier.getSupertypes(sub);
+          classes.addAll(supertypes == null ? Collections.singleton(sub) : supertypes);
+        }
+      }
+      digest = declarations(classes);
+      dispatchDigests.put(c, digest);
+    }
+    return digest;
+  }
+
+  /**
+   * Digest of the modifiers, supertypes and methods of the classes.
+   */
+  private static String declarations(Collection<SootClass> classes) {
+    Set<String> lines = Sets.newTreeSet();
+    for (SootClass c : classes) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(c.getModifiers()).append(' ').append(c.getName());
+      sb.append(c.isPhantom() ? " phantom" : "");
+      sb.append(" : ").append(c.hasSuperclass() ? c.getSuperclass().getName() : "-");
+      Set<String> interfaces = Sets.newTreeSet();
+      for (SootClass i : c.getInterfaces()) {
+        interfaces.add(i.getName());
+      }
+      sb.append(' ').append(interfaces);
+      Set<String> methods = Sets.newTreeSet();
+      for (SootMethod m : Lists.newArrayList(c.getMethods())) {
+        methods.add(m.getModifiers() + " " + m.getSubSignature());
+      }
+      sb.append(' ').append(methods);
+      lines.add(sb.toString());
+    }
+    return sha256(Joiner.on('\n').join(lines));
+  }
+
+  private static String sha256(String s) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return ResultCache.toHex(md.digest(s.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Digest of the Jimple of a method. Safe to call from worker threads.
+   */
+  public static String digest(SootMethod m, Stmt[] stmts) {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    md.update((m.getModifiers() + " " + m.getSignature() + "\n").getBytes(StandardCharsets.UTF_8));
+    for (Stmt s : stmts) {
+      md.update(s.toString().getBytes(StandardCharsets.UTF_8));
+      md.update((byte) '\n');
+    }
+    return ResultCache.toHex(md.digest());
+  }
+
+  /**
+   * The stored fragment of m if its digest matches, or null. Safe to call from
+   * worker threads.
+   */
+  public MethodFragment lookup(SootMethod m, String digest) {
+    if (context == null) {
+      return null;
+    }
+    SootClass c = m.getDeclaringClass();
+    Map<String, MethodFragment> fragments = loaded.get(c);
+    if (fragments == null) {
+      fragments = load(c);
+      Map<String, MethodFragment> previous = loaded.putIfAbsent(c, fragments);
+      if (previous != null) {
+        fragments = previous;
+      }
+    }
+    MethodFragment fragment = fragments.get(m.getSubSignature());
+    return fragment != null && fragment.digest.equals(digest) ? fragment : null;
+  }
+
+  /**
+   * A new, empty fragment for m, to be filled in by record().
+   */
+  public MethodFragment newFragment(SootMethod m, String digest) {
+    return new MethodFragment(m.getSubSignature(), digest);
+  }
+
+  private File file(SootClass c) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update((context + "|" + c.getName()).getBytes(StandardCharsets.UTF_8));
+      return new File(Configs.fragmentCacheDir, ResultCache.toHex(md.digest()) + SUFFIX);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Map<String, MethodFragment> load(SootClass c) {
+    Map<String, MethodFragment> fragments = Maps.newHashMap();
+    File f = file(c);
+    if (!f.isFile()) {
+      return fragments;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return fragments;
+      }
+      int methods = in.readInt();
+      for (int i = 0; i < methods; i++) {
+        MethodFragment fragment = new MethodFragment(in.readUTF(), in.readUTF());
+        int calls = in.readInt();
+        for (int j = 0; j < calls; j++) {
+          int index = in.readInt();
+          int targets = in.readInt();
+          List<String> signatures = null;
+          if (targets >= 0) {
+            fragment.contexts.put(index, in.readUTF());
+            signatures = Lists.newArrayListWithCapacity(targets);
+            for (int k = 0; k < targets; k++) {
+              signatures.add(in.readUTF());
+            }
+          }
+          fragment.calls.put(index, signatures);
+        }
+        fragments.put(fragment.subsig, fragment);
+      }
+      f.setLastModified(System.currentTimeMillis());
+    } catch (IOException e) {
+      // truncated or evicted meanwhile; the class is rebuilt
+      Logger.verb(TAG, "Cannot read fragments of " + c.getName() + ": " + e.getMessage());
+      fragments.clear();
+    }
+    return fragments;
+  }
+
+  /**
+   * Writes the fragments of all methods of c, replacing the stored ones.
+   */
+  public void store(SootClass c, List<MethodFragment> fragments) {
+    if (context == null) {
+      return;
+    }
+    File f = file(c);
+    File tmp = new File(f.getPath() + ".tmp-" + System.nanoTime());
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+              new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(fragments.size());
+        for (MethodFragment fragment : fragments) {
+          out.writeUTF(fragment.subsig);
+          out.writeUTF(fragment.digest);
+          out.writeInt(fragment.calls.size());
+          for (Map.Entry<Integer, List<String>> call : fragment.calls.entrySet()) {
+            out.writeInt(call.getKey());
+            List<String> signatures = call.getValue();
+            out.writeInt(signatures == null ? -1 : signatures.size());
+            if (signatures != null) {
+              out.writeUTF(fragment.contexts.get(call.getKey()));
+              for (String signature : signatures) {
+                out.writeUTF(signature);
+              }
+            }
+          }
+        }
+      }
+      Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot store fragments of " + c.getName() + ": " + e.getMessage());
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  /**
+   * Drops the loaded fragments and evicts the least recently used class files
+   * while the directory is over Configs.fragmentCacheMaxMB.
+   */
+  public void finish() {
+    loaded.clear();
+    supertypeDigests.clear();
+    dispatchDigests.clear();
+    if (context == null) {
+      return;
+    }
+    File[] files = new File(Configs.fragmentCacheDir).listFiles();
+    if (files == null) {
+      return;
+    }
+    List<File> entries = Lists.newArrayList();
+    long total = 0;
+    for (File f : files) {
+      if (f.isFile() && f.getName().endsWith(SUFFIX)) {
+        entries.add(f);
+        total += f.length();
+      }
+    }
+    long limit = Configs.fragmentCacheMaxMB * 1024 * 1024;
+    if (total <= limit) {
+      return;
+    }
+    Collections.sort(entries, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+    int evicted = 0;
+    for (File f : entries) {
+      if (total <= limit) {
+        break;
+      }
+      total -= f.length();
+      FileUtils.deleteQuietly(f);
+      evicted++;
+    }
+    Logger.trace(TAG, "Evicted " + evicted + " class files");
+  }
+}
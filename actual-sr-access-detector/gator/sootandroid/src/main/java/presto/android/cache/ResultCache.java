@@ -0,0 +1,263 @@
+/*
+ * ResultCache.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import presto.android.Configs;
+import presto.android.Logger;
+import presto.android.MemoryGovernor;
+import presto.android.permission.DexPrefilter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * On-disk cache of GUIHierarchyPrinterClient output, keyed by the SHA-256 of
+ * the APK together with everything in Configs that changes the result (API
+ * level, clients, client params, analysis flags including -dexPrefilter, and
+ * the content of the permission map, listener and WTG spec files and of
+ * android.jar), the jar gator runs from and VERSION. Enabled with
+ * "-resultCache DIR".
+ *
+ * Each entry is a directory named by the key that holds the XML output and
+ * the dumped images. Entries are written under a temporary name and renamed
+ * into place, so concurrent workers can share one cache directory. The
+ * modification time of an entry is its last use; when the cache grows over
+ * Configs.resultCacheMaxMB, the least recently used entries are removed.
+ */
+public class ResultCache {
+  private static final String TAG = ResultCache.class.getSimpleName();
+
+  // Bump when the output of the analysis changes, for runs from a class
+  // directory, whose code is not hashed
+  private static final int VERSION = 1;
+
+  private static final String XML_FILE = "result.xml";
+  private static final String IMAGE_DIR = "images";
+
+  private static ResultCache instance;
+
+  // null when the cache does not apply to the current app
+  private String key;
+
+  private ResultCache() {
+    key = computeKey();
+  }
+
+  public static synchronized ResultCache v() {
+    if (instance == null) {
+      instance = new ResultCache();
+    }
+    return instance;
+  }
+
+  public static synchronized void reset() {
+    instance = null;
+  }
+
+  public boolean isEnabled() {
+    return key != null;
+  }
+
+  /**
+   * Copies a cached result to the output location of the current app.
+   * Returns false on a miss, in which case the analysis has to run.
+   */
+  public boolean restore() {
+    if (key == null) {
+      return false;
+    }
+    File entry = new File(Configs.resultCacheDir, key);
+    File xml = new File(entry, XML_FILE);
+    if (!xml.isFile()) {
+      Logger.verb(TAG, "Miss " + key);
+      return false;
+    }
+    try {
+      new File(Configs.pathoutfilename).mkdirs();
+      FileUtils.copyFile(xml, new File(Configs.pathoutfilename + Configs.benchmarkName + ".xml"));
+      File images = new File(entry, IMAGE_DIR);
+      if (images.isDirectory()) {
+        FileUtils.copyDirectory(images, new File(Configs.pathoutfilename + Configs.benchmarkName));
+      }
+      entry.setLastModified(System.currentTimeMillis());
+    } catch (IOException e) {
+      // Most likely evicted by another worker while copying
+      Logger.warn(TAG, "Cannot restore " + key + ": " + e.getMessage());
+      return false;
+    }
+    Logger.verb(TAG, "Hit " + key);
+    return true;
+  }
+
+  /**
+   * Stores the output just written by GUIHierarchyPrinterClient, then evicts
+   * old entries if the cache is over its size limit.
+   */
+  public void store(File xml) {
+    if (key == null || !xml.isFile()) {
+      return;
+    }
+    if (MemoryGovernor.v().isDegraded()) {
+      // not what a run with enough heap would have produced
+      Logger.verb(TAG, "Not storing " + key + ", the run was degraded");
+      return;
+    }
+    File root = new File(Configs.resultCacheDir);
+    File entry = new File(root, key);
+    File tmp = new File(root, key + ".tmp-" + System.nanoTime());
+    try {
+      FileUtils.copyFile(xml, new File(tmp, XML_FILE));
+      File images = new File(Configs.pathoutfilename + Configs.benchmarkName);
+      if (images.isDirectory()) {
+        FileUtils.copyDirectory(images, new File(tmp, IMAGE_DIR));
+      }
+      if (entry.exists()) {
+        FileUtils.deleteDirectory(tmp);
+      } else {
+        Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      Logger.verb(TAG, "Stored " + key);
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot store " + key + ": " + e.getMessage());
+      FileUtils.deleteQuietly(tmp);
+      return;
+    }
+    evict(root);
+  }
+
+  void evict(File root) {
+    File[] files = root.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<File> entries = Lists.newArrayList();
+    long total = 0;
+    for (File f : files) {
+      if (f.isDirectory() && !f.getName().contains(".tmp-")) {
+        entries.add(f);
+        total += FileUtils.sizeOfDirectory(f);
+      }
+    }
+    long limit = Configs.resultCacheMaxMB * 1024 * 1024;
+    if (total <= limit) {
+      return;
+    }
+    Collections.sort(entries, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+    for (File f : entries) {
+      if (total <= limit) {
+        break;
+      }
+      long size = FileUtils.sizeOfDirectory(f);
+      FileUtils.deleteQuietly(f);
+      total -= size;
+      Logger.trace(TAG, "Evicted " + f.getName());
+    }
+  }
+
+  // --- key computation
+
+  String computeKey() {
+    if (Configs.resultCacheDir.isEmpty() || !Configs.project.endsWith(".apk")) {
+      return null;
+    }
+    // Output that only goes to stdout cannot be replayed
+    if (Configs.clientParams.contains("print2stdout")
+            || !Configs.clientParams.contains("printXml")) {
+      return null;
+    }
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      update(md, new File(Configs.project));
+      for (String file : new String[] {
+              Configs.permissionMapFile, Configs.listenerSpecFile, Configs.wtgSpecFile,
+              Configs.android, codeLocation()}) {
+        if (file != null && new File(file).isFile()) {
+          update(md, new File(file));
+        }
+      }
+      if (Configs.dexPrefilter && Configs.permissionMapFile != null) {
+        // The content provider maps; the permission map, first, is hashed above
+        List<File> mapFiles = DexPrefilter.mapFiles(Configs.permissionMapFile);
+        for (File f : mapFiles.subList(1, mapFiles.size())) {
+          update(md, f);
+        }
+      }
+      StringBuilder sb = new StringBuilder();
+      sb.append(VERSION).append('|');
+      sb.append(Configs.apiLevel).append('|');
+      sb.append(Configs.minSdkVersion).append('|');
+      sb.append(Configs.maxSdkVersion).append('|');
+      sb.append(Configs.targetSdkVersion).append('|');
+      sb.append(Sets.newTreeSet(Configs.clients)).append('|');
+      sb.append(Sets.newTreeSet(Configs.clientParams)).append('|');
+      sb.append(Configs.libraryPackages).append('|');
+      sb.append(Configs.withCHA).append('|');
+      sb.append(Configs.fastMode).append('|');
+      sb.append(Configs.enableStringAnalysis).append('|');
+      sb.append(Configs.enableSetTextAnalysis).append('|');
+      sb.append(Configs.implicitIntent).append('|');
+      sb.append(Configs.resolveContext).append('|');
+      sb.append(Configs.resourcesFromApk).append('|');
+      // dumpEmptyResult() stores a different format for the same APK
+      sb.append(Configs.dexPrefilter);
+      md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+      return toHex(md.digest());
+    } catch (IOException | NoSuchAlgorithmException e) {
+      Logger.warn(TAG, "Result cache disabled: " + e.getMessage());
+      return null;
+    }
+  }
+
+  // The jar the analysis runs from, or null if it is not a jar
+  static String codeLocation() {
+    try {
+      File location = new File(ResultCache.class.getProtectionDomain()
+              .getCodeSource().getLocation().toURI());
+      return location.isFile() ? location.getPath() : null;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  static void update(MessageDigest md, File file) throws IOException {
+    byte[] buf = new byte[64 * 1024];
+    try (InputStream in = new FileInputStream(file)) {
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        md.update(buf, 0, n);
+      }
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+}
@@ -49,6 +49,10 @@ public class DemandVariableValueQuery implements VariableValueQueryInterface {
     return theInstance;
   }
 
+  public static void reset() {
+    theInstance = null;
+  }
+
   Set<NObjectNode> valueSetForRefTypes(Local local) {
     NVarNode varNode = flowgraph.lookupVarNode(local);
     if (varNode == null) {
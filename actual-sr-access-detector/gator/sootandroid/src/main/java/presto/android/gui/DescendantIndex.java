@@ -0,0 +1,115 @@
+/*
+ * DescendantIndex.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import presto.android.gui.graph.NNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Memoized GraphUtil.descendantNodes() over the view hierarchy, keyed by the
+ * root of the walk, and the views under a root by their id node. The entry
+ * of a root is computed on first use and kept until invalidate() drops it,
+ * which must be done for every ancestor of a view that got a child or a new
+ * id. Lookups may run concurrently with each other, but not with
+ * invalidate().
+ */
+public class DescendantIndex {
+  private final Function<NNode, NNode> idOf;
+  private final ConcurrentMap<NNode, Entry> entries = Maps.newConcurrentMap();
+
+  private static class Entry {
+    final Set<NNode> descendants;
+    // Built on first lookup by id
+    volatile Map<NNode, List<NNode>> viewsById;
+
+    Entry(Set<NNode> descendants) {
+      this.descendants = descendants;
+    }
+  }
+
+  /**
+   * idOf gives the id node of a view, or null if it has none.
+   */
+  public DescendantIndex(Function<NNode, NNode> idOf) {
+    this.idOf = idOf;
+  }
+
+  private Entry entry(NNode root) {
+    Entry entry = entries.get(root);
+    if (entry == null) {
+      // Two threads may walk the same root; either result will do
+      entry = new Entry(Collections.unmodifiableSet(GraphUtil.v().descendantNodes(root)));
+      Entry existing = entries.putIfAbsent(root, entry);
+      if (existing != null) {
+        entry = existing;
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * root and the views under it, as GraphUtil.descendantNodes(), but not to
+   * be modified.
+   */
+  public Set<NNode> descendants(NNode root) {
+    return entry(root).descendants;
+  }
+
+  /**
+   * The views among descendants(root) whose id node is id.
+   */
+  public List<NNode> viewsWithId(NNode root, NNode id) {
+    Entry entry = entry(root);
+    Map<NNode, List<NNode>> viewsById = entry.viewsById;
+    if (viewsById == null) {
+      viewsById = Maps.newHashMap();
+      for (NNode view : entry.descendants) {
+        NNode viewId = idOf.apply(view);
+        if (viewId == null) {
+          continue;
+        }
+        List<NNode> views = viewsById.get(viewId);
+        if (views == null) {
+          views = Lists.newArrayListWithCapacity(1);
+          viewsById.put(viewId, views);
+        }
+        views.add(view);
+      }
+      entry.viewsById = viewsById;
+    }
+    List<NNode> views = viewsById.get(id);
+    return views == null ? Collections.<NNode>emptyList() : views;
+  }
+
+  /**
+   * Drops the entries of the given roots, whose hierarchy changed.
+   */
+  public void invalidate(Collection<NNode> roots) {
+    for (NNode root : roots) {
+      entries.remove(root);
+    }
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+}
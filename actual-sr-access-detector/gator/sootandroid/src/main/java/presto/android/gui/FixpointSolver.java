@@ -10,6 +10,7 @@ package presto.android.gui;
 
 import com.google.common.base.Function;
 import com.google.common.collect.*;
+import com.google.common.util.concurrent.Futures;
 import presto.android.*;
 import presto.android.Hierarchy;
 import presto.android.gui.graph.*;
@@ -36,6 +37,9 @@ import soot.toolkits.scalar.SimpleLiveLocals;
 import soot.toolkits.scalar.SmartLocalDefs;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static java.util.Arrays.asList;
 
@@ -99,18 +103,38 @@ public class FixpointSolver {
   // hailong: string append
   public Multimap<NStringBuilderAppendOpNode, NNode> strbldReachingStrings = LinkedListMultimap.create();
 
+  // Op nodes of the flowgraph, see allOpNodes()
+  private List<NOpNode> allOpNodes;
+
+  // The kinds of op nodes of viewAndListenerPropagation(), in the order they
+  // are looked at in a round
+  @SuppressWarnings("unchecked")
+  private static final List<Class<? extends NOpNode>> propagationKinds =
+          ImmutableList.<Class<? extends NOpNode>>of(
+                  NFindView1OpNode.class, NFindView2OpNode.class, NFindView3OpNode.class,
+                  NAddView1OpNode.class, NAddView2OpNode.class, NSetIdOpNode.class,
+                  NSetTextOpNode.class, NFindPreferenceOpNode.class,
+                  NSetImageResourceOpNode.class, NSetListenerOpNode.class);
+
+  // Op nodes to look at again in viewAndListenerPropagation(), because their
+  // receiver, parameter or listener solution grew, or the view hierarchy they
+  // walk changed
+  Set<NOpNode> dirtyOpNodes;
+  // FindView1/2/3 nodes by the receivers and windows whose hierarchy they walk
+  Map<NNode, Set<NOpNode>> hierarchyReaders;
+  // Views with a new id, whose readers are not marked dirty yet; new
+  // children are tracked by the NodeArena
+  Set<NNode> changedHierarchy;
+  // Hierarchies walked by FindView nodes, dropped with their readers by
+  // markHierarchyReaders()
+  DescendantIndex descendantIndex;
+  // NodeArena.modificationCount() when the paths were last computed
+  long pathsModificationCount;
+
   // Measurement of node and edges
   public int nodeCount = 0;
   public long edgeCount = 0;
 
-  private long totalEdges() {
-    long ret = 0;
-    for (NNode n : flowgraph.allNNodes) {
-      ret += n.getNumberOfSuccessors();
-    }
-    return ret;
-  }
-
   public FixpointSolver(Flowgraph g) {
     this.flowgraph = g;
     this.graphUtil = GraphUtil.v();
@@ -124,6 +148,9 @@ public class FixpointSolver {
     preSolveInit();
 
     solveCore();
+
+    // merge the edges added by the solver
+    flowgraph.freeze();
   }
 
   // TODO: move this to field decl section. There is no point doing it here
@@ -159,6 +186,16 @@ public class FixpointSolver {
     activityRoots = Maps.newHashMap();
 
     viewProducers = Maps.newHashMap();
+
+    dirtyOpNodes = Sets.newHashSet();
+    hierarchyReaders = Maps.newHashMap();
+    changedHierarchy = Sets.newHashSet();
+    descendantIndex = new DescendantIndex(new Function<NNode, NNode>() {
+      @Override
+      public NNode apply(NNode view) {
+        return extractIdNode(view);
+      }
+    });
   }
 
   void computePathsFromViewProducerToViewConsumer() {
@@ -178,6 +215,7 @@ public class FixpointSolver {
 
   public void solveCore() {
     // compute
+    allOpNodes = null;
     layoutIdReachability();
     menuIdReachability();
     preferenceKeyReachability();
@@ -194,8 +232,13 @@ public class FixpointSolver {
       Logger.trace(TAG, "end string append analysis...");
     }
 
+    allOpNodes = null;
+
     nodeCount = flowgraph.allNNodes.size();
-    edgeCount = totalEdges();
+    edgeCount = NodeArena.v().edgeCount();
+    // Edges added from here on are looked at by viewAndListenerPropagation()
+    NodeArena.v().takeChangedSources();
+    pathsModificationCount = NodeArena.v().modificationCount();
     computePathsFromViewProducerToViewConsumer();
 
     // process inflater calls
@@ -397,7 +440,9 @@ public class FixpointSolver {
             value = Sets.newHashSet();
             solutionParameters.put(key, value);
           }
-          value.add(n);
+          if (value.add(n)) {
+            dirtyOpNodes.add(key);
+          }
         } else {
           if (Configs.sanityCheck) {
             throw new RuntimeException(
@@ -428,13 +473,17 @@ public class FixpointSolver {
             value = Sets.newHashSet();
             solutionReceivers.put(key, value);
           }
-          value.add(n);
+          if (value.add(n)) {
+            dirtyOpNodes.add(key);
+          }
         } else if (n instanceof NInflNode) {
           if (value == null) {
             value = Sets.newHashSet();
             solutionReceivers.put(key, value);
           }
-          value.add(n);
+          if (value.add(n)) {
+            dirtyOpNodes.add(key);
+          }
         } else {
           if (Configs.sanityCheck) {
             throw new RuntimeException(
@@ -492,7 +541,14 @@ public class FixpointSolver {
 
             continue;
           }
-          MultiMapUtil.addKeyAndHashSetElement(solutionListeners, setListener, n);
+          Set<NNode> listeners = solutionListeners.get(setListener);
+          if (listeners == null) {
+            listeners = Sets.newHashSet();
+            solutionListeners.put(setListener, listeners);
+          }
+          if (listeners.add(n)) {
+            dirtyOpNodes.add(setListener);
+          }
         } else {
           if (Configs.sanityCheck) {
             throw new RuntimeException(
@@ -535,6 +591,24 @@ public class FixpointSolver {
     reverseReachbility(reachingListeners, reachedListeners);
   }
 
+  /**
+   * The op nodes, the targets of the id and window reachability passes below.
+   * Each of these passes finds the op nodes reached from all its sources in
+   * one sweep of GraphUtil.reachingSources(), instead of one reachableNodes()
+   * per source.
+   */
+  List<NOpNode> allOpNodes() {
+    if (allOpNodes == null) {
+      allOpNodes = Lists.newArrayList();
+      for (NNode n : flowgraph.allNNodes) {
+        if (n instanceof NOpNode) {
+          allOpNodes.add((NOpNode) n);
+        }
+      }
+    }
+    return allOpNodes;
+  }
+
   /**
    * Look at all layout IDs and see what operation nodes use them. Both
    * application and framework layout IDs are looked at. However, operation
@@ -542,12 +616,15 @@ public class FixpointSolver {
    * map reachingLayoutIds.
    */
   void layoutIdReachability() {
-    for (NLayoutIdNode layoutIdNode : flowgraph.allNLayoutIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(layoutIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
+    List<NLayoutIdNode> layoutIdNodes = Lists.newArrayList(flowgraph.allNLayoutIdNodes.values());
+    BitSet[] reaching = graphUtil.reachingSources(layoutIdNodes, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        NLayoutIdNode layoutIdNode = layoutIdNodes.get(i);
         // NOTE: setId() could use layout id as parameter as well.
         if (opNode.consumesLayoutId()) {
           Set<NLayoutIdNode> layouts = reachingLayoutIds.get(opNode);
@@ -573,12 +650,15 @@ public class FixpointSolver {
    * Look at all menu IDs and see what operation nodes use them.
    */
   void menuIdReachability() {
-    for (NMenuIdNode menuIdNode : flowgraph.allNMenuIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(menuIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
+    List<NMenuIdNode> menuIdNodes = Lists.newArrayList(flowgraph.allNMenuIdNodes.values());
+    BitSet[] reaching = graphUtil.reachingSources(menuIdNodes, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        NMenuIdNode menuIdNode = menuIdNodes.get(i);
         if (opNode.consumesMenuId()) {
           Set<NMenuIdNode> menus = reachingMenuIds.get(opNode);
           if (menus == null) {
@@ -600,19 +680,21 @@ public class FixpointSolver {
   }
 
   void preferenceKeyReachability() {
-    for (NPreferenceKeyNode preferenceKeyNode : flowgraph.allPreferenceKeyNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(preferenceKeyNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
-
-        Set<NPreferenceKeyNode> layouts = reachingPreferenceKeys.get(opNode);
-        if (layouts == null) {
-          layouts = Sets.newHashSet();
-          reachingPreferenceKeys.put(opNode, layouts);
-        }
-        layouts.add(preferenceKeyNode);
+    List<NPreferenceKeyNode> preferenceKeyNodes =
+            Lists.newArrayList(flowgraph.allPreferenceKeyNodes.values());
+    BitSet[] reaching = graphUtil.reachingSources(preferenceKeyNodes, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      Set<NPreferenceKeyNode> layouts = reachingPreferenceKeys.get(opNode);
+      if (layouts == null) {
+        layouts = Sets.newHashSet();
+        reachingPreferenceKeys.put(opNode, layouts);
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        layouts.add(preferenceKeyNodes.get(i));
       }
     }
   }
@@ -621,35 +703,50 @@ public class FixpointSolver {
    * Look at all string constants and ids and see if they are used by StringBuilder.append(String).
    */
   void stringConstAndIdReachability() {
-    stringConstAndIdReachability(flowgraph.allNStringIdNodes.values());
-    stringConstAndIdReachability(flowgraph.allNStringConstantNodes.values());
-  }
-
-  private <T extends NNode> void stringConstAndIdReachability(Collection<T> strNodes) {
-    for (T strNode : strNodes) {
-      for (NNode target : graphUtil.reachableNodes(strNode)) {
-        if (target instanceof NStringBuilderAppendOpNode) {
-          strbldReachingStrings.put((NStringBuilderAppendOpNode) target, strNode);
-        }
+    List<NNode> strNodes = Lists.newArrayList();
+    strNodes.addAll(flowgraph.allNStringIdNodes.values());
+    strNodes.addAll(flowgraph.allNStringConstantNodes.values());
+    BitSet[] reaching = graphUtil.reachingSources(strNodes, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null || !(opNode instanceof NStringBuilderAppendOpNode)) {
+        continue;
+      }
+      // In the order of strNodes, as if looked at one by one
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        strbldReachingStrings.put((NStringBuilderAppendOpNode) opNode, strNodes.get(i));
       }
     }
   }
 
   void windowReachability() {
-    for (NWindowNode windowNode : NWindowNode.windowNodes) {
-      Set<NNode> reachables = graphUtil.reachableNodes(windowNode);
-      for (NNode target : reachables) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
+    List<NWindowNode> windowNodes = Lists.newArrayList(NWindowNode.windowNodes);
+    // The receivers and parameters checked below must be filled in too
+    List<NNode> targets = Lists.<NNode>newArrayList(allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      if (opNode instanceof NInflate2OpNode
+              || opNode instanceof NAddView1OpNode
+              || opNode instanceof NFindView2OpNode) {
+        targets.add(opNode.getReceiver());
+      } else if (opNode instanceof NSetListenerOpNode) {
+        targets.add(opNode.getParameter());
+      }
+    }
+    BitSet[] reaching = graphUtil.reachingSources(windowNodes, targets);
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        NWindowNode windowNode = windowNodes.get(i);
         if ((opNode instanceof NInflate2OpNode
                 || opNode instanceof NAddView1OpNode
                 || opNode instanceof NFindView2OpNode)
-                && reachables.contains(opNode.getReceiver())) {
+                && reaches(reaching, i, opNode.getReceiver())) {
           MultiMapUtil.addKeyAndHashSetElement(reachingWindows, opNode, windowNode);
         } else if (opNode instanceof NSetListenerOpNode
-                && reachables.contains(opNode.getParameter())) {
+                && reaches(reaching, i, opNode.getParameter())) {
           if (Configs.debugCodes.contains(Debug.LISTENER_DEBUG)) {
             Logger.verb(this.getClass().getSimpleName(), "[WindowAsListener] " + windowNode + " -> "
                     + opNode);
@@ -662,23 +759,32 @@ public class FixpointSolver {
     }
   }
 
+  private static boolean reaches(BitSet[] reaching, int source, NNode target) {
+    return target != null && target.id < reaching.length && reaching[target.id] != null
+            && reaching[target.id].get(source);
+  }
+
   void optionsMenuReachability() {
-    for (NOptionsMenuNode optionsMenu : flowgraph.activityClassToOptionsMenu.values()) {
-      for (NNode target : graphUtil.reachableNodes(optionsMenu)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
+    List<NOptionsMenuNode> optionsMenus =
+            Lists.newArrayList(flowgraph.activityClassToOptionsMenu.values());
+    BitSet[] reaching = graphUtil.reachingSources(optionsMenus, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        NOptionsMenuNode optionsMenu = optionsMenus.get(i);
         if (opNode instanceof NFindView1OpNode
                 || opNode instanceof NFindView3OpNode
                 || opNode instanceof NAddView2OpNode
                 || opNode instanceof NMenuInflateOpNode) {
-          Set<NOptionsMenuNode> optionsMenus = reachingOptionsMenus.get(opNode);
-          if (optionsMenus == null) {
-            optionsMenus = Sets.newHashSet();
-            reachingOptionsMenus.put(opNode, optionsMenus);
+          Set<NOptionsMenuNode> reached = reachingOptionsMenus.get(opNode);
+          if (reached == null) {
+            reached = Sets.newHashSet();
+            reachingOptionsMenus.put(opNode, reached);
           }
-          optionsMenus.add(optionsMenu);
+          reached.add(optionsMenu);
         } else {
           //throw new RuntimeException("OptionsMenu Reached " + opNode.toString());
           String fullClassName = Thread.currentThread().getStackTrace()[2].getClassName();
@@ -693,11 +799,24 @@ public class FixpointSolver {
   }
 
   void contextMenuReachability() {
-    for (NContextMenuNode contextMenu : flowgraph.menuVarNodeToContextMenus.values()) {
-      contextMenuReachability(contextMenu);
+    List<NContextMenuNode> contextMenus =
+            Lists.newArrayList(flowgraph.menuVarNodeToContextMenus.values());
+    BitSet[] reaching = graphUtil.reachingSources(contextMenus, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        addReachingContextMenu(opNode, contextMenus.get(i));
+      }
     }
   }
 
+  /**
+   * Single-source version of contextMenuReachability(), for context menus
+   * created later in the solving. Returns the op nodes reached.
+   */
   Set<NOpNode> contextMenuReachability(NContextMenuNode contextMenu) {
     Set<NOpNode> opNodes = Sets.newHashSet();
     for (NNode target : graphUtil.reachableNodes(contextMenu)) {
@@ -705,31 +824,38 @@ public class FixpointSolver {
         continue;
       }
       NOpNode opNode = (NOpNode) target;
-      if (opNode instanceof NFindView1OpNode
-              || opNode instanceof NFindView3OpNode
-              || opNode instanceof NAddView2OpNode
-              || opNode instanceof NMenuInflateOpNode) {
-        Set<NContextMenuNode> contextMenus = reachingContextMenus.get(opNode);
-        if (contextMenus == null) {
-          contextMenus = Sets.newHashSet();
-          reachingContextMenus.put(opNode, contextMenus);
-        }
-        contextMenus.add(contextMenu);
-        opNodes.add(opNode);
-      } else {
-        throw new RuntimeException("ContextMenu reaches " + opNode);
-      }
+      addReachingContextMenu(opNode, contextMenu);
+      opNodes.add(opNode);
     }
     return opNodes;
   }
 
+  private void addReachingContextMenu(NOpNode opNode, NContextMenuNode contextMenu) {
+    if (opNode instanceof NFindView1OpNode
+            || opNode instanceof NFindView3OpNode
+            || opNode instanceof NAddView2OpNode
+            || opNode instanceof NMenuInflateOpNode) {
+      Set<NContextMenuNode> contextMenus = reachingContextMenus.get(opNode);
+      if (contextMenus == null) {
+        contextMenus = Sets.newHashSet();
+        reachingContextMenus.put(opNode, contextMenus);
+      }
+      contextMenus.add(contextMenu);
+    } else {
+      throw new RuntimeException("ContextMenu reaches " + opNode);
+    }
+  }
+
   void viewIdReachability() {
-    for (NWidgetIdNode viewIdNode : flowgraph.allNWidgetIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(viewIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
+    List<NWidgetIdNode> viewIdNodes = Lists.newArrayList(flowgraph.allNWidgetIdNodes.values());
+    BitSet[] reaching = graphUtil.reachingSources(viewIdNodes, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        NWidgetIdNode viewIdNode = viewIdNodes.get(i);
         if (opNode instanceof NFindView1OpNode
                 || opNode instanceof NFindView2OpNode
                 || opNode instanceof NSetIdOpNode) {
@@ -758,12 +884,15 @@ public class FixpointSolver {
         }
       }
     }
-    for (NAnonymousIdNode anonymousIdNode : flowgraph.anonymousIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(anonymousIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
+    List<NAnonymousIdNode> anonymousIdNodes = Lists.newArrayList(flowgraph.anonymousIdNodes.values());
+    reaching = graphUtil.reachingSources(anonymousIdNodes, allOpNodes());
+    for (NOpNode opNode : allOpNodes()) {
+      BitSet sources = reaching[opNode.id];
+      if (sources == null) {
+        continue;
+      }
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        NAnonymousIdNode anonymousIdNode = anonymousIdNodes.get(i);
         if (opNode instanceof NFindView1OpNode) {
           MultiMapUtil.addKeyAndHashSetElement(reachingViewIds, opNode, anonymousIdNode);
         } else {
@@ -782,23 +911,7 @@ public class FixpointSolver {
   void viewAndListenerAsParameterAndReceiverReachability() {
     // Find all nodes that can "produce" view objects
     for (NNode n : flowgraph.allNNodes) {
-      if (n instanceof NViewAllocNode || n instanceof NInflNode
-              || n instanceof NOptionsMenuNode || n instanceof NContextMenuNode) {
-        parameterAndReceiverViewReachability(n);
-      } else if (n instanceof NOpNode) {
-        NOpNode opNode = (NOpNode) n;
-        if (opNode instanceof NFindView1OpNode
-                || opNode instanceof NFindPreferenceOpNode
-                || opNode instanceof NFindView2OpNode
-                || opNode instanceof NFindView3OpNode
-                || opNode instanceof NInflate1OpNode) {
-          parameterAndReceiverViewReachability(n);
-        }
-      }
-      // Any object could be a listener
-      if (n instanceof NObjectNode && listenerSpecs.isListenerType(((NObjectNode) n).getClassType())) {
-        listenerReachability(n);
-      }
+      viewAndListenerReachability(n);
     }
     // patch in some special cases
     // OptionsMenu as receiver
@@ -807,6 +920,78 @@ public class FixpointSolver {
     propagateContextMenuToReceivers();
   }
 
+  void viewAndListenerReachability(NNode n) {
+    if (n instanceof NViewAllocNode || n instanceof NInflNode
+            || n instanceof NOptionsMenuNode || n instanceof NContextMenuNode) {
+      parameterAndReceiverViewReachability(n);
+    } else if (n instanceof NOpNode) {
+      NOpNode opNode = (NOpNode) n;
+      if (opNode instanceof NFindView1OpNode
+              || opNode instanceof NFindPreferenceOpNode
+              || opNode instanceof NFindView2OpNode
+              || opNode instanceof NFindView3OpNode
+              || opNode instanceof NInflate1OpNode) {
+        parameterAndReceiverViewReachability(n);
+      }
+    }
+    // Any object could be a listener
+    if (n instanceof NObjectNode && listenerSpecs.isListenerType(((NObjectNode) n).getClassType())) {
+      listenerReachability(n);
+    }
+  }
+
+  /**
+   * computePathsFromViewProducerToViewConsumer() for the paths that new flow
+   * edges out of the given nodes could have added: those from the nodes that
+   * reach them. The paths of other nodes have not changed. Op nodes that
+   * read values along the new edges are marked dirty.
+   */
+  void recomputePathsFrom(Collection<NNode> changed) {
+    Set<NNode> sources = Sets.newHashSet();
+    for (NNode n : changed) {
+      graphUtil.findBackwardReachableNodes(n, sources);
+    }
+    recomputePaths(sources);
+  }
+
+  void recomputePaths(Set<NNode> sources) {
+    // Collect the paths of these sources on their own, so the passes below
+    // only look at them, and then add them to the others
+    Map<NOpNode, Set<NNode>> allParameterViews = reachingParameterViews;
+    Map<NOpNode, Set<NNode>> allReceiverViews = reachingReceiverViews;
+    Map<NOpNode, Set<NNode>> allListeners = reachingListeners;
+    reachingParameterViews = Maps.newHashMap();
+    reachingReceiverViews = Maps.newHashMap();
+    reachingListeners = Maps.newHashMap();
+    for (NNode n : sources) {
+      viewAndListenerReachability(n);
+      // SetText and SetImageResource look backward from their parameter
+      for (NNode target : graphUtil.reachableNodes(n)) {
+        if (target instanceof NSetTextOpNode || target instanceof NSetImageResourceOpNode) {
+          dirtyOpNodes.add((NOpNode) target);
+        }
+      }
+    }
+    reverseParameterReachability();
+    reverseReceiverReachability();
+    reverseListenerReachability();
+    solutionParameterReachability();
+    solutionReceiverReachability();
+    solutionListenersReachability();
+    for (Map.Entry<NOpNode, Set<NNode>> entry : reachingParameterViews.entrySet()) {
+      MultiMapUtil.addKeyAndHashSet(allParameterViews, entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<NOpNode, Set<NNode>> entry : reachingReceiverViews.entrySet()) {
+      MultiMapUtil.addKeyAndHashSet(allReceiverViews, entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<NOpNode, Set<NNode>> entry : reachingListeners.entrySet()) {
+      MultiMapUtil.addKeyAndHashSet(allListeners, entry.getKey(), entry.getValue());
+    }
+    reachingParameterViews = allParameterViews;
+    reachingReceiverViews = allReceiverViews;
+    reachingListeners = allListeners;
+  }
+
   void propagateOptionsMenuToReceivers() {
     for (Map.Entry<NOpNode, Set<NOptionsMenuNode>> entry : reachingOptionsMenus.entrySet()) {
       NOpNode key = entry.getKey();
@@ -1452,69 +1637,102 @@ public class FixpointSolver {
   }
 
   // Now, we are done with inflation. Let's process other NOpNodes
+  /**
+   * Semi-naive fixed point over the op nodes of propagationKinds. A round
+   * looks at the kinds in order, as the rounds of a full sweep would, but
+   * only at the dirty op nodes; the others would not change. At the end of a
+   * round, the paths from the view producers are recomputed for the sources
+   * that reach new flow edges.
+   */
   void viewAndListenerPropagation() {
-    while (true) {
-      boolean changed = false;
-      for (NOpNode findView1 : NOpNode.getNodes(NFindView1OpNode.class)) {
-        if (processFindView1((NFindView1OpNode) findView1)) {
-          changed = true;
-        }
-      }
-      for (NOpNode findView2 : NOpNode.getNodes(NFindView2OpNode.class)) {
-        if (processFindView2((NFindView2OpNode) findView2)) {
-          changed = true;
-        }
-      }
-      for (NOpNode findView3 : NOpNode.getNodes(NFindView3OpNode.class)) {
-        if (processFindView3((NFindView3OpNode) findView3)) {
-          changed = true;
-        }
-      }
-      for (NOpNode addView1 : NOpNode.getNodes(NAddView1OpNode.class)) {
-        if (processAddView1((NAddView1OpNode) addView1)) {
-          changed = true;
-        }
-      }
-      for (NOpNode addView2 : NOpNode.getNodes(NAddView2OpNode.class)) {
-        if (processAddView2((NAddView2OpNode) addView2)) {
-          changed = true;
-        }
-      }
-      for (NOpNode setId : NOpNode.getNodes(NSetIdOpNode.class)) {
-        if (processSetId((NSetIdOpNode) setId)) {
-          changed = true;
-        }
-      }
-      for (NOpNode setText : NOpNode.getNodes(NSetTextOpNode.class)) {
-        if (processSetText((NSetTextOpNode) setText)) {
-          changed = true;
-        }
+    for (Class<? extends NOpNode> kind : propagationKinds) {
+      dirtyOpNodes.addAll(NOpNode.getNodes(kind));
+    }
+    NodeArena.v().takeChangedParents();
+    descendantIndex.clear();
+    ForkJoinPool pool = Configs.solverWorkers > 1 ? new ForkJoinPool(Configs.solverWorkers) : null;
+    try {
+      viewAndListenerPropagation(pool);
+    } finally {
+      if (pool != null) {
+        pool.shutdownNow();
       }
-      for (NOpNode findPreference : NOpNode.getNodes(NFindPreferenceOpNode.class)) {
-        if (processFindPreference((NFindPreferenceOpNode) findPreference)) {
-          changed = true;
+    }
+    if (Configs.sanityCheck && !Configs.fastMode) {
+      checkFixedPoint();
+    }
+  }
+
+  /**
+   * Recomputes the paths from all nodes and runs every op node of
+   * propagationKinds once more, as a full sweep of the original fixed point
+   * would. Nothing may grow if the dirty op nodes were tracked right.
+   */
+  void checkFixedPoint() {
+    long size = solutionSize();
+    long modificationCount = NodeArena.v().modificationCount();
+    recomputePaths(Sets.newHashSet(flowgraph.allNNodes));
+    markHierarchyReaders();
+    for (Class<? extends NOpNode> kind : propagationKinds) {
+      for (NOpNode opNode : NOpNode.getNodes(kind)) {
+        if (processOpNode(opNode)) {
+          throw new RuntimeException("Not a fixed point, " + opNode + " changed");
         }
       }
-      for (NOpNode setImageResource : NOpNode.getNodes(NSetImageResourceOpNode.class)) {
-        if (processSetImageResource((NSetImageResourceOpNode) setImageResource)) {
-          changed = true;
-        }
+    }
+    if (solutionSize() != size || NodeArena.v().modificationCount() != modificationCount) {
+      throw new RuntimeException("Not a fixed point, the solution grew from " + size
+              + " to " + solutionSize());
+    }
+    dirtyOpNodes.clear();
+    Logger.verb(TAG, "[SanityCheck] fixed point of " + size + " solution entries");
+  }
+
+  long solutionSize() {
+    long size = 0;
+    for (Map<? extends NNode, ? extends Set<? extends NNode>> map : Arrays.asList(
+            reachingParameterViews, reachingReceiverViews, reachingListeners,
+            solutionParameters, solutionReceivers, solutionResults, solutionListeners,
+            activityRoots, dialogRoots, viewProducers)) {
+      for (Set<? extends NNode> values : map.values()) {
+        size += values.size();
       }
-      // SetListener: need to recompute path summary if anything changes
-      for (NOpNode setListener : NOpNode.getNodes(NSetListenerOpNode.class)) {
-        if (processSetListener((NSetListenerOpNode) setListener)) {
-          changed = true;
+    }
+    return size;
+  }
+
+  void viewAndListenerPropagation(ForkJoinPool pool) {
+    while (true) {
+      boolean changed = false;
+      for (Class<? extends NOpNode> kind : propagationKinds) {
+        markHierarchyReaders();
+        Map<NOpNode, Set<NNode>> evaluated = evaluateInParallel(pool, kind);
+        for (NOpNode opNode : NOpNode.getNodes(kind)) {
+          // Also those marked earlier in this round, evaluated in parallel or
+          // not
+          if (dirtyOpNodes.remove(opNode)) {
+            if (processOpNode(opNode)) {
+              changed = true;
+            }
+          } else if (evaluated.containsKey(opNode)) {
+            if (addResults(opNode, evaluated.get(opNode))) {
+              changed = true;
+            }
+          }
         }
       }
       if (changed) {
-        // recompute the paths
-        // computePathsFromViewProducerToViewConsumer();
-        long currentEdgeCount = totalEdges();
-        int currentNodeCount = flowgraph.allNNodes.size();
-        if (!(currentEdgeCount == edgeCount && currentNodeCount == nodeCount))
-          computePathsFromViewProducerToViewConsumer();
-        nodeCount = currentNodeCount;
-        edgeCount = currentEdgeCount;
+        // recompute the paths, for the edges added since they were computed
+        long modificationCount = NodeArena.v().modificationCount();
+        if (modificationCount != pathsModificationCount) {
+          pathsModificationCount = modificationCount;
+          List<NNode> changedSources = NodeArena.v().takeChangedSources();
+          if (!changedSources.isEmpty()) {
+            recomputePathsFrom(changedSources);
+          }
+        }
+        nodeCount = flowgraph.allNNodes.size();
+        edgeCount = NodeArena.v().edgeCount();
         if (Configs.fastMode) {
           Logger.verb("FASTMODE", "FixedPointSolver, stop at 1 iteration");
           break;
@@ -1527,14 +1745,141 @@ public class FixpointSolver {
     }
   }
 
+  /**
+   * With a pool, finds the results of the dirty FindView nodes of the kind
+   * concurrently, from the state at the start of the kind. All of them are
+   * done before this returns, since adding results changes the solution sets
+   * they read; they are added in the order of the kind by
+   * viewAndListenerPropagation(). A node marked dirty again by an earlier one
+   * is evaluated once more at its turn, so the solution is the same as
+   * without a pool.
+   */
+  Map<NOpNode, Set<NNode>> evaluateInParallel(ForkJoinPool pool,
+                                              Class<? extends NOpNode> kind) {
+    Map<NOpNode, Set<NNode>> evaluated = Maps.newHashMap();
+    if (pool == null || !(kind == NFindView1OpNode.class || kind == NFindView2OpNode.class
+            || kind == NFindView3OpNode.class)) {
+      return evaluated;
+    }
+    Map<NOpNode, Future<Set<NNode>>> tasks = Maps.newHashMap();
+    for (final NOpNode opNode : NOpNode.getNodes(kind)) {
+      if (!dirtyOpNodes.remove(opNode)) {
+        continue;
+      }
+      Callable<Set<NNode>> results;
+      if (opNode instanceof NFindView1OpNode) {
+        addHierarchyReader(opNode, solutionReceivers.get(opNode));
+        results = new Callable<Set<NNode>>() {
+          @Override
+          public Set<NNode> call() {
+            return findView1Results((NFindView1OpNode) opNode);
+          }
+        };
+      } else if (opNode instanceof NFindView2OpNode) {
+        addHierarchyReader(opNode, reachingWindows.get(opNode));
+        results = new Callable<Set<NNode>>() {
+          @Override
+          public Set<NNode> call() {
+            return findView2Results((NFindView2OpNode) opNode);
+          }
+        };
+      } else {
+        addHierarchyReader(opNode, solutionReceivers.get(opNode));
+        results = new Callable<Set<NNode>>() {
+          @Override
+          public Set<NNode> call() {
+            return findView3Results((NFindView3OpNode) opNode);
+          }
+        };
+      }
+      tasks.put(opNode, pool.submit(results));
+    }
+    for (Map.Entry<NOpNode, Future<Set<NNode>>> task : tasks.entrySet()) {
+      evaluated.put(task.getKey(), Futures.getUnchecked(task.getValue()));
+    }
+    return evaluated;
+  }
+
+  boolean processOpNode(NOpNode opNode) {
+    if (opNode instanceof NFindView1OpNode) {
+      addHierarchyReader(opNode, solutionReceivers.get(opNode));
+      return processFindView1((NFindView1OpNode) opNode);
+    } else if (opNode instanceof NFindView2OpNode) {
+      addHierarchyReader(opNode, reachingWindows.get(opNode));
+      return processFindView2((NFindView2OpNode) opNode);
+    } else if (opNode instanceof NFindView3OpNode) {
+      addHierarchyReader(opNode, solutionReceivers.get(opNode));
+      return processFindView3((NFindView3OpNode) opNode);
+    } else if (opNode instanceof NAddView1OpNode) {
+      return processAddView1((NAddView1OpNode) opNode);
+    } else if (opNode instanceof NAddView2OpNode) {
+      return processAddView2((NAddView2OpNode) opNode);
+    } else if (opNode instanceof NSetIdOpNode) {
+      return processSetId((NSetIdOpNode) opNode);
+    } else if (opNode instanceof NSetTextOpNode) {
+      return processSetText((NSetTextOpNode) opNode);
+    } else if (opNode instanceof NFindPreferenceOpNode) {
+      return processFindPreference((NFindPreferenceOpNode) opNode);
+    } else if (opNode instanceof NSetImageResourceOpNode) {
+      return processSetImageResource((NSetImageResourceOpNode) opNode);
+    } else if (opNode instanceof NSetListenerOpNode) {
+      // SetListener: need to recompute path summary if anything changes
+      return processSetListener((NSetListenerOpNode) opNode);
+    }
+    throw new RuntimeException("Unexpected " + opNode);
+  }
+
+  void addHierarchyReader(NOpNode opNode, Set<? extends NNode> roots) {
+    if (roots == null) {
+      return;
+    }
+    for (NNode root : roots) {
+      MultiMapUtil.addKeyAndHashSetElement(hierarchyReaders, root, opNode);
+    }
+  }
+
+  /**
+   * The id of view changed. The FindView nodes that walk a hierarchy
+   * containing it are marked by the next markHierarchyReaders(), as are those
+   * of views that got a child.
+   */
+  void hierarchyChanged(NNode view) {
+    changedHierarchy.add(view);
+  }
+
+  void markHierarchyReaders() {
+    changedHierarchy.addAll(NodeArena.v().takeChangedParents());
+    if (changedHierarchy.isEmpty()) {
+      return;
+    }
+    Set<NNode> ancestors = Sets.newHashSet();
+    graphUtil.findAncestorNodes(changedHierarchy, ancestors);
+    changedHierarchy.clear();
+    descendantIndex.invalidate(ancestors);
+    for (NNode ancestor : ancestors) {
+      Set<NOpNode> readers = hierarchyReaders.get(ancestor);
+      if (readers != null) {
+        dirtyOpNodes.addAll(readers);
+      }
+    }
+  }
+
   // FindView1: lhs = receiver.findViewById(id)
   boolean processFindView1(NFindView1OpNode node) {
+    return addResults(node, findView1Results(node));
+  }
+
+  /**
+   * The views that FindView1 node finds, or null if it cannot find any yet.
+   * Only reads the solver state, see evaluateInParallel().
+   */
+  Set<NNode> findView1Results(NFindView1OpNode node) {
     Set<NIdNode> viewIds = reachingViewIds.get(node);
     if (viewIds == null || viewIds.isEmpty()) {
       // FIXME: dirty hack...
       if (node.type == FindView1Type.Ordinary) {
         Logger.trace(TAG, "View id unknown at " + node);
-        return false;
+        return null;
       }
     }
     Set<NNode> receivers = solutionReceivers.get(node);
@@ -1545,44 +1890,61 @@ public class FixpointSolver {
       //      for (NNode rcv : reachingReceiverViews.get(node)) {
       //        Logger.verb(this.getClass().getSimpleName(), "  possible: " + rcv);
       //      }
-      return false;
+      return null;
     }
     if (Configs.debugCodes.contains(Debug.WORKLIST_DEBUG)) {
       Logger.verb(this.getClass().getSimpleName(), "--- solving " + node);
     }
-    Set<NNode> solution = solutionResults.get(node);
-    int oldSize = solution.size();
+    Set<NNode> results = Sets.newLinkedHashSet();
     for (NNode receiver : receivers) {
       if (Configs.debugCodes.contains(Debug.WORKLIST_DEBUG)) {
         Logger.verb(this.getClass().getSimpleName(), "  [FV1] rcv: " + receiver);
       }
-      // Compute descendantNodes() to walk the view hierarchy
-      Set<NNode> descendants = graphUtil.descendantNodes(receiver);
+      // Look up the views with these ids in the hierarchy under receiver
       boolean found = false;
       if (viewIds != null && !viewIds.isEmpty()) {
-        for (NNode lhs : descendants) {
-          if (Configs.debugCodes.contains(Debug.WORKLIST_DEBUG)) {
+        if (Configs.debugCodes.contains(Debug.WORKLIST_DEBUG)) {
+          for (NNode lhs : descendantIndex.descendants(receiver)) {
             Logger.verb(this.getClass().getSimpleName(), "  * lhs: " + lhs);
           }
-          NNode idNode = extractIdNode(lhs);
-          if (viewIds.contains(idNode)) {
+        }
+        for (NIdNode viewId : viewIds) {
+          List<NNode> views = descendantIndex.viewsWithId(receiver, viewId);
+          if (!views.isEmpty()) {
             found = true;
-            solution.add(lhs);
-            recordViewProducers(lhs, node);
+            results.addAll(views);
           }
         }
       }
       // For Menu.findItem, return all descendants when exact match cannot be
       // found.
       if (!found && node.type == FindView1Type.MenuFindItem) {
-        descendants.remove(receiver);
-        for (NNode lhs : descendants) {
-          solution.add(lhs);
-          recordViewProducers(lhs, node);
+        for (NNode lhs : descendantIndex.descendants(receiver)) {
+          if (lhs.equals(receiver)) {
+            continue;
+          }
+          results.add(lhs);
 //          Logger.verb(this.getClass().getSimpleName(), "  * lhs-item: " + lhs);
         }
       }
     }
+    return results;
+  }
+
+  /**
+   * Adds the views found by a FindView node to its solution, and propagates
+   * the solution if it grew.
+   */
+  boolean addResults(NOpNode node, Set<NNode> results) {
+    if (results == null) {
+      return false;
+    }
+    Set<NNode> solution = solutionResults.get(node);
+    int oldSize = solution.size();
+    for (NNode lhs : results) {
+      solution.add(lhs);
+      recordViewProducers(lhs, node);
+    }
     if (oldSize == solution.size()) {
       return false;
     }
@@ -1630,22 +1992,25 @@ public class FixpointSolver {
 
   // FindView2: lhs = act/dialog.findViewById(id)
   boolean processFindView2(NFindView2OpNode node) {
+    return addResults(node, findView2Results(node));
+  }
+
+  Set<NNode> findView2Results(NFindView2OpNode node) {
     Set<NIdNode> viewIds = reachingViewIds.get(node);
     if (viewIds == null || viewIds.isEmpty()) {
 
       Logger.trace(this.getClass().getSimpleName(), "[WARNING] View id unknown at " + node);
 
-      return false;
+      return null;
     }
     Set<NWindowNode> windows = reachingWindows.get(node);
     if (windows == null || windows.isEmpty()) {
 
       Logger.trace(this.getClass().getSimpleName(), "[WARNING] Window unknown at " + node);
 
-      return false;
+      return null;
     }
-    Set<NNode> solution = solutionResults.get(node);
-    int oldSize = solution.size();
+    Set<NNode> results = Sets.newLinkedHashSet();
     for (NWindowNode window : windows) {
       for (NIdNode id : viewIds) {
         if (id.getIdValue().equals(xmlParser.getSystemRIdValue("content"))) {
@@ -1659,54 +2024,42 @@ public class FixpointSolver {
           NActivityNode activity = (NActivityNode) window;
           Set<NNode> roots = activityRoots.get(activity);
           if (roots != null && !roots.isEmpty()) {
-            solution.addAll(roots);
-            for (NNode r : roots) {
-              recordViewProducers(r, node);
-            }
+            results.addAll(roots);
           }
         }
       }
       for (NNode root : window.getChildren()) {
-        for (NNode lhs : graphUtil.descendantNodes(root)) {
-          NNode idNode = extractIdNode(lhs);
-          if (viewIds.contains(idNode)) {
-            solution.add(lhs);
-            recordViewProducers(lhs, node);
-          }
+        for (NIdNode viewId : viewIds) {
+          results.addAll(descendantIndex.viewsWithId(root, viewId));
         }
       }
     }
-    if (oldSize == solution.size()) {
-      return false;
-    }
-    // Propagate the change to affected nodes
-    propagateToParametersAndReceivers(solution, node);
-
-    return true;
+    return results;
   }
 
   // FindView3: lhs = view.m()
   boolean processFindView3(NFindView3OpNode node) {
-    Set<NNode> solution = solutionResults.get(node);
-    int oldSize = solution.size();
+    return addResults(node, findView3Results(node));
+  }
+
+  Set<NNode> findView3Results(NFindView3OpNode node) {
     Set<NNode> receiverSet = solutionReceivers.get(node);
     if (receiverSet == null || receiverSet.isEmpty()) {
       //      Logger.verb(this.getClass().getSimpleName(), "[FV3] no rcv sol for " + node + " yet");
       //      for (NNode rcv : reachingReceiverViews.get(node)) {
       //        Logger.verb(this.getClass().getSimpleName(), "  possible: " + rcv);
       //      }
-      return false;
+      return null;
     }
+    Set<NNode> results = Sets.newLinkedHashSet();
     for (NNode receiver : receiverSet) {
       Set<NNode> descendants = null;
       FindView3Type type = node.type;
       if (type == FindView3Type.FindChildren) {
         descendants = receiver.getChildren();
-      } else if (type == FindView3Type.FindDescendantsAndSelf) {
-        descendants = graphUtil.descendantNodes(receiver);
-      } else if (type == FindView3Type.FindDescendantsNoSelf) {
-        descendants = graphUtil.descendantNodes(receiver);
-        descendants.remove(receiver);
+      } else if (type == FindView3Type.FindDescendantsAndSelf
+              || type == FindView3Type.FindDescendantsNoSelf) {
+        descendants = descendantIndex.descendants(receiver);
       } else {
         throw new RuntimeException("Unknown FindView3 type!");
       }
@@ -1715,19 +2068,16 @@ public class FixpointSolver {
         if (type == FindView3Type.FindChildren && lhs.equals(receiver)) {
           throw new RuntimeException("Unexpected " + node);
         }
+        if (type == FindView3Type.FindDescendantsNoSelf && lhs.equals(receiver)) {
+          continue;
+        }
         if (!isValidFlowByType(lhs, node, VarType.ReturnValue)) {
           continue;
         }
-        solution.add(lhs);
-        recordViewProducers(lhs, node);
+        results.add(lhs);
       }
     }
-    if (oldSize == solution.size()) {
-      return false;
-    }
-    // Propagate the change to affected nodes
-    propagateToParametersAndReceivers(solution, node);
-    return true;
+    return results;
   }
 
   // AddView1: act/dialog.setContentView(view)
@@ -1822,6 +2172,7 @@ public class FixpointSolver {
       }
       changed = true;
       setIdNode(receiver, idNode);
+      hierarchyChanged(receiver);
     }
     return changed;
   }
@@ -1933,12 +2284,18 @@ public class FixpointSolver {
           parameterSolutionSet = Sets.newHashSet();
           solutionMap.put(call, parameterSolutionSet);
         }
-        parameterSolutionSet.addAll(trueSolution);
+        if (parameterSolutionSet.addAll(trueSolution)) {
+          dirtyOpNodes.add(call);
+        }
       }
     }
   }
 
   boolean isValidFlowById(NNode solutionNode, NOpNode call) {
+    // Artificial and synthetic operation nodes have no statement to look at
+    if (call.callSite == null) {
+      return true;
+    }
     try {
       Body body = call.callSite.getO2().getActiveBody();
       UnitGraph g = new BriefUnitGraph(body);
@@ -2066,7 +2423,9 @@ public class FixpointSolver {
           receiverSolutionSet = Sets.newHashSet();
           solutionReceivers.put(call, receiverSolutionSet);
         }
-        receiverSolutionSet.addAll(trueSolution);
+        if (receiverSolutionSet.addAll(trueSolution)) {
+          dirtyOpNodes.add(call);
+        }
       }
     }
   }
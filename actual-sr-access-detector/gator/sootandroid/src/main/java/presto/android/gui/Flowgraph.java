@@ -8,14 +8,17 @@
  */
 package presto.android.gui;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
 import presto.android.*;
 import presto.android.Hierarchy;
+import presto.android.cache.FlowgraphFragments;
 import presto.android.gui.graph.*;
 import presto.android.gui.graph.NFindView1OpNode.FindView1Type;
 import presto.android.gui.graph.NFindView3OpNode.FindView3Type;
@@ -48,12 +51,16 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 // This is the constraint graph described in our paper.
 public class Flowgraph implements MethodNames {
   private final String TAG = Flowgraph.class.getSimpleName();
   static final String FAKE_NAME_PREFIX = "FakeName_";
-  private long fakeNameIndex = 0;
+  long fakeNameIndex = 0;
 
   String nextFakeName() {
     return FAKE_NAME_PREFIX + fakeNameIndex++;
@@ -61,24 +68,24 @@ public class Flowgraph implements MethodNames {
 
   public Map<SootMethod, SootMethod> fakeHandlerToRealHandler = Maps.newHashMap();
 
-  public Set<NNode> allNNodes = Sets.newHashSet();
+  public NodeSet allNNodes = new NodeSet();
   public Map<Local, NVarNode> allNVarNodes = Maps.newHashMap();
   public Map<SootField, NFieldNode> allNFieldNodes = Maps.newHashMap();
   public Map<Expr, NAllocNode> allNAllocNodes = Maps.newHashMap();
   public Map<SootClass, NActivityNode> allNActivityNodes = Maps.newHashMap();
-  public Map<Integer, NLayoutIdNode> allNLayoutIdNodes = Maps.newHashMap();
-  public Map<Integer, NMenuIdNode> allNMenuIdNodes = Maps.newHashMap();
-  public Map<Integer, NWidgetIdNode> allNWidgetIdNodes = Maps.newHashMap();
-  public Map<Integer, NStringIdNode> allNStringIdNodes = Maps.newHashMap();
+  public IntNodeMap<NLayoutIdNode> allNLayoutIdNodes = new IntNodeMap<>();
+  public IntNodeMap<NMenuIdNode> allNMenuIdNodes = new IntNodeMap<>();
+  public IntNodeMap<NWidgetIdNode> allNWidgetIdNodes = new IntNodeMap<>();
+  public IntNodeMap<NStringIdNode> allNStringIdNodes = new IntNodeMap<>();
   public Map<Stmt, NDialogNode> allNDialogNodes = Maps.newHashMap();
   // Right now, we don't distinguish string constants "allocated" at different
   // locations but contain the same value.
   public Map<String, NStringConstantNode> allNStringConstantNodes = Maps.newHashMap();
-  public Map<Integer, NIntConstantNode> allNIntegerConstantNodes = Maps.newHashMap();
+  public IntNodeMap<NIntConstantNode> allNIntegerConstantNodes = new IntNodeMap<>();
   public Map<Long, NLongConstantNode> allNLongConstantNodes = Maps.newHashMap();
 
-  public Map<Integer, NPreferenceIdNode> allNPreferenceIdNodeNodes = Maps.newHashMap();
-  public Map<Integer, NPreferenceIdNode> allNPreferenceHeaderIdNodeNodes = Maps.newHashMap();
+  public IntNodeMap<NPreferenceIdNode> allNPreferenceIdNodeNodes = new IntNodeMap<>();
+  public IntNodeMap<NPreferenceIdNode> allNPreferenceHeaderIdNodeNodes = new IntNodeMap<>();
   public Map<String, NPreferenceKeyNode> allPreferenceKeyNodes = Maps.newHashMap();
   public Map<SootClass, NServiceNode> allNServiceNodes = Maps.newHashMap();
 
@@ -97,6 +104,9 @@ public class Flowgraph implements MethodNames {
   // hailong: string builder append
   public Map<Expr, NStringBuilderNode> allStringBuilderAllocNodes = Maps.newHashMap();
 
+  // The elements of arrays and containers, by allocation
+  public Map<NAllocNode, NContentNode> allNContentNodes = Maps.newHashMap();
+
   ListenerSpecification listenerSpecs;
 
   // Utils
@@ -123,6 +133,17 @@ public class Flowgraph implements MethodNames {
     this.xmlUtil = XMLParser.Factory.getXMLParser();
   }
 
+  /**
+   * An empty flowgraph without known ids, whose nodes are added by the
+   * caller, e.g., the synthetic graphs of FlowgraphGenerator.
+   */
+  @VisibleForTesting
+  public Flowgraph(Hierarchy hier) {
+    this(hier, Sets.<Integer>newHashSet(), Sets.<Integer>newHashSet(),
+            Sets.<Integer>newHashSet(), Sets.<Integer>newHashSet(), Sets.<Integer>newHashSet(),
+            Sets.<Integer>newHashSet(), Sets.<String>newHashSet());
+  }
+
   public void buildIdNodes() {
     // Nodes for all layout ids, menu ids, widget ids, and string ids
     for (Integer i : allLayoutIds) {
@@ -235,7 +256,7 @@ public class Flowgraph implements MethodNames {
     if (view == null) return;
 
     NPreferenceNode preferenceHeaderNode = findOrCreatePreferenceNode(activityClass);
-    preferenceHeaderNode.id = prefId;
+    preferenceHeaderNode.resourceId = prefId;
     preferenceHeaderNode.ownerActivity = activityClass;
     preferenceHeaderNode.c = view.getSootClass();
 
@@ -254,7 +275,7 @@ public class Flowgraph implements MethodNames {
       AndroidView view = iterator.next();
 
       NPreferenceNode preferenceHeaderNode = findOrCreatePreferenceNode(c);
-      preferenceHeaderNode.id = resourceId;
+      preferenceHeaderNode.resourceId = resourceId;
       preferenceHeaderNode.ownerActivity = c;
       preferenceHeaderNode.c = Scene.v().getSootClass("android.view.preference-headers");
       //modelFromPreferenceToFragment(preferenceHeaderNode, view);
@@ -287,7 +308,7 @@ public class Flowgraph implements MethodNames {
             view.addChildInternal(prefView);
 
             NPreferenceNode preferenceNode = findOrCreatePreferenceNode(fragmentClass);
-            preferenceNode.id = resId;
+            preferenceNode.resourceId = resId;
             preferenceNode.ownerActivity = fragmentClass;
             preferenceNode.c = Scene.v().getSootClass("android.view.PreferenceScreen");
 
@@ -497,195 +518,399 @@ public class Flowgraph implements MethodNames {
   Stmt currentStmt;
   SootMethod currentMethod;
 
+  /**
+   * What a worker precomputes for a method of processApplicationClasses():
+   * its statements, and the application methods each virtual call in it
+   * dispatches to.
+   */
+  private static class MethodFacts {
+    final SootMethod method;
+    final Stmt[] stmts;
+    final Map<Stmt, List<SootMethod>> dispatchTargets = Maps.newHashMap();
+    // The stored fragment when the method is unchanged, otherwise the one
+    // being recorded; null without -fragmentCache
+    FlowgraphFragments.MethodFragment fragment;
+    boolean reused;
+
+    MethodFacts(SootMethod method, Stmt[] stmts) {
+      this.method = method;
+      this.stmts = stmts;
+    }
+  }
+
+  private StatementTrace statementTrace;
+
+  // Targets of the virtual calls in currentMethod, if precomputed
+  private Map<Stmt, List<SootMethod>> currentDispatchTargets;
+
+  // Fragment of currentMethod, and the index of currentStmt in its statements
+  private FlowgraphFragments.MethodFragment currentFragment;
+  private boolean currentFragmentReused;
+  private int currentIndex;
+
   void processApplicationClasses() {
-    long numClass = 0, numMtd = 0, numStmt = 0;
-    // Now process each "ordinary" statements
-    for (SootClass c : hier.appClasses) {
-      if (WTGUtil.v().isIgnoredClass(c)) {
-        continue;
+    long numClass = 0, numMtd = 0, numStmt = 0, numReused = 0;
+    statementTrace = StatementTrace.v();
+    final FlowgraphFragments fragments = FlowgraphFragments.v();
+    fragments.open(hier);
+    // The workers retrieve the bodies and resolve the virtual calls, which
+    // only read the Scene and the Hierarchy. They finish before any node is
+    // created, since creating nodes retrieves the bodies of callees. Nodes and
+    // edges are then created here, one method at a time in the order of the
+    // classes and methods, so the flowgraph does not depend on the scheduling
+    // of the workers.
+    Map<SootClass, List<MethodFacts>> prepared = Maps.newLinkedHashMap();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Configs.flowgraphWorkers));
+    try {
+      Map<SootClass, List<Future<MethodFacts>>> pending = Maps.newLinkedHashMap();
+      for (SootClass c : hier.appClasses) {
+        if (WTGUtil.v().isIgnoredClass(c)) {
+          continue;
+        }
+        List<Future<MethodFacts>> methods = Lists.newArrayList();
+        for (final SootMethod m : Lists.newArrayList(c.getMethods())) {
+          if (!m.isConcrete()) {
+            continue;
+          }
+          methods.add(executor.submit(new Callable<MethodFacts>() {
+            @Override
+            public MethodFacts call() {
+              return collectMethodFacts(m, fragments);
+            }
+          }));
+        }
+        pending.put(c, methods);
+      }
+      for (Map.Entry<SootClass, List<Future<MethodFacts>>> entry : pending.entrySet()) {
+        List<MethodFacts> methods = Lists.newArrayList();
+        for (Future<MethodFacts> future : entry.getValue()) {
+          methods.add(Futures.getUnchecked(future));
+        }
+        prepared.put(entry.getKey(), methods);
       }
+    } finally {
+      executor.shutdownNow();
+    }
 
-      System.out.println(c.getSuperclass());
+    // Now process each "ordinary" statements
+    for (Map.Entry<SootClass, List<MethodFacts>> entry : prepared.entrySet()) {
+      statementTrace.traceClass(entry.getKey());
 
       numClass += 1;
-      //for (Iterator<SootMethod> iter = c.getMethods().iterator(); iter.hasNext();) {
-      for (Iterator<SootMethod> iter = Lists.newArrayList(c.getMethods()).iterator();
-           iter.hasNext(); ) {
-        currentMethod = iter.next();
-        if (!currentMethod.isConcrete()) {
-          continue;
-        }
+      boolean changed = false;
+      List<FlowgraphFragments.MethodFragment> classFragments = Lists.newArrayList();
+      for (MethodFacts facts : entry.getValue()) {
         numMtd += 1;
-        Body b = currentMethod.retrieveActiveBody();
+        currentMethod = facts.method;
+        currentDispatchTargets = facts.dispatchTargets;
+        currentFragment = facts.fragment;
+        currentFragmentReused = facts.reused;
+        for (int i = 0; i < facts.stmts.length; i++) {
+          currentStmt = facts.stmts[i];
+          currentIndex = i;
+          numStmt += 1;
+          processApplicationStmt();
+        }
+        if (facts.fragment != null) {
+          classFragments.add(facts.fragment);
+          changed |= !facts.reused || facts.fragment.isUpdated();
+        }
+        if (facts.reused) {
+          numReused += 1;
+        }
+      }
+      if (changed) {
+        fragments.store(entry.getKey(), classFragments);
+      }
+    }
+    currentDispatchTargets = null;
+    currentFragment = null;
+    fragments.finish();
 
-        Iterator<Unit> stmts = b.getUnits().iterator();
-        while (stmts.hasNext()) {
-          currentStmt = (Stmt) stmts.next();
+    Logger.stat("Processed classes: " + numClass);
+    Logger.stat("Processed methods: " + numMtd);
+    Logger.stat("Processed statements: " + numStmt);
+    if (fragments.isEnabled()) {
+      Logger.stat("Methods replayed from fragments: " + numReused);
+    }
+  }
 
-          System.out.println(String.format("%s:%s",currentMethod.getSignature(),currentStmt));
+  /**
+   * Which resource ids, as simpleNode() tells them apart, the constant
+   * arguments of a call are; for FlowgraphFragments.callContext().
+   */
+  String constantKinds(InvokeExpr ie) {
+    StringBuilder sb = new StringBuilder();
+    for (Value arg : ie.getArgs()) {
+      if (arg instanceof IntConstant) {
+        Integer i = ((IntConstant) arg).value;
+        sb.append(allLayoutIds.contains(i) ? 'L' : allMenuIds.contains(i) ? 'M'
+                : allWidgetIds.contains(i) ? 'W' : allStringIds.contains(i) ? 'S' : 'I');
+      } else if (arg instanceof StringConstant) {
+        sb.append(allPreferenceKeys.contains(((StringConstant) arg).value) ? 'P' : 'C');
+      } else {
+        sb.append('-');
+      }
+    }
+    return sb.toString();
+  }
 
-          numStmt += 1;
-          if (currentStmt instanceof ReturnVoidStmt) {
-            continue;
-          }
-          if (currentStmt instanceof ThrowStmt) {
-            continue;
-          }
-          if (currentStmt instanceof GotoStmt) {
-            continue;
-          }
-          if (currentStmt instanceof BreakpointStmt) {
-            continue;
-          }
-          if (currentStmt instanceof NopStmt) {
-            continue;
-          }
-          if (currentStmt instanceof RetStmt) {
-            continue;
-          }
-          if (currentStmt instanceof IfStmt) {
-            continue;
-          }
-          if (currentStmt instanceof TableSwitchStmt) {
-            continue;
-          }
-          if (currentStmt instanceof LookupSwitchStmt) {
-            continue;
-          }
-          if (currentStmt instanceof MonitorStmt) {
-            continue;
-          }
-          jimpleUtil.record(currentStmt, currentMethod); // remember the method
+  private String callContext() {
+    return FlowgraphFragments.v().callContext(currentMethod, currentStmt,
+            constantKinds(currentStmt.getInvokeExpr()));
+  }
 
-          if (createPropagation(currentStmt))
-            continue;
+  /**
+   * Runs on a worker thread; must not create nodes or edges.
+   */
+  MethodFacts collectMethodFacts(SootMethod m, FlowgraphFragments fragments) {
+    Body body;
+    synchronized (m) {
+      body = m.retrieveActiveBody();
+    }
+    PatchingChain<Unit> units = body.getUnits();
+    MethodFacts facts = new MethodFacts(m, units.toArray(new Stmt[units.size()]));
+    if (fragments.isEnabled()) {
+      String digest = FlowgraphFragments.digest(m, facts.stmts);
+      facts.fragment = fragments.lookup(m, digest);
+      if (facts.fragment != null) {
+        // the calls are replayed, or rebuilt without precomputed targets
+        facts.reused = true;
+        return facts;
+      }
+      facts.fragment = fragments.newFragment(m, digest);
+    }
+    for (Stmt s : facts.stmts) {
+      if (!s.containsInvokeExpr()) {
+        continue;
+      }
+      InvokeExpr ie = s.getInvokeExpr();
+      if (!(ie instanceof InstanceInvokeExpr) || ie instanceof SpecialInvokeExpr) {
+        continue;
+      }
+      Type rcv_t = ((InstanceInvokeExpr) ie).getBase().getType();
+      if (!(rcv_t instanceof RefType)) {
+        continue;
+      }
+      // resolve() may add phantom methods to the Scene; leave those calls to
+      // processApplicationStmt()
+      SootMethod stm = ie.getMethodRef().tryResolve();
+      SootClass stc = ((RefType) rcv_t).getSootClass();
+      if (stm == null || hier.getConcreteSubtypes(stc) == null) {
+        continue;
+      }
+      facts.dispatchTargets.put(s, applicationDispatchTargets(stm, stc));
+    }
+    return facts;
+  }
 
-          // Some "special" handling of calls
-          if (currentStmt.containsInvokeExpr()) {
-            InvokeExpr ie = currentStmt.getInvokeExpr();
-            SootMethod stm = null;
-            try {
-              stm = ie.getMethod(); // static target
-            } catch (Exception e) {
-              Logger.trace("WARNING", "Bug in Soot. In Statement " + stm + " have incorrect invoke statement");
-              continue;
-            }
+  /**
+   * The application methods a call of stm on a receiver of static type stc
+   * may dispatch to, once per concrete subtype.
+   */
+  List<SootMethod> applicationDispatchTargets(SootMethod stm, SootClass stc) {
+    List<SootMethod> targets = Lists.newArrayList();
+    for (Iterator<SootClass> trg_i = hier.getConcreteSubtypes(stc).iterator(); trg_i.hasNext(); ) {
+      SootClass sub = trg_i.next();
+      SootMethod trg = hier.virtualDispatch(stm, sub);
+      if (trg != null && trg.getDeclaringClass().isApplicationClass()) {
+        targets.add(trg);
+      }
+    }
+    return targets;
+  }
 
-            // Model Android framework calls
-            NOpNode opNode = null;
-            try {
-              opNode = createOpNode(currentStmt, currentMethod);
-            } catch (Exception e) {
-              Logger.verb(this.getClass().getSimpleName(), "Stmt: " + currentStmt.toString());
-              e.printStackTrace();
-              throw new RuntimeException(e);
-            }
-            if (opNode != null && opNode != NOpNode.NullOpNode) {
-              allNNodes.add(opNode);
-              continue;
-            }
-            // It is an operation node, but with missing parameters. So, there
-            // is no point continue matching other cases.
-            if (opNode == NOpNode.NullOpNode) {
-              continue;
-            }
-            // Other interesting calls
-            recordInterestingCalls(currentStmt, currentMethod);
-
-            // flow graph edges at non-virtual calls
-            if (ie instanceof StaticInvokeExpr
-                    || ie instanceof SpecialInvokeExpr) {
-              if (stm.getDeclaringClass().isApplicationClass()) {
-                processFlowAtCall(currentStmt, stm);
-              }
-              continue;
-            }
+  /**
+   * Models currentStmt, a statement of currentMethod.
+   */
+  void processApplicationStmt() {
+    statementTrace.traceStmt(currentMethod, currentStmt);
 
-            // flow graph edges at virtual calls
-            Local rcv_var = jimpleUtil.receiver(ie);
-            Type rcv_t = rcv_var.getType();
-            // could be ArrayType, for clone() calls
-            if (!(rcv_t instanceof RefType)) {
-              continue;
-            }
-            SootClass stc = ((RefType) rcv_t).getSootClass();
-            for (Iterator<SootClass> trg_i = hier.getConcreteSubtypes(stc).iterator(); trg_i.hasNext(); ) {
-              SootClass sub = trg_i.next();
-              SootMethod trg = hier.virtualDispatch(stm, sub);
-              if (trg != null && trg.getDeclaringClass().isApplicationClass()) {
-                processFlowAtCall(currentStmt, trg);
-              }
-            }
-            continue;
-          } // the statement was a call
+    if (currentStmt instanceof ReturnVoidStmt) {
+      return;
+    }
+    if (currentStmt instanceof ThrowStmt) {
+      return;
+    }
+    if (currentStmt instanceof GotoStmt) {
+      return;
+    }
+    if (currentStmt instanceof BreakpointStmt) {
+      return;
+    }
+    if (currentStmt instanceof NopStmt) {
+      return;
+    }
+    if (currentStmt instanceof RetStmt) {
+      return;
+    }
+    if (currentStmt instanceof IfStmt) {
+      return;
+    }
+    if (currentStmt instanceof TableSwitchStmt) {
+      return;
+    }
+    if (currentStmt instanceof LookupSwitchStmt) {
+      return;
+    }
+    if (currentStmt instanceof MonitorStmt) {
+      return;
+    }
+    jimpleUtil.record(currentStmt, currentMethod); // remember the method
 
-          // assignment (but not with a call; calls are already handled)
-          if (!(currentStmt instanceof DefinitionStmt)) {
-            continue;
-          }
-          DefinitionStmt ds = (DefinitionStmt) currentStmt;
-          Value lhs = ds.getLeftOp();
-          // filter based on types
-          if (!jimpleUtil.interesting(lhs.getType())) {
-            continue;
-          }
-          Value rhs = ds.getRightOp();
-          if (rhs instanceof CaughtExceptionRef) {
-            continue;
+    if (currentStmt.containsInvokeExpr()) {
+      List<SootMethod> targets = null;
+      String context = currentFragment == null ? null : callContext();
+      if (currentFragmentReused) {
+        targets = currentFragment.replay(currentIndex, context);
+        if (targets != null) {
+          for (SootMethod trg : targets) {
+            processFlowAtCall(currentStmt, trg);
           }
-          // parameter passing taken care of by processFlowAtCall
-          if (rhs instanceof ThisRef || rhs instanceof ParameterRef) {
-            continue;
-          }
-          // remember array refs for later resolution
-          if (lhs instanceof ArrayRef) {
-            Value x = ((ArrayRef) lhs).getBase();
-            if (x instanceof Local) {
-              recordVarAtArrayRefWrite((Local) x, currentStmt);
-            }
-            continue;
-          }
-          if (rhs instanceof ArrayRef) {
-            Value x = ((ArrayRef) rhs).getBase();
-            if (x instanceof Local) {
-              recordVarAtArrayRefRead((Local) x, currentStmt);
-            }
-            continue;
-          }
-          NNode nn_lhs = simpleNode(lhs), nn_rhs = simpleNode(rhs);
-          // record for debugging purpose
-          if (nn_rhs instanceof NAllocNode) {
-            jimpleUtil.record(((NAllocNode) nn_rhs).e, currentStmt);
-          }
-          // create the flow edge
-          if (nn_lhs != null && nn_rhs != null) {
-            nn_rhs.addEdgeTo(nn_lhs, currentStmt);
-            if (nn_rhs instanceof NAllocNode) {
-              NAllocNode an = (NAllocNode) nn_rhs;
-              // special treatment for "run" methods
-              if (an.e instanceof NewExpr) {
-                SootClass cl = ((NewExpr) an.e).getBaseType().getSootClass();
-                if (cl.declaresMethod("void run()")) {
-                  SootMethod rn = cl.getMethod("void run()");
-                  try {
-                    // for some reason, soot may complain
-                    // the run() method does not have a valid body.
-                    Local thisLocal = jimpleUtil.thisLocal(rn);
-                    an.addEdgeTo(varNode(thisLocal), currentStmt);
-                  } catch (RuntimeException e) {
-                    Logger.verb("WARNING", "Cannot resolve method: " + rn.getName());
-                  }
-                }
-              }
+          return;
+        }
+      }
+      targets = processApplicationCall();
+      if (currentFragment != null) {
+        // also refreshes a call of a reused fragment whose context changed
+        currentFragment.record(currentIndex, targets, context);
+      }
+      return;
+    } // the statement was a call
+
+    // assignment (but not with a call; calls are already handled)
+    if (!(currentStmt instanceof DefinitionStmt)) {
+      return;
+    }
+    DefinitionStmt ds = (DefinitionStmt) currentStmt;
+    Value lhs = ds.getLeftOp();
+    // filter based on types
+    if (!jimpleUtil.interesting(lhs.getType())) {
+      return;
+    }
+    Value rhs = ds.getRightOp();
+    if (rhs instanceof CaughtExceptionRef) {
+      return;
+    }
+    // parameter passing taken care of by processFlowAtCall
+    if (rhs instanceof ThisRef || rhs instanceof ParameterRef) {
+      return;
+    }
+    // remember array refs for later resolution
+    if (lhs instanceof ArrayRef) {
+      Value x = ((ArrayRef) lhs).getBase();
+      if (x instanceof Local) {
+        recordVarAtArrayRefWrite((Local) x, currentStmt);
+      }
+      return;
+    }
+    if (rhs instanceof ArrayRef) {
+      Value x = ((ArrayRef) rhs).getBase();
+      if (x instanceof Local) {
+        recordVarAtArrayRefRead((Local) x, currentStmt);
+      }
+      return;
+    }
+    NNode nn_lhs = simpleNode(lhs), nn_rhs = simpleNode(rhs);
+    // record for debugging purpose
+    if (nn_rhs instanceof NAllocNode) {
+      jimpleUtil.record(((NAllocNode) nn_rhs).e, currentStmt);
+    }
+    // create the flow edge
+    if (nn_lhs != null && nn_rhs != null) {
+      nn_rhs.addEdgeTo(nn_lhs, currentStmt);
+      if (nn_rhs instanceof NAllocNode) {
+        NAllocNode an = (NAllocNode) nn_rhs;
+        // special treatment for "run" methods
+        if (an.e instanceof NewExpr) {
+          SootClass cl = ((NewExpr) an.e).getBaseType().getSootClass();
+          if (cl.declaresMethod("void run()")) {
+            SootMethod rn = cl.getMethod("void run()");
+            try {
+              // for some reason, soot may complain
+              // the run() method does not have a valid body.
+              Local thisLocal = jimpleUtil.thisLocal(rn);
+              an.addEdgeTo(varNode(thisLocal), currentStmt);
+            } catch (RuntimeException e) {
+              Logger.verb("WARNING", "Cannot resolve method: " + rn.getName());
             }
           }
-        } // all statements in the method body
-      } // all methods in an application class
-    } // all application classes
+        }
+      }
+    }
+  }
 
-    Logger.stat("Processed classes: " + numClass);
-    Logger.stat("Processed methods: " + numMtd);
-    Logger.stat("Processed statements: " + numStmt);
+  /**
+   * Models currentStmt, a call. Returns the application methods the flow was
+   * propagated to, or null if a replay would not be enough: the call is a
+   * propagation, may create an operation node, or was recorded for later.
+   */
+  List<SootMethod> processApplicationCall() {
+    if (createPropagation(currentStmt)) {
+      return null;
+    }
+    InvokeExpr ie = currentStmt.getInvokeExpr();
+    SootMethod stm = null;
+    try {
+      stm = ie.getMethod(); // static target
+    } catch (Exception e) {
+      Logger.trace("WARNING", "Bug in Soot. In Statement " + stm + " have incorrect invoke statement");
+      return null;
+    }
+
+    // Model Android framework calls
+    NOpNode opNode = null;
+    try {
+      opNode = createOpNode(currentStmt, currentMethod);
+    } catch (Exception e) {
+      Logger.verb(this.getClass().getSimpleName(), "Stmt: " + currentStmt.toString());
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    }
+    if (opNode != null && opNode != NOpNode.NullOpNode) {
+      allNNodes.add(opNode);
+      return null;
+    }
+    // It is an operation node, but with missing parameters. So, there
+    // is no point continue matching other cases.
+    if (opNode == NOpNode.NullOpNode) {
+      return null;
+    }
+    // Other interesting calls. Recognizers that did not create a node, and
+    // recorders, may still have side effects, so such calls are rebuilt.
+    int permissions = usedPermissionSet.size();
+    boolean rebuild = recordInterestingCalls(currentStmt, currentMethod)
+            || usedPermissionSet.size() != permissions
+            || !opNodeDispatch().candidates(stm).isEmpty();
+
+    // flow graph edges at non-virtual calls
+    List<SootMethod> targets;
+    if (ie instanceof StaticInvokeExpr
+            || ie instanceof SpecialInvokeExpr) {
+      if (stm.getDeclaringClass().isApplicationClass()) {
+        processFlowAtCall(currentStmt, stm);
+        targets = Collections.singletonList(stm);
+      } else {
+        targets = Collections.emptyList();
+      }
+      return rebuild ? null : targets;
+    }
+
+    // flow graph edges at virtual calls
+    Local rcv_var = jimpleUtil.receiver(ie);
+    Type rcv_t = rcv_var.getType();
+    // could be ArrayType, for clone() calls
+    if (!(rcv_t instanceof RefType)) {
+      return rebuild ? null : Collections.<SootMethod>emptyList();
+    }
+    targets = currentDispatchTargets == null ? null : currentDispatchTargets.get(currentStmt);
+    if (targets == null) {
+      targets = applicationDispatchTargets(stm, ((RefType) rcv_t).getSootClass());
+    }
+    for (SootMethod trg : targets) {
+      processFlowAtCall(currentStmt, trg);
+    }
+    return rebuild ? null : targets;
   }
 
   public void build() {
@@ -722,6 +947,16 @@ public class Flowgraph implements MethodNames {
     processTabHostRelatedCalls();
 
     processFlowFromSetListenerToEventHandlers();
+
+    freeze();
+  }
+
+  /**
+   * Puts the edges into compressed sparse row form for the solver and
+   * GraphUtil, see FrozenEdges. Calling it again merges the edges added since.
+   */
+  public FrozenEdges freeze() {
+    return NodeArena.v().freeze();
   }
 
   public void processServiceClasses() {
@@ -803,6 +1038,7 @@ public class Flowgraph implements MethodNames {
   Map<Local, Set<Stmt>> varsAtArrayRefWrite = Maps.newHashMap();
 
   void resolveArrayRefs() {
+    List<NAllocNode> arrays = Lists.newArrayList();
     for (Expr e : allNAllocNodes.keySet()) {
       // Array allocations
       if (!(e instanceof NewArrayExpr || e instanceof NewMultiArrayExpr)) {
@@ -814,31 +1050,56 @@ public class Flowgraph implements MethodNames {
           continue;
         }
       }
-      Set<Stmt> sources = Sets.newHashSet();
-      Set<Stmt> targets = Sets.newHashSet();
-
-      Set<NNode> reachables = graphUtil.reachableNodes(allNAllocNodes.get(e));
-      for (NNode r : reachables) {
-        if (!(r instanceof NVarNode)) {
-          continue;
+      arrays.add(allNAllocNodes.get(e));
+    }
+    // The base variables of array refs, and which arrays reach them, for all
+    // arrays in one pass
+    List<NVarNode> bases = Lists.newArrayList();
+    for (Local l : Sets.union(varsAtArrayRefRead.keySet(), varsAtArrayRefWrite.keySet())) {
+      NVarNode v = lookupVarNode(l);
+      if (v != null) {
+        bases.add(v);
+      }
+    }
+    BitSet[] reaching = graphUtil.reachingSources(arrays, bases);
+    List<Set<Stmt>> sources = Lists.newArrayList();
+    List<Set<Stmt>> targets = Lists.newArrayList();
+    for (int i = 0; i < arrays.size(); i++) {
+      sources.add(Sets.<Stmt>newHashSet());
+      targets.add(Sets.<Stmt>newHashSet());
+    }
+    for (NVarNode v : bases) {
+      BitSet reachingArrays = reaching[v.id];
+      if (reachingArrays == null) {
+        continue;
+      }
+      Set<Stmt> reads = varsAtArrayRefRead.get(v.l);
+      Set<Stmt> writes = varsAtArrayRefWrite.get(v.l);
+      for (int i = reachingArrays.nextSetBit(0); i >= 0; i = reachingArrays.nextSetBit(i + 1)) {
+        if (reads != null) {
+          targets.get(i).addAll(reads);
         }
-        // Now, r is a base variable of some array ref
-        NVarNode v = (NVarNode) r;
-        if (varsAtArrayRefRead.containsKey(v.l)) {
-          targets.addAll(varsAtArrayRefRead.get(v.l));
+        if (writes != null) {
+          sources.get(i).addAll(writes);
         }
-        if (varsAtArrayRefWrite.containsKey(v.l)) {
-          sources.addAll(varsAtArrayRefWrite.get(v.l));
+      }
+    }
+    // Base variable one-level aliasing, through the contents of the array
+    for (int i = 0; i < arrays.size(); i++) {
+      if (sources.get(i).isEmpty() || targets.get(i).isEmpty()) {
+        continue;
+      }
+      NContentNode contents = contentNode(arrays.get(i));
+      for (Stmt src : sources.get(i)) {
+        NNode sn = simpleNode(((AssignStmt) src).getRightOp());
+        if (sn != null) {
+          sn.addEdgeTo(contents, src);
         }
       }
-      // Base variable one-level aliasing
-      for (Stmt src : sources) {
-        for (Stmt tgt : targets) {
-          NNode sn = simpleNode(((AssignStmt) src).getRightOp());
-          NNode tn = varNode(jimpleUtil.lhsLocal(tgt));
-          if (sn != null && tn != null) {
-            sn.addEdgeTo(tn, null);
-          }
+      for (Stmt tgt : targets.get(i)) {
+        NNode tn = varNode(jimpleUtil.lhsLocal(tgt));
+        if (tn != null) {
+          contents.addEdgeTo(tn, tgt);
         }
       }
     }
@@ -998,185 +1259,181 @@ public class Flowgraph implements MethodNames {
   }
 
   // Op Nodes
-  public NOpNode createOpNode(Stmt s, SootMethod currentMethod) {
-    // Inflate1: view = inflater.inflate(id)
-    {
-      NOpNode inflate1 = createInflate1OpNode(s);
-      if (inflate1 != null) {
-        return inflate1;
-      }
-    }
 
+  // Kinds of operation nodes, in the order their recognizers are tried
+  enum OpNodeKind {
+    // Inflate1: view = inflater.inflate(id)
+    INFLATE1,
     // Inflate2: act.setContentView(id)
-    {
-      NOpNode inflate2 = createInflate2OpNode(s);
-      if (inflate2 != null) {
-        return inflate2;
-      }
-    }
-
+    INFLATE2,
     // FindView1: view.findViewById(id)
-    {
-      NOpNode findView1 = createFindView1OpNode(s);
-      if (findView1 != null) {
-        return findView1;
-      }
-    }
+    FIND_VIEW1,
     // FindView2: act.findViewById(id)
-    {
-      NOpNode findView2 = createFindView2OpNode(s);
-      if (findView2 != null) {
-        return findView2;
-      }
-    }
-
+    FIND_VIEW2,
     // FindView3: lhs = view.m()
-    {
-      NOpNode findView3 = createFindView3OpNode(s);
-      if (findView3 != null) {
-        return findView3;
-      }
-    }
-
+    FIND_VIEW3,
     // AddView1: act.setContentView(view)
-    {
-      NOpNode addView1 = createAddView1OpNode(s);
-      if (addView1 != null) {
-        return addView1;
-      }
-    }
-
+    ADD_VIEW1,
     // AddView2: parent.addView(child)
-    {
-      NOpNode addView2 = createAddView2OpNode(s);
-      if (addView2 != null) {
-        return addView2;
-      }
-    }
-
+    ADD_VIEW2,
     // SetId: view.setId(id)
-    {
-      NOpNode setId = createSetIdOpNode(s);
-      if (setId != null) {
-        return setId;
-      }
-    }
-
+    SET_ID,
     // SetListener: view.setXYZListener(listener)
-    {
-      NOpNode setListener = createSetListenerOpNode(s);
-      if (setListener != null) {
-        return setListener;
-      }
-    }
-
+    SET_LISTENER,
     // AddMenuItem: menuItem = menu.add(...)
-    {
-      NOpNode addMenuItem = createAddMenuItemOpNode(s);
-      if (addMenuItem != null) {
-        return addMenuItem;
-      }
-    }
-
+    ADD_MENU_ITEM,
     // MenuItemSetTitle: menuItem.setTitle(titleSpecifier)
-    {
-      NOpNode menuItemSetTitle = createMenuItemSetTitleOpNode(s);
-      if (menuItemSetTitle != null) {
-        return menuItemSetTitle;
-      }
-    }
-
+    MENU_ITEM_SET_TITLE,
     // MenuInflate: menuInflater.inflate(menuId, menu)
-    {
-      NOpNode menuInflate = createMenuInflateOpNode(s);
-      if (menuInflate != null) {
-        return menuInflate;
-      }
-    }
-
+    MENU_INFLATE,
     // GetTabHost: TabActivity.getTabHost()
-    {
-      NOpNode getTabHost = createGetTabHostOpNode(s);
-      if (getTabHost != null) {
-        return getTabHost;
-      }
-    }
-
+    GET_TAB_HOST,
     // GetListView: lhs = act.getListView()
-    {
-      NOpNode getListView = createListActivityGetListViewOpNode(s);
-      if (getListView != null) {
-        return getListView;
-      }
-    }
-
+    GET_LIST_VIEW,
     // textView.setText(text) or textView.setText(id)
-    {
-      NOpNode opNode = createTextViewSetTextOpNode(s);
-      if (opNode != null) {
-        return opNode;
-      }
-    }
-
+    TEXT_VIEW_SET_TEXT,
     // StringBuilder: a.append(b)
-    {
-      NOpNode opNode = createStringBuilderAppendOpNode(s, currentMethod);
-      if (opNode != null) {
-        return opNode;
-      }
-    }
-
-    {
-      NOpNode opNode = createFragmentTransactionOpNode(s);
-      if (opNode != null) {
-        return opNode;
-      }
-    }
+    STRING_BUILDER_APPEND,
+    FRAGMENT_TRANSACTION,
+    PREFERENCES_FROM_RESOURCE,
+    FIND_PREFERENCE,
+    // view.setBackgroundResource(resId) or imageView.setImageResource(resId)
+    VIEW_SET_IMAGE_RESOURCE,
+    TOAST_MAKE_TEXT,
+    SNACKBAR_MAKE_TEXT,
+    SNACKBAR_SET_ACTION,
+  }
 
-    {
-      NOpNode opNode = createPreferencesFromResourceOpNode(s);
-      if (opNode != null) {
-        return opNode;
-      }
-    }
+  private OpNodeDispatch<OpNodeKind> opNodeDispatch;
 
-    {
-      NOpNode opNode = createFindPreferenceNode(s);
-      if (opNode != null) {
-        return opNode;
-      }
-    }
-
-    // view.setBackgroundResource(resId) or imageView.setImageResource(resId)
-    {
-      NOpNode opNode = createViewSetImageResourceOpNode(s);
-      if (opNode != null) {
-        return opNode;
-      }
-    }
+  /**
+   * The callees each recognizer compares against; keep in sync with the
+   * createXyzOpNode methods.
+   */
+  OpNodeDispatch<OpNodeKind> opNodeDispatch() {
+    if (opNodeDispatch != null) {
+      return opNodeDispatch;
+    }
+    opNodeDispatch = new OpNodeDispatch<>(OpNodeKind.class)
+            .signature(OpNodeKind.INFLATE1, layoutInflaterInflate, layoutInflaterInflateBool,
+                    viewCtxInflate)
+            .subsig(OpNodeKind.INFLATE2, setContentViewSubSig)
+            .subsig(OpNodeKind.FIND_VIEW1, findViewByIdSubSig,
+                    "android.widget.TabWidget getTabWidget()",
+                    "android.widget.FrameLayout getTabContentView()", menuFindItemSubSig)
+            .subsig(OpNodeKind.FIND_VIEW2, findViewByIdSubSig)
+            .subsig(OpNodeKind.FIND_VIEW3, "android.view.View findFocus()",
+                    "android.view.View findViewWithTag()", "android.view.View focusSearch(int)",
+                    "android.view.View focusSearch(android.view.View,int)",
+                    "android.view.View getChildAt(int)", "android.view.View getFocusedChild(int)",
+                    "android.view.View getCurrentView()", "android.view.View getSelectedView()",
+                    menuGetItemSubSig, menuFindItemSubSig)
+            .subsig(OpNodeKind.ADD_VIEW1, setContentViewViewSubSig, setContentViewViewParaSubSig)
+            .name(OpNodeKind.ADD_VIEW2, addViewName)
+            .subsig(OpNodeKind.SET_ID, setIdSubSig)
+            .subsig(OpNodeKind.SET_LISTENER, registerForContextMenuSubSig)
+            .subsig(OpNodeKind.SET_LISTENER, listenerSpecs.getAllRegistrationSubsigs())
+            .subsig(OpNodeKind.ADD_MENU_ITEM, menuAddCharSeqSubSig, menuAddIntSubSig,
+                    menuAdd4IntSubSig, menuAdd3IntCharSeqSubSig)
+            .subsig(OpNodeKind.MENU_ITEM_SET_TITLE, menuItemSetTitleCharSeqSubSig,
+                    menuItemSetTitleIntSubSig)
+            .signature(OpNodeKind.MENU_INFLATE, menuInflaterSig)
+            .subsig(OpNodeKind.GET_TAB_HOST, getTabHostSubSig)
+            .subsig(OpNodeKind.GET_LIST_VIEW, getListViewSubSig)
+            .subsig(OpNodeKind.TEXT_VIEW_SET_TEXT, textViewSetTextSubSig1, textViewSetTextSubSig2,
+                    textViewSetTextSubSig3, textViewSetTextSubSig4, textViewSetTextSubSig5,
+                    textViewSetHintSubSig1, textViewSetHintSubSig2, textViewSetTooltipTextSubSig,
+                    textViewSetContentDescription)
+            .signature(OpNodeKind.STRING_BUILDER_APPEND, stringBuilderAppendSig1,
+                    stringBuilderAppendSig2)
+            .subsig(OpNodeKind.FRAGMENT_TRANSACTION, add01AppSupportFragmentTransactionSubSig,
+                    add01FragmentTransactionSubSig, attachAppSupportFragmentTransactionSubSig,
+                    attachFragmentTransactionSubSig, add02AppSupportFragmentTransactionSubSig,
+                    add02FragmentTransactionSubSig, add03AppSupportFragmentTransactionSubSig,
+                    add03FragmentTransactionSubSig, replace01AppSupportFragmentTransactionSubSig,
+                    replace01FragmentTransactionSubSig, replace02AppSupportFragmentTransactionSubSig,
+                    replace02FragmentTransactionSubSig)
+            .subsig(OpNodeKind.PREFERENCES_FROM_RESOURCE, addPreferencesFromResourceSubSig,
+                    setPreferencesFromResourceSubSig)
+            .subsig(OpNodeKind.FIND_PREFERENCE, findPreferenceSubSig)
+            .subsig(OpNodeKind.VIEW_SET_IMAGE_RESOURCE, viewSetImageResourceSubSig,
+                    viewSetBackgroundResourceSubSig)
+            .signature(OpNodeKind.TOAST_MAKE_TEXT, toastMakeTextSig1, toastMakeTextSig2,
+                    toastSetTextSig1, toastSetTextSig2)
+            .signature(OpNodeKind.SNACKBAR_MAKE_TEXT, snackbarMakeSig1, snackbarMakeSig2,
+                    snackbarSetTextSig1, snackbarSetTextSig2)
+            .signature(OpNodeKind.SNACKBAR_SET_ACTION, snackbarSetActionSig1, snackbarSetActionSig2);
+    return opNodeDispatch;
+  }
 
-    {
-      NOpNode opNode = createToastMakeTextOpNode(s);
-      if (opNode != null) {
-        return opNode;
-      }
+  public NOpNode createOpNode(Stmt s, SootMethod currentMethod) {
+    SootMethod callee;
+    try {
+      callee = s.getInvokeExpr().getMethod();
+    } catch (Exception e) {
+      Logger.trace("createOpNode", "unresolved InvokeExpr " + s.getInvokeExpr());
+      return null;
     }
-
-    {
-      NOpNode opNode = createSnackbarMakeTextOpNode(s);
+    for (OpNodeKind kind : opNodeDispatch().candidates(callee)) {
+      NOpNode opNode = createOpNode(kind, s, currentMethod);
       if (opNode != null) {
         return opNode;
       }
     }
+    return null;
+  }
 
-    {
-      NOpNode opNode = createSnackbarSetActionOpNode(s);
-      if (opNode != null) {
-        return opNode;
-      }
+  NOpNode createOpNode(OpNodeKind kind, Stmt s, SootMethod currentMethod) {
+    switch (kind) {
+      case INFLATE1:
+        return createInflate1OpNode(s);
+      case INFLATE2:
+        return createInflate2OpNode(s);
+      case FIND_VIEW1:
+        return createFindView1OpNode(s);
+      case FIND_VIEW2:
+        return createFindView2OpNode(s);
+      case FIND_VIEW3:
+        return createFindView3OpNode(s);
+      case ADD_VIEW1:
+        return createAddView1OpNode(s);
+      case ADD_VIEW2:
+        return createAddView2OpNode(s);
+      case SET_ID:
+        return createSetIdOpNode(s);
+      case SET_LISTENER:
+        return createSetListenerOpNode(s);
+      case ADD_MENU_ITEM:
+        return createAddMenuItemOpNode(s);
+      case MENU_ITEM_SET_TITLE:
+        return createMenuItemSetTitleOpNode(s);
+      case MENU_INFLATE:
+        return createMenuInflateOpNode(s);
+      case GET_TAB_HOST:
+        return createGetTabHostOpNode(s);
+      case GET_LIST_VIEW:
+        return createListActivityGetListViewOpNode(s);
+      case TEXT_VIEW_SET_TEXT:
+        return createTextViewSetTextOpNode(s);
+      case STRING_BUILDER_APPEND:
+        return createStringBuilderAppendOpNode(s, currentMethod);
+      case FRAGMENT_TRANSACTION:
+        return createFragmentTransactionOpNode(s);
+      case PREFERENCES_FROM_RESOURCE:
+        return createPreferencesFromResourceOpNode(s);
+      case FIND_PREFERENCE:
+        return createFindPreferenceNode(s);
+      case VIEW_SET_IMAGE_RESOURCE:
+        return createViewSetImageResourceOpNode(s);
+      case TOAST_MAKE_TEXT:
+        return createToastMakeTextOpNode(s);
+      case SNACKBAR_MAKE_TEXT:
+        return createSnackbarMakeTextOpNode(s);
+      case SNACKBAR_SET_ACTION:
+        return createSnackbarSetActionOpNode(s);
+      default:
+        throw new IllegalArgumentException(kind.toString());
     }
-
-    return null;
   }
 
   public NOpNode createSnackbarSetActionOpNode(Stmt s) {
@@ -2795,28 +3052,32 @@ public class Flowgraph implements MethodNames {
     allNNodes.add(inflate2);
   }
 
-  public void recordInterestingCalls(Stmt s, SootMethod currentMethod) {
+  /**
+   * Returns true if s was recorded for later processing.
+   */
+  public boolean recordInterestingCalls(Stmt s, SootMethod currentMethod) {
     if (recordListViewRelatedCalls(s)) {
-      return;
+      return true;
     }
     if (recordDialogRelatedCalls(s)) {
-      return;
+      return true;
     }
     if (recordAlertDialogBuilderCalls(s)) {
-      return;
+      return true;
     }
     if (recordExplicitShowMenuCalls(s)) {
-      return;
+      return true;
     }
     if (recordTabHostRelatedCalls(s)) {
-      return;
+      return true;
     }
     if (recordPermissionProtectedAPICalls(s, currentMethod)) {
-      return;
+      return true;
     }
     if (recordRuntimePermissionRequestAPICalls(s, currentMethod)) {
-      return;
+      return true;
     }
+    return false;
   }
 
   public Set<String> requestPermissionStmtSet = Sets.newHashSet();
@@ -5225,6 +5486,22 @@ public class Flowgraph implements MethodNames {
     return x;
   }
 
+  /**
+   * Find/create the node of the elements of the array or container allocated
+   * at alloc.
+   */
+  public NContentNode contentNode(NAllocNode alloc) {
+    NContentNode x = allNContentNodes.get(alloc);
+    if (x != null) {
+      return x;
+    }
+    x = new NContentNode();
+    x.allocNode = alloc;
+    allNContentNodes.put(alloc, x);
+    allNNodes.add(x);
+    return x;
+  }
+
   NStringBuilderNode stringBuilderAllocNode(Expr e, Stmt stmt, SootMethod mtd) {
     NStringBuilderNode strBldNode = allStringBuilderAllocNodes.get(e);
     if (strBldNode == null) {
@@ -5339,7 +5616,7 @@ public class Flowgraph implements MethodNames {
     return x;
   }
 
-  Map<Integer, NAnonymousIdNode> anonymousIdNodes = Maps.newHashMap();
+  IntNodeMap<NAnonymousIdNode> anonymousIdNodes = new IntNodeMap<>();
 
   public NAnonymousIdNode anonymousWidgetIdNode(Integer i) {
     Preconditions.checkNotNull(i);
@@ -0,0 +1,2269 @@
+/*
+ * FlowgraphSnapshot.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import presto.android.AnalysisServer;
+import presto.android.Configs;
+import presto.android.Hierarchy;
+import presto.android.Logger;
+import presto.android.gui.graph.*;
+import presto.android.gui.graph.NFindView1OpNode.FindView1Type;
+import presto.android.gui.graph.NFindView3OpNode.FindView3Type;
+import presto.android.gui.listener.EventType;
+import presto.android.gui.listener.ListenerInstance;
+import presto.android.permission.PermissionNode;
+import presto.android.xml.SnapshotXMLParser;
+import presto.android.xml.XMLParser;
+import soot.*;
+import soot.jimple.*;
+import soot.jimple.parser.JimpleAST;
+import soot.options.Options;
+import soot.toolkits.scalar.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A built Flowgraph in a binary file, for running FixpointSolver,
+ * DemandVariableValueQuery and the clients again without Soot loading and
+ * processing the app. "-flowgraphSnapshot FILE" writes one after the
+ * flowgraph is built; "-replaySnapshot FILE" solves one instead of analyzing
+ * an app.
+ *
+ * The file is a header followed by sections of big-endian ints, so that it
+ * can be mapped and read in place: the nodes with their kinds and typed
+ * attributes, the edges and parents in compressed sparse row form (as in
+ * FrozenEdges), the text and image labels, the id tables and node maps of the
+ * Flowgraph, and all strings in one table. Soot objects are saved by name:
+ * the declarations of all classes of the Scene, and the Jimple of the
+ * application methods, which the solver needs for locals, statements and
+ * def-use chains. The resources that the solver and the clients ask for are
+ * saved by SnapshotXMLParser.
+ *
+ * load() puts the declarations into a fresh Scene, parses the Jimple, and
+ * rebuilds the nodes with the ids they had. Line numbers and image files are
+ * not saved, and the bookkeeping that only flowgraph construction uses is
+ * left empty. Hierarchy is computed again from the restored Scene.
+ */
+public class FlowgraphSnapshot {
+  private static final String TAG = FlowgraphSnapshot.class.getSimpleName();
+
+  private static final int MAGIC = 0x47534e50;
+  private static final int VERSION = 2;
+
+  // Sections, in the order of the file
+  private static final int META = 0;
+  private static final int STRINGS = 1;
+  private static final int SCENE = 2;
+  private static final int NODES = 3;
+  private static final int ATTRIBUTES = 4;
+  private static final int EDGES = 5;
+  private static final int PARENTS = 6;
+  private static final int LABELS = 7;
+  private static final int LOCALS = 8;
+  private static final int STMTS = 9;
+  private static final int VALUES = 10;
+  private static final int TABLES = 11;
+  private static final int BODIES = 12;
+  private static final int RESOURCES = 13;
+  private static final int SECTIONS = 14;
+
+  // Flags of classes in SCENE
+  private static final int APPLICATION = 1;
+  private static final int LIBRARY = 2;
+  private static final int PHANTOM = 4;
+
+  // Labels in LABELS
+  private static final int TEXT = 0;
+  private static final int HINT = 1;
+  private static final int TOOLTIP = 2;
+  private static final int CONTENT_DESCRIPTION = 3;
+  private static final int IMAGE_RESOURCE = 4;
+
+  // Kinds of values in VALUES; each value is three words
+  private static final int V_LOCAL = 0;
+  private static final int V_USE = 1;
+  private static final int V_NEW = 2;
+  private static final int V_INT = 3;
+  private static final int V_LONG = 4;
+  private static final int V_FLOAT = 5;
+  private static final int V_DOUBLE = 6;
+  private static final int V_STRING = 7;
+  private static final int V_NULL = 8;
+  private static final int V_CLASS = 9;
+  private static final int V_NONE = 10;
+
+  /**
+   * The kind of a node, saved by ordinal. SHARED is a node of a static field
+   * (see NodeArena.shared()), saved by class name.
+   */
+  public enum Kind {
+    SHARED(null),
+    VAR(NVarNode.class),
+    FIELD(NFieldNode.class),
+    ALLOC(NAllocNode.class),
+    LISTENER_ALLOC(NListenerAllocNode.class),
+    VIEW_ALLOC(NViewAllocNode.class),
+    STRING_BUILDER(NStringBuilderNode.class),
+    ACTIVITY(NActivityNode.class),
+    DIALOG(NDialogNode.class),
+    INFL(NInflNode.class),
+    MENU_ITEM_INFL(NMenuItemInflNode.class),
+    OPTIONS_MENU(NOptionsMenuNode.class),
+    CONTEXT_MENU(NContextMenuNode.class),
+    FRAGMENT(NFragmentNode.class),
+    PREFERENCE(NPreferenceNode.class),
+    SERVICE(NServiceNode.class),
+    TAB_SPEC(NTabSpecNode.class),
+    SNACKBAR(NSnackbarNode.class),
+    TOAST(NToastNode.class),
+    STRING_CONST(NStringConstantNode.class),
+    INT_CONST(NIntConstantNode.class),
+    LONG_CONST(NLongConstantNode.class),
+    LAYOUT_ID(NLayoutIdNode.class),
+    MENU_ID(NMenuIdNode.class),
+    WIDGET_ID(NWidgetIdNode.class),
+    STRING_ID(NStringIdNode.class),
+    ANONYMOUS_ID(NAnonymousIdNode.class),
+    PREFERENCE_ID(NPreferenceIdNode.class),
+    PREFERENCE_KEY(NPreferenceKeyNode.class),
+    PERMISSION(PermissionNode.class),
+    CONTENT(NContentNode.class),
+    ADD_VIEW1(NAddView1OpNode.class),
+    ADD_VIEW2(NAddView2OpNode.class),
+    FIND_PREFERENCE(NFindPreferenceOpNode.class),
+    FIND_VIEW1(NFindView1OpNode.class),
+    FIND_VIEW2(NFindView2OpNode.class),
+    FIND_VIEW3(NFindView3OpNode.class),
+    FRAGMENT_TRANSACTION(NFragmentTransactionOpNode.class),
+    INFLATE1(NInflate1OpNode.class),
+    INFLATE2(NInflate2OpNode.class),
+    MENU_INFLATE(NMenuInflateOpNode.class),
+    PREFERENCES_FROM_RESOURCE(NPreferencesFromResourceOpNode.class),
+    SET_ID(NSetIdOpNode.class),
+    SET_IMAGE_RESOURCE(NSetImageResourceOpNode.class),
+    SET_LISTENER(NSetListenerOpNode.class),
+    SET_TEXT(NSetTextOpNode.class),
+    SNACKBAR_MAKE(NSnackbarMakeOpNode.class),
+    SNACKBAR_SET_ACTION(NSnackbarSetActionOpNode.class),
+    TOAST_MAKE_TEXT(NToastMakeTextOpNode.class),
+    STRING_BUILDER_APPEND(NStringBuilderAppendOpNode.class);
+
+    private static final Map<Class<?>, Kind> byType = Maps.newHashMap();
+
+    static {
+      for (Kind kind : values()) {
+        if (kind.type != null) {
+          byType.put(kind.type, kind);
+        }
+      }
+    }
+
+    private final Class<? extends NNode> type;
+
+    Kind(Class<? extends NNode> type) {
+      this.type = type;
+    }
+
+    public boolean isOpNode() {
+      return type != null && NOpNode.class.isAssignableFrom(type);
+    }
+
+    static Kind of(NNode node) {
+      if (NodeArena.isShared(node)) {
+        return SHARED;
+      }
+      Kind kind = byType.get(node.getClass());
+      if (kind == null) {
+        throw new IllegalStateException("Cannot save " + node.getClass().getName()
+                + " nodes in a snapshot: " + node);
+      }
+      return kind;
+    }
+  }
+
+  private final File file;
+  private final ByteBuffer buffer;
+  private final int[] offsets = new int[SECTIONS];
+  private final int[] lengths = new int[SECTIONS];
+  private final IntBuffer nodes;
+  private final IntBuffer edges;
+  private final IntBuffer strings;
+  private final String[] stringCache;
+
+  private FlowgraphSnapshot(File file, ByteBuffer buffer) throws IOException {
+    this.file = file;
+    this.buffer = buffer;
+    if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+      throw new IOException(file + " is not a flowgraph snapshot");
+    }
+    if (buffer.getInt(4) != VERSION || buffer.getInt(8) != SECTIONS) {
+      throw new IOException(file + " has snapshot version " + buffer.getInt(4)
+              + ", expected " + VERSION);
+    }
+    for (int i = 0; i < SECTIONS; i++) {
+      offsets[i] = buffer.getInt(12 + 8 * i);
+      lengths[i] = buffer.getInt(16 + 8 * i);
+      if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] + lengths[i] > buffer.limit()) {
+        throw new IOException(file + " is truncated");
+      }
+    }
+    nodes = ints(NODES);
+    edges = ints(EDGES);
+    strings = ints(STRINGS);
+    stringCache = new String[strings.get(0)];
+  }
+
+  /**
+   * Maps the snapshot in file. The accessors below read it in place;
+   * load() rebuilds the Flowgraph.
+   */
+  public static FlowgraphSnapshot open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new FlowgraphSnapshot(file, buffer);
+    }
+  }
+
+  private IntBuffer ints(int section) {
+    ByteBuffer b = buffer.duplicate();
+    b.limit(offsets[section] + lengths[section]);
+    b.position(offsets[section]);
+    return b.slice().asIntBuffer();
+  }
+
+  private ByteBuffer bytes(int section) {
+    ByteBuffer b = buffer.duplicate();
+    b.limit(offsets[section] + lengths[section]);
+    b.position(offsets[section]);
+    return b.slice();
+  }
+
+  // --- reading in place
+
+  public int nodeCount() {
+    return nodes.get(0);
+  }
+
+  public Kind kind(int id) {
+    return Kind.values()[nodes.get(1 + 2 * id)];
+  }
+
+  public int outDegree(int id) {
+    return edges.get(2 + id) - edges.get(1 + id);
+  }
+
+  /**
+   * The id of the k-th successor of node id, 0 <= k < outDegree(id).
+   */
+  public int successor(int id, int k) {
+    int n = edges.get(0);
+    return edges.get(2 + n + edges.get(1 + id) + k);
+  }
+
+  public int inDegree(int id) {
+    int base = predecessorOffsets();
+    return edges.get(base + id + 1) - edges.get(base + id);
+  }
+
+  /**
+   * The id of the k-th predecessor of node id, 0 <= k < inDegree(id).
+   */
+  public int predecessor(int id, int k) {
+    int n = edges.get(0);
+    int base = predecessorOffsets();
+    return edges.get(base + n + 1 + edges.get(base + id) + k);
+  }
+
+  private int predecessorOffsets() {
+    int n = edges.get(0);
+    return 2 + n + edges.get(1 + n);
+  }
+
+  /**
+   * String number i of the string table, or null for -1.
+   */
+  public String string(int i) {
+    if (i < 0) {
+      return null;
+    }
+    String s = stringCache[i];
+    if (s == null) {
+      int count = strings.get(0);
+      int from = strings.get(1 + i);
+      int to = strings.get(2 + i);
+      byte[] bytes = new byte[to - from];
+      ByteBuffer b = bytes(STRINGS);
+      b.position(4 * (count + 2) + from);
+      b.get(bytes);
+      s = new String(bytes, StandardCharsets.UTF_8);
+      stringCache[i] = s;
+    }
+    return s;
+  }
+
+  // --- writing
+
+  /**
+   * Saves flowgraph, which has been built but not solved yet, with the Scene
+   * and the XMLParser it was built from.
+   */
+  public static void write(Flowgraph flowgraph, File file) throws IOException {
+    long start = System.nanoTime();
+    byte[][] sections = new Writer(flowgraph).write();
+    int offset = 12 + 8 * SECTIONS;
+    ByteBuffer header = ByteBuffer.allocate(offset);
+    header.putInt(MAGIC).putInt(VERSION).putInt(SECTIONS);
+    for (byte[] section : sections) {
+      header.putInt(offset).putInt(section.length);
+      offset += align(section.length);
+    }
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(header.array());
+      byte[] padding = new byte[3];
+      for (byte[] section : sections) {
+        out.write(section);
+        out.write(padding, 0, align(section.length) - section.length);
+      }
+    }
+    Logger.verb(TAG, "Wrote " + file + ", " + offset + " bytes, in "
+            + (System.nanoTime() - start) / 1000000 + " ms");
+  }
+
+  private static int align(int length) {
+    return (length + 3) & ~3;
+  }
+
+  /**
+   * A growing array of ints.
+   */
+  private static final class Words {
+    private int[] words = new int[256];
+    private int size;
+
+    void add(int word) {
+      if (size == words.length) {
+        words = Arrays.copyOf(words, size * 2);
+      }
+      words[size++] = word;
+    }
+
+    void addLong(long value) {
+      add((int) (value >>> 32));
+      add((int) value);
+    }
+
+    int size() {
+      return size;
+    }
+
+    byte[] toBytes() {
+      ByteBuffer b = ByteBuffer.allocate(4 * size);
+      b.asIntBuffer().put(words, 0, size);
+      return b.array();
+    }
+  }
+
+  /**
+   * Where a value occurs in the statements of a method body.
+   */
+  private static final class Use {
+    final Unit unit;
+    final int box;
+
+    Use(Unit unit, int box) {
+      this.unit = unit;
+      this.box = box;
+    }
+  }
+
+  private static final class Writer {
+    private final Flowgraph flowgraph;
+    private final Map<String, Integer> strings = Maps.newLinkedHashMap();
+    private final Map<SootMethod, Integer> methods = new IdentityHashMap<>();
+    private final Map<SootField, Integer> fields = new IdentityHashMap<>();
+    private final List<SootClass> classes;
+
+    // Where locals, statements and values occur in the method bodies
+    private final Map<Local, Integer> localMethods = new IdentityHashMap<>();
+    private final Map<Unit, int[]> unitPositions = new IdentityHashMap<>();
+    private final Map<Value, Use> uses = new IdentityHashMap<>();
+
+    private final Map<Local, Integer> locals = new IdentityHashMap<>();
+    private final Map<Unit, Integer> stmts = new IdentityHashMap<>();
+    private final Map<Value, Integer> values = new IdentityHashMap<>();
+    private final Words localWords = new Words();
+    private final Words stmtWords = new Words();
+    private final Words valueWords = new Words();
+    private int unresolved;
+
+    Writer(Flowgraph flowgraph) {
+      this.flowgraph = flowgraph;
+      this.classes = Lists.newArrayList(Scene.v().getClasses());
+    }
+
+    byte[][] write() throws IOException {
+      byte[][] sections = new byte[SECTIONS][];
+      sections[SCENE] = scene().toBytes();
+      sections[BODIES] = bodies();
+
+      NodeArena arena = NodeArena.v();
+      int n = arena.size();
+      Words nodes = new Words();
+      Words attributes = new Words();
+      nodes.add(n);
+      for (int id = 0; id < n; id++) {
+        NNode node = arena.get(id);
+        Kind kind = Kind.of(node);
+        nodes.add(kind.ordinal());
+        nodes.add(attributes.size());
+        attributes(node, kind, attributes);
+      }
+      sections[NODES] = nodes.toBytes();
+      sections[ATTRIBUTES] = attributes.toBytes();
+      sections[EDGES] = edges(arena, n).toBytes();
+      sections[PARENTS] = parents(arena, n).toBytes();
+      sections[LABELS] = labels(arena, n).toBytes();
+      sections[TABLES] = tables().toBytes();
+
+      ByteArrayOutputStream resources = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(resources))) {
+        SnapshotXMLParser.write(flowgraph.xmlUtil, out);
+      }
+      sections[RESOURCES] = resources.toByteArray();
+
+      Words meta = new Words();
+      meta.add(string(Configs.project));
+      meta.add(string(Configs.benchmarkName));
+      meta.addLong(flowgraph.fakeNameIndex);
+      sections[META] = meta.toBytes();
+
+      sections[LOCALS] = localWords.toBytes();
+      sections[STMTS] = stmtWords.toBytes();
+      sections[VALUES] = valueWords.toBytes();
+      // Last, once everything has been interned
+      sections[STRINGS] = strings();
+      if (unresolved > 0) {
+        Logger.warn(TAG, unresolved + " references to soot objects outside of the Scene"
+                + " and the method bodies are saved as null");
+      }
+      return sections;
+    }
+
+    // --- soot objects
+
+    int string(String s) {
+      if (s == null) {
+        return -1;
+      }
+      Integer i = strings.get(s);
+      if (i == null) {
+        i = strings.size();
+        strings.put(s, i);
+      }
+      return i;
+    }
+
+    int klass(SootClass c) {
+      return c == null ? -1 : string(c.getName());
+    }
+
+    int type(Type t) {
+      return t == null ? -1 : string(t.toString());
+    }
+
+    int method(SootMethod m) {
+      if (m == null) {
+        return -1;
+      }
+      Integer i = methods.get(m);
+      if (i == null) {
+        unresolved++;
+        return -1;
+      }
+      return i;
+    }
+
+    int field(SootField f) {
+      if (f == null) {
+        return -1;
+      }
+      Integer i = fields.get(f);
+      if (i == null) {
+        unresolved++;
+        return -1;
+      }
+      return i;
+    }
+
+    int local(Local l) {
+      if (l == null) {
+        return -1;
+      }
+      Integer i = locals.get(l);
+      if (i == null) {
+        i = locals.size();
+        locals.put(l, i);
+        Integer m = localMethods.get(l);
+        localWords.add(m == null ? -1 : m);
+        localWords.add(string(l.getName()));
+        localWords.add(type(l.getType()));
+      }
+      return i;
+    }
+
+    int stmt(Unit s) {
+      if (s == null) {
+        return -1;
+      }
+      Integer i = stmts.get(s);
+      if (i == null) {
+        i = stmts.size();
+        stmts.put(s, i);
+        int[] position = unitPositions.get(s);
+        if (position == null) {
+          unresolved++;
+          stmtWords.add(-1);
+          stmtWords.add(-1);
+        } else {
+          stmtWords.add(position[0]);
+          stmtWords.add(position[1]);
+        }
+      }
+      return i;
+    }
+
+    int value(Value v) {
+      if (v == null) {
+        return -1;
+      }
+      Integer i = values.get(v);
+      if (i != null) {
+        return i;
+      }
+      // Interned before the words of the value, which may intern others
+      int kind;
+      int a = 0;
+      int b = 0;
+      Use use = uses.get(v);
+      if (v instanceof Local) {
+        kind = V_LOCAL;
+        a = local((Local) v);
+      } else if (use != null) {
+        kind = V_USE;
+        a = stmt(use.unit);
+        b = use.box;
+      } else if (v instanceof IntConstant) {
+        kind = V_INT;
+        a = ((IntConstant) v).value;
+      } else if (v instanceof LongConstant) {
+        kind = V_LONG;
+        a = (int) (((LongConstant) v).value >>> 32);
+        b = (int) ((LongConstant) v).value;
+      } else if (v instanceof FloatConstant) {
+        kind = V_FLOAT;
+        a = Float.floatToIntBits(((FloatConstant) v).value);
+      } else if (v instanceof DoubleConstant) {
+        long bits = Double.doubleToLongBits(((DoubleConstant) v).value);
+        kind = V_DOUBLE;
+        a = (int) (bits >>> 32);
+        b = (int) bits;
+      } else if (v instanceof StringConstant) {
+        kind = V_STRING;
+        a = string(((StringConstant) v).value);
+      } else if (v instanceof NullConstant) {
+        kind = V_NULL;
+      } else if (v instanceof ClassConstant) {
+        kind = V_CLASS;
+        a = string(((ClassConstant) v).value);
+      } else if (v instanceof NewExpr) {
+        kind = V_NEW;
+        a = type(v.getType());
+      } else {
+        unresolved++;
+        kind = V_NONE;
+      }
+      i = values.size();
+      values.put(v, i);
+      valueWords.add(kind);
+      valueWords.add(a);
+      valueWords.add(b);
+      return i;
+    }
+
+    int node(NNode node) {
+      return node == null ? -1 : node.id;
+    }
+
+    void addInteger(Words words, Integer value) {
+      words.add(value == null ? 0 : 1);
+      words.add(value == null ? 0 : value);
+    }
+
+    void addMethods(Words words, Collection<SootMethod> ms) {
+      words.add(ms.size());
+      for (SootMethod m : ms) {
+        words.add(method(m));
+      }
+    }
+
+    void addNodes(Words words, Collection<? extends NNode> ns) {
+      words.add(ns.size());
+      for (NNode node : ns) {
+        words.add(node(node));
+      }
+    }
+
+    void addStmts(Words words, Collection<Stmt> ss) {
+      words.add(ss.size());
+      for (Stmt s : ss) {
+        words.add(stmt(s));
+      }
+    }
+
+    // --- sections
+
+    /**
+     * The classes with their fields and methods, which get their indices in
+     * this order.
+     */
+    Words scene() {
+      Words words = new Words();
+      words.add(classes.size());
+      for (SootClass c : classes) {
+        words.add(klass(c));
+        words.add(c.getModifiers());
+        words.add((c.isApplicationClass() ? APPLICATION : 0)
+                | (c.isLibraryClass() ? LIBRARY : 0) | (c.isPhantom() ? PHANTOM : 0));
+      }
+      for (SootClass c : classes) {
+        words.add(c.hasSuperclass() ? klass(c.getSuperclass()) : -1);
+        words.add(c.hasOuterClass() ? klass(c.getOuterClass()) : -1);
+        words.add(c.getInterfaceCount());
+        for (SootClass i : c.getInterfaces()) {
+          words.add(klass(i));
+        }
+        words.add(c.getFieldCount());
+        for (SootField f : c.getFields()) {
+          fields.put(f, fields.size());
+          words.add(string(f.getName()));
+          words.add(type(f.getType()));
+          words.add(f.getModifiers());
+        }
+        words.add(c.getMethodCount());
+        for (SootMethod m : c.getMethods()) {
+          methods.put(m, methods.size());
+          words.add(string(m.getName()));
+          words.add(type(m.getReturnType()));
+          words.add(m.getModifiers());
+          words.add(m.isPhantom() ? 1 : 0);
+          words.add(m.getParameterCount());
+          for (Type t : m.getParameterTypes()) {
+            words.add(type(t));
+          }
+        }
+      }
+      return words;
+    }
+
+    /**
+     * The Jimple of the application classes, deflated class by class, and
+     * where their locals, statements and values are.
+     */
+    byte[] bodies() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      List<SootClass> applicationClasses = Lists.newArrayList();
+      for (SootClass c : classes) {
+        if (c.isApplicationClass()) {
+          applicationClasses.add(c);
+        }
+      }
+      out.writeInt(applicationClasses.size());
+      for (SootClass c : applicationClasses) {
+        List<SootMethod> withBodies = Lists.newArrayList();
+        for (SootMethod m : c.getMethods()) {
+          if (!m.hasActiveBody() && m.isConcrete()) {
+            try {
+              m.retrieveActiveBody();
+            } catch (RuntimeException e) {
+              Logger.verb(TAG, "No body for " + m + ": " + e.getMessage());
+            }
+          }
+          if (m.hasActiveBody()) {
+            withBodies.add(m);
+          }
+        }
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+                new DeflaterOutputStream(text), StandardCharsets.UTF_8))) {
+          pw.println("class " + Scene.v().quotedNameOf(c.getName()));
+          pw.println("{");
+          for (SootMethod m : withBodies) {
+            Printer.v().printTo(m.getActiveBody(), pw);
+          }
+          pw.println("}");
+        }
+        out.writeInt(klass(c));
+        out.writeInt(withBodies.size());
+        for (SootMethod m : withBodies) {
+          int index = methods.get(m);
+          out.writeInt(index);
+          indexBody(m.getActiveBody(), index);
+        }
+        out.writeInt(text.size());
+        text.writeTo(out);
+      }
+      out.flush();
+      return bytes.toByteArray();
+    }
+
+    private void indexBody(Body body, int method) {
+      for (Local l : body.getLocals()) {
+        localMethods.put(l, method);
+      }
+      int index = 0;
+      for (Unit u : body.getUnits()) {
+        unitPositions.put(u, new int[]{method, index++});
+        List<ValueBox> boxes = u.getUseAndDefBoxes();
+        for (int i = 0; i < boxes.size(); i++) {
+          Value v = boxes.get(i).getValue();
+          if (!(v instanceof Local) && !uses.containsKey(v)) {
+            uses.put(v, new Use(u, i));
+          }
+        }
+      }
+    }
+
+    /**
+     * The attributes of a node: its id node, the other nodes it refers to,
+     * and the fields of its kind.
+     */
+    void attributes(NNode node, Kind kind, Words words) {
+      words.add(node(node.idNode));
+      List<NNode> references = references(node, kind);
+      words.add(references.size());
+      for (NNode reference : references) {
+        words.add(node(reference));
+      }
+      if (kind.isOpNode()) {
+        NOpNode op = (NOpNode) node;
+        words.add(op.callSite == null ? -1 : stmt(op.callSite.getO1()));
+        words.add(op.callSite == null ? -1 : method(op.callSite.getO2()));
+        words.add(op.artificial ? 1 : 0);
+        words.add(type(op.receiverType));
+        words.add(type(op.parameterType));
+      }
+      switch (kind) {
+        case SHARED:
+          words.add(string(node.getClass().getName()));
+          break;
+        case VAR:
+          words.add(local(((NVarNode) node).l));
+          break;
+        case FIELD:
+          words.add(field(((NFieldNode) node).f));
+          break;
+        case ALLOC:
+          words.add(value(((NAllocNode) node).e));
+          break;
+        case LISTENER_ALLOC:
+          words.add(value(((NListenerAllocNode) node).e));
+          words.add(klass(((NListenerAllocNode) node).c));
+          break;
+        case VIEW_ALLOC:
+          words.add(value(((NViewAllocNode) node).e));
+          words.add(klass(((NViewAllocNode) node).c));
+          break;
+        case STRING_BUILDER: {
+          NStringBuilderNode builder = (NStringBuilderNode) node;
+          words.add(value(builder.e));
+          words.add(stmt(builder.stmt));
+          words.add(method(builder.inMethod));
+          List<String> possibleValues = Lists.newArrayList(builder.possibleValues);
+          words.add(possibleValues.size());
+          for (String s : possibleValues) {
+            words.add(string(s));
+          }
+          break;
+        }
+        case ACTIVITY:
+          words.add(klass(((NActivityNode) node).c));
+          break;
+        case DIALOG: {
+          NDialogNode dialog = (NDialogNode) node;
+          words.add(klass(dialog.c));
+          words.add(stmt(dialog.allocStmt));
+          words.add(method(dialog.allocMethod));
+          words.add(dialog.cancelable ? 1 : 0);
+          break;
+        }
+        case INFL:
+          words.add(klass(((NInflNode) node).c));
+          words.add(klass(((NInflNode) node).fragment));
+          break;
+        case MENU_ITEM_INFL: {
+          NMenuItemInflNode item = (NMenuItemInflNode) node;
+          words.add(klass(item.c));
+          words.add(klass(item.fragment));
+          words.add(item.attrs == null ? -1 : item.attrs.size());
+          if (item.attrs != null) {
+            for (Map.Entry<String, String> e : item.attrs.entrySet()) {
+              words.add(string(e.getKey()));
+              words.add(string(e.getValue()));
+            }
+          }
+          break;
+        }
+        case OPTIONS_MENU:
+          words.add(klass(((NOptionsMenuNode) node).ownerActivity));
+          break;
+        case FRAGMENT: {
+          NFragmentNode fragment = (NFragmentNode) node;
+          words.add(klass(fragment.ownerActivity));
+          words.add(klass(fragment.fragmentClass));
+          addInteger(words, fragment.parentLayoutId);
+          break;
+        }
+        case PREFERENCE: {
+          NPreferenceNode preference = (NPreferenceNode) node;
+          words.add(klass(preference.ownerActivity));
+          words.add(klass(preference.c));
+          addInteger(words, preference.resourceId);
+          break;
+        }
+        case SERVICE:
+          words.add(klass(((NServiceNode) node).c));
+          break;
+        case TAB_SPEC: {
+          NTabSpecNode tabSpec = (NTabSpecNode) node;
+          words.add(klass(tabSpec.c));
+          words.add(stmt(tabSpec.allocStmt));
+          words.add(method(tabSpec.allocMethod));
+          break;
+        }
+        case SNACKBAR:
+          words.add(klass(((NSnackbarNode) node).listenerClass));
+          break;
+        case STRING_CONST:
+          words.add(string(((NStringConstantNode) node).value));
+          break;
+        case INT_CONST:
+          addInteger(words, ((NIntConstantNode) node).value);
+          break;
+        case LONG_CONST: {
+          Long value = ((NLongConstantNode) node).value;
+          words.add(value == null ? 0 : 1);
+          words.addLong(value == null ? 0 : value);
+          break;
+        }
+        case LAYOUT_ID:
+        case MENU_ID:
+        case WIDGET_ID:
+        case STRING_ID:
+        case ANONYMOUS_ID:
+          words.add(((NIdNode) node).getIdValue());
+          break;
+        case PREFERENCE_ID:
+          words.add(((NPreferenceIdNode) node).getIdValue());
+          words.add(string(((NPreferenceIdNode) node).prefKey));
+          break;
+        case PREFERENCE_KEY:
+          words.add(string(((NPreferenceKeyNode) node).key));
+          break;
+        case PERMISSION: {
+          PermissionNode permission = (PermissionNode) node;
+          words.add(method(permission.context));
+          words.add(stmt(permission.stmt));
+          words.add(string(permission.sig));
+          addInteger(words, permission.depthLevel);
+          break;
+        }
+        case FIND_VIEW1: {
+          FindView1Type type = ((NFindView1OpNode) node).type;
+          words.add(type == null ? -1 : type.ordinal());
+          break;
+        }
+        case FIND_VIEW3: {
+          FindView3Type type = ((NFindView3OpNode) node).type;
+          words.add(type == null ? -1 : type.ordinal());
+          break;
+        }
+        case SET_TEXT: {
+          NSetTextOpNode.Type type = ((NSetTextOpNode) node).type;
+          words.add(type == null ? -1 : type.ordinal());
+          break;
+        }
+        case FRAGMENT_TRANSACTION:
+          words.add(value(((NFragmentTransactionOpNode) node).fragment));
+          words.add(value(((NFragmentTransactionOpNode) node).container));
+          break;
+        case PREFERENCES_FROM_RESOURCE:
+          words.add(value(((NPreferencesFromResourceOpNode) node).preference));
+          addInteger(words, ((NPreferencesFromResourceOpNode) node).resourceId);
+          break;
+        case SET_LISTENER: {
+          NSetListenerOpNode setListener = (NSetListenerOpNode) node;
+          ListenerInstance listener = setListener.getListenerInstance();
+          words.add(setListener.isContextMenuSetListener ? 1 : 0);
+          EventType eventType = listener.getEventType();
+          words.add(string(eventType == null ? null : eventType.name()));
+          addMethods(words, listener.getHandlerPrototypes());
+          addMethods(words, listener.getInlineEventHandlers());
+          addMethods(words, listener.getEventHandlers());
+          break;
+        }
+        default:
+          // Nothing but the id node and the references
+          break;
+      }
+    }
+
+    List<NNode> references(NNode node, Kind kind) {
+      List<NNode> references = Lists.newArrayList();
+      switch (kind) {
+        case CONTEXT_MENU:
+          references.add(((NContextMenuNode) node).menuParameterNode);
+          references.addAll(((NContextMenuNode) node).varNodesForRegisteredViews);
+          break;
+        case SNACKBAR_MAKE:
+          references.add(((NSnackbarMakeOpNode) node).textNode);
+          break;
+        case SNACKBAR_SET_ACTION:
+          references.add(((NSnackbarSetActionOpNode) node).textNode);
+          references.add(((NSnackbarSetActionOpNode) node).listenerNode);
+          break;
+        case TOAST_MAKE_TEXT:
+          references.add(((NToastMakeTextOpNode) node).textNode);
+          break;
+        case STRING_BUILDER_APPEND:
+          references.add(((NStringBuilderAppendOpNode) node).bldrNode);
+          references.add(((NStringBuilderAppendOpNode) node).strNode);
+          break;
+        case CONTENT:
+          references.add(((NContentNode) node).allocNode);
+          break;
+        default:
+          break;
+      }
+      return references;
+    }
+
+    /**
+     * n, successor offsets, successors, predecessor offsets, predecessors, as
+     * in FrozenEdges.
+     */
+    Words edges(NodeArena arena, int n) {
+      Words words = new Words();
+      words.add(n);
+      int offset = 0;
+      words.add(offset);
+      for (int id = 0; id < n; id++) {
+        offset += arena.get(id).getNumberOfSuccessors();
+        words.add(offset);
+      }
+      for (int id = 0; id < n; id++) {
+        for (NNode target : arena.get(id).getSuccessors()) {
+          words.add(target.id);
+        }
+      }
+      offset = 0;
+      words.add(offset);
+      for (int id = 0; id < n; id++) {
+        offset += arena.get(id).getNumberOfPredecessors();
+        words.add(offset);
+      }
+      for (int id = 0; id < n; id++) {
+        for (NNode source : arena.get(id).getPredecessors()) {
+          words.add(source.id);
+        }
+      }
+      return words;
+    }
+
+    Words parents(NodeArena arena, int n) {
+      List<List<NNode>> all = Lists.newArrayListWithCapacity(n);
+      for (int id = 0; id < n; id++) {
+        all.add(Lists.newArrayList(arena.get(id).getParents()));
+      }
+      Words words = new Words();
+      int offset = 0;
+      words.add(offset);
+      for (List<NNode> parents : all) {
+        offset += parents.size();
+        words.add(offset);
+      }
+      for (List<NNode> parents : all) {
+        for (NNode parent : parents) {
+          words.add(parent.id);
+        }
+      }
+      return words;
+    }
+
+    Words labels(NodeArena arena, int n) {
+      Words words = new Words();
+      for (int id = 0; id < n; id++) {
+        NNode node = arena.get(id);
+        addLabels(words, id, TEXT, node.getTextNodes());
+        addLabels(words, id, HINT, node.getHintNodes());
+        addLabels(words, id, TOOLTIP, node.getTooltipNodes());
+        addLabels(words, id, CONTENT_DESCRIPTION, node.getContentDescriptionNodes());
+        addLabels(words, id, IMAGE_RESOURCE, node.getImageResourceNodes());
+      }
+      return words;
+    }
+
+    private void addLabels(Words words, int id, int label, Iterator<NNode> targets) {
+      while (targets.hasNext()) {
+        words.add(id);
+        words.add(label);
+        words.add(targets.next().id);
+      }
+    }
+
+    /**
+     * The id sets and the node maps of the Flowgraph, in the order in which
+     * Loader.tables() reads them back.
+     */
+    Words tables() {
+      Flowgraph fg = flowgraph;
+      Words words = new Words();
+      for (Set<Integer> ids : Arrays.asList(fg.allLayoutIds, fg.allMenuIds, fg.allWidgetIds,
+              fg.allStringIds, fg.allPreferenceIds, fg.allPreferenceHeaderIds)) {
+        words.add(ids.size());
+        for (Integer i : ids) {
+          words.add(i);
+        }
+      }
+      words.add(fg.allPreferenceKeys.size());
+      for (String key : fg.allPreferenceKeys) {
+        words.add(string(key));
+      }
+
+      addNodes(words, fg.allNNodes);
+      words.add(fg.allNVarNodes.size());
+      for (Map.Entry<Local, NVarNode> e : fg.allNVarNodes.entrySet()) {
+        words.add(local(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.allNFieldNodes.size());
+      for (Map.Entry<SootField, NFieldNode> e : fg.allNFieldNodes.entrySet()) {
+        words.add(field(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.allNAllocNodes.size());
+      for (Map.Entry<Expr, NAllocNode> e : fg.allNAllocNodes.entrySet()) {
+        words.add(value(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.allNActivityNodes.size());
+      for (Map.Entry<SootClass, NActivityNode> e : fg.allNActivityNodes.entrySet()) {
+        words.add(klass(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      for (IntNodeMap<?> map : Arrays.asList(fg.allNLayoutIdNodes, fg.allNMenuIdNodes,
+              fg.allNWidgetIdNodes, fg.allNStringIdNodes, fg.allNIntegerConstantNodes,
+              fg.allNPreferenceIdNodeNodes, fg.allNPreferenceHeaderIdNodeNodes,
+              fg.anonymousIdNodes)) {
+        words.add(map.size());
+        for (Map.Entry<Integer, ? extends NNode> e : map.entrySet()) {
+          words.add(e.getKey());
+          words.add(node(e.getValue()));
+        }
+      }
+      words.add(fg.allNDialogNodes.size());
+      for (Map.Entry<Stmt, NDialogNode> e : fg.allNDialogNodes.entrySet()) {
+        words.add(stmt(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.allNStringConstantNodes.size());
+      for (Map.Entry<String, NStringConstantNode> e : fg.allNStringConstantNodes.entrySet()) {
+        words.add(string(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.allNLongConstantNodes.size());
+      for (Map.Entry<Long, NLongConstantNode> e : fg.allNLongConstantNodes.entrySet()) {
+        words.addLong(e.getKey());
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.allPreferenceKeyNodes.size());
+      for (Map.Entry<String, NPreferenceKeyNode> e : fg.allPreferenceKeyNodes.entrySet()) {
+        words.add(string(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.allNServiceNodes.size());
+      for (Map.Entry<SootClass, NServiceNode> e : fg.allNServiceNodes.entrySet()) {
+        words.add(klass(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      addNodes(words, fg.allMenuItems);
+      words.add(fg.allStringBuilderAllocNodes.size());
+      for (Map.Entry<Expr, NStringBuilderNode> e : fg.allStringBuilderAllocNodes.entrySet()) {
+        words.add(value(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+
+      words.add(fg.activityClassToPreference.size());
+      for (Map.Entry<SootClass, NPreferenceNode> e : fg.activityClassToPreference.entrySet()) {
+        words.add(klass(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.activityClassToOptionsMenu.size());
+      for (Map.Entry<SootClass, NOptionsMenuNode> e : fg.activityClassToOptionsMenu.entrySet()) {
+        words.add(klass(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.activityClassToFragments.size());
+      for (Map.Entry<SootClass, Set<NFragmentNode>> e : fg.activityClassToFragments.entrySet()) {
+        words.add(klass(e.getKey()));
+        addNodes(words, e.getValue());
+      }
+      words.add(fg.fakeHandlerToRealHandler.size());
+      for (Map.Entry<SootMethod, SootMethod> e : fg.fakeHandlerToRealHandler.entrySet()) {
+        words.add(method(e.getKey()));
+        words.add(method(e.getValue()));
+      }
+      words.add(fg.itemSelectedAndFakeVarNodes.size());
+      for (Map.Entry<SootMethod, NVarNode> e : fg.itemSelectedAndFakeVarNodes.entrySet()) {
+        words.add(method(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.menuVarNodeToContextMenus.size());
+      for (Map.Entry<NVarNode, NContextMenuNode> e : fg.menuVarNodeToContextMenus.entrySet()) {
+        words.add(node(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      words.add(fg.contextMenuToOnCreateContextMenus.size());
+      for (Map.Entry<NContextMenuNode, SootMethod> e
+              : fg.contextMenuToOnCreateContextMenus.entrySet()) {
+        words.add(node(e.getKey()));
+        words.add(method(e.getValue()));
+      }
+      addNodes(words, fg.alreadyProcessedSetListeners);
+      for (Map<Stmt, Local> map : Arrays.asList(fg.explicitShowContextMenuCallAndViewLocals,
+              fg.explicitShowOptionsMenuCallAndActivityLocals)) {
+        words.add(map.size());
+        for (Map.Entry<Stmt, Local> e : map.entrySet()) {
+          words.add(stmt(e.getKey()));
+          words.add(local(e.getValue()));
+        }
+      }
+      for (Map<NDialogNode, Set<Stmt>> map : Arrays.asList(fg.allDialogAndShows,
+              fg.allDialogAndDismisses)) {
+        words.add(map.size());
+        for (Map.Entry<NDialogNode, Set<Stmt>> e : map.entrySet()) {
+          words.add(node(e.getKey()));
+          addStmts(words, e.getValue());
+        }
+      }
+      for (Map<NDialogNode, Set<SootMethod>> map : Arrays.asList(fg.allDialogLifecycleMethods,
+              fg.allDialogNonLifecycleMethods)) {
+        words.add(map.size());
+        for (Map.Entry<NDialogNode, Set<SootMethod>> e : map.entrySet()) {
+          words.add(node(e.getKey()));
+          addMethods(words, e.getValue());
+        }
+      }
+      addNodes(words, fg.usedPermissionSet);
+      words.add(fg.requestPermissionStmtSet.size());
+      for (String s : fg.requestPermissionStmtSet) {
+        words.add(string(s));
+      }
+      words.add(fg.allNContentNodes.size());
+      for (Map.Entry<NAllocNode, NContentNode> e : fg.allNContentNodes.entrySet()) {
+        words.add(node(e.getKey()));
+        words.add(node(e.getValue()));
+      }
+      return words;
+    }
+
+    /**
+     * count, count + 1 byte offsets, and the UTF-8 bytes of all strings.
+     */
+    byte[] strings() {
+      List<byte[]> encoded = Lists.newArrayListWithCapacity(strings.size());
+      int total = 0;
+      for (String s : strings.keySet()) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        encoded.add(bytes);
+        total += bytes.length;
+      }
+      ByteBuffer b = ByteBuffer.allocate(4 * (encoded.size() + 2) + total);
+      b.putInt(encoded.size());
+      int offset = 0;
+      b.putInt(offset);
+      for (byte[] bytes : encoded) {
+        offset += bytes.length;
+        b.putInt(offset);
+      }
+      for (byte[] bytes : encoded) {
+        b.put(bytes);
+      }
+      return b.array();
+    }
+  }
+
+  // --- loading
+
+  /**
+   * Rebuilds the flowgraph of the snapshot in a fresh Scene, with the node
+   * ids it had, and installs the saved resources as the XMLParser. Resets
+   * all per-app state but the options, like AnalysisServer does between
+   * apps.
+   */
+  public Flowgraph load() throws IOException {
+    long start = System.nanoTime();
+    AnalysisServer.resetAnalysisState();
+    Options.v().set_allow_phantom_refs(true);
+    Flowgraph flowgraph = new Loader().load();
+    Logger.verb(TAG, "Loaded " + file + ", " + nodeCount() + " nodes, in "
+            + (System.nanoTime() - start) / 1000000 + " ms");
+    return flowgraph;
+  }
+
+  /**
+   * Reads the words of a section one after the other.
+   */
+  private static final class Cursor {
+    private final IntBuffer words;
+    private int position;
+
+    Cursor(IntBuffer words, int position) {
+      this.words = words;
+      this.position = position;
+    }
+
+    int next() {
+      return words.get(position++);
+    }
+
+    long nextLong() {
+      long high = next();
+      return (high << 32) | (next() & 0xFFFFFFFFL);
+    }
+
+    Integer nextInteger() {
+      boolean present = next() != 0;
+      int value = next();
+      return present ? value : null;
+    }
+  }
+
+  private final class Loader {
+    private SootMethod[] methods;
+    private SootField[] fields;
+    private final Map<SootMethod, Map<String, Local>> bodyLocals = Maps.newHashMap();
+    private final Map<SootMethod, Unit[]> bodyUnits = Maps.newHashMap();
+    private Local[] locals;
+    private Stmt[] stmts;
+    private Value[] values;
+    private final IntBuffer localWords = ints(LOCALS);
+    private final IntBuffer stmtWords = ints(STMTS);
+    private final IntBuffer valueWords = ints(VALUES);
+    private final List<NNode> order = Lists.newArrayList();
+    private int unresolved;
+
+    Flowgraph load() throws IOException {
+      Cursor meta = new Cursor(ints(META), 0);
+      String project = string(meta.next());
+      String benchmarkName = string(meta.next());
+      if (Configs.project == null) {
+        Configs.project = project;
+      }
+      if (Configs.benchmarkName == null) {
+        Configs.benchmarkName = benchmarkName;
+      }
+      long fakeNameIndex = meta.nextLong();
+
+      scene();
+      bodies();
+      locals = new Local[localWords.limit() / 3];
+      stmts = new Stmt[stmtWords.limit() / 2];
+      values = new Value[valueWords.limit() / 3];
+
+      try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+              new ByteBufferInputStream(bytes(RESOURCES))))) {
+        XMLParser.Factory.install(new SnapshotXMLParser(in));
+      }
+
+      Cursor tables = new Cursor(ints(TABLES), 0);
+      Set<Integer> layoutIds = intSet(tables);
+      Set<Integer> menuIds = intSet(tables);
+      Set<Integer> widgetIds = intSet(tables);
+      Set<Integer> stringIds = intSet(tables);
+      Set<Integer> preferenceIds = intSet(tables);
+      Set<Integer> preferenceHeaderIds = intSet(tables);
+      Set<String> preferenceKeys = Sets.newHashSet();
+      int keys = tables.next();
+      for (int i = 0; i < keys; i++) {
+        preferenceKeys.add(string(tables.next()));
+      }
+      Flowgraph flowgraph = new Flowgraph(Hierarchy.v(), layoutIds, menuIds, widgetIds,
+              stringIds, preferenceIds, preferenceHeaderIds, preferenceKeys);
+      flowgraph.fakeNameIndex = fakeNameIndex;
+
+      nodes();
+      NodeArena.v().renumber(order);
+      NodeArena.v().restoreEdges(edgeArray(1, 0), edgeArray(2 + edges.get(0), 1),
+              edgeArray(predecessorOffsets(), 0), edgeArray(predecessorOffsets() + nodeCount() + 1, 1));
+      parents();
+      labels();
+      tables(flowgraph, tables);
+      flowgraph.freeze();
+      if (unresolved > 0) {
+        Logger.warn(TAG, unresolved + " saved references could not be resolved");
+      }
+      return flowgraph;
+    }
+
+    // --- Scene
+
+    void scene() {
+      Cursor c = new Cursor(ints(SCENE), 0);
+      int count = c.next();
+      SootClass[] classes = new SootClass[count];
+      Scene scene = Scene.v();
+      for (int i = 0; i < count; i++) {
+        String name = string(c.next());
+        int modifiers = c.next();
+        int flags = c.next();
+        SootClass klass;
+        if (scene.containsClass(name)) {
+          klass = scene.getSootClass(name);
+          klass.setModifiers(modifiers);
+        } else {
+          klass = new SootClass(name, modifiers);
+          scene.addClass(klass);
+        }
+        if ((flags & APPLICATION) != 0) {
+          klass.setApplicationClass();
+        } else if ((flags & LIBRARY) != 0) {
+          klass.setLibraryClass();
+        }
+        if ((flags & PHANTOM) != 0) {
+          klass.setPhantomClass();
+        }
+        // Nothing is left to resolve; application classes get their bodies
+        // from the snapshot
+        klass.setResolvingLevel((flags & APPLICATION) != 0 ? SootClass.BODIES : SootClass.SIGNATURES);
+        classes[i] = klass;
+      }
+      List<SootMethod> allMethods = Lists.newArrayList();
+      List<SootField> allFields = Lists.newArrayList();
+      for (SootClass klass : classes) {
+        String superclass = string(c.next());
+        if (superclass != null) {
+          klass.setSuperclass(scene.getSootClass(superclass));
+        }
+        String outer = string(c.next());
+        if (outer != null) {
+          klass.setOuterClass(scene.getSootClass(outer));
+        }
+        int interfaces = c.next();
+        for (int i = 0; i < interfaces; i++) {
+          SootClass iface = scene.getSootClass(string(c.next()));
+          if (!klass.implementsInterface(iface.getName())) {
+            klass.addInterface(iface);
+          }
+        }
+        int fieldCount = c.next();
+        for (int i = 0; i < fieldCount; i++) {
+          String name = string(c.next());
+          Type type = type(string(c.next()));
+          int modifiers = c.next();
+          SootField f = klass.getFieldUnsafe(name, type);
+          if (f == null) {
+            f = new SootField(name, type, modifiers);
+            klass.addField(f);
+          }
+          allFields.add(f);
+        }
+        int methodCount = c.next();
+        for (int i = 0; i < methodCount; i++) {
+          String name = string(c.next());
+          Type returnType = type(string(c.next()));
+          int modifiers = c.next();
+          boolean phantom = c.next() != 0;
+          int parameterCount = c.next();
+          List<Type> parameterTypes = Lists.newArrayListWithCapacity(parameterCount);
+          for (int p = 0; p < parameterCount; p++) {
+            parameterTypes.add(type(string(c.next())));
+          }
+          SootMethod m = klass.getMethodUnsafe(name, parameterTypes, returnType);
+          if (m == null) {
+            m = new SootMethod(name, parameterTypes, returnType, modifiers);
+            klass.addMethod(m);
+          }
+          m.setPhantom(phantom);
+          allMethods.add(m);
+        }
+      }
+      methods = allMethods.toArray(new SootMethod[0]);
+      fields = allFields.toArray(new SootField[0]);
+    }
+
+    void bodies() throws IOException {
+      DataInputStream in = new DataInputStream(new ByteBufferInputStream(bytes(BODIES)));
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        SootClass klass = Scene.v().getSootClass(string(in.readInt()));
+        int[] indices = new int[in.readInt()];
+        for (int m = 0; m < indices.length; m++) {
+          indices[m] = in.readInt();
+        }
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        try {
+          JimpleAST ast = new JimpleAST(new InflaterInputStream(new ByteArrayInputStream(text)));
+          for (int index : indices) {
+            SootMethod m = methods[index];
+            Body body = ast.getBody(m);
+            if (body == null) {
+              Logger.warn(TAG, "No Jimple for " + m);
+            } else {
+              m.setActiveBody(body);
+            }
+          }
+        } catch (Exception e) {
+          Logger.warn(TAG, "Cannot parse the Jimple of " + klass + ": " + e);
+        }
+      }
+      // Classes the bodies refer to that are not in the Scene, as soot would
+      // have made them
+      for (SootClass klass : Lists.newArrayList(Scene.v().getClasses())) {
+        if (klass.resolvingLevel() == SootClass.DANGLING) {
+          klass.setResolvingLevel(SootClass.SIGNATURES);
+          klass.setPhantomClass();
+        }
+      }
+    }
+
+    Type type(String name) {
+      if (name == null) {
+        return null;
+      }
+      int dimensions = 0;
+      while (name.endsWith("[]")) {
+        name = name.substring(0, name.length() - 2);
+        dimensions++;
+      }
+      Type base;
+      switch (name) {
+        case "boolean":
+          base = BooleanType.v();
+          break;
+        case "byte":
+          base = ByteType.v();
+          break;
+        case "char":
+          base = CharType.v();
+          break;
+        case "short":
+          base = ShortType.v();
+          break;
+        case "int":
+          base = IntType.v();
+          break;
+        case "long":
+          base = LongType.v();
+          break;
+        case "float":
+          base = FloatType.v();
+          break;
+        case "double":
+          base = DoubleType.v();
+          break;
+        case "void":
+          base = VoidType.v();
+          break;
+        case "null_type":
+          base = NullType.v();
+          break;
+        default:
+          base = RefType.v(name);
+          break;
+      }
+      return dimensions == 0 ? base : ArrayType.v(base, dimensions);
+    }
+
+    SootClass klass(int i) {
+      String name = string(i);
+      return name == null ? null : Scene.v().getSootClass(name);
+    }
+
+    SootMethod method(int i) {
+      return i < 0 ? null : methods[i];
+    }
+
+    SootField field(int i) {
+      return i < 0 ? null : fields[i];
+    }
+
+    Local local(int i) {
+      if (i < 0) {
+        return null;
+      }
+      Local l = locals[i];
+      if (l == null) {
+        SootMethod m = method(localWords.get(3 * i));
+        String name = string(localWords.get(3 * i + 1));
+        if (m != null && m.hasActiveBody()) {
+          Map<String, Local> byName = bodyLocals.get(m);
+          if (byName == null) {
+            byName = Maps.newHashMap();
+            for (Local local : m.getActiveBody().getLocals()) {
+              if (!byName.containsKey(local.getName())) {
+                byName.put(local.getName(), local);
+              }
+            }
+            bodyLocals.put(m, byName);
+          }
+          l = byName.get(name);
+        }
+        if (l == null) {
+          // A local the flowgraph made up, or one of a body that is gone
+          l = Jimple.v().newLocal(name, type(string(localWords.get(3 * i + 2))));
+        }
+        locals[i] = l;
+      }
+      return l;
+    }
+
+    Stmt stmt(int i) {
+      if (i < 0) {
+        return null;
+      }
+      Stmt s = stmts[i];
+      if (s == null) {
+        SootMethod m = method(stmtWords.get(2 * i));
+        int index = stmtWords.get(2 * i + 1);
+        if (m == null || !m.hasActiveBody()) {
+          unresolved++;
+          return null;
+        }
+        Unit[] units = bodyUnits.get(m);
+        if (units == null) {
+          units = m.getActiveBody().getUnits().toArray(new Unit[0]);
+          bodyUnits.put(m, units);
+        }
+        if (index >= units.length) {
+          unresolved++;
+          return null;
+        }
+        s = (Stmt) units[index];
+        stmts[i] = s;
+      }
+      return s;
+    }
+
+    Value value(int i) {
+      if (i < 0) {
+        return null;
+      }
+      Value v = values[i];
+      if (v != null) {
+        return v;
+      }
+      int kind = valueWords.get(3 * i);
+      int a = valueWords.get(3 * i + 1);
+      int b = valueWords.get(3 * i + 2);
+      long wide = ((long) a << 32) | (b & 0xFFFFFFFFL);
+      switch (kind) {
+        case V_LOCAL:
+          v = local(a);
+          break;
+        case V_USE: {
+          Stmt s = stmt(a);
+          List<ValueBox> boxes = s == null ? Collections.<ValueBox>emptyList()
+                  : s.getUseAndDefBoxes();
+          v = b < boxes.size() ? boxes.get(b).getValue() : null;
+          break;
+        }
+        case V_NEW:
+          v = Jimple.v().newNewExpr((RefType) type(string(a)));
+          break;
+        case V_INT:
+          v = IntConstant.v(a);
+          break;
+        case V_LONG:
+          v = LongConstant.v(wide);
+          break;
+        case V_FLOAT:
+          v = FloatConstant.v(Float.intBitsToFloat(a));
+          break;
+        case V_DOUBLE:
+          v = DoubleConstant.v(Double.longBitsToDouble(wide));
+          break;
+        case V_STRING:
+          v = StringConstant.v(string(a));
+          break;
+        case V_NULL:
+          v = NullConstant.v();
+          break;
+        case V_CLASS:
+          v = ClassConstant.v(string(a));
+          break;
+        default:
+          break;
+      }
+      if (v == null) {
+        unresolved++;
+      }
+      values[i] = v;
+      return v;
+    }
+
+    @SuppressWarnings("unchecked")
+    <N extends NNode> N node(int id) {
+      return id < 0 ? null : (N) order.get(id);
+    }
+
+    Set<SootMethod> methodSet(Cursor c) {
+      int size = c.next();
+      Set<SootMethod> result = Sets.newHashSetWithExpectedSize(size);
+      for (int i = 0; i < size; i++) {
+        SootMethod m = method(c.next());
+        if (m != null) {
+          result.add(m);
+        }
+      }
+      return result;
+    }
+
+    Set<Integer> intSet(Cursor c) {
+      int size = c.next();
+      Set<Integer> result = Sets.newHashSetWithExpectedSize(size);
+      for (int i = 0; i < size; i++) {
+        result.add(c.next());
+      }
+      return result;
+    }
+
+    // --- nodes
+
+    /**
+     * Creates the nodes in the order of their ids. Operation nodes are made
+     * with a scratch node at their ports, since their edges are replaced by
+     * the saved ones afterwards; so are the references between nodes.
+     */
+    void nodes() {
+      int n = nodeCount();
+      IntBuffer attributes = ints(ATTRIBUTES);
+      NVarNode scratch = new NVarNode();
+      for (int id = 0; id < n; id++) {
+        Cursor c = new Cursor(attributes, nodes.get(2 + 2 * id));
+        c.next();
+        int references = c.next();
+        c.position += references;
+        order.add(create(kind(id), c, scratch));
+      }
+      for (int id = 0; id < n; id++) {
+        Cursor c = new Cursor(attributes, nodes.get(2 + 2 * id));
+        NNode node = order.get(id);
+        node.idNode = node(c.next());
+        int[] references = new int[c.next()];
+        for (int i = 0; i < references.length; i++) {
+          references[i] = c.next();
+        }
+        resolveReferences(node, kind(id), references);
+      }
+    }
+
+    NNode create(Kind kind, Cursor c, NVarNode scratch) {
+      Pair<Stmt, SootMethod> callSite = null;
+      boolean artificial = false;
+      Type receiverType = null;
+      Type parameterType = null;
+      if (kind.isOpNode()) {
+        Stmt s = stmt(c.next());
+        SootMethod m = method(c.next());
+        if (s != null || m != null) {
+          callSite = new Pair<Stmt, SootMethod>(s, m);
+        }
+        artificial = c.next() != 0;
+        receiverType = type(string(c.next()));
+        parameterType = type(string(c.next()));
+      }
+      switch (kind) {
+        case SHARED: {
+          String name = string(c.next());
+          int nested = name.indexOf('$');
+          try {
+            // Registers the shared nodes of the class
+            Class.forName(nested < 0 ? name : name.substring(0, nested));
+          } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unknown shared node " + name, e);
+          }
+          NNode node = NodeArena.sharedNode(name);
+          if (node == null) {
+            throw new IllegalStateException("Unknown shared node " + name);
+          }
+          return node;
+        }
+        case VAR: {
+          NVarNode node = new NVarNode();
+          node.l = local(c.next());
+          return node;
+        }
+        case FIELD: {
+          NFieldNode node = new NFieldNode();
+          node.f = field(c.next());
+          return node;
+        }
+        case ALLOC: {
+          NAllocNode node = new NAllocNode();
+          node.e = (Expr) value(c.next());
+          return node;
+        }
+        case LISTENER_ALLOC: {
+          Expr e = (Expr) value(c.next());
+          NListenerAllocNode node = new NListenerAllocNode(klass(c.next()));
+          node.e = e;
+          return node;
+        }
+        case VIEW_ALLOC: {
+          NViewAllocNode node = new NViewAllocNode();
+          node.e = (Expr) value(c.next());
+          node.c = klass(c.next());
+          return node;
+        }
+        case STRING_BUILDER: {
+          Expr e = (Expr) value(c.next());
+          Stmt s = stmt(c.next());
+          NStringBuilderNode node = new NStringBuilderNode(e, s, method(c.next()));
+          node.possibleValues.clear();
+          int possibleValues = c.next();
+          for (int i = 0; i < possibleValues; i++) {
+            node.possibleValues.add(string(c.next()));
+          }
+          return node;
+        }
+        case ACTIVITY: {
+          NActivityNode node = new NActivityNode();
+          node.c = klass(c.next());
+          return node;
+        }
+        case DIALOG: {
+          SootClass dialogClass = klass(c.next());
+          Stmt s = stmt(c.next());
+          NDialogNode node = new NDialogNode(dialogClass, s, method(c.next()));
+          node.cancelable = c.next() != 0;
+          return node;
+        }
+        case INFL: {
+          NInflNode node = new NInflNode();
+          node.c = klass(c.next());
+          node.fragment = klass(c.next());
+          return node;
+        }
+        case MENU_ITEM_INFL: {
+          NMenuItemInflNode node = new NMenuItemInflNode();
+          node.c = klass(c.next());
+          node.fragment = klass(c.next());
+          int attrs = c.next();
+          if (attrs >= 0) {
+            node.attrs = Maps.newHashMap();
+            for (int i = 0; i < attrs; i++) {
+              String key = string(c.next());
+              node.attrs.put(key, string(c.next()));
+            }
+          }
+          return node;
+        }
+        case OPTIONS_MENU: {
+          NOptionsMenuNode node = new NOptionsMenuNode();
+          node.ownerActivity = klass(c.next());
+          return node;
+        }
+        case CONTEXT_MENU:
+          return new NContextMenuNode();
+        case FRAGMENT: {
+          NFragmentNode node = new NFragmentNode();
+          node.ownerActivity = klass(c.next());
+          node.fragmentClass = klass(c.next());
+          node.parentLayoutId = c.nextInteger();
+          return node;
+        }
+        case PREFERENCE: {
+          NPreferenceNode node = new NPreferenceNode();
+          node.ownerActivity = klass(c.next());
+          node.c = klass(c.next());
+          node.resourceId = c.nextInteger();
+          return node;
+        }
+        case SERVICE: {
+          NServiceNode node = new NServiceNode();
+          node.c = klass(c.next());
+          return node;
+        }
+        case TAB_SPEC: {
+          SootClass tabSpecClass = klass(c.next());
+          Stmt s = stmt(c.next());
+          return new NTabSpecNode(tabSpecClass, s, method(c.next()));
+        }
+        case SNACKBAR: {
+          NSnackbarNode node = new NSnackbarNode();
+          node.listenerClass = klass(c.next());
+          return node;
+        }
+        case TOAST:
+          return new NToastNode();
+        case STRING_CONST: {
+          NStringConstantNode node = new NStringConstantNode();
+          node.value = string(c.next());
+          return node;
+        }
+        case INT_CONST: {
+          NIntConstantNode node = new NIntConstantNode();
+          node.value = c.nextInteger();
+          return node;
+        }
+        case LONG_CONST: {
+          NLongConstantNode node = new NLongConstantNode();
+          boolean present = c.next() != 0;
+          long value = c.nextLong();
+          node.value = present ? value : null;
+          return node;
+        }
+        case LAYOUT_ID:
+          return new NLayoutIdNode(c.next());
+        case MENU_ID:
+          return new NMenuIdNode(c.next());
+        case WIDGET_ID:
+          return new NWidgetIdNode(c.next());
+        case STRING_ID:
+          return new NStringIdNode(c.next());
+        case ANONYMOUS_ID:
+          return new NAnonymousIdNode(c.next());
+        case PREFERENCE_ID: {
+          NPreferenceIdNode node = new NPreferenceIdNode(c.next());
+          node.prefKey = string(c.next());
+          return node;
+        }
+        case PREFERENCE_KEY:
+          return new NPreferenceKeyNode(string(c.next()));
+        case CONTENT:
+          return new NContentNode();
+        case PERMISSION: {
+          SootMethod context = method(c.next());
+          Stmt s = stmt(c.next());
+          String sig = string(c.next());
+          return new PermissionNode(context, s, sig, c.nextInteger());
+        }
+        default:
+          break;
+      }
+
+      NOpNode op;
+      switch (kind) {
+        case ADD_VIEW1:
+          op = new NAddView1OpNode(scratch, scratch, callSite, artificial);
+          break;
+        case ADD_VIEW2:
+          op = new NAddView2OpNode(scratch, scratch, callSite, artificial);
+          break;
+        case FIND_PREFERENCE:
+          op = new NFindPreferenceOpNode(scratch, scratch, scratch, callSite, artificial);
+          break;
+        case FIND_VIEW1: {
+          int type = c.next();
+          op = new NFindView1OpNode(scratch, scratch, scratch, callSite,
+                  type < 0 ? null : FindView1Type.values()[type], artificial);
+          break;
+        }
+        case FIND_VIEW2:
+          op = new NFindView2OpNode(scratch, scratch, scratch, callSite, artificial);
+          break;
+        case FIND_VIEW3: {
+          int type = c.next();
+          op = new NFindView3OpNode(scratch, scratch, callSite,
+                  type < 0 ? null : FindView3Type.values()[type], artificial);
+          break;
+        }
+        case FRAGMENT_TRANSACTION: {
+          Value fragment = value(c.next());
+          op = new NFragmentTransactionOpNode(callSite, fragment, value(c.next()), artificial);
+          break;
+        }
+        case INFLATE1:
+          op = new NInflate1OpNode(scratch, scratch, callSite, artificial);
+          break;
+        case INFLATE2:
+          op = new NInflate2OpNode(scratch, scratch, callSite, artificial);
+          break;
+        case MENU_INFLATE:
+          op = new NMenuInflateOpNode(scratch, scratch, callSite, artificial);
+          break;
+        case PREFERENCES_FROM_RESOURCE: {
+          Value preference = value(c.next());
+          op = new NPreferencesFromResourceOpNode(callSite, preference, c.nextInteger(),
+                  artificial);
+          break;
+        }
+        case SET_ID:
+          op = new NSetIdOpNode(scratch, scratch, callSite, artificial);
+          break;
+        case SET_IMAGE_RESOURCE:
+          op = new NSetImageResourceOpNode(scratch, scratch, callSite);
+          break;
+        case SET_LISTENER: {
+          boolean isContextMenuSetListener = c.next() != 0;
+          String eventType = string(c.next());
+          Set<SootMethod> prototypes = methodSet(c);
+          ListenerInstance listener = new ListenerInstance(null, null, prototypes,
+                  eventType == null ? null : EventType.valueOf(eventType));
+          listener.recordInlineEventHandler(methodSet(c));
+          listener.recordEventHandlers(methodSet(c));
+          op = new NSetListenerOpNode(listener, scratch, scratch, callSite,
+                  isContextMenuSetListener, artificial);
+          break;
+        }
+        case SET_TEXT: {
+          int type = c.next();
+          op = new NSetTextOpNode(scratch, scratch,
+                  type < 0 ? null : NSetTextOpNode.Type.values()[type], callSite);
+          break;
+        }
+        case SNACKBAR_MAKE:
+          op = new NSnackbarMakeOpNode(scratch, callSite, artificial);
+          break;
+        case SNACKBAR_SET_ACTION:
+          op = new NSnackbarSetActionOpNode(scratch, scratch, callSite, artificial);
+          break;
+        case TOAST_MAKE_TEXT:
+          op = new NToastMakeTextOpNode(scratch, callSite, artificial);
+          break;
+        case STRING_BUILDER_APPEND:
+          op = new NStringBuilderAppendOpNode(scratch, scratch, callSite);
+          break;
+        default:
+          throw new IllegalStateException("Unknown node kind " + kind);
+      }
+      op.artificial = artificial;
+      op.receiverType = receiverType;
+      op.parameterType = parameterType;
+      return op;
+    }
+
+    void resolveReferences(NNode node, Kind kind, int[] references) {
+      switch (kind) {
+        case CONTEXT_MENU: {
+          NContextMenuNode menu = (NContextMenuNode) node;
+          menu.menuParameterNode = node(references[0]);
+          for (int i = 1; i < references.length; i++) {
+            menu.varNodesForRegisteredViews.add(this.<NVarNode>node(references[i]));
+          }
+          break;
+        }
+        case SNACKBAR_MAKE:
+          ((NSnackbarMakeOpNode) node).textNode = node(references[0]);
+          break;
+        case SNACKBAR_SET_ACTION:
+          ((NSnackbarSetActionOpNode) node).textNode = node(references[0]);
+          ((NSnackbarSetActionOpNode) node).listenerNode = node(references[1]);
+          break;
+        case TOAST_MAKE_TEXT:
+          ((NToastMakeTextOpNode) node).textNode = node(references[0]);
+          break;
+        case STRING_BUILDER_APPEND:
+          ((NStringBuilderAppendOpNode) node).bldrNode = node(references[0]);
+          ((NStringBuilderAppendOpNode) node).strNode = node(references[1]);
+          break;
+        case CONTENT:
+          ((NContentNode) node).allocNode = node(references[0]);
+          break;
+        default:
+          break;
+      }
+    }
+
+    int[] edgeArray(int from, int lengthIndex) {
+      int n = nodeCount();
+      int length;
+      if (lengthIndex == 0) {
+        length = n + 1;
+      } else {
+        // The targets follow their offsets, whose last entry is their number
+        length = edges.get(from - 1);
+      }
+      int[] array = new int[length];
+      for (int i = 0; i < length; i++) {
+        array[i] = edges.get(from + i);
+      }
+      return array;
+    }
+
+    void parents() {
+      IntBuffer parents = ints(PARENTS);
+      int n = nodeCount();
+      for (int id = 0; id < n; id++) {
+        NNode node = order.get(id);
+        for (int k = parents.get(id); k < parents.get(id + 1); k++) {
+          node.addParent(order.get(parents.get(n + 1 + k)));
+        }
+      }
+    }
+
+    void labels() {
+      IntBuffer labels = ints(LABELS);
+      for (int i = 0; i + 2 < labels.limit(); i += 3) {
+        NNode node = order.get(labels.get(i));
+        NNode target = order.get(labels.get(i + 2));
+        switch (labels.get(i + 1)) {
+          case TEXT:
+            node.addTextNode(target);
+            break;
+          case HINT:
+            node.addHintNode(target);
+            break;
+          case TOOLTIP:
+            node.addTooltipNode(target);
+            break;
+          case CONTENT_DESCRIPTION:
+            node.addContentDescriptionNode(target);
+            break;
+          default:
+            node.addImageResourceNode(target);
+            break;
+        }
+      }
+    }
+
+    /**
+     * The node maps, in the order of Writer.tables(), after the id sets.
+     */
+    void tables(Flowgraph fg, Cursor c) {
+      int size = c.next();
+      for (int i = 0; i < size; i++) {
+        fg.allNNodes.add(node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        Local l = local(c.next());
+        fg.allNVarNodes.put(l, this.<NVarNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootField f = field(c.next());
+        NFieldNode node = node(c.next());
+        if (f != null) {
+          fg.allNFieldNodes.put(f, node);
+        }
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        Value e = value(c.next());
+        NAllocNode node = node(c.next());
+        if (e != null) {
+          fg.allNAllocNodes.put((Expr) e, node);
+        }
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootClass klass = klass(c.next());
+        fg.allNActivityNodes.put(klass, this.<NActivityNode>node(c.next()));
+      }
+      readIntNodeMap(fg.allNLayoutIdNodes, c);
+      readIntNodeMap(fg.allNMenuIdNodes, c);
+      readIntNodeMap(fg.allNWidgetIdNodes, c);
+      readIntNodeMap(fg.allNStringIdNodes, c);
+      readIntNodeMap(fg.allNIntegerConstantNodes, c);
+      readIntNodeMap(fg.allNPreferenceIdNodeNodes, c);
+      readIntNodeMap(fg.allNPreferenceHeaderIdNodeNodes, c);
+      readIntNodeMap(fg.anonymousIdNodes, c);
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        Stmt s = stmt(c.next());
+        NDialogNode node = node(c.next());
+        if (s != null) {
+          fg.allNDialogNodes.put(s, node);
+        }
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        String s = string(c.next());
+        fg.allNStringConstantNodes.put(s, this.<NStringConstantNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        long value = c.nextLong();
+        fg.allNLongConstantNodes.put(value, this.<NLongConstantNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        String key = string(c.next());
+        fg.allPreferenceKeyNodes.put(key, this.<NPreferenceKeyNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootClass klass = klass(c.next());
+        fg.allNServiceNodes.put(klass, this.<NServiceNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        fg.allMenuItems.add(this.<NInflNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        Value e = value(c.next());
+        NStringBuilderNode node = node(c.next());
+        if (e != null) {
+          fg.allStringBuilderAllocNodes.put((Expr) e, node);
+        }
+      }
+
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootClass klass = klass(c.next());
+        fg.activityClassToPreference.put(klass, this.<NPreferenceNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootClass klass = klass(c.next());
+        fg.activityClassToOptionsMenu.put(klass, this.<NOptionsMenuNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootClass klass = klass(c.next());
+        Set<NFragmentNode> fragments = Sets.newHashSet();
+        int count = c.next();
+        for (int k = 0; k < count; k++) {
+          fragments.add(this.<NFragmentNode>node(c.next()));
+        }
+        fg.activityClassToFragments.put(klass, fragments);
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootMethod fake = method(c.next());
+        fg.fakeHandlerToRealHandler.put(fake, method(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        SootMethod m = method(c.next());
+        fg.itemSelectedAndFakeVarNodes.put(m, this.<NVarNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        NVarNode var = node(c.next());
+        fg.menuVarNodeToContextMenus.put(var, this.<NContextMenuNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        NContextMenuNode menu = node(c.next());
+        fg.contextMenuToOnCreateContextMenus.put(menu, method(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        fg.alreadyProcessedSetListeners.add(this.<NSetListenerOpNode>node(c.next()));
+      }
+      for (Map<Stmt, Local> map : Arrays.asList(fg.explicitShowContextMenuCallAndViewLocals,
+              fg.explicitShowOptionsMenuCallAndActivityLocals)) {
+        size = c.next();
+        for (int i = 0; i < size; i++) {
+          Stmt s = stmt(c.next());
+          Local l = local(c.next());
+          if (s != null) {
+            map.put(s, l);
+          }
+        }
+      }
+      for (Map<NDialogNode, Set<Stmt>> map : Arrays.asList(fg.allDialogAndShows,
+              fg.allDialogAndDismisses)) {
+        size = c.next();
+        for (int i = 0; i < size; i++) {
+          NDialogNode dialog = node(c.next());
+          Set<Stmt> stmtSet = Sets.newHashSet();
+          int count = c.next();
+          for (int k = 0; k < count; k++) {
+            Stmt s = stmt(c.next());
+            if (s != null) {
+              stmtSet.add(s);
+            }
+          }
+          map.put(dialog, stmtSet);
+        }
+      }
+      for (Map<NDialogNode, Set<SootMethod>> map : Arrays.asList(fg.allDialogLifecycleMethods,
+              fg.allDialogNonLifecycleMethods)) {
+        size = c.next();
+        for (int i = 0; i < size; i++) {
+          NDialogNode dialog = node(c.next());
+          map.put(dialog, methodSet(c));
+        }
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        fg.usedPermissionSet.add(this.<PermissionNode>node(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        fg.requestPermissionStmtSet.add(string(c.next()));
+      }
+      size = c.next();
+      for (int i = 0; i < size; i++) {
+        NAllocNode alloc = node(c.next());
+        fg.allNContentNodes.put(alloc, this.<NContentNode>node(c.next()));
+      }
+    }
+
+    private <N extends NNode> void readIntNodeMap(IntNodeMap<N> map, Cursor c) {
+      int size = c.next();
+      for (int i = 0; i < size; i++) {
+        int key = c.next();
+        map.put(key, this.<N>node(c.next()));
+      }
+    }
+  }
+
+  /**
+   * An InputStream over a (mapped) ByteBuffer.
+   */
+  private static final class ByteBufferInputStream extends java.io.InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, n);
+      return n;
+    }
+  }
+}
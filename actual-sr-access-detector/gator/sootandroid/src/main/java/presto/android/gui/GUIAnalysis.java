@@ -12,8 +12,12 @@ import com.google.common.collect.Sets;
 import presto.android.Configs;
 import presto.android.Hierarchy;
 import presto.android.Logger;
+import presto.android.MemoryGovernor;
+import presto.android.Metrics;
 import presto.android.xml.XMLParser;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -51,6 +55,10 @@ public class GUIAnalysis {
     return instance;
   }
 
+  public static synchronized void reset() {
+    instance = null;
+  }
+
   /**
    * Populate ID containers with information from XML files, and print out some
    * statistics as a sanity check. The ID containers are used in the
@@ -109,11 +117,49 @@ public class GUIAnalysis {
     // 1. Build flow graph
     flowgraph = new Flowgraph(hier, allLayoutIds, allMenuIds, allWidgetIds,
             allStringIds, allPreferenceIds, allPreferenceHeaderIds, allPreferenceKeys);
+    Metrics.Phase phase = Metrics.v().begin("flowgraph.build");
     flowgraph.build();
+    phase.end();
+    MemoryGovernor.v().checkpoint();
+    if (!Configs.flowgraphSnapshot.isEmpty()) {
+      try {
+        FlowgraphSnapshot.write(flowgraph, new File(Configs.flowgraphSnapshot));
+      } catch (IOException e) {
+        Logger.warn(this.getClass().getSimpleName(),
+                "Cannot write " + Configs.flowgraphSnapshot + ": " + e.getMessage());
+      }
+    }
+
+    solveAndRunClients(startTime);
+  }
+
+  /**
+   * Solves the flowgraph of a FlowgraphSnapshot and runs the clients on it,
+   * like run() does after building the flowgraph.
+   */
+  public static void replay(File snapshot) throws IOException {
+    long startTime = System.nanoTime();
+    Flowgraph flowgraph = FlowgraphSnapshot.open(snapshot).load();
+    GUIAnalysis analysis = v();
+    analysis.flowgraph = flowgraph;
+    analysis.allLayoutIds = flowgraph.allLayoutIds;
+    analysis.allMenuIds = flowgraph.allMenuIds;
+    analysis.allWidgetIds = flowgraph.allWidgetIds;
+    analysis.allStringIds = flowgraph.allStringIds;
+    analysis.allPreferenceIds = flowgraph.allPreferenceIds;
+    analysis.allPreferenceHeaderIds = flowgraph.allPreferenceHeaderIds;
+    analysis.allPreferenceKeys = flowgraph.allPreferenceKeys;
+    analysis.solveAndRunClients(startTime);
+  }
 
+  // Steps 2 to 5 of run()
+  private void solveAndRunClients(long startTime) {
     // 2. Fix-point computation
     fixpointSolver = new FixpointSolver(flowgraph);
+    Metrics.Phase phase = Metrics.v().begin("fixpoint.solve");
     fixpointSolver.solve();
+    phase.end();
+    MemoryGovernor.v().checkpoint();
 
     // 3. Variable value query interface
     variableValueQueryInterface = DemandVariableValueQuery.v(flowgraph, fixpointSolver);
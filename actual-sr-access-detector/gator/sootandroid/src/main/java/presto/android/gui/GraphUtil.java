@@ -15,8 +15,10 @@ import presto.android.gui.graph.NNode;
 import presto.android.gui.graph.NOpNode;
 import soot.toolkits.scalar.Pair;
 
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 
 public class GraphUtil {
@@ -40,27 +42,22 @@ public class GraphUtil {
   }
 
   public void findReachableNodes(NNode start, Set<NNode> reachableNodes) {
-    LinkedList<NNode> worklist = Lists.newLinkedList();
-    worklist.add(start);
-    reachableNodes.add(start);
-    while (!worklist.isEmpty()) {
-      NNode n = worklist.remove();
-      if (n == null) {
-        continue;
-      }
-      for (NNode s : n.getSuccessors()) {
-        if (reachableNodes.contains(s)) {
-          continue;
-        }
-        if (!(s instanceof NOpNode)) {
-          worklist.add(s);
-        }
-        reachableNodes.add(s);
-        if (verbose) {
-          Logger.verb(this.getClass().getSimpleName(), "[findReachableNodes] Edge: " + n + " --> " + s);
-        }
-      }
+    if (start == null) {
+      reachableNodes.add(null);
+      return;
     }
+    Reachability.v().forward(start);
+    Reachability.v().addTo(reachableNodes);
+  }
+
+  /**
+   * reachableNodes() of all sources in one pass. The result has, for every
+   * node id, the bits i of the sources.get(i) that reach the node, or null.
+   * See Reachability.reachingSources().
+   */
+  public BitSet[] reachingSources(List<? extends NNode> sources,
+                                  Collection<? extends NNode> targets) {
+    return Reachability.v().reachingSources(sources, targets);
   }
 
   // ///
@@ -72,55 +69,15 @@ public class GraphUtil {
   }
 
   public void findBackwardReachableNodes(NNode start, Set<NNode> reachableNodes) {
-    LinkedList<NNode> worklist = Lists.newLinkedList();
-    worklist.add(start);
-    reachableNodes.add(start);
-    while (!worklist.isEmpty()) {
-      NNode n = worklist.remove();
-      for (NNode s : n.getPredecessors()) {
-        if (reachableNodes.contains(s)) {
-          continue;
-        }
-        if (verbose) {
-          Logger.verb(this.getClass().getSimpleName(), "[findReachableNodes] Edge: " + n + " --> " + s);
-        }
-        if (s instanceof NOpNode) {
-          if (!(start instanceof NOpNode)) {
-            reachableNodes.add(s);
-          }
-        } else {
-          worklist.add(s);
-          reachableNodes.add(s);
-        }
-      }
-    }
+    // op nodes are not followed; they are included unless start is one
+    Reachability.v().backward(start, true, !(start instanceof NOpNode));
+    Reachability.v().addTo(reachableNodes);
   }
 
   public Set<NNode> allBackwardReachableNodes(NNode n) {
     Set<NNode> res = Sets.newHashSet();
-    findBackwardReachableNodes(n, res, false);
-    return res;
-  }
-
-  private void findBackwardReachableNodes(NNode start, Set<NNode> reachableNodes, boolean stopAtOpNode) {
-    LinkedList<NNode> worklist = Lists.newLinkedList();
-    worklist.add(start);
-    reachableNodes.add(start);
-    while (!worklist.isEmpty()) {
-      NNode n = worklist.remove();
-      for (NNode s : n.getPredecessors()) {
-        if (reachableNodes.contains(s)) {
-          continue;
-        }
-        Logger.trace("findBackwardReachableNodes", "Edge: " + n + " --> " + s);
-        if (s instanceof NOpNode && stopAtOpNode) {
-          reachableNodes.add(s);
-        } else {
-          worklist.add(s);
-          reachableNodes.add(s);
-        }
-      }
-    }
+    Reachability.v().backward(n, false, true);
+    return Reachability.v().addTo(res);
   }
 
   // ///
@@ -131,19 +88,8 @@ public class GraphUtil {
   }
 
   public void findDescendantNodes(NNode start, Set<NNode> descendantNodes) {
-    LinkedList<NNode> worklist = Lists.newLinkedList();
-    worklist.add(start);
-    descendantNodes.add(start);
-    while (!worklist.isEmpty()) {
-      NNode n = worklist.remove();
-      for (NNode s : n.getChildren()) {
-        if (descendantNodes.contains(s)) {
-          continue;
-        }
-        worklist.add(s);
-        descendantNodes.add(s);
-      }
-    }
+    Reachability.v().descendants(start);
+    Reachability.v().addTo(descendantNodes);
   }
 
   // ///
@@ -154,20 +100,16 @@ public class GraphUtil {
   }
 
   public void findAncestorNodes(NNode start, Set<NNode> ancestorNodes) {
-    LinkedList<NNode> worklist = Lists.newLinkedList();
-    worklist.add(start);
-    ancestorNodes.add(start);
-    while (!worklist.isEmpty()) {
-      NNode n = worklist.remove();
-      for (Iterator<NNode> iter = n.getParents(); iter.hasNext(); ) {
-        NNode s = iter.next();
-        if (ancestorNodes.contains(s)) {
-          continue;
-        }
-        worklist.add(s);
-        ancestorNodes.add(s);
-      }
-    }
+    Reachability.v().ancestors(start);
+    Reachability.v().addTo(ancestorNodes);
+  }
+
+  /**
+   * The union of ancestorNodes() of all starts, in one walk.
+   */
+  public void findAncestorNodes(Collection<? extends NNode> starts, Set<NNode> ancestorNodes) {
+    Reachability.v().ancestors(starts);
+    Reachability.v().addTo(ancestorNodes);
   }
 
   public void dumpParentChildTree(NNode root) {
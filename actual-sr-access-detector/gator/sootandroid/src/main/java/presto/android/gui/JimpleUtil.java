@@ -50,6 +50,10 @@ public class JimpleUtil implements MethodNames {
     return v(Hierarchy.v());
   }
 
+  public static synchronized void reset() {
+    instance = null;
+  }
+
   // /////////////////////////////////////////
   // General Jimple utils
   // Assume "l = ..."
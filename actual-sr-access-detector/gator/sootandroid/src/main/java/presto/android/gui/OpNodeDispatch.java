@@ -0,0 +1,96 @@
+/*
+ * OpNodeDispatch.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui;
+
+import com.google.common.collect.Maps;
+import soot.Scene;
+import soot.SootMethod;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index from callees to the kinds of operation nodes a call of them may
+ * create. Each kind is registered with the subsignatures, signatures or
+ * method names its recognizer compares the callee against, so the index only
+ * narrows down the recognizers to try: they still check the receiver, the
+ * declaring class and the arguments themselves.
+ *
+ * candidates() returns the kinds in the order of the enum, which is the
+ * order in which the recognizers are tried, and is memoized per callee. A
+ * call whose callee has no candidate cannot create an operation node.
+ */
+public class OpNodeDispatch<K extends Enum<K>> {
+  private final Class<K> kinds;
+  private final Map<String, EnumSet<K>> bySubsig = Maps.newHashMap();
+  private final Map<String, EnumSet<K>> byName = Maps.newHashMap();
+  private final Map<SootMethod, Set<K>> byCallee = Maps.newHashMap();
+
+  public OpNodeDispatch(Class<K> kinds) {
+    this.kinds = kinds;
+  }
+
+  public OpNodeDispatch<K> subsig(K kind, String... subsigs) {
+    for (String subsig : subsigs) {
+      add(bySubsig, subsig, kind);
+    }
+    return this;
+  }
+
+  public OpNodeDispatch<K> subsig(K kind, Iterable<String> subsigs) {
+    for (String subsig : subsigs) {
+      add(bySubsig, subsig, kind);
+    }
+    return this;
+  }
+
+  public OpNodeDispatch<K> signature(K kind, String... signatures) {
+    for (String signature : signatures) {
+      add(bySubsig, Scene.v().signatureToSubsignature(signature), kind);
+    }
+    return this;
+  }
+
+  public OpNodeDispatch<K> name(K kind, String... names) {
+    for (String name : names) {
+      add(byName, name, kind);
+    }
+    return this;
+  }
+
+  private void add(Map<String, EnumSet<K>> index, String key, K kind) {
+    EnumSet<K> set = index.get(key);
+    if (set == null) {
+      set = EnumSet.noneOf(kinds);
+      index.put(key, set);
+    }
+    set.add(kind);
+    byCallee.clear();
+  }
+
+  public Set<K> candidates(SootMethod callee) {
+    Set<K> result = byCallee.get(callee);
+    if (result == null) {
+      EnumSet<K> set = EnumSet.noneOf(kinds);
+      EnumSet<K> matched = bySubsig.get(callee.getSubSignature());
+      if (matched != null) {
+        set.addAll(matched);
+      }
+      matched = byName.get(callee.getName());
+      if (matched != null) {
+        set.addAll(matched);
+      }
+      result = set.isEmpty() ? Collections.<K>emptySet() : set;
+      byCallee.put(callee, result);
+    }
+    return result;
+  }
+}
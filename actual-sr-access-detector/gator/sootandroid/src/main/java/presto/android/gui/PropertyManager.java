@@ -32,6 +32,10 @@ public class PropertyManager {
     return theInstance;
   }
 
+  public static synchronized void reset() {
+    theInstance = null;
+  }
+
   // === public interfaces
 
   /*
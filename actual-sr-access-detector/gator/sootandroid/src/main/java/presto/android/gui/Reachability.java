@@ -0,0 +1,474 @@
+/*
+ * Reachability.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui;
+
+import presto.android.gui.graph.FrozenEdges;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.graph.NodeArena;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The traversals behind GraphUtil, on node ids. A query visits nodes with an
+ * int[] worklist and marks them in a visited array stamped with the number
+ * of the query, so that nothing is allocated or cleared per query once the
+ * arrays have grown to the size of the NodeArena. Whether a node is an
+ * NOpNode comes from NodeArena.kind().
+ *
+ * A query leaves its result in the worklist: size() nodes, id(0) up to
+ * id(size() - 1), in the order they were reached. The next query on the
+ * same engine overwrites it. Each thread has its own engine, see v().
+ */
+public class Reachability {
+  private static final ThreadLocal<Reachability> engines = new ThreadLocal<Reachability>() {
+    @Override
+    protected Reachability initialValue() {
+      return new Reachability();
+    }
+  };
+
+  // Directions of a traversal
+  private static final int SUCCESSORS = 0;
+  private static final int PREDECESSORS = 1;
+  private static final int CHILDREN = 2;
+  private static final int PARENTS = 3;
+
+  private int[] stamps = new int[1024];
+  private int epoch;
+  // The worklist of the last query, which is its result
+  private int[] worklist = new int[1024];
+  private int size;
+  // Neighbors of one node when the edges are not frozen
+  private int[] neighbors = new int[16];
+
+  private NodeArena arena;
+  private FrozenEdges edges;
+
+  private Reachability() {
+  }
+
+  /**
+   * The engine of the calling thread.
+   */
+  public static Reachability v() {
+    return engines.get();
+  }
+
+  /**
+   * Starts a query over the current arena.
+   */
+  private void begin() {
+    arena = NodeArena.v();
+    edges = arena.frozenEdges();
+    int n = arena.size();
+    if (stamps.length < n) {
+      stamps = new int[Math.max(n, stamps.length * 2)];
+      epoch = 0;
+    }
+    if (++epoch == Integer.MAX_VALUE) {
+      Arrays.fill(stamps, 0);
+      epoch = 1;
+    }
+    size = 0;
+  }
+
+  private boolean visit(int id) {
+    if (id >= stamps.length) {
+      // A node created during the query
+      stamps = Arrays.copyOf(stamps, Math.max(id + 1, stamps.length * 2));
+    }
+    if (stamps[id] == epoch) {
+      return false;
+    }
+    stamps[id] = epoch;
+    return true;
+  }
+
+  private void push(int id) {
+    if (size == worklist.length) {
+      worklist = Arrays.copyOf(worklist, size * 2);
+    }
+    worklist[size++] = id;
+  }
+
+  /**
+   * Copies the neighbors of node id in the given direction into neighbors,
+   * and returns their number.
+   */
+  private int neighbors(int id, int direction) {
+    if (edges != null && direction == SUCCESSORS) {
+      int degree = edges.outDegree(id);
+      ensureNeighbors(degree);
+      for (int k = 0; k < degree; k++) {
+        neighbors[k] = edges.successor(id, k);
+      }
+      return degree;
+    }
+    if (edges != null && direction == PREDECESSORS) {
+      int degree = edges.inDegree(id);
+      ensureNeighbors(degree);
+      for (int k = 0; k < degree; k++) {
+        neighbors[k] = edges.predecessor(id, k);
+      }
+      return degree;
+    }
+    NNode node = arena.get(id);
+    Collection<NNode> nodes;
+    switch (direction) {
+      case SUCCESSORS:
+        nodes = node.getSuccessors();
+        break;
+      case PREDECESSORS:
+        nodes = node.getPredecessors();
+        break;
+      case CHILDREN:
+        nodes = node.getChildren();
+        break;
+      default: {
+        int count = 0;
+        for (Iterator<NNode> it = node.getParents(); it.hasNext(); ) {
+          ensureNeighbors(count + 1);
+          neighbors[count++] = it.next().id;
+        }
+        return count;
+      }
+    }
+    ensureNeighbors(nodes.size());
+    int count = 0;
+    for (NNode s : nodes) {
+      neighbors[count++] = s.id;
+    }
+    return count;
+  }
+
+  // Keeps the neighbors copied so far, as the parents are copied one by one
+  private void ensureNeighbors(int degree) {
+    if (neighbors.length < degree) {
+      neighbors = Arrays.copyOf(neighbors, Math.max(degree, neighbors.length * 2));
+    }
+  }
+
+  /**
+   * Breadth-first from the nodes already pushed, the starts. Other op nodes
+   * are followed only if followOpNodes; if not, they are kept in the result
+   * only if includeOpNodes.
+   */
+  private int sweep(int direction, boolean followOpNodes, boolean includeOpNodes) {
+    int starts = size;
+    int head = 0;
+    while (head < size) {
+      int n = worklist[head++];
+      if (!followOpNodes && head > starts && arena.isOpNode(n)) {
+        continue;
+      }
+      int degree = neighbors(n, direction);
+      for (int k = 0; k < degree; k++) {
+        int s = neighbors[k];
+        if (!followOpNodes && !includeOpNodes && arena.isOpNode(s)) {
+          continue;
+        }
+        if (visit(s)) {
+          push(s);
+        }
+      }
+    }
+    return size;
+  }
+
+  private void start(NNode start) {
+    visit(start.id);
+    push(start.id);
+  }
+
+  /**
+   * The nodes reachable from start along flow edges, start included. Op
+   * nodes are reached but not followed; see GraphUtil.reachableNodes().
+   */
+  public int forward(NNode start) {
+    begin();
+    start(start);
+    return sweep(SUCCESSORS, false, true);
+  }
+
+  /**
+   * forward() from all starts at once: the nodes reachable from any of them.
+   */
+  public int forward(Collection<? extends NNode> starts) {
+    begin();
+    for (NNode start : starts) {
+      if (visit(start.id)) {
+        push(start.id);
+      }
+    }
+    return sweep(SUCCESSORS, false, true);
+  }
+
+  /**
+   * The nodes from which start is reachable, start included. With
+   * stopAtOpNode, op nodes are not followed, and only included if
+   * includeOpNodes; see GraphUtil.backwardReachableNodes().
+   */
+  public int backward(NNode start, boolean stopAtOpNode, boolean includeOpNodes) {
+    begin();
+    start(start);
+    return sweep(PREDECESSORS, !stopAtOpNode, includeOpNodes);
+  }
+
+  /**
+   * start and the nodes below it in the parent/child hierarchy.
+   */
+  public int descendants(NNode start) {
+    begin();
+    start(start);
+    return sweep(CHILDREN, true, true);
+  }
+
+  /**
+   * start and the nodes above it in the parent/child hierarchy.
+   */
+  public int ancestors(NNode start) {
+    begin();
+    start(start);
+    return sweep(PARENTS, true, true);
+  }
+
+  /**
+   * ancestors() of all starts at once.
+   */
+  public int ancestors(Collection<? extends NNode> starts) {
+    begin();
+    for (NNode start : starts) {
+      if (visit(start.id)) {
+        push(start.id);
+      }
+    }
+    return sweep(PARENTS, true, true);
+  }
+
+  /**
+   * Number of nodes in the result of the last query.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The id of the i-th node of the result of the last query.
+   */
+  public int id(int i) {
+    return worklist[i];
+  }
+
+  /**
+   * Whether the last query reached node id.
+   */
+  public boolean reached(int id) {
+    return id < stamps.length && stamps[id] == epoch;
+  }
+
+  /**
+   * Adds the result of the last query to nodes, and returns nodes.
+   */
+  public <S extends Set<NNode>> S addTo(S nodes) {
+    for (int i = 0; i < size; i++) {
+      nodes.add(arena.get(worklist[i]));
+    }
+    return nodes;
+  }
+
+  /**
+   * forward() of all sources in one sweep. The result has, for every node
+   * id, the bits i of the sources.get(i) that reach the node, or null. With
+   * targets, only nodes from which one of the targets can be reached are
+   * filled in, which keeps the bit sets few when there are many sources.
+   * Nodes of one strongly connected component share their bit set, so the
+   * bit sets must not be modified. Leaves no result in the worklist.
+   */
+  public BitSet[] reachingSources(List<? extends NNode> sources,
+                                  Collection<? extends NNode> targets) {
+    int n = NodeArena.v().size();
+    BitSet[] reaching = new BitSet[n];
+
+    // Nodes that reach a target without passing an op node
+    boolean[] relevant = new boolean[n];
+    if (targets == null) {
+      Arrays.fill(relevant, true);
+    } else {
+      begin();
+      for (NNode target : targets) {
+        if (visit(target.id)) {
+          push(target.id);
+        }
+      }
+      sweep(PREDECESSORS, false, false);
+      for (int i = 0; i < size; i++) {
+        if (worklist[i] < n) {
+          relevant[worklist[i]] = true;
+        }
+      }
+    }
+
+    // The strongly connected components of the relevant nodes reached from
+    // the sources, numbered in reverse topological order
+    begin();
+    Components components = new Components(n, relevant);
+    for (NNode source : sources) {
+      components.search(source.id);
+    }
+
+    // The source bits, pushed along the edges in topological order: once a
+    // component is reached, all components before it have been pushed
+    BitSet[] bits = new BitSet[components.count];
+    for (int i = 0; i < sources.size(); i++) {
+      int c = components.component(sources.get(i).id);
+      if (c < 0) {
+        continue;
+      }
+      if (bits[c] == null) {
+        bits[c] = new BitSet();
+      }
+      bits[c].set(i);
+    }
+    for (int c = components.count - 1; c >= 0; c--) {
+      BitSet b = bits[c];
+      if (b == null) {
+        continue;
+      }
+      for (int m = components.first[c]; m < components.first[c + 1]; m++) {
+        int x = components.members[m];
+        reaching[x] = b;
+        if (arena.isOpNode(x)) {
+          continue;
+        }
+        int degree = neighbors(x, SUCCESSORS);
+        for (int k = 0; k < degree; k++) {
+          int t = components.component(neighbors[k]);
+          if (t < 0 || t == c) {
+            continue;
+          }
+          if (bits[t] == null) {
+            bits[t] = new BitSet();
+          }
+          bits[t].or(b);
+        }
+      }
+    }
+    return reaching;
+  }
+
+  /**
+   * Tarjan's algorithm over the flow edges between relevant nodes, without
+   * recursion. Op nodes have no outgoing edges, as they are not followed.
+   */
+  private class Components {
+    final boolean[] relevant;
+    // Depth-first number of each node, 0 if not visited yet
+    final int[] number;
+    final int[] low;
+    final int[] component;
+    // Nodes by component, those of component c from first[c]
+    final int[] members;
+    final int[] first;
+    int count;
+    int done;
+    int counter;
+
+    // Nodes visited but not yet in a component
+    final int[] stack;
+    int top;
+    // The depth-first path, with the successors still to be visited of each
+    // node on it between next[] and end[] in successors
+    final int[] path;
+    final int[] next;
+    final int[] end;
+    int depth;
+    int[] successors = new int[1024];
+
+    Components(int n, boolean[] relevant) {
+      this.relevant = relevant;
+      number = new int[n];
+      low = new int[n];
+      component = new int[n];
+      Arrays.fill(component, -1);
+      members = new int[n];
+      first = new int[n + 1];
+      stack = new int[n];
+      path = new int[n];
+      next = new int[n];
+      end = new int[n];
+    }
+
+    int component(int id) {
+      return id < component.length ? component[id] : -1;
+    }
+
+    void search(int root) {
+      if (root >= number.length || !relevant[root] || number[root] != 0) {
+        return;
+      }
+      enter(root);
+      while (depth > 0) {
+        int f = depth - 1;
+        int v = path[f];
+        if (next[f] < end[f]) {
+          int w = successors[next[f]++];
+          if (number[w] == 0) {
+            enter(w);
+          } else if (component[w] < 0) {
+            low[v] = Math.min(low[v], number[w]);
+          }
+          continue;
+        }
+        depth--;
+        if (low[v] == number[v]) {
+          int w;
+          do {
+            w = stack[--top];
+            component[w] = count;
+            members[done++] = w;
+          } while (w != v);
+          first[++count] = done;
+        }
+        if (depth > 0) {
+          int parent = path[depth - 1];
+          low[parent] = Math.min(low[parent], low[v]);
+        }
+      }
+    }
+
+    private void enter(int v) {
+      number[v] = low[v] = ++counter;
+      stack[top++] = v;
+      // The successors of v go above those of the nodes below it on the path
+      int start = depth == 0 ? 0 : end[depth - 1];
+      int length = start;
+      if (!arena.isOpNode(v)) {
+        int degree = neighbors(v, SUCCESSORS);
+        if (successors.length < start + degree) {
+          successors = Arrays.copyOf(successors, Math.max(start + degree, successors.length * 2));
+        }
+        for (int k = 0; k < degree; k++) {
+          int s = neighbors[k];
+          if (s < relevant.length && relevant[s]) {
+            successors[length++] = s;
+          }
+        }
+      }
+      path[depth] = v;
+      next[depth] = start;
+      end[depth] = length;
+      depth++;
+    }
+  }
+}
@@ -11,6 +11,8 @@ package presto.android.gui.clients;
 import org.apache.commons.io.FileUtils;
 import presto.android.Configs;
 import presto.android.Logger;
+import presto.android.Metrics;
+import presto.android.cache.ResultCache;
 import presto.android.gui.GUIAnalysisClient;
 import presto.android.gui.GUIAnalysisOutput;
 import presto.android.gui.graph.NObjectNode;
@@ -35,8 +37,12 @@ public class GUIHierarchyPrinterClient implements GUIAnalysisClient {
     guiHier = new StaticGUIHierarchy(output);
 
     PermissionBuilder permissionBuilder = new PermissionBuilder(guiHier);
+    Metrics.Phase phase = Metrics.v().begin("permission.build");
     permissionBuilder.build();
+    phase.end();
+    phase = Metrics.v().begin("permission.upFrontRequest");
     Set<NObjectNode> upFrontRequestPermissions = permissionBuilder.getUpFrontRequestPermissions();
+    phase.end();
 
     boolean showDialog = true;
     boolean printXml = false;
@@ -60,9 +66,33 @@ public class GUIHierarchyPrinterClient implements GUIAnalysisClient {
         Logger.verb(TAG, "XML file: " + file.getAbsolutePath());
         out = new PrintStream(file);
 
+        phase = Metrics.v().begin("hierarchy.dumpXML");
         guiHier.dumpXML(output, out, showDialog, permissionBuilder.permissionMaps, upFrontRequestPermissions);
+        phase.end();
         out.flush();
         out.close();
+        ResultCache.v().store(file);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Writes the output of an app without any protected API reference to the
+   * place run() would, without running the analysis.
+   */
+  public static void dumpEmptyResult() {
+    if (Configs.clientParams.contains("print2stdout")) {
+      GUIHierarchy.dumpEmptyXML(Configs.benchmarkName, System.out);
+    } else if (Configs.clientParams.contains("printXml")) {
+      try {
+        new File(Configs.pathoutfilename).mkdirs();
+        File file = new File(Configs.pathoutfilename + Configs.benchmarkName + ".xml");
+        PrintStream out = new PrintStream(file);
+        GUIHierarchy.dumpEmptyXML(Configs.benchmarkName, out);
+        out.close();
+        ResultCache.v().store(file);
       } catch (Exception e) {
         throw new RuntimeException(e);
       }
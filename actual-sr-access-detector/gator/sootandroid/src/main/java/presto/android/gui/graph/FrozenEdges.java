@@ -0,0 +1,142 @@
+/*
+ * FrozenEdges.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The flow edges of all nodes of a NodeArena in compressed sparse row form:
+ * the successors of node id are succTargets[succOffsets[id]] up to
+ * succTargets[succOffsets[id + 1] - 1], in the order of NNode.getSuccessors(),
+ * and likewise for the predecessors. Made by Flowgraph.freeze() once the
+ * flowgraph is built; iterating needs neither locks nor allocation.
+ *
+ * Edges added after the freeze (by the solver) go into a per-node overlay and
+ * come after the frozen ones; freezing again merges them. Removing an edge
+ * drops the frozen form altogether (see NodeArena.thaw()), and the callers
+ * fall back to the NNode accessors.
+ */
+public class FrozenEdges {
+  private static final int[] NONE = new int[0];
+
+  private final int frozenNodes;
+  private final int[] succOffsets;
+  private final int[] succTargets;
+  private final int[] predOffsets;
+  private final int[] predTargets;
+
+  // Edges added since the freeze, per node; replaced, never modified
+  private volatile AtomicReferenceArray<int[]> overlaySucc;
+  private volatile AtomicReferenceArray<int[]> overlayPred;
+  private int overlayEdges;
+
+  FrozenEdges(NodeArena arena) {
+    int n = arena.size();
+    frozenNodes = n;
+    succOffsets = new int[n + 1];
+    predOffsets = new int[n + 1];
+    for (int id = 0; id < n; id++) {
+      NNode node = arena.get(id);
+      synchronized (node) {
+        succOffsets[id + 1] = succOffsets[id] + size(node.succ);
+        predOffsets[id + 1] = predOffsets[id] + size(node.pred);
+      }
+    }
+    succTargets = new int[succOffsets[n]];
+    predTargets = new int[predOffsets[n]];
+    for (int id = 0; id < n; id++) {
+      NNode node = arena.get(id);
+      synchronized (node) {
+        fill(node.succ, succTargets, succOffsets[id], succOffsets[id + 1]);
+        fill(node.pred, predTargets, predOffsets[id], predOffsets[id + 1]);
+      }
+    }
+    overlaySucc = new AtomicReferenceArray<>(n);
+    overlayPred = new AtomicReferenceArray<>(n);
+  }
+
+  private static int size(ArrayList<NNode> nodes) {
+    return nodes == null ? 0 : nodes.size();
+  }
+
+  private static void fill(ArrayList<NNode> nodes, int[] targets, int from, int to) {
+    for (int i = from; i < to; i++) {
+      targets[i] = nodes.get(i - from).id;
+    }
+  }
+
+  public int outDegree(int id) {
+    int frozen = id < frozenNodes ? succOffsets[id + 1] - succOffsets[id] : 0;
+    return frozen + overlay(overlaySucc, id).length;
+  }
+
+  /**
+   * The id of the k-th successor of node id, 0 <= k < outDegree(id).
+   */
+  public int successor(int id, int k) {
+    int frozen = id < frozenNodes ? succOffsets[id + 1] - succOffsets[id] : 0;
+    return k < frozen ? succTargets[succOffsets[id] + k] : overlay(overlaySucc, id)[k - frozen];
+  }
+
+  public int inDegree(int id) {
+    int frozen = id < frozenNodes ? predOffsets[id + 1] - predOffsets[id] : 0;
+    return frozen + overlay(overlayPred, id).length;
+  }
+
+  /**
+   * The id of the k-th predecessor of node id, 0 <= k < inDegree(id).
+   */
+  public int predecessor(int id, int k) {
+    int frozen = id < frozenNodes ? predOffsets[id + 1] - predOffsets[id] : 0;
+    return k < frozen ? predTargets[predOffsets[id] + k] : overlay(overlayPred, id)[k - frozen];
+  }
+
+  /**
+   * Number of edges added since the freeze.
+   */
+  public synchronized int overlayEdges() {
+    return overlayEdges;
+  }
+
+  private static int[] overlay(AtomicReferenceArray<int[]> overlay, int id) {
+    if (id >= overlay.length()) {
+      return NONE;
+    }
+    int[] ids = overlay.get(id);
+    return ids == null ? NONE : ids;
+  }
+
+  /**
+   * Records the edge source -> target, just added by NNode.addEdgeTo().
+   */
+  synchronized void addEdge(int source, int target) {
+    overlaySucc = append(overlaySucc, source, target);
+    overlayPred = append(overlayPred, target, source);
+    overlayEdges++;
+  }
+
+  private static AtomicReferenceArray<int[]> append(AtomicReferenceArray<int[]> overlay,
+                                                    int id, int value) {
+    if (id >= overlay.length()) {
+      AtomicReferenceArray<int[]> grown =
+              new AtomicReferenceArray<>(Math.max(id + 1, overlay.length() * 2));
+      for (int i = 0; i < overlay.length(); i++) {
+        grown.set(i, overlay.get(i));
+      }
+      overlay = grown;
+    }
+    int[] old = overlay.get(id);
+    int[] ids = old == null ? new int[1] : Arrays.copyOf(old, old.length + 1);
+    ids[ids.length - 1] = value;
+    overlay.set(id, ids);
+    return overlay;
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * IntNodeMap.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map from int keys (resource ids, integer constants) to nodes, without boxed
+ * keys or entry objects. Keys and values sit in arrays in insertion order,
+ * which is also the order of iteration; an open-addressing table maps keys to
+ * their position. Entries cannot be removed.
+ *
+ * get(int) and put(int, V) do not box. The Map methods are there for the
+ * clients that only iterate or look up now and then.
+ */
+public class IntNodeMap<V extends NNode> extends AbstractMap<Integer, V> {
+  private int[] keys = new int[16];
+  private Object[] values = new Object[16];
+  private int size;
+  // position + 1 of the key in keys/values, 0 for a free slot
+  private int[] table = new int[32];
+
+  public V get(int key) {
+    int slot = find(key);
+    int position = table[slot] - 1;
+    return position < 0 ? null : value(position);
+  }
+
+  public boolean containsKey(int key) {
+    return table[find(key)] != 0;
+  }
+
+  public V put(int key, V value) {
+    int slot = find(key);
+    int position = table[slot] - 1;
+    if (position >= 0) {
+      V old = value(position);
+      values[position] = value;
+      return old;
+    }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    keys[size] = key;
+    values[size] = value;
+    size++;
+    table[slot] = size;
+    if (size * 2 > table.length) {
+      rehash();
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V value(int position) {
+    return (V) values[position];
+  }
+
+  private int find(int key) {
+    int mask = table.length - 1;
+    int slot = mix(key) & mask;
+    while (table[slot] != 0 && keys[table[slot] - 1] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    int mask = table.length - 1;
+    for (int position = 0; position < size; position++) {
+      int slot = mix(keys[position]) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = position + 1;
+    }
+  }
+
+  // Resource ids differ mostly in their low bits; spread them over the table
+  private static int mix(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public V get(Object key) {
+    return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Integer && containsKey(((Integer) key).intValue());
+  }
+
+  @Override
+  public V put(Integer key, V value) {
+    return put(key.intValue(), value);
+  }
+
+  @Override
+  public Set<Entry<Integer, V>> entrySet() {
+    return new AbstractSet<Entry<Integer, V>>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<Entry<Integer, V>> iterator() {
+        return new Iterator<Entry<Integer, V>>() {
+          int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          public Entry<Integer, V> next() {
+            if (next >= size) {
+              throw new NoSuchElementException();
+            }
+            int position = next++;
+            return new SimpleImmutableEntry<>(keys[position], value(position));
+          }
+        };
+      }
+    };
+  }
+}
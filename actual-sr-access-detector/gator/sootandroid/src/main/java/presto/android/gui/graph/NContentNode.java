@@ -0,0 +1,22 @@
+/*
+ * NContentNode.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.graph;
+
+/**
+ * The elements of an array or container allocated at allocNode. Values
+ * written into the array flow into this node, and reads flow out of it, so
+ * that w writes and r reads take w + r edges instead of w * r.
+ */
+public class NContentNode extends NPointerNode {
+  public NAllocNode allocNode;
+
+  public String toString() {
+    return "CONTENT[" + allocNode + "]" + id;
+  }
+}
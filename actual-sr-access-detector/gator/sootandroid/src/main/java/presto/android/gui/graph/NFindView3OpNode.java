@@ -26,7 +26,7 @@ public class NFindView3OpNode extends NOpNode {
 
   @Override
   public NVarNode getReceiver() {
-    return (NVarNode) this.pred.get(0);
+    return (NVarNode) getPredecessor(0);
   }
 
   // no getParameter()
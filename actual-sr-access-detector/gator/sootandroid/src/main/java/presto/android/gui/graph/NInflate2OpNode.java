@@ -28,12 +28,12 @@ public class NInflate2OpNode extends NOpNode {
 
   @Override
   public NVarNode getReceiver() {
-    return (NVarNode) this.pred.get(1);
+    return (NVarNode) getPredecessor(1);
   }
 
   @Override
   public NNode getParameter() {
-    return this.pred.get(0);
+    return getPredecessor(0);
   }
 
   // no getLhs()
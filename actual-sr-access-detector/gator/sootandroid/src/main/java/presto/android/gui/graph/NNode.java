@@ -17,8 +17,8 @@ import java.util.*;
 
 public abstract class NNode implements Comparable<NNode> {
   public static boolean verbose = false;
-  private static int nextId = 0;
   public static int numberOfEdges = 0;
+  // Index of the node in the NodeArena of the current run
   public int id;
 
   // The flow graph node representing the widget id - could be NWidgetIdNode,
@@ -40,8 +40,28 @@ public abstract class NNode implements Comparable<NNode> {
 
 
   public NNode() {
-    nextId++;
-    id = nextId;
+    id = NodeArena.v().add(this);
+  }
+
+  // Drops per-app bookkeeping so the next app starts from an empty graph.
+  // Ids start from 0 again in a new NodeArena.
+  public static void reset() {
+    NodeArena.reset();
+    numberOfEdges = 0;
+    NNullNode.NullNode.clearEdges();
+    NOpNode.clearNodes();
+    NWindowNode.windowNodes.clear();
+  }
+
+  synchronized void clearEdges() {
+    succ = null;
+    pred = null;
+    children = null;
+    parents = null;
+    succView = null;
+    predView = null;
+    childrenView = null;
+    parentsView = null;
   }
 
   // NOTE(tony): "alias" nodes/paths
@@ -53,87 +73,182 @@ public abstract class NNode implements Comparable<NNode> {
   protected Set<NNode> children;
   protected Set<NNode> parents;
 
-  public synchronized Collection<NNode> getSuccessors() {
-    if (succ == null || succ.isEmpty()) {
+  // Read-only copies of the lists and sets of this node, for the getters.
+  // The fields above are guarded by the monitor of the node; a change sets
+  // the copy to null, and the next read makes a new one under the monitor.
+  // Once the flowgraph is built the copies stay put, and concurrent readers
+  // (e.g., the WTG workers) take no lock at all.
+  private volatile List<NNode> succView;
+  private volatile List<NNode> predView;
+  private volatile Set<NNode> childrenView;
+  private volatile Set<NNode> parentsView;
+  private volatile Set<NNode> textView;
+  private volatile Set<NNode> hintView;
+  private volatile Set<NNode> tooltipView;
+  private volatile Set<NNode> contentDescriptionView;
+  private volatile Set<NNode> imageResourceView;
+
+  private static List<NNode> listView(List<NNode> nodes) {
+    if (nodes == null || nodes.isEmpty()) {
       return Collections.emptyList();
-    } else {
-      return Lists.newArrayList(succ);
     }
+    return Collections.unmodifiableList(new ArrayList<NNode>(nodes));
   }
 
-  public synchronized int getNumberOfSuccessors() {
-    return (succ == null ? 0 : succ.size());
+  // Keeps the iteration order of nodes
+  private static Set<NNode> setView(Set<NNode> nodes) {
+    if (nodes == null || nodes.isEmpty()) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(new LinkedHashSet<NNode>(nodes));
   }
 
-  public synchronized NNode getSuccessor(int index) {
-    return succ.get(index);
+  public Collection<NNode> getSuccessors() {
+    return successors();
   }
 
-  public synchronized Collection<NNode> getPredecessors() {
-    if (pred == null || pred.isEmpty()) {
-      return Collections.emptyList();
-    } else {
-      return Lists.newArrayList(pred);
+  private List<NNode> successors() {
+    List<NNode> view = succView;
+    return view != null ? view : publishSuccessors();
+  }
+
+  private synchronized List<NNode> publishSuccessors() {
+    if (succView == null) {
+      succView = listView(succ);
     }
+    return succView;
+  }
+
+  public int getNumberOfSuccessors() {
+    return successors().size();
   }
 
-  public synchronized int getNumberOfPredecessors() {
-    return (pred == null ? 0 : pred.size());
+  public NNode getSuccessor(int index) {
+    return successors().get(index);
   }
 
-  public synchronized NNode getPredecessor(int index) {
-    return pred.get(index);
+  public Collection<NNode> getPredecessors() {
+    return predecessors();
   }
 
-  public synchronized boolean hasChild(NNode child) {
-    if (children == null) {
-      return false;
+  private List<NNode> predecessors() {
+    List<NNode> view = predView;
+    return view != null ? view : publishPredecessors();
+  }
+
+  private synchronized List<NNode> publishPredecessors() {
+    if (predView == null) {
+      predView = listView(pred);
     }
-    return children.contains(child);
+    return predView;
   }
 
-  public synchronized Iterator<NNode> getParents() {
-    if (parents == null || parents.isEmpty()) {
-      return Collections.emptyIterator();
-    } else {
-      return parents.iterator();
+  public int getNumberOfPredecessors() {
+    return predecessors().size();
+  }
+
+  public NNode getPredecessor(int index) {
+    return predecessors().get(index);
+  }
+
+  public boolean hasChild(NNode child) {
+    Set<NNode> view = childrenView;
+    if (view != null) {
+      return view.contains(child);
+    }
+    // No copy of the children, which addParent() would drop again right away
+    synchronized (this) {
+      return children != null && children.contains(child);
     }
   }
 
-  public synchronized Set<NNode> getChildren() {
-    if (children == null) {
-      return Collections.emptySet();
-    } else {
-      return children;
+  public Iterator<NNode> getParents() {
+    Set<NNode> view = parentsView;
+    return (view != null ? view : publishParents()).iterator();
+  }
+
+  private synchronized Set<NNode> publishParents() {
+    if (parentsView == null) {
+      parentsView = setView(parents);
     }
+    return parentsView;
   }
 
-  public synchronized void removeEdgeTo(NNode target) {
-    if (succ != null && succ.contains(target)) {
-      succ.remove(target);
-      numberOfEdges--;
-    } else {
-      if (target.pred != null && target.pred.contains(this)) {
-        throw new RuntimeException("Broken edge " + this + "===>" + target);
-      }
-      return;
+  /**
+   * The children of this node, as of the call; the set does not change.
+   */
+  public Set<NNode> getChildren() {
+    Set<NNode> view = childrenView;
+    return view != null ? view : publishChildren();
+  }
+
+  private synchronized Set<NNode> publishChildren() {
+    if (childrenView == null) {
+      childrenView = setView(children);
     }
-    if (target.pred == null || !target.pred.contains(this)) {
-      throw new RuntimeException("Broken edge " + this + "===>" + target);
+    return childrenView;
+  }
+
+  /**
+   * Runs edit with the monitors of this node and of other held, taken in the
+   * order of the ids so that two threads editing the same pair of nodes
+   * cannot deadlock.
+   */
+  private void withBoth(NNode other, Runnable edit) {
+    NNode first = id <= other.id ? this : other;
+    NNode second = first == this ? other : this;
+    synchronized (first) {
+      synchronized (second) {
+        edit.run();
+      }
     }
-    target.pred.remove(this);
   }
 
-  public synchronized void addEdgeTo(NNode x) {
+  public void removeEdgeTo(final NNode target) {
+    NodeArena.v().thaw();
+    withBoth(target, new Runnable() {
+      @Override
+      public void run() {
+        if (succ != null && succ.contains(target)) {
+          succ.remove(target);
+          succView = null;
+          numberOfEdges--;
+          NodeArena.v().edgeRemoved(NNode.this);
+        } else {
+          if (target.pred != null && target.pred.contains(NNode.this)) {
+            throw new RuntimeException("Broken edge " + NNode.this + "===>" + target);
+          }
+          return;
+        }
+        if (target.pred == null || !target.pred.contains(NNode.this)) {
+          throw new RuntimeException("Broken edge " + NNode.this + "===>" + target);
+        }
+        target.pred.remove(NNode.this);
+        target.predView = null;
+      }
+    });
+  }
+
+  public void addEdgeTo(NNode x) {
     addEdgeTo(x, null);
   }
 
-  public synchronized void addEdgeTo(NNode x, Stmt s) {
+  public void addEdgeTo(final NNode x, final Stmt s) {
+    withBoth(x, new Runnable() {
+      @Override
+      public void run() {
+        addEdgeLocked(x, s);
+      }
+    });
+  }
+
+  private void addEdgeLocked(NNode x, Stmt s) {
     if (succ == null) {
       succ = Lists.newArrayListWithCapacity(4);
     }
     if (!succ.contains(x)) {
       succ.add(x);
+      succView = null;
       numberOfEdges++;
     } else {
       return;
@@ -153,53 +268,94 @@ public abstract class NNode implements Comparable<NNode> {
       throw new RuntimeException();
     }
     x.pred.add(this);
+    x.predView = null;
+
+    NodeArena arena = NodeArena.v();
+    arena.edgeAdded(this);
+    FrozenEdges frozen = arena.frozenEdges();
+    if (frozen != null) {
+      frozen.addEdge(id, x.id);
+    }
   }
 
-  public synchronized void addParent(NNode p) {
+  /**
+   * Adds node as a predecessor without an edge from it, for an operation
+   * node whose receiver and parameter are the same variable.
+   */
+  protected synchronized void addPredecessorPort(NNode node) {
+    if (pred == null) {
+      pred = Lists.newArrayListWithCapacity(4);
+    }
+    pred.add(node);
+    predView = null;
+  }
+
+  public void addParent(final NNode p) {
     if (p == this) {
       throw new RuntimeException("p.addView(p) for " + p);
     }
     if (p == null) {
       return;
     }
-    if (parents == null) {
-      parents = Sets.newHashSetWithExpectedSize(1);
-    }
-    parents.add(p);
-    Logger.trace(this.getClass().getSimpleName(), this + " [p]==> " + p);
-
-    if (p.children == null) {
-      p.children = Sets.newHashSet();
-    }
-    p.children.add(this);
+    withBoth(p, new Runnable() {
+      @Override
+      public void run() {
+        if (parents == null) {
+          parents = Sets.newHashSetWithExpectedSize(1);
+        }
+        parents.add(p);
+        parentsView = null;
+        Logger.trace(NNode.this.getClass().getSimpleName(), NNode.this + " [p]==> " + p);
+
+        if (p.children == null) {
+          p.children = Sets.newHashSet();
+        }
+        if (p.children.add(NNode.this)) {
+          NodeArena.v().childAdded(p);
+        }
+        p.childrenView = null;
+      }
+    });
   }
 
   public synchronized boolean addTextNode(NNode text) {
     if (textNodes == null) {
       textNodes = Sets.newHashSet();
     }
+    textView = null;
     return textNodes.add(text);
   }
 
-  public synchronized Iterator<NNode> getTextNodes() {
-    if (textNodes == null) {
-      return Collections.emptyIterator();
+  public Iterator<NNode> getTextNodes() {
+    Set<NNode> view = textView;
+    return (view != null ? view : publishTextNodes()).iterator();
+  }
+
+  private synchronized Set<NNode> publishTextNodes() {
+    if (textView == null) {
+      textView = setView(textNodes);
     }
-    return textNodes.iterator();
+    return textView;
   }
 
   public synchronized boolean addHintNode(NNode text) {
     if (hintNodes == null) {
       hintNodes = Sets.newHashSet();
     }
+    hintView = null;
     return hintNodes.add(text);
   }
 
-  public synchronized Iterator<NNode> getHintNodes() {
-    if (hintNodes == null) {
-      return Collections.emptyIterator();
+  public Iterator<NNode> getHintNodes() {
+    Set<NNode> view = hintView;
+    return (view != null ? view : publishHintNodes()).iterator();
+  }
+
+  private synchronized Set<NNode> publishHintNodes() {
+    if (hintView == null) {
+      hintView = setView(hintNodes);
     }
-    return hintNodes.iterator();
+    return hintView;
   }
 
   @Override
@@ -211,45 +367,60 @@ public abstract class NNode implements Comparable<NNode> {
     if (tooltipNodes == null) {
       tooltipNodes = Sets.newHashSet();
     }
-
+    tooltipView = null;
     return tooltipNodes.add(text);
   }
 
-  public synchronized Iterator<NNode> getTooltipNodes() {
-    if (tooltipNodes == null) {
-      return Collections.emptyIterator();
+  public Iterator<NNode> getTooltipNodes() {
+    Set<NNode> view = tooltipView;
+    return (view != null ? view : publishTooltipNodes()).iterator();
+  }
+
+  private synchronized Set<NNode> publishTooltipNodes() {
+    if (tooltipView == null) {
+      tooltipView = setView(tooltipNodes);
     }
-    return tooltipNodes.iterator();
+    return tooltipView;
   }
 
   public synchronized boolean addContentDescriptionNode(NNode text) {
     if (contentDescriptions == null) {
       contentDescriptions = Sets.newHashSet();
     }
-
+    contentDescriptionView = null;
     return contentDescriptions.add(text);
   }
 
-  public synchronized Iterator<NNode> getContentDescriptionNodes() {
-    if (contentDescriptions == null) {
-      return Collections.emptyIterator();
+  public Iterator<NNode> getContentDescriptionNodes() {
+    Set<NNode> view = contentDescriptionView;
+    return (view != null ? view : publishContentDescriptionNodes()).iterator();
+  }
+
+  private synchronized Set<NNode> publishContentDescriptionNodes() {
+    if (contentDescriptionView == null) {
+      contentDescriptionView = setView(contentDescriptions);
     }
-    return contentDescriptions.iterator();
+    return contentDescriptionView;
   }
 
   public synchronized boolean addImageResourceNode(NNode image) {
     if (imageResourceNodes == null) {
       imageResourceNodes = Sets.newHashSet();
     }
-
+    imageResourceView = null;
     return imageResourceNodes.add(image);
   }
 
-  public synchronized Iterator<NNode> getImageResourceNodes() {
-    if (imageResourceNodes == null) {
-      return Collections.emptyIterator();
+  public Iterator<NNode> getImageResourceNodes() {
+    Set<NNode> view = imageResourceView;
+    return (view != null ? view : publishImageResourceNodes()).iterator();
+  }
+
+  private synchronized Set<NNode> publishImageResourceNodes() {
+    if (imageResourceView == null) {
+      imageResourceView = setView(imageResourceNodes);
     }
-    return imageResourceNodes.iterator();
+    return imageResourceView;
   }
 
 }
@@ -10,7 +10,7 @@
 package presto.android.gui.graph;
 
 public class NNullNode extends NNode {
-  public static NNullNode NullNode = new NNullNode();
+  public static NNullNode NullNode = NodeArena.shared(new NNullNode());
 
   private NNullNode() {
   }
@@ -113,7 +113,7 @@ public abstract class NOpNode extends NNode {
   private static Map<String, Set<NOpNode>> opNodes = Maps.newHashMap();
   private static Map<Stmt, NOpNode> stmtAndNodes = Maps.newHashMap();
 
-  public final static NOpNode NullOpNode = new NOpNode(true) {
+  public final static NOpNode NullOpNode = NodeArena.shared(new NOpNode(true) {
     @Override
     public boolean hasReceiver() {
       return false;
@@ -128,7 +128,7 @@ public abstract class NOpNode extends NNode {
     public boolean hasLhs() {
       return false;
     }
-  };
+  });
 
   private String opType;
   public Pair<Stmt, SootMethod> callSite;
@@ -193,6 +193,12 @@ public abstract class NOpNode extends NNode {
     return stmtAndNodes.get(s);
   }
 
+  static void clearNodes() {
+    opNodes.clear();
+    stmtAndNodes.clear();
+    NullOpNode.clearEdges();
+  }
+
   public boolean consumesLayoutId() {
     return false;
   }
@@ -14,9 +14,11 @@ import soot.SootClass;
 public class NPreferenceNode extends NObjectNode {
     public SootClass ownerActivity;
     public SootClass c;
+    // Resource id of the preference XML element, if any
+    public Integer resourceId;
     @Override
     public String toString() {
-        return "PREF[" + c + "]" + id;
+        return "PREF[" + c + "]" + (resourceId != null ? resourceId : id);
     }
 
     @Override
@@ -29,7 +29,7 @@ public class NSetListenerOpNode extends NOpNode {
     // hack for x.SetListener(x)
     if (viewNode.equals(listenerNode)) {
       listenerNode.addEdgeTo(this);
-      this.pred.add(viewNode);
+      addPredecessorPort(viewNode);
     } else {
       listenerNode.addEdgeTo(this);
       viewNode.addEdgeTo(this);
@@ -38,12 +38,12 @@ public class NSetListenerOpNode extends NOpNode {
 
   @Override
   public NVarNode getReceiver() {
-    return (NVarNode) this.pred.get(1);
+    return (NVarNode) getPredecessor(1);
   }
 
   @Override
   public NNode getParameter() {
-    return this.pred.get(0);
+    return getPredecessor(0);
   }
 
   @Override
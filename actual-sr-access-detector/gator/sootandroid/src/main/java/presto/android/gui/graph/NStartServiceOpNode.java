@@ -31,7 +31,7 @@ public class NStartServiceOpNode extends NOpNode {
     }
     @Override
     public NVarNode getReceiver() {
-        return (NVarNode) this.pred.get(0);
+        return (NVarNode) getPredecessor(0);
     }
 
     @Override
@@ -44,7 +44,7 @@ public class NStartServiceOpNode extends NOpNode {
     }
     @Override
     public NNode getParameter() {
-        return this.pred.get(1);
+        return getPredecessor(1);
     }
     @Override
     public boolean hasLhs() {
@@ -14,7 +14,7 @@ import soot.jimple.Stmt;
 import soot.toolkits.scalar.Pair;
 
 public class NStringBuilderAppendOpNode extends NOpNode {
-  NVarNode bldrNode;
+  public NVarNode bldrNode;
   public NNode strNode;
 
   public NStringBuilderAppendOpNode(NVarNode bldrNode, NNode strNode, Pair<Stmt, SootMethod> callSite) {
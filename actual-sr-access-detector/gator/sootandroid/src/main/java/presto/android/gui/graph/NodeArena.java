@@ -0,0 +1,286 @@
+/*
+ * NodeArena.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.graph;
+
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * All nodes of the current run, indexed by NNode.id. Ids are handed out
+ * contiguously from 0 as nodes are created, so anything keyed by node can be
+ * an array or a bit set of size size() instead of a hash map.
+ *
+ * reset() starts a new run with an empty arena. Nodes that live in static
+ * fields (NullNode, NullOpNode, ...) are registered with shared(); they are
+ * put into every new arena again and get new ids there.
+ */
+public class NodeArena {
+  private static NodeArena instance;
+  private static final List<NNode> sharedNodes = Lists.newArrayList();
+
+  // Bits of kinds[id]
+  public static final byte OP_NODE = 1;
+
+  // Written under the lock; volatile so that get() sees a grown array
+  private volatile NNode[] nodes = new NNode[1024];
+  // Per node, whether it is an NOpNode, so that traversals need not check
+  // the class; written before nodes is published
+  private volatile byte[] kinds = new byte[1024];
+  private int size;
+  private volatile FrozenEdges frozenEdges;
+
+  // Change tracking, written by NNode under the lock: the number of edges
+  // and parent/child links added or removed, the number of edges, and the
+  // ids of the nodes whose successors or children changed since they were
+  // last taken
+  private long modifications;
+  private long edgeCount;
+  private final BitSet changedSources = new BitSet();
+  private final BitSet changedParents = new BitSet();
+
+  private NodeArena() {
+  }
+
+  public static synchronized NodeArena v() {
+    if (instance == null) {
+      instance = new NodeArena();
+    }
+    return instance;
+  }
+
+  /**
+   * Starts a new arena that only holds the shared nodes.
+   */
+  public static synchronized void reset() {
+    instance = new NodeArena();
+    for (NNode node : sharedNodes) {
+      node.id = instance.add(node);
+    }
+  }
+
+  /**
+   * Keeps a node of a static field in the arenas of all later runs.
+   */
+  public static synchronized <N extends NNode> N shared(N node) {
+    sharedNodes.add(node);
+    return node;
+  }
+
+  public static synchronized boolean isShared(NNode node) {
+    for (NNode shared : sharedNodes) {
+      if (shared == node) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The shared node of the given class, or null if none has been registered,
+   * e.g., because the class has not been initialized yet.
+   */
+  public static synchronized NNode sharedNode(String className) {
+    for (NNode shared : sharedNodes) {
+      if (shared.getClass().getName().equals(className)) {
+        return shared;
+      }
+    }
+    return null;
+  }
+
+  synchronized int add(NNode node) {
+    NNode[] array = nodes;
+    byte[] kindArray = kinds;
+    if (size == array.length) {
+      array = Arrays.copyOf(array, size * 2);
+      kindArray = Arrays.copyOf(kindArray, size * 2);
+    }
+    // Called from the NNode constructor, when the class is already known
+    kindArray[size] = kindOf(node);
+    kinds = kindArray;
+    array[size] = node;
+    // publishes the new slot, and the new array if it grew
+    nodes = array;
+    return size++;
+  }
+
+  public NNode get(int id) {
+    return nodes[id];
+  }
+
+  private static byte kindOf(NNode node) {
+    return node instanceof NOpNode ? OP_NODE : 0;
+  }
+
+  /**
+   * The kind bits of node id, e.g., OP_NODE.
+   */
+  public byte kind(int id) {
+    return kinds[id];
+  }
+
+  public boolean isOpNode(int id) {
+    return (kinds[id] & OP_NODE) != 0;
+  }
+
+  /**
+   * Gives the nodes of the list the ids 0, 1, ..., e.g., the ids they had when
+   * a FlowgraphSnapshot was written. Shared nodes that are not in the list
+   * get the ids after them; all other nodes of the arena are dropped.
+   */
+  public synchronized void renumber(List<NNode> order) {
+    NNode[] array = new NNode[Math.max(1024, order.size() + sharedNodes.size())];
+    byte[] kindArray = new byte[array.length];
+    int count = 0;
+    for (NNode node : order) {
+      node.id = count;
+      kindArray[count] = kindOf(node);
+      array[count++] = node;
+    }
+    for (NNode node : sharedNodes) {
+      if (node.id >= order.size() || array[node.id] != node) {
+        node.id = count;
+        kindArray[count] = kindOf(node);
+        array[count++] = node;
+      }
+    }
+    kinds = kindArray;
+    nodes = array;
+    size = count;
+    changedSources.clear();
+    changedParents.clear();
+    frozenEdges = null;
+  }
+
+  /**
+   * Replaces the edges of all nodes by the given ones, in the layout of
+   * FrozenEdges. The predecessor lists are taken as they are, since
+   * operation nodes keep ports there that have no matching successor edge.
+   */
+  public synchronized void restoreEdges(int[] succOffsets, int[] succTargets,
+                                        int[] predOffsets, int[] predTargets) {
+    NNode[] array = nodes;
+    for (int id = 0; id < size; id++) {
+      NNode node = array[id];
+      synchronized (node) {
+        node.clearEdges();
+        if (id + 1 < succOffsets.length) {
+          node.succ = restoreList(array, succTargets, succOffsets[id], succOffsets[id + 1]);
+          node.pred = restoreList(array, predTargets, predOffsets[id], predOffsets[id + 1]);
+        }
+      }
+    }
+    NNode.numberOfEdges = succTargets.length;
+    edgeCount = succTargets.length;
+    modifications++;
+    frozenEdges = null;
+  }
+
+  private static ArrayList<NNode> restoreList(NNode[] array, int[] targets, int from, int to) {
+    if (from == to) {
+      return null;
+    }
+    ArrayList<NNode> list = Lists.newArrayListWithCapacity(to - from);
+    for (int i = from; i < to; i++) {
+      list.add(array[targets[i]]);
+    }
+    return list;
+  }
+
+  /**
+   * Puts the current edges into compressed sparse row form; edges added later
+   * go into its overlay until the next freeze(). Call when no other thread
+   * adds edges.
+   */
+  public FrozenEdges freeze() {
+    frozenEdges = new FrozenEdges(this);
+    return frozenEdges;
+  }
+
+  /**
+   * Drops the frozen edges, e.g., because an edge was removed.
+   */
+  public void thaw() {
+    frozenEdges = null;
+  }
+
+  /**
+   * The frozen edges, or null if the edges are not frozen.
+   */
+  public FrozenEdges frozenEdges() {
+    return frozenEdges;
+  }
+
+  synchronized void edgeAdded(NNode source) {
+    modifications++;
+    edgeCount++;
+    changedSources.set(source.id);
+  }
+
+  synchronized void edgeRemoved(NNode source) {
+    modifications++;
+    edgeCount--;
+    changedSources.set(source.id);
+  }
+
+  synchronized void childAdded(NNode parent) {
+    modifications++;
+    changedParents.set(parent.id);
+  }
+
+  /**
+   * Grows with every edge or parent/child link added or removed, so that a
+   * fixed-point loop can tell whether the graph changed without looking at
+   * it.
+   */
+  public synchronized long modificationCount() {
+    return modifications;
+  }
+
+  /**
+   * The number of edges between the nodes of the arena.
+   */
+  public synchronized long edgeCount() {
+    return edgeCount;
+  }
+
+  /**
+   * The nodes that got or lost a successor since the last call.
+   */
+  public synchronized List<NNode> takeChangedSources() {
+    return take(changedSources);
+  }
+
+  /**
+   * The nodes that got a child since the last call.
+   */
+  public synchronized List<NNode> takeChangedParents() {
+    return take(changedParents);
+  }
+
+  private List<NNode> take(BitSet ids) {
+    List<NNode> taken = Lists.newArrayList();
+    for (int id = ids.nextSetBit(0); id >= 0 && id < size; id = ids.nextSetBit(id + 1)) {
+      taken.add(nodes[id]);
+    }
+    ids.clear();
+    return taken;
+  }
+
+  /**
+   * One more than the largest id.
+   */
+  public synchronized int size() {
+    return size;
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * NodeSet.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.graph;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of nodes of the current NodeArena, one bit per node id. Iterates in the
+ * order of the ids, i.e., in the order the nodes were created.
+ */
+public class NodeSet extends AbstractSet<NNode> {
+  private final BitSet bits = new BitSet();
+  private int size;
+  private int modCount;
+
+  @Override
+  public boolean add(NNode node) {
+    if (bits.get(node.id)) {
+      return false;
+    }
+    bits.set(node.id);
+    size++;
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof NNode)) {
+      return false;
+    }
+    int id = ((NNode) o).id;
+    return bits.get(id) && NodeArena.v().get(id) == o;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!contains(o)) {
+      return false;
+    }
+    bits.clear(((NNode) o).id);
+    size--;
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    bits.clear();
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The ids of the members; must not be modified.
+   */
+  public BitSet ids() {
+    return bits;
+  }
+
+  @Override
+  public Iterator<NNode> iterator() {
+    return new Iterator<NNode>() {
+      final NodeArena arena = NodeArena.v();
+      int expectedModCount = modCount;
+      int next = bits.nextSetBit(0);
+      int last = -1;
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public NNode next() {
+        if (next < 0) {
+          throw new NoSuchElementException();
+        }
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        last = next;
+        next = bits.nextSetBit(next + 1);
+        return arena.get(last);
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        bits.clear(last);
+        size--;
+        last = -1;
+        expectedModCount = ++modCount;
+      }
+    };
+  }
+}
@@ -77,6 +77,24 @@ public class ListenerInstance {
     this.inlineEventHandlerMethods.addAll(methods);
   }
 
+  public Set<SootMethod> getHandlerPrototypes() {
+    return handlerPrototypes;
+  }
+
+  // The handlers found by computeConcreteHandlers() and the inline ones, kept
+  // apart for FlowgraphSnapshot
+  public Set<SootMethod> getEventHandlers() {
+    return eventHandlerMethods;
+  }
+
+  public Set<SootMethod> getInlineEventHandlers() {
+    return inlineEventHandlerMethods;
+  }
+
+  public void recordEventHandlers(Set<SootMethod> methods) {
+    this.eventHandlerMethods.addAll(methods);
+  }
+
   private Set<SootMethod> computeConcreteHandlers(Set<SootMethod> handlerPrototypes, Set<SootClass> listenerTypes) {
     Set<SootMethod> handlers = new HashSet<SootMethod>();
     for (SootClass possibleListenerType : listenerTypes) {
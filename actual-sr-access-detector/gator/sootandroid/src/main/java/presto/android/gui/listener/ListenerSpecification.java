@@ -73,6 +73,10 @@ public class ListenerSpecification {
     return theInstance;
   }
 
+  public static synchronized void reset() {
+    theInstance = null;
+  }
+
   public Set<SootClass> getGUITypes() {
     return rawSpecs.keySet();
   }
@@ -132,6 +136,19 @@ public class ListenerSpecification {
     return null;
   }
 
+  /**
+   * Subsignatures of all registration methods, for any GUI type.
+   */
+  public Set<String> getAllRegistrationSubsigs() {
+    Set<String> result = Sets.newHashSet();
+    for (Set<ListenerRegistration> regSet : viewAndRegistrations.values()) {
+      for (ListenerRegistration reg : regSet) {
+        result.add(reg.subsig);
+      }
+    }
+    return result;
+  }
+
   public Set<String> getRegistrationSubsigs(SootClass guiType) {
     Set<String> result = Sets.newHashSet();
     for (SootClass c : hier.getSupertypes(guiType)) {
@@ -38,6 +38,11 @@ public class GUIHierarchy {
   private static Set<String> printedString = Sets.newHashSet();
   public static boolean hasUIPermission = false;
 
+  public static void reset() {
+    printedString.clear();
+    hasUIPermission = false;
+  }
+
   private static void printlnIndented(String s, PrintStream out, int indent) {
     for (int i = 0; i < indent; i++) {
       out.print(" ");
@@ -52,6 +57,21 @@ public class GUIHierarchy {
     }
   }
 
+  // The output of -dexPrefilter for an app that references no protected API
+  // at all, written without running the analysis, see DexPrefilter. Unlike
+  // dumpXML(), it has only the (empty) permission sections and does not list
+  // the activities and dialogs of the app.
+  public static void dumpEmptyXML(String app, PrintStream out) {
+    printlnIndented(String.format("<GUIHierarchy app=\"%s\">", app), out, 0);
+    printlnIndented("<uses-permissions>", out, 0);
+    printlnIndented("</uses-permissions>", out, 0);
+    printlnIndented("<request-permission-calls>", out, 0);
+    printlnIndented("</request-permission-calls>", out, 0);
+    printlnIndented("<upfront-permission-requests>", out, 0);
+    printlnIndented("</upfront-permission-requests>", out, 0);
+    printlnIndented("</GUIHierarchy>", out, 0);
+  }
+
   public void dumpXML(GUIAnalysisOutput guiAnalysisOutput, PrintStream out, boolean showDialog, Map<NObjectNode, Set<NObjectNode>> permissionMaps, Set<NObjectNode> upfrontPermissions) {
     int indent = 0;
     printlnIndented(String.format("<GUIHierarchy app=\"%s\">", this.app), out, indent);
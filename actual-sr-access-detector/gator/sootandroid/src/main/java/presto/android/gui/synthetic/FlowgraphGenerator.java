@@ -0,0 +1,218 @@
+/*
+ * FlowgraphGenerator.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.synthetic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import presto.android.Hierarchy;
+import presto.android.gui.Flowgraph;
+import presto.android.gui.graph.NAddView1OpNode;
+import presto.android.gui.graph.NAddView2OpNode;
+import presto.android.gui.graph.NAllocNode;
+import presto.android.gui.graph.NFindView1OpNode;
+import presto.android.gui.graph.NFindView1OpNode.FindView1Type;
+import presto.android.gui.graph.NFindView2OpNode;
+import presto.android.gui.graph.NFindView3OpNode;
+import presto.android.gui.graph.NFindView3OpNode.FindView3Type;
+import presto.android.gui.graph.NOpNode;
+import presto.android.gui.graph.NSetListenerOpNode;
+import presto.android.gui.graph.NVarNode;
+import presto.android.gui.listener.EventType;
+import presto.android.gui.listener.ListenerInstance;
+import soot.SootClass;
+import soot.jimple.Jimple;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates flowgraphs of a chosen shape for benchmarks and experiments that
+ * should not depend on an app. The graph has the node and edge kinds the
+ * FixpointSolver works on: activity, view and listener objects flowing
+ * through variables into FindView1/2/3, AddView1/2 and SetListener operation
+ * nodes. The classes come from a SyntheticScene, so the solver runs on the
+ * graph unchanged.
+ *
+ * Generation is deterministic for a given shape and seed. Each call of
+ * generate() starts a new scene, which invalidates earlier graphs.
+ */
+public class FlowgraphGenerator {
+  // Number of variable nodes
+  public int nodes = 10000;
+
+  // Assignment edges out of every variable node
+  public int fanOut = 2;
+
+  // Variables per method; assignment edges mostly stay inside a method
+  public int methodSize = 20;
+
+  // Probability that a method flows into another method
+  public double callDensity = 0.5;
+
+  // Probability that an assignment edge goes back to an earlier variable of
+  // its pool, which closes a cycle
+  public double cycleDensity = 0.01;
+
+  // Operation nodes per 100 variable nodes
+  public int opPercent = 10;
+
+  // Relative weights of the operation node kinds
+  public int findView1Weight = 4;
+  public int findView2Weight = 2;
+  public int findView3Weight = 1;
+  public int addView1Weight = 1;
+  public int addView2Weight = 3;
+  public int setListenerWeight = 3;
+
+  public int activities = 10;
+  public int listeners = 10;
+  // View allocations per 100 variable nodes
+  public int viewPercent = 5;
+  public int widgetIds = 100;
+
+  public long seed = 42;
+
+  // Set by generate()
+  public SyntheticScene scene;
+  public Flowgraph flowgraph;
+
+  private Random random;
+  private final List<NVarNode> windowVars = Lists.newArrayList();
+  private final List<NVarNode> viewVars = Lists.newArrayList();
+  private final List<NVarNode> listenerVars = Lists.newArrayList();
+
+  public Flowgraph generate() {
+    random = new Random(seed);
+    windowVars.clear();
+    viewVars.clear();
+    listenerVars.clear();
+    scene = new SyntheticScene(activities, listeners);
+    flowgraph = new Flowgraph(Hierarchy.v());
+
+    // Variables: one tenth each hold windows and listeners, the rest views
+    int windowCount = Math.max(1, nodes / 10);
+    int listenerCount = Math.max(1, nodes / 10);
+    int viewCount = Math.max(1, nodes - windowCount - listenerCount);
+    createVars(windowVars, windowCount, scene.activityClass, "a");
+    createVars(listenerVars, listenerCount, scene.onClickListenerClass, "l");
+    createVars(viewVars, viewCount, scene.viewClass, "v");
+    connect(windowVars);
+    connect(listenerVars);
+    connect(viewVars);
+
+    // Sources
+    for (SootClass c : scene.activities) {
+      flowgraph.activityNode(c).addEdgeTo(pick(windowVars));
+    }
+    for (SootClass c : scene.listeners) {
+      flowgraph.allocNode(Jimple.v().newNewExpr(c.getType())).addEdgeTo(pick(listenerVars));
+    }
+    int viewAllocs = Math.max(1, nodes * viewPercent / 100);
+    for (int i = 0; i < viewAllocs; i++) {
+      SootClass c = random.nextInt(3) == 0 ? scene.viewGroupClass : scene.buttonClass;
+      NAllocNode view = flowgraph.allocNode(Jimple.v().newNewExpr(c.getType()));
+      view.idNode = flowgraph.widgetIdNode(randomId());
+      view.addEdgeTo(pick(viewVars));
+    }
+
+    createOpNodes(Math.max(1, nodes * opPercent / 100));
+    flowgraph.freeze();
+    return flowgraph;
+  }
+
+  private void createVars(List<NVarNode> pool, int count, SootClass type, String prefix) {
+    for (int i = 0; i < count; i++) {
+      pool.add(flowgraph.varNode(scene.newLocal(prefix + i, type)));
+    }
+  }
+
+  /**
+   * The pool is cut into methods of methodSize variables. Inside a method,
+   * the variables form a chain plus random forward edges. Each method calls
+   * into another one with probability callDensity, and each edge goes back to
+   * an earlier variable of the pool, closing a cycle, with probability
+   * cycleDensity.
+   */
+  private void connect(List<NVarNode> pool) {
+    int size = pool.size();
+    for (int i = 0; i < size; i++) {
+      NVarNode source = pool.get(i);
+      int methodEnd = Math.min(size, (i / methodSize + 1) * methodSize);
+      for (int k = 0; k < fanOut; k++) {
+        int target;
+        if (random.nextDouble() < cycleDensity) {
+          target = random.nextInt(i + 1);
+        } else if (i + 1 == methodEnd) {
+          target = k == 0 && random.nextDouble() < callDensity ? random.nextInt(size) : size;
+        } else if (k == 0) {
+          target = i + 1;
+        } else {
+          target = i + 1 + random.nextInt(methodEnd - i - 1);
+        }
+        if (target < size) {
+          source.addEdgeTo(pool.get(target));
+        }
+      }
+    }
+  }
+
+  private void createOpNodes(int count) {
+    ListenerInstance clickListener = new ListenerInstance(scene.onClickListenerClass, null,
+            Sets.newHashSet(scene.onClickPrototype), EventType.click);
+    int totalWeight = findView1Weight + findView2Weight + findView3Weight + addView1Weight
+            + addView2Weight + setListenerWeight;
+    if (totalWeight <= 0) {
+      throw new IllegalStateException("No operation node kind has a positive weight");
+    }
+    for (int i = 0; i < count; i++) {
+      int r = random.nextInt(totalWeight);
+      NOpNode op;
+      if ((r -= findView1Weight) < 0) {
+        op = new NFindView1OpNode(flowgraph.widgetIdNode(randomId()), pick(viewVars),
+                pick(viewVars), null, FindView1Type.Ordinary, false);
+      } else if ((r -= findView2Weight) < 0) {
+        op = new NFindView2OpNode(flowgraph.widgetIdNode(randomId()), pick(windowVars),
+                pick(viewVars), null, false);
+      } else if ((r -= findView3Weight) < 0) {
+        FindView3Type[] types = FindView3Type.values();
+        op = new NFindView3OpNode(pick(viewVars), pick(viewVars), null,
+                types[random.nextInt(types.length)], false);
+      } else if ((r -= addView1Weight) < 0) {
+        op = new NAddView1OpNode(pick(viewVars), pick(windowVars), null, false);
+      } else if ((r -= addView2Weight) < 0) {
+        NVarNode parent = pick(viewVars);
+        op = new NAddView2OpNode(parent, pickOther(viewVars, parent), null, false);
+      } else {
+        op = new NSetListenerOpNode(clickListener, pick(viewVars), pick(listenerVars), null,
+                false, false);
+      }
+      flowgraph.allNNodes.add(op);
+    }
+  }
+
+  private NVarNode pick(List<NVarNode> pool) {
+    return pool.get(random.nextInt(pool.size()));
+  }
+
+  // A view cannot be added to itself, and AddView2 needs two predecessors
+  private NVarNode pickOther(List<NVarNode> pool, NVarNode other) {
+    if (pool.size() < 2) {
+      throw new IllegalStateException("Need two views for AddView2");
+    }
+    NVarNode node = pick(pool);
+    while (node == other) {
+      node = pick(pool);
+    }
+    return node;
+  }
+
+  private Integer randomId() {
+    return 0x7f090000 + random.nextInt(widgetIds);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * SyntheticScene.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.synthetic;
+
+import com.google.common.collect.Lists;
+import presto.android.Hierarchy;
+import presto.android.gui.IDNameExtractor;
+import presto.android.gui.JimpleUtil;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.listener.ListenerSpecification;
+import presto.android.xml.XMLParser;
+import soot.G;
+import soot.Local;
+import soot.Modifier;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.options.Options;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A soot Scene that is built in memory instead of loaded from an app: a
+ * skeleton of the framework classes the GUI analysis looks up, plus
+ * application activities and click listeners. It backs the synthetic
+ * flowgraphs of FlowgraphGenerator, so that the real Hierarchy,
+ * ListenerSpecification and FixpointSolver run on them.
+ *
+ * Creating a scene resets soot and the analysis singletons that depend on the
+ * Scene, and installs a SyntheticXMLParser as the resources of the app. The
+ * listener specification and the permission map are read from
+ * Configs.listenerSpecFile and Configs.permissionMapFile.
+ */
+public class SyntheticScene {
+  public static final String APP_PACKAGE = "synthetic";
+
+  public final SootClass objectClass;
+  public final SootClass viewClass;
+  public final SootClass viewGroupClass;
+  public final SootClass buttonClass;
+  public final SootClass activityClass;
+  public final SootClass dialogClass;
+  public final SootClass onClickListenerClass;
+  public final SootMethod onClickPrototype;
+  public final SyntheticXMLParser xmlParser;
+
+  public final List<SootClass> activities = Lists.newArrayList();
+  public final List<SootClass> listeners = Lists.newArrayList();
+
+  private final Jimple jimple = Jimple.v();
+
+  public SyntheticScene(int activityCount, int listenerCount) {
+    G.reset();
+    Options.v().set_allow_phantom_refs(true);
+    NNode.reset();
+    Hierarchy.reset();
+    JimpleUtil.reset();
+    ListenerSpecification.reset();
+    IDNameExtractor.reset();
+
+    objectClass = libraryClass("java.lang.Object", null, 0);
+    viewClass = libraryClass("android.view.View", objectClass, Modifier.PUBLIC);
+    viewGroupClass = libraryClass("android.view.ViewGroup", viewClass, Modifier.PUBLIC);
+    buttonClass = libraryClass("android.widget.Button", viewClass, Modifier.PUBLIC);
+    activityClass = libraryClass("android.app.Activity", objectClass, Modifier.PUBLIC);
+    dialogClass = libraryClass("android.app.Dialog", objectClass, Modifier.PUBLIC);
+    onClickListenerClass = libraryClass("android.view.View$OnClickListener", null,
+            Modifier.PUBLIC | Modifier.INTERFACE | Modifier.ABSTRACT);
+    SootClass menuClass = libraryClass("android.view.Menu", null,
+            Modifier.PUBLIC | Modifier.INTERFACE | Modifier.ABSTRACT);
+    SootClass contextMenuClass = libraryClass("android.view.ContextMenu", null,
+            Modifier.PUBLIC | Modifier.INTERFACE | Modifier.ABSTRACT);
+    contextMenuClass.addInterface(menuClass);
+    libraryClass("android.widget.LinearLayout", viewGroupClass, Modifier.PUBLIC);
+    libraryClass("android.support.design.widget.NavigationView", viewGroupClass, Modifier.PUBLIC);
+    libraryClass("android.app.Service", objectClass, Modifier.PUBLIC);
+    libraryClass("android.preference.Preference", objectClass, Modifier.PUBLIC);
+    for (String name : new String[]{"android.view.MenuItem", "android.content.DialogInterface",
+            "android.content.SharedPreferences", "java.util.Collection", "java.util.Iterator",
+            "java.util.Map"}) {
+      libraryClass(name, null, Modifier.PUBLIC | Modifier.INTERFACE | Modifier.ABSTRACT);
+    }
+
+    // What the flowgraph and the listener specification look up
+    declare(viewClass, "onCreateContextMenu", contextMenuClass.getType(), Modifier.PUBLIC);
+    declare(viewClass, "setOnClickListener", onClickListenerClass.getType(), Modifier.PUBLIC);
+    onClickPrototype = declare(onClickListenerClass, "onClick", viewClass.getType(),
+            Modifier.PUBLIC | Modifier.ABSTRACT);
+
+    for (int i = 0; i < activityCount; i++) {
+      activities.add(applicationClass(APP_PACKAGE + ".Activity" + i, activityClass));
+    }
+    for (int i = 0; i < listenerCount; i++) {
+      SootClass listener = applicationClass(APP_PACKAGE + ".Listener" + i, objectClass);
+      listener.addInterface(onClickListenerClass);
+      concreteMethod(listener, "onClick", viewClass.getType());
+      listeners.add(listener);
+    }
+
+    xmlParser = new SyntheticXMLParser(activities);
+    XMLParser.Factory.install(xmlParser);
+  }
+
+  private SootClass libraryClass(String name, SootClass superclass, int modifiers) {
+    SootClass c = new SootClass(name, modifiers);
+    if (superclass != null) {
+      c.setSuperclass(superclass);
+    } else if (!"java.lang.Object".equals(name)) {
+      c.setSuperclass(objectClass);
+    }
+    Scene.v().addClass(c);
+    c.setLibraryClass();
+    return c;
+  }
+
+  private SootClass applicationClass(String name, SootClass superclass) {
+    SootClass c = new SootClass(name, Modifier.PUBLIC);
+    c.setSuperclass(superclass);
+    Scene.v().addClass(c);
+    c.setApplicationClass();
+    return c;
+  }
+
+  private SootMethod declare(SootClass c, String name, Type parameter, int modifiers) {
+    SootMethod m = new SootMethod(name, Collections.singletonList(parameter), VoidType.v(),
+            modifiers);
+    c.addMethod(m);
+    return m;
+  }
+
+  /**
+   * A method whose body only binds this and the parameter, which is all the
+   * flowgraph needs to connect a listener to its handler.
+   */
+  private SootMethod concreteMethod(SootClass c, String name, Type parameter) {
+    SootMethod m = declare(c, name, parameter, Modifier.PUBLIC);
+    JimpleBody body = jimple.newBody(m);
+    Local thisLocal = jimple.newLocal("r0", c.getType());
+    Local parameterLocal = jimple.newLocal("r1", parameter);
+    body.getLocals().add(thisLocal);
+    body.getLocals().add(parameterLocal);
+    body.getUnits().add(jimple.newIdentityStmt(thisLocal, jimple.newThisRef(c.getType())));
+    body.getUnits().add(jimple.newIdentityStmt(parameterLocal,
+            jimple.newParameterRef(parameter, 0)));
+    body.getUnits().add(jimple.newReturnVoidStmt());
+    m.setActiveBody(body);
+    return m;
+  }
+
+  public Local newLocal(String name, SootClass type) {
+    return jimple.newLocal(name, RefType.v(type));
+  }
+}
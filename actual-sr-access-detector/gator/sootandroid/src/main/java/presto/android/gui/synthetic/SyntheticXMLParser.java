@@ -0,0 +1,181 @@
+/*
+ * SyntheticXMLParser.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.synthetic;
+
+import presto.android.xml.AndroidView;
+import presto.android.xml.XMLParser;
+import soot.SootClass;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The resources of a synthetic app: no layouts, menus, strings or
+ * preferences, and the generated activities as declared activities. Widget
+ * ids live in the flowgraph only.
+ */
+public class SyntheticXMLParser extends XMLParser.AbstractXMLParser {
+  public SyntheticXMLParser(List<SootClass> activityClasses) {
+    appPkg = SyntheticScene.APP_PACKAGE;
+    for (SootClass c : activityClasses) {
+      activities.add(c.getName());
+    }
+    if (!activityClasses.isEmpty()) {
+      mainActivity = activityClasses.get(0);
+    }
+  }
+
+  @Override
+  public Set<Integer> getApplicationLayoutIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<Integer> getSystemLayoutIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Integer getSystemRLayoutValue(String layoutName) {
+    return null;
+  }
+
+  @Override
+  public String getApplicationRLayoutName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public String getSystemRLayoutName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public Set<Integer> getApplicationMenuIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<Integer> getSystemMenuIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public String getApplicationRMenuName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public String getSystemRMenuName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public Set<Integer> getApplicationRIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<Integer> getSystemRIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Integer getSystemRIdValue(String idName) {
+    return null;
+  }
+
+  @Override
+  public String getApplicationRIdName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public String getSystemRIdName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public Set<Integer> getStringIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public String getRStringName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public String getStringValue(Integer idValue) {
+    return null;
+  }
+
+  @Override
+  public Iterator<String> getServices() {
+    return services.iterator();
+  }
+
+  @Override
+  public Integer getApplicationIdValue(String type, String name) {
+    return null;
+  }
+
+  @Override
+  public Integer getSystemIdValue(String type, String name) {
+    return null;
+  }
+
+  @Override
+  public AndroidView findViewById(Integer id) {
+    return null;
+  }
+
+  @Override
+  public Set<Integer> getApplicationPreferenceIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<Integer> getApplicationPreferenceHeaderIdValues() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public String getApplicationPreferenceName(Integer value) {
+    return null;
+  }
+
+  @Override
+  public Set<String> getApplicationPreferenceKeys() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<String> getImageFiles(String resName) {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<String> getImageFiles(int resId) {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public HashMap<String, String> getActivityLabels() {
+    return activityLabels;
+  }
+
+  @Override
+  public HashMap<String, String> getUsesPermissions() {
+    return usesPermissions;
+  }
+}
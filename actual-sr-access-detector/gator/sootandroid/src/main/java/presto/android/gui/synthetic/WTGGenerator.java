@@ -0,0 +1,170 @@
+/*
+ * WTGGenerator.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.synthetic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import presto.android.Hierarchy;
+import presto.android.gui.Flowgraph;
+import presto.android.gui.graph.NDialogNode;
+import presto.android.gui.graph.NObjectNode;
+import presto.android.gui.graph.NWindowNode;
+import presto.android.gui.listener.EventType;
+import presto.android.gui.wtg.EventHandler;
+import presto.android.gui.wtg.RootTag;
+import presto.android.gui.wtg.StackOperation;
+import presto.android.gui.wtg.StackOperation.OpType;
+import presto.android.gui.wtg.ds.WTG;
+import presto.android.gui.wtg.ds.WTGEdge;
+import presto.android.gui.wtg.ds.WTGNode;
+import presto.android.gui.wtg.flowgraph.NLauncherNode;
+import soot.SootMethod;
+import soot.jimple.Jimple;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates window transition graphs of a chosen shape, for the path
+ * generators and other WTG clients. Every window sits at a level of the
+ * window stack: the main activity at level 0, and windows at level L are
+ * opened from level L - 1 by a push edge that has a matching pop edge back.
+ * Windows at the top level replace each other instead, and any window may
+ * have self edges, at the cycle density.
+ *
+ * Like FlowgraphGenerator, generate() starts a new SyntheticScene.
+ */
+public class WTGGenerator {
+  public int windows = 50;
+
+  // Events out of every window
+  public int fanOut = 3;
+
+  // Probability that an event leaves the window unchanged
+  public double cycleDensity = 0.1;
+
+  // Depth of the window stack
+  public int stackDepth = 3;
+
+  // Share of the windows above level 0 that are dialogs, in percent
+  public int dialogPercent = 30;
+
+  public int listeners = 10;
+
+  public long seed = 42;
+
+  // Set by generate()
+  public SyntheticScene scene;
+  public WTG wtg;
+  public WTGEdge launchEdge;
+
+  private Random random;
+  private Flowgraph flowgraph;
+
+  public WTG generate() {
+    random = new Random(seed);
+
+    // Levels and kinds of the windows; the first one is the main activity
+    int[] levels = new int[windows];
+    boolean[] isDialog = new boolean[windows];
+    int activityCount = 0;
+    for (int i = 0; i < windows; i++) {
+      levels[i] = i == 0 ? 0 : random.nextInt(stackDepth);
+      isDialog[i] = levels[i] > 0 && random.nextInt(100) < dialogPercent;
+      if (!isDialog[i]) {
+        activityCount++;
+      }
+    }
+    scene = new SyntheticScene(activityCount, listeners);
+    flowgraph = new Flowgraph(Hierarchy.v());
+    wtg = new WTG();
+
+    List<List<WTGNode>> nodesAtLevel = Lists.newArrayList();
+    for (int l = 0; l < stackDepth; l++) {
+      nodesAtLevel.add(Lists.<WTGNode>newArrayList());
+    }
+    List<WTGNode> nodes = Lists.newArrayList();
+    int nextActivity = 0;
+    for (int i = 0; i < windows; i++) {
+      NWindowNode window;
+      if (isDialog[i]) {
+        window = new NDialogNode(scene.dialogClass, Jimple.v().newNopStmt(), null);
+      } else {
+        window = flowgraph.activityNode(scene.activities.get(nextActivity++));
+      }
+      WTGNode node = wtg.addNode(window);
+      nodes.add(node);
+      nodesAtLevel.get(levels[i]).add(node);
+    }
+
+    WTGNode launcher = wtg.addLauncherNode(NLauncherNode.LAUNCHER);
+    WTGNode main = nodes.get(0);
+    launchEdge = addEdge(launcher, main, NLauncherNode.LAUNCHER, EventType.implicit_launch_event,
+            null, RootTag.implicit_launch, push(main));
+
+    for (int i = 0; i < windows; i++) {
+      WTGNode source = nodes.get(i);
+      int level = levels[i];
+      for (int k = 0; k < fanOut; k++) {
+        NObjectNode widget = flowgraph.allocNode(Jimple.v().newNewExpr(
+                scene.buttonClass.getType()));
+        SootMethod handler = scene.listeners.isEmpty() ? null
+                : scene.listeners.get(random.nextInt(scene.listeners.size()))
+                .getMethodByName("onClick");
+        List<WTGNode> above = level + 1 < stackDepth ? nodesAtLevel.get(level + 1)
+                : Collections.<WTGNode>emptyList();
+        if (random.nextDouble() < cycleDensity) {
+          addEdge(source, source, widget, EventType.click, handler, RootTag.cyclic_edge,
+                  Lists.<StackOperation>newArrayList());
+        } else if (!above.isEmpty()) {
+          WTGNode target = above.get(random.nextInt(above.size()));
+          WTGEdge forward = addEdge(source, target, widget, EventType.click, handler,
+                  openTag(target), push(target));
+          List<StackOperation> pop = Lists.newArrayList(
+                  new StackOperation(OpType.pop, target.getWindow()));
+          WTGEdge back = addEdge(target, source, target.getWindow(),
+                  EventType.implicit_back_event, null, closeTag(target), pop);
+          wtg.addBackEdge(forward, back);
+        } else {
+          List<WTGNode> same = nodesAtLevel.get(level);
+          WTGNode target = same.get(random.nextInt(same.size()));
+          List<StackOperation> replace = Lists.newArrayList(
+                  new StackOperation(OpType.pop, source.getWindow()),
+                  new StackOperation(OpType.push, target.getWindow()));
+          addEdge(source, target, widget, EventType.click, handler, openTag(target), replace);
+        }
+      }
+    }
+    return wtg;
+  }
+
+  private WTGEdge addEdge(WTGNode source, WTGNode target, NObjectNode widget, EventType event,
+                          SootMethod handler, RootTag root, List<StackOperation> stackOps) {
+    Set<EventHandler> handlers = Sets.newHashSet(
+            wtg.getHandler(source.getWindow(), widget, event, handler));
+    return wtg.addEdge(new WTGEdge(source, target, handlers, root, stackOps,
+            Lists.<EventHandler>newArrayList()));
+  }
+
+  private List<StackOperation> push(WTGNode window) {
+    return Lists.newArrayList(new StackOperation(OpType.push, window.getWindow()));
+  }
+
+  private RootTag openTag(WTGNode window) {
+    return window.getWindow() instanceof NDialogNode ? RootTag.show_dialog
+            : RootTag.start_activity;
+  }
+
+  private RootTag closeTag(WTGNode window) {
+    return window.getWindow() instanceof NDialogNode ? RootTag.dismiss_dialog
+            : RootTag.finish_activity;
+  }
+}
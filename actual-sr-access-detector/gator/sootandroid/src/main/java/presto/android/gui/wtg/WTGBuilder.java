@@ -16,6 +16,8 @@ import com.google.common.collect.Sets;
 import presto.android.Configs;
 import presto.android.Debug;
 import presto.android.Logger;
+import presto.android.MemoryGovernor;
+import presto.android.Metrics;
 import presto.android.gui.GUIAnalysisOutput;
 import presto.android.gui.graph.NActivityNode;
 import presto.android.gui.wtg.algo.*;
@@ -44,14 +46,36 @@ public class WTGBuilder {
   private List<Multimap<WTGEdgeSig, WTGEdge>> stageOutput;
 
   public void build(GUIAnalysisOutput output) {
+    Metrics.Phase phase = Metrics.v().begin("wtg.preBuild");
     preBuild(output);
+    phase.end();
     building();
+    phase = Metrics.v().begin("wtg.postBuild");
     postBuild();
+    phase.end();
   }
 
   public WTGBuilder() {
     wtg = new WTG();
     stageOutput = Lists.newArrayList();
+    // The edges of the final stage are in the wtg; the earlier stages only
+    // feed the next one and the per-stage statistics.
+    MemoryGovernor.v().register("intermediate WTG stage edges", MemoryGovernor.Level.PRESSURE,
+            new MemoryGovernor.Sheddable() {
+              @Override
+              public int shed() {
+                int released = 0;
+                int last = stageOutput.size() - 1;
+                for (int i = 0; i < last; i++) {
+                  Multimap<WTGEdgeSig, WTGEdge> stage = stageOutput.get(i);
+                  if (stage != stageOutput.get(last)) {
+                    released += stage.size();
+                    stage.clear();
+                  }
+                }
+                return released;
+              }
+            });
   }
 
   WTG getWTG() {
@@ -60,31 +84,46 @@ public class WTGBuilder {
 
   private void building() {
     Multimap<WTGNode, NActivityNode> ownership = HashMultimap.create();
+    Metrics.Phase phase = Metrics.v().begin("wtg.stage1.explicitForward");
     Multimap<WTGEdgeSig, WTGEdge> stage1 = new ExplicitForwardEdgeBuilder(guiOutput, flowgraphRebuilder)
             .buildEdges(wtg);
+    phase.end();
     Logger.verb(getClass().getSimpleName(), "stage 1 finishes");
+    stageOutput.add(stage1);
+    MemoryGovernor.v().checkpoint();
+    phase = Metrics.v().begin("wtg.stage2.lifecycleForward");
     Multimap<WTGEdgeSig, WTGEdge> stage2 = new LifecycleForwardEdgeBuilder(guiOutput, flowgraphRebuilder)
             .buildEdges(wtg, stage1, ownership);
+    phase.end();
     Logger.verb(getClass().getSimpleName(), "stage 2 finishes");
+    stageOutput.add(stage2);
+    MemoryGovernor.v().checkpoint();
+    phase = Metrics.v().begin("wtg.stage3.closeWindow");
     Multimap<WTGEdgeSig, WTGEdge> stage3 = new CloseWindowEdgeBuilder(guiOutput, flowgraphRebuilder)
             .buildEdges(wtg, stage2, ownership);
+    phase.end();
     Logger.verb(getClass().getSimpleName(), "stage 3 finishes");
+    stageOutput.add(stage3);
+    MemoryGovernor.v().checkpoint();
+    phase = Metrics.v().begin("wtg.stage4.callbackSequence");
     Multimap<WTGEdgeSig, WTGEdge> stage4 = new CallbackSequenceBuilder(guiOutput, flowgraphRebuilder)
             .buildEdges(wtg, stage3, ownership);
+    phase.end();
     Logger.verb(getClass().getSimpleName(), "stage 4 finishes");
+    stageOutput.add(stage4);
+    MemoryGovernor.v().checkpoint();
+    phase = Metrics.v().begin("wtg.stage5.backEdge");
     Multimap<WTGEdgeSig, WTGEdge> stage5 = new BackEdgeBuilder(guiOutput, flowgraphRebuilder)
             .buildEdges(wtg, stage4, ownership);
+    phase.end();
     Logger.verb(getClass().getSimpleName(), "stage 5 finishes");
+    stageOutput.add(stage5);
+    MemoryGovernor.v().checkpoint();
+    phase = Metrics.v().begin("wtg.stage6.lifecycleClose");
     Multimap<WTGEdgeSig, WTGEdge> stage6 = new LifecycleCloseEdgeBuilder(guiOutput, flowgraphRebuilder)
             .buildEdges(wtg, stage5, ownership);
+    phase.end();
     Logger.verb(getClass().getSimpleName(), "stage 6 finishes");
-
-    // store the result for all stages
-    stageOutput.add(stage1);
-    stageOutput.add(stage2);
-    stageOutput.add(stage3);
-    stageOutput.add(stage4);
-    stageOutput.add(stage5);
     stageOutput.add(stage6);
     // construct wtg
     Multimap<WTGEdgeSig, WTGEdge> finalStage = stageOutput.get(stageOutput.size() - 1);
@@ -94,6 +133,7 @@ public class WTGBuilder {
     }
     // resurrect the edges
     ignoreEdges(stageOutput);
+    MemoryGovernor.v().checkpoint();
   }
 
   // do initialisation stuff, e.g., rebuild flow graph
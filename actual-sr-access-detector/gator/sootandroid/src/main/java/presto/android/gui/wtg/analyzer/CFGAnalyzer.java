@@ -13,6 +13,7 @@ import com.google.common.collect.*;
 import org.apache.commons.lang.StringUtils;
 import presto.android.Configs;
 import presto.android.Logger;
+import presto.android.MemoryGovernor;
 import presto.android.MethodNames;
 import presto.android.gui.*;
 import presto.android.gui.clients.energy.VarUtil;
@@ -74,7 +75,9 @@ public class CFGAnalyzer {
     // perform constant propagation analysis first
     HashMultimap<Stmt, Stmt> infeasibleEdges = HashMultimap.create();
     HashMultimap<Stmt, SootMethod> infeasibleCalls = HashMultimap.create();
-    if (Configs.resolveContext) {
+    // the constant propagation is skipped when memory runs out, at the price
+    // of keeping infeasible transitions
+    if (Configs.resolveContext && !MemoryGovernor.v().isDegraded()) {
       // if trying to provide context info while resolving infeasible
       // transitions
       if (guiElement instanceof NPreferenceNode) {
@@ -10,8 +10,10 @@ package presto.android.gui.wtg.analyzer;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import presto.android.Logger;
+import presto.android.MemoryGovernor;
 import presto.android.MethodNames;
 import presto.android.gui.wtg.flowgraph.AndroidCallGraph;
 import presto.android.gui.wtg.flowgraph.AndroidCallGraph.Edge;
@@ -35,8 +37,21 @@ public class CFGTraversal {
   private AndroidCallGraph cg = AndroidCallGraph.v();
   // wtg util
   private WTGUtil wtgUtil = WTGUtil.v();
+  // control flow graphs shared across the traversals of all handlers, on top
+  // of the per-traversal methodToCFG maps; only kept with -memoryGovernor,
+  // which drops them under memory pressure
+  private final Map<SootMethod, UnitGraph> sharedCFGs = Maps.newConcurrentMap();
 
   private CFGTraversal() {
+    MemoryGovernor.v().register("cached control flow graphs", MemoryGovernor.Level.PRESSURE,
+            new MemoryGovernor.Sheddable() {
+              @Override
+              public int shed() {
+                int size = sharedCFGs.size();
+                sharedCFGs.clear();
+                return size;
+              }
+            });
   }
 
   public boolean forwardTraversal(
@@ -218,8 +233,14 @@ public class CFGTraversal {
                                    SootMethod mtd) {
     UnitGraph cfg = methodToCFG.get(mtd);
     if (cfg == null) {
-      synchronized (mtd) {
-        cfg = new ExceptionalUnitGraph(mtd.retrieveActiveBody());
+      cfg = sharedCFGs.get(mtd);
+      if (cfg == null) {
+        synchronized (mtd) {
+          cfg = new ExceptionalUnitGraph(mtd.retrieveActiveBody());
+        }
+        if (MemoryGovernor.v().isEnabled() && !MemoryGovernor.v().underPressure()) {
+          sharedCFGs.put(mtd, cfg);
+        }
       }
       methodToCFG.put(mtd, cfg);
     }
@@ -233,5 +254,9 @@ public class CFGTraversal {
     return traversal;
   }
 
+  public static synchronized void reset() {
+    traversal = null;
+  }
+
   private static CFGTraversal traversal;
 }
@@ -247,5 +247,9 @@ public class WTGHelper {
     return helper;
   }
 
+  public static synchronized void reset() {
+    helper = null;
+  }
+
   private static WTGHelper helper;
 }
@@ -64,6 +64,10 @@ public class AndroidCallGraph {
     return theInstance;
   }
 
+  public static synchronized void reset() {
+    theInstance = null;
+  }
+
   public Node getNode(SootMethod sm) {
     return this.sm2nodeMap.get(sm);
   }
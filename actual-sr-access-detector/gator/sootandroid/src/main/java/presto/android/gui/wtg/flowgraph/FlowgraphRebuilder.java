@@ -19,6 +19,7 @@ import presto.android.gui.Flowgraph;
 import presto.android.gui.GUIAnalysisOutput;
 import presto.android.gui.GraphUtil;
 import presto.android.gui.JimpleUtil;
+import presto.android.gui.OpNodeDispatch;
 import presto.android.gui.graph.*;
 import presto.android.gui.listener.ListenerSpecification;
 import presto.android.gui.wtg.flowgraph.AndroidCallGraph.Edge;
@@ -31,6 +32,7 @@ import soot.jimple.infoflow.android.iccta.Ic3Provider;
 import soot.jimple.infoflow.android.iccta.IccLink;
 import soot.toolkits.scalar.Pair;
 
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -96,79 +98,82 @@ public class FlowgraphRebuilder {
         Body b = method.retrieveActiveBody();
         Iterator<Unit> unitItr = b.getUnits().snapshotIterator();
         while (unitItr.hasNext()) {
-          Stmt s = (Stmt) unitItr.next();
-          if (Configs.asyncStrategy == AsyncOpStrategy.Default_Special_Async
-                  || Configs.asyncStrategy == AsyncOpStrategy.All_Special_Async) {
-            collectAsyncRelatedStmts(method, s);
-          }
-          if (s.containsInvokeExpr()) {
-            SootMethod callee = null;
-            try {
-              callee = s.getInvokeExpr().getMethod();
-            } catch (Exception e) {
-              Logger.trace("rebuildFlow",
-                      "Cannot resolve target method for InvokeExpr "
-                              + s.getInvokeExpr().toString());
-              continue;
-            }
-            if (!wtgUtil.isIgnoredMethod(callee)) {
-              buildCallGraph(method, s);
-            } else {
-              // if we should ignore this method for some reasons, e.g., factory or wrapper, for they
-              // could create impossible flows
-              removeFlowAtCall(s, callee);
-            }
-          }
-          if (processStmt(s)) {
-            continue;
-          }
-          // try to find the flow to another method
-          if (s.containsInvokeExpr()) {
-            InvokeExpr ie = s.getInvokeExpr();
-            // SootMethod stm = ie.getMethod();
-            Set<Edge> callees = callgraph.getEdge(s);
-            // flow graph edges at non-virtual calls
-            if (ie instanceof StaticInvokeExpr
-                    || ie instanceof SpecialInvokeExpr) {
-              for (Edge callEdge : callees) {
-                SootMethod callee = callEdge.target;
-                if (callee.getDeclaringClass().isApplicationClass()) {
-                  processFlowAtCall(s, callee);
-                }
-              }
-              continue;
-            }
-            // flow graph edges at virtual calls
-            Local rcv_var = jimpleUtil.receiver(ie);
-            Type rcv_t = rcv_var.getType();
-            // could be ArrayType, for clone() calls
-            if (!(rcv_t instanceof RefType)) {
-              continue;
-            }
-            // handle simple container with subclasses of java.util.List and java.util.Map
-            recordReadWriteContainer(s, method);
-            // handle flow through calls
-            for (Edge callee : callees) {
-              SootMethod trg = callee.target;
-              if (trg != null && trg.getDeclaringClass().isApplicationClass()) {
-                processFlowAtCall(s, trg);
-              }
-            }
-            continue;
-          } // the statement was a call
-          if (!(s instanceof DefinitionStmt)) {
-            continue;
-          }
-          DefinitionStmt ds = (DefinitionStmt) s;
-          Value lhs = ds.getLeftOp();
-          Value rhs = ds.getRightOp();
-          if (rhs instanceof ClassConstant) {
-            NNode nn_lhs = simpleNode(lhs), nn_rhs = simpleNode(rhs);
-            if (nn_lhs != null && nn_rhs != null) {
-              nn_rhs.addEdgeTo(nn_lhs, s);
-            }
+          rebuildFlowAt(method, (Stmt) unitItr.next());
+        }
+      }
+    }
+  }
+
+  private void rebuildFlowAt(SootMethod method, Stmt s) {
+    if (Configs.asyncStrategy == AsyncOpStrategy.Default_Special_Async
+            || Configs.asyncStrategy == AsyncOpStrategy.All_Special_Async) {
+      collectAsyncRelatedStmts(method, s);
+    }
+    if (s.containsInvokeExpr()) {
+      SootMethod callee = null;
+      try {
+        callee = s.getInvokeExpr().getMethod();
+      } catch (Exception e) {
+        Logger.trace("rebuildFlow",
+                "Cannot resolve target method for InvokeExpr "
+                        + s.getInvokeExpr().toString());
+        return;
+      }
+      if (!wtgUtil.isIgnoredMethod(callee)) {
+        buildCallGraph(method, s);
+      } else {
+        // if we should ignore this method for some reasons, e.g., factory or wrapper, for they
+        // could create impossible flows
+        removeFlowAtCall(s, callee);
+      }
+    }
+    if (processStmt(s)) {
+      return;
+    }
+    // try to find the flow to another method
+    if (s.containsInvokeExpr()) {
+      InvokeExpr ie = s.getInvokeExpr();
+      // SootMethod stm = ie.getMethod();
+      Set<Edge> callees = callgraph.getEdge(s);
+      // flow graph edges at non-virtual calls
+      if (ie instanceof StaticInvokeExpr
+              || ie instanceof SpecialInvokeExpr) {
+        for (Edge callEdge : callees) {
+          SootMethod callee = callEdge.target;
+          if (callee.getDeclaringClass().isApplicationClass()) {
+            processFlowAtCall(s, callee);
           }
         }
+        return;
+      }
+      // flow graph edges at virtual calls
+      Local rcv_var = jimpleUtil.receiver(ie);
+      Type rcv_t = rcv_var.getType();
+      // could be ArrayType, for clone() calls
+      if (!(rcv_t instanceof RefType)) {
+        return;
+      }
+      // handle simple container with subclasses of java.util.List and java.util.Map
+      recordReadWriteContainer(s, method);
+      // handle flow through calls
+      for (Edge callee : callees) {
+        SootMethod trg = callee.target;
+        if (trg != null && trg.getDeclaringClass().isApplicationClass()) {
+          processFlowAtCall(s, trg);
+        }
+      }
+      return;
+    } // the statement was a call
+    if (!(s instanceof DefinitionStmt)) {
+      return;
+    }
+    DefinitionStmt ds = (DefinitionStmt) s;
+    Value lhs = ds.getLeftOp();
+    Value rhs = ds.getRightOp();
+    if (rhs instanceof ClassConstant) {
+      NNode nn_lhs = simpleNode(lhs), nn_rhs = simpleNode(rhs);
+      if (nn_lhs != null && nn_rhs != null) {
+        nn_rhs.addEdgeTo(nn_lhs, s);
       }
     }
   }
@@ -302,28 +307,53 @@ public class FlowgraphRebuilder {
   }
 
   private void buildFlowThroughContainer() {
-    GraphUtil graphUtil = GraphUtil.v();
+    List<NAllocNode> containers = Lists.newArrayList();
     for (Expr e : flowgraph.allNAllocNodes.keySet()) {
-      if (!(e.getType() instanceof RefType)) {
+      if (e.getType() instanceof RefType) {
+        containers.add(flowgraph.allNAllocNodes.get(e));
+      }
+    }
+    // The container locals, and which allocations reach them, for all
+    // allocations in one pass
+    List<NVarNode> containerVars = Lists.newArrayList();
+    for (Local l : Sets.union(varsAtContainerRead.keySet(), varsAtContainerWrite.keySet())) {
+      NVarNode v = flowgraph.lookupVarNode(l);
+      if (v != null) {
+        containerVars.add(v);
+      }
+    }
+    BitSet[] reaching = GraphUtil.v().reachingSources(containers, containerVars);
+    List<Set<Stmt>> writes = Lists.newArrayList();
+    List<Set<Stmt>> reads = Lists.newArrayList();
+    for (int i = 0; i < containers.size(); i++) {
+      writes.add(Sets.<Stmt>newHashSet());
+      reads.add(Sets.<Stmt>newHashSet());
+    }
+    for (NVarNode varNode : containerVars) {
+      BitSet reachingContainers = reaching[varNode.id];
+      if (reachingContainers == null) {
         continue;
       }
-      Set<Stmt> writes = Sets.newHashSet();
-      Set<Stmt> reads = Sets.newHashSet();
-      Set<NNode> reachedContainers = graphUtil.reachableNodes(flowgraph.allNAllocNodes
-              .get(e));
-      for (NNode reachedContainer : reachedContainers) {
-        if (!(reachedContainer instanceof NVarNode)) {
-          continue;
-        }
-        NVarNode varNode = (NVarNode) reachedContainer;
-        if (varsAtContainerRead.containsKey(varNode.l)) {
-          reads.addAll(varsAtContainerRead.get(varNode.l));
+      Set<Stmt> readStmts = varsAtContainerRead.get(varNode.l);
+      Set<Stmt> writeStmts = varsAtContainerWrite.get(varNode.l);
+      for (int i = reachingContainers.nextSetBit(0); i >= 0;
+           i = reachingContainers.nextSetBit(i + 1)) {
+        if (readStmts != null) {
+          reads.get(i).addAll(readStmts);
         }
-        if (varsAtContainerWrite.containsKey(varNode.l)) {
-          writes.addAll(varsAtContainerWrite.get(varNode.l));
+        if (writeStmts != null) {
+          writes.get(i).addAll(writeStmts);
         }
       }
-      for (Stmt src : writes) {
+    }
+    // Elements written into a container flow into its contents node, and
+    // out of it at the reads
+    for (int i = 0; i < containers.size(); i++) {
+      if (writes.get(i).isEmpty() || reads.get(i).isEmpty()) {
+        continue;
+      }
+      NContentNode contents = flowgraph.contentNode(containers.get(i));
+      for (Stmt src : writes.get(i)) {
         Integer srcPos = wtgUtil.getWriteContainerField(src);
         if (srcPos == null) {
           Logger.verb(getClass().getSimpleName(), "the target of write container stmt can not be found: " + src);
@@ -335,27 +365,26 @@ public class FlowgraphRebuilder {
         } else {
           sn = simpleNode(src.getInvokeExpr().getArg(srcPos.intValue() - 1));
         }
-        if (sn == null) {
+        if (sn != null) {
+          sn.addEdgeTo(contents);
+        }
+      }
+      for (Stmt tgt : reads.get(i)) {
+        Integer tgtPos = wtgUtil.getReadContainerField(tgt);
+        if (tgtPos == null) {
+          Logger.verb(getClass().getSimpleName(), "the target of read container stmt can not be found: " + tgt);
           continue;
         }
-        for (Stmt tgt : reads) {
-          Integer tgtPos = wtgUtil.getReadContainerField(tgt);
-          if (tgtPos == null) {
-            Logger.verb(getClass().getSimpleName(), "the target of read container stmt can not be found: " + tgt);
-            continue;
-          }
-          NNode tn = null;
-          if (tgtPos.intValue() < 0) {
-            if (tgt instanceof DefinitionStmt) {
-              tn = varNode(jimpleUtil.lhsLocal(tgt));
-            }
-          } else {
-            tn = simpleNode(tgt.getInvokeExpr().getArg(tgtPos.intValue() - 1));
-          }
-          if (tn == null) {
-            continue;
+        NNode tn = null;
+        if (tgtPos.intValue() < 0) {
+          if (tgt instanceof DefinitionStmt) {
+            tn = varNode(jimpleUtil.lhsLocal(tgt));
           }
-          sn.addEdgeTo(tn);
+        } else {
+          tn = simpleNode(tgt.getInvokeExpr().getArg(tgtPos.intValue() - 1));
+        }
+        if (tn != null) {
+          contents.addEdgeTo(tn);
         }
       }
     }
@@ -393,58 +422,53 @@ public class FlowgraphRebuilder {
     return false;
   }
 
-  private NOpNode createOpNode(Stmt s) {
-    if (!s.containsInvokeExpr()) {
-      return null;
-    }
+  // Kinds of operation nodes, in the order their recognizers are tried
+  private enum OpNodeKind {
     // set def in intents.xml
-    {
-      NOpNode startActivity = createStartActivityOpNode(s);
-      if (startActivity != null) {
-        return startActivity;
-      }
-    }
+    START_ACTIVITY,
+    START_SERVICE,
+    SET_INTENT_CONTENT,
+    CREATE_INTENT,
+    GET_INTENT,
+    // MenuItem.setIntent(Intent)
+    // we don't create really opnode for this stmt
+    // instead, we just remember their mapping
+    MENU_ITEM_SET_INTENT,
+    // object.getClass()
+    GET_CLASS,
+  }
 
-    {
-      NOpNode startService = createStartServiceOpNode(s);
-      if (startService != null) {
-        return startService;
-      }
-    }
+  private OpNodeDispatch<OpNodeKind> opNodeDispatch;
 
-    {
-      NOpNode setIntentContent = createSetIntentContentOpNode(s);
-      if (setIntentContent != null) {
-        return setIntentContent;
-      }
-    }
+  private OpNodeDispatch<OpNodeKind> opNodeDispatch() {
+    if (opNodeDispatch == null) {
+      opNodeDispatch = new OpNodeDispatch<>(OpNodeKind.class)
+              .subsig(OpNodeKind.START_ACTIVITY, wtgUtil.getStartActivitySubsigs())
+              .subsig(OpNodeKind.START_SERVICE, wtgUtil.getServiceRelatedSubsigs())
+              .subsig(OpNodeKind.SET_INTENT_CONTENT, wtgUtil.getSetIntentContentSubsigs())
+              .subsig(OpNodeKind.CREATE_INTENT, wtgUtil.getCreateIntentSubsigs())
+              .subsig(OpNodeKind.GET_INTENT, wtgUtil.getGetIntentSubsigs())
+              .subsig(OpNodeKind.MENU_ITEM_SET_INTENT, wtgUtil.getMenuItemSetIntentSubsigs())
+              .subsig(OpNodeKind.GET_CLASS, wtgUtil.getGetClassSubsigs());
+    }
+    return opNodeDispatch;
+  }
 
-    {
-      NOpNode createIntent = createCreateIntentOpNode(s);
-      if (createIntent != null) {
-        return createIntent;
-      }
-    }
-    {
-      NOpNode getIntent = createGetIntentOpNode(s);
-      if (getIntent != null) {
-        return getIntent;
-      }
+  private NOpNode createOpNode(Stmt s) {
+    if (!s.containsInvokeExpr()) {
+      return null;
     }
-    // MenuItem.setIntent(Intent)
-    // we don't create really opnode for this stmt
-    // instead, we just remember their mapping
-    {
-      NOpNode menuItemSetIntent = createMenuItemSetIntentOpNode(s);
-      if (menuItemSetIntent != null) {
-        return menuItemSetIntent;
-      }
+    SootMethod callee;
+    try {
+      callee = s.getInvokeExpr().getMethod();
+    } catch (Exception e) {
+      Logger.trace("createOpNode", "unresolved InvokeExpr " + s.getInvokeExpr());
+      return null;
     }
-    // object.getClass()
-    {
-      NOpNode getClass = createGetClassOpNode(s);
-      if (getClass != null) {
-        return getClass;
+    for (OpNodeKind kind : opNodeDispatch().candidates(callee)) {
+      NOpNode opNode = createOpNode(kind, s);
+      if (opNode != null) {
+        return opNode;
       }
     }
     /*
@@ -458,6 +482,27 @@ public class FlowgraphRebuilder {
     return null;
   }
 
+  private NOpNode createOpNode(OpNodeKind kind, Stmt s) {
+    switch (kind) {
+      case START_ACTIVITY:
+        return createStartActivityOpNode(s);
+      case START_SERVICE:
+        return createStartServiceOpNode(s);
+      case SET_INTENT_CONTENT:
+        return createSetIntentContentOpNode(s);
+      case CREATE_INTENT:
+        return createCreateIntentOpNode(s);
+      case GET_INTENT:
+        return createGetIntentOpNode(s);
+      case MENU_ITEM_SET_INTENT:
+        return createMenuItemSetIntentOpNode(s);
+      case GET_CLASS:
+        return createGetClassOpNode(s);
+      default:
+        throw new IllegalArgumentException(kind.toString());
+    }
+  }
+
   private NOpNode createStartServiceOpNode(Stmt s) {
     InvokeExpr ie = s.getInvokeExpr();
     if (!wtgUtil.isServiceRelated(s)) {
@@ -1224,5 +1269,9 @@ public class FlowgraphRebuilder {
     return rebuilder;
   }
 
+  public static synchronized void reset() {
+    rebuilder = null;
+  }
+
   private static FlowgraphRebuilder rebuilder;
 }
@@ -8,6 +8,7 @@
  */
 package presto.android.gui.wtg.flowgraph;
 
+import presto.android.gui.graph.NodeArena;
 import soot.SootClass;
 
 /**
@@ -33,5 +34,5 @@ public class NAnyValueNode extends NSpecialNode {
     return fakeClass;
   }
 
-  public static final NAnyValueNode ANY = new NAnyValueNode();
+  public static final NAnyValueNode ANY = NodeArena.shared(new NAnyValueNode());
 }
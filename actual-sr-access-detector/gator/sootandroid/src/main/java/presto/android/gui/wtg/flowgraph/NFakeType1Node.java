@@ -9,6 +9,7 @@
 
 package presto.android.gui.wtg.flowgraph;
 
+import presto.android.gui.graph.NodeArena;
 import soot.Scene;
 import soot.SootClass;
 
@@ -32,5 +33,5 @@ public class NFakeType1Node extends NSpecialNode {
     return fakeClass;
   }
 
-  public final static NFakeType1Node NODE = new NFakeType1Node();
+  public final static NFakeType1Node NODE = NodeArena.shared(new NFakeType1Node());
 }
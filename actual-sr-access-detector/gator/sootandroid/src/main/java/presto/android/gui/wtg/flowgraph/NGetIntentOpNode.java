@@ -25,7 +25,7 @@ public class NGetIntentOpNode extends NOpNode {
 
   @Override
   public NVarNode getReceiver() {
-    return (NVarNode) this.pred.get(0);
+    return (NVarNode) getPredecessor(0);
   }
 
   @Override
@@ -45,6 +45,6 @@ public class NGetIntentOpNode extends NOpNode {
 
   @Override
   public NVarNode getLhs() {
-    return (NVarNode) this.succ.get(0);
+    return (NVarNode) getSuccessor(0);
   }
 }
@@ -8,6 +8,7 @@
  */
 package presto.android.gui.wtg.flowgraph;
 
+import presto.android.gui.graph.NodeArena;
 import soot.Scene;
 import soot.SootClass;
 
@@ -29,5 +30,5 @@ public class NLauncherNode extends NSpecialNode {
     return fakeClass;
   }
 
-  public final static NLauncherNode LAUNCHER = new NLauncherNode();
+  public final static NLauncherNode LAUNCHER = NodeArena.shared(new NLauncherNode());
 }
@@ -61,7 +61,7 @@ public class NSetIntentContentOpNode extends NOpNode {
 
   @Override
   public NVarNode getReceiver() {
-    return (NVarNode) this.pred.get(0);
+    return (NVarNode) getPredecessor(0);
   }
 
   @Override
@@ -77,7 +77,7 @@ public class NSetIntentContentOpNode extends NOpNode {
   @Override
   public NVarNode getLhs() {
     if (hasLhs) {
-      return (NVarNode) this.succ.get(0);
+      return (NVarNode) getSuccessor(0);
     } else {
       return null;
     }
@@ -34,7 +34,7 @@ public class NStartActivityOpNode extends NOpNode {
 
   @Override
   public NVarNode getReceiver() {
-    return (NVarNode) this.pred.get(0);
+    return (NVarNode) getPredecessor(0);
   }
 
   @Override
@@ -49,7 +49,7 @@ public class NStartActivityOpNode extends NOpNode {
 
   @Override
   public NNode getParameter() {
-    return this.pred.get(1);
+    return getPredecessor(1);
   }
 
   @Override
@@ -80,6 +80,10 @@ public class IntentAnalysis {
   // mother intent analysis used to copy approximate intent result
   private static IntentAnalysis motherIntentAnalysis;
   private static Lock globalLock = new ReentrantLock();
+
+  public static synchronized void resetMotherIntentAnalysis() {
+    motherIntentAnalysis = null;
+  }
   private static synchronized void createMotherIntentAnalysis(
           GUIAnalysisOutput guiOutput, FlowgraphRebuilder rebuilder) {
     if (motherIntentAnalysis != null) {
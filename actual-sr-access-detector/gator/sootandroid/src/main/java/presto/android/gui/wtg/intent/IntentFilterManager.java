@@ -33,6 +33,11 @@ public class IntentFilterManager {
     return manager;
   }
 
+  public static synchronized void reset() {
+    manager = null;
+    IntentFilterReader.reset();
+  }
+
   public void addFilter(String activity, IntentFilter filter) {
     Set<IntentFilter> filters = filterMap.get(activity);
     if (filters == null) {
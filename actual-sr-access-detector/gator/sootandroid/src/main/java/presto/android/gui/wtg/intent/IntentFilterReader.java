@@ -15,9 +15,8 @@ import org.w3c.dom.NodeList;
 import presto.android.Configs;
 import presto.android.Logger;
 import presto.android.gui.wtg.util.PatternMatcher;
+import presto.android.resources.ResourceProvider;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 public class IntentFilterReader {
   private IntentFilterManager filterManager = IntentFilterManager.v();
@@ -36,6 +35,10 @@ public class IntentFilterReader {
     return theInst;
   }
 
+  static synchronized void reset() {
+    theInst = null;
+  }
+
   public void read() {
     if (read) {
       Logger.err(getClass().getSimpleName(), "intent filter has read the AndroidManifest already");
@@ -47,10 +50,8 @@ public class IntentFilterReader {
   private void readManifest() {
     //String fn = Configs.project + "/AndroidManifest.xml";
     String fn = Configs.manifestLocation;
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
     try {
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      Document doc = dBuilder.parse(fn);
+      Document doc = ResourceProvider.v().parse(fn, false);
       Node root = doc.getElementsByTagName("manifest").item(0);
       String appPkg = root.getAttributes().getNamedItem("package").getTextContent();
 
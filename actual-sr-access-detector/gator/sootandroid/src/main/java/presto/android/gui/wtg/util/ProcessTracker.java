@@ -56,6 +56,10 @@ public class ProcessTracker {
     return tracker;
   }
 
+  public static synchronized void reset() {
+    tracker = null;
+  }
+
   private int indent;
   private int count;
   private static ProcessTracker tracker;
@@ -8,17 +8,16 @@
  */
 package presto.android.gui.wtg.util;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import presto.android.gui.FixpointSolver;
 import presto.android.gui.GUIAnalysis;
+import presto.android.gui.GraphUtil;
 import presto.android.gui.graph.NNode;
 import presto.android.gui.graph.NObjectNode;
 import presto.android.gui.graph.NOpNode;
 import presto.android.gui.graph.NVarNode;
 
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,6 +32,10 @@ public class QueryHelper {
     return instance;
   }
 
+  public static synchronized void reset() {
+    instance = null;
+  }
+
   private QueryHelper() {
     GUIAnalysis guiAnalysis = GUIAnalysis.v();
     this.solver = guiAnalysis.fixpointSolver;
@@ -85,34 +88,9 @@ public class QueryHelper {
   }
 
   // this method will help find all possible back reachable NNode
-  // it will not stop traversing even it reaches NOpNode
+  // it stops at NOpNode, see GraphUtil.backwardReachableNodes()
   private Set<NNode> backwardReachableNodes(NNode n) {
-    // p("[BackwardReachable] " + n);
-    Set<NNode> res = Sets.newHashSet();
-    findBackwardReachableNodes(n, res);
-    return res;
-  }
-
-  private void findBackwardReachableNodes(NNode start, Set<NNode> reachableNodes) {
-    LinkedList<NNode> worklist = Lists.newLinkedList();
-    worklist.add(start);
-    reachableNodes.add(start);
-    while (!worklist.isEmpty()) {
-      NNode n = worklist.remove();
-      for (NNode s : n.getPredecessors()) {
-        if (reachableNodes.contains(s)) {
-          continue;
-        }
-        if (s instanceof NOpNode) {
-          if (!(start instanceof NOpNode)) {
-            reachableNodes.add(s);
-          }
-        } else {
-          worklist.add(s);
-          reachableNodes.add(s);
-        }
-      }
-    }
+    return GraphUtil.v().backwardReachableNodes(n);
   }
 
   public Set<NNode> allVariableValues(NNode n) {
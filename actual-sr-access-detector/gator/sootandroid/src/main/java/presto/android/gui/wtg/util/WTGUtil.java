@@ -107,6 +107,10 @@ public class WTGUtil {
     return wtgUtil;
   }
 
+  public static synchronized void reset() {
+    wtgUtil = null;
+  }
+
   // to check bindObject set up runnable
   public final SootClass threadClass = Scene.v().getSootClass("java.lang.Thread");
   public final SootClass runnableClass = Scene.v().getSootClass("java.lang.Runnable");
@@ -1232,6 +1236,42 @@ public class WTGUtil {
     return -1;
   }
 
+  public Set<String> getStartActivitySubsigs() {
+    return subsigs(startActivityMethods);
+  }
+
+  public Set<String> getServiceRelatedSubsigs() {
+    return subsigs(serviceRelatedMethods);
+  }
+
+  public Set<String> getSetIntentContentSubsigs() {
+    return subsigs(setIntentContentMethods);
+  }
+
+  public Set<String> getCreateIntentSubsigs() {
+    return subsigs(createIntentMethods);
+  }
+
+  public Set<String> getGetIntentSubsigs() {
+    return subsigs(getIntentMethods);
+  }
+
+  public Set<String> getMenuItemSetIntentSubsigs() {
+    return subsigs(menuItemSetIntentMethods);
+  }
+
+  public Set<String> getGetClassSubsigs() {
+    return subsigs(getClassMethods);
+  }
+
+  private Set<String> subsigs(Map<SootClass, ? extends Map<String, ?>> methods) {
+    Set<String> result = Sets.newHashSet();
+    for (Map<String, ?> subsigs : methods.values()) {
+      result.addAll(subsigs.keySet());
+    }
+    return result;
+  }
+
   public Map<SootClass, Map<String, Integer>> getAcquireAPISet() {
     return this.acquireResourceMethods;
   }
@@ -0,0 +1,311 @@
+/*
+ * DexPrefilter.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+
+package presto.android.permission;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.IOUtils;
+import presto.android.Configs;
+import presto.android.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Cheap check, run before soot, of whether an APK can reach a protected API
+ * at all. It reads the method, field and string tables of every classes*.dex
+ * in the APK and looks them up in the permission map files.
+ *
+ * A dex reference names the class used at the call site, while the analysis
+ * sees the resolved declaring class. So besides exact matches, a reference
+ * through an app class or an android.* class also matches when its
+ * sub-signature equals that of a protected member of an android.* class.
+ * App classes are those defined in any of the dex files, so that multidex
+ * APKs are handled.
+ * This may keep apps that do not need the analysis, but should not drop
+ * apps that do.
+ */
+public class DexPrefilter {
+    private static final String TAG = DexPrefilter.class.getSimpleName();
+
+    private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\.dex");
+    private static final String CONTENT_SCHEME = "content://";
+
+    // "<cls: ret name(params)>" and "<cls: type name>"
+    private final Set<String> signatures = Sets.newHashSet();
+    // "ret name(params)" and "type name" of members of android.* classes
+    private final Set<String> frameworkSubsigs = Sets.newHashSet();
+    private final List<String> uris = Lists.newArrayList();
+
+    private static DexPrefilter instance;
+    private static String loadedFile;
+
+    public static synchronized DexPrefilter v() {
+        if (instance == null || !Objects.equals(loadedFile, Configs.permissionMapFile)) {
+            try {
+                instance = new DexPrefilter(Configs.permissionMapFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            loadedFile = Configs.permissionMapFile;
+        }
+        return instance;
+    }
+
+    private DexPrefilter(String permissionMapFile) throws IOException {
+        for (File f : mapFiles(permissionMapFile)) {
+            read(f);
+        }
+    }
+
+    /**
+     * The files the filter is built from: the permission map and, next to it,
+     * the content provider maps that exist.
+     */
+    public static List<File> mapFiles(String permissionMapFile) {
+        File mapFile = new File(permissionMapFile);
+        List<File> files = Lists.newArrayList(mapFile);
+        for (String name : new String[]{"cp_permission_uris.txt", "cp_permission_fields.txt"}) {
+            File f = new File(mapFile.getAbsoluteFile().getParentFile(), name);
+            if (f.isFile()) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    private void read(File file) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith(CONTENT_SCHEME)) {
+                    uris.add(line);
+                } else if (line.startsWith("<") && line.endsWith(">")) {
+                    signatures.add(line);
+                    int colon = line.indexOf(": ");
+                    if (colon > 0 && line.startsWith("<android.")) {
+                        frameworkSubsigs.add(line.substring(colon + 2, line.length() - 1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if some dex file of the APK references a protected method,
+     * field or content URI.
+     */
+    public boolean referencesProtectedApi(String apkPath) throws IOException {
+        List<String> names = Lists.newArrayList();
+        List<DexTables> dexFiles = Lists.newArrayList();
+        try (ZipFile zip = new ZipFile(apkPath)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!DEX_ENTRY.matcher(entry.getName()).matches()) {
+                    continue;
+                }
+                byte[] bytes;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    bytes = IOUtils.toByteArray(in);
+                }
+                names.add(entry.getName());
+                dexFiles.add(new DexTables(bytes));
+            }
+        }
+        // In a multidex APK, a class referenced in one dex file may be
+        // defined in another
+        Set<String> appClasses = Sets.newHashSet();
+        for (DexTables dex : dexFiles) {
+            dex.addDefinedClasses(appClasses);
+        }
+        for (int i = 0; i < dexFiles.size(); i++) {
+            String hit = dexFiles.get(i).findReference(appClasses);
+            if (hit != null) {
+                Logger.verb(TAG, "Protected API referenced in " + names.get(i) + ": " + hit);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(String cls, boolean appClass, String subsig) {
+        if (signatures.contains("<" + cls + ": " + subsig + ">")) {
+            return true;
+        }
+        return (appClass || cls.startsWith("android.")) && frameworkSubsigs.contains(subsig);
+    }
+
+    /**
+     * The id tables of one dex file. See the "dex format" document of the
+     * Android source for the layout.
+     */
+    private class DexTables {
+        final ByteBuffer buf;
+        final String[] strings;
+        final int[] typeDescriptors;
+
+        DexTables(byte[] bytes) {
+            buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            strings = new String[buf.getInt(0x38)];
+            typeDescriptors = new int[buf.getInt(0x40)];
+            int typeOff = buf.getInt(0x44);
+            for (int i = 0; i < typeDescriptors.length; i++) {
+                typeDescriptors[i] = buf.getInt(typeOff + 4 * i);
+            }
+        }
+
+        // class_def_item: uint class_idx, ...
+        void addDefinedClasses(Set<String> classes) {
+            int classDefsSize = buf.getInt(0x60);
+            int classDefsOff = buf.getInt(0x64);
+            for (int i = 0; i < classDefsSize; i++) {
+                classes.add(type(buf.getInt(classDefsOff + 32 * i)));
+            }
+        }
+
+        String findReference(Set<String> appClasses) {
+            // method_id_item: ushort class_idx, ushort proto_idx, uint name_idx
+            int methodsSize = buf.getInt(0x58);
+            int methodsOff = buf.getInt(0x5C);
+            int protosOff = buf.getInt(0x4C);
+            for (int i = 0; i < methodsSize; i++) {
+                int off = methodsOff + 8 * i;
+                int classIdx = buf.getShort(off) & 0xFFFF;
+                int protoIdx = buf.getShort(off + 2) & 0xFFFF;
+                String name = string(buf.getInt(off + 4));
+                String subsig = type(buf.getInt(protosOff + 12 * protoIdx + 4)) + " " + name
+                        + "(" + parameters(buf.getInt(protosOff + 12 * protoIdx + 8)) + ")";
+                String cls = type(classIdx);
+                if (matches(cls, appClasses.contains(cls), subsig)) {
+                    return "<" + cls + ": " + subsig + ">";
+                }
+            }
+            // field_id_item: ushort class_idx, ushort type_idx, uint name_idx
+            int fieldsSize = buf.getInt(0x50);
+            int fieldsOff = buf.getInt(0x54);
+            for (int i = 0; i < fieldsSize; i++) {
+                int off = fieldsOff + 8 * i;
+                int classIdx = buf.getShort(off) & 0xFFFF;
+                String subsig = type(buf.getShort(off + 2) & 0xFFFF) + " " + string(buf.getInt(off + 4));
+                String cls = type(classIdx);
+                if (matches(cls, appClasses.contains(cls), subsig)) {
+                    return "<" + cls + ": " + subsig + ">";
+                }
+            }
+            // content URIs only show up as string constants
+            for (int i = 0; i < strings.length; i++) {
+                String s = string(i);
+                if (!s.startsWith(CONTENT_SCHEME)) {
+                    continue;
+                }
+                for (String uri : uris) {
+                    if (s.startsWith(uri)) {
+                        return s;
+                    }
+                }
+            }
+            return null;
+        }
+
+        String parameters(int typeListOff) {
+            if (typeListOff == 0) {
+                return "";
+            }
+            int size = buf.getInt(typeListOff);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(type(buf.getShort(typeListOff + 4 + 2 * i) & 0xFFFF));
+            }
+            return sb.toString();
+        }
+
+        String type(int idx) {
+            return toJavaType(string(typeDescriptors[idx]));
+        }
+
+        String string(int idx) {
+            String s = strings[idx];
+            if (s == null) {
+                int off = buf.getInt(buf.getInt(0x3C) + 4 * idx);
+                // skip the uleb128 utf16 length
+                while ((buf.get(off++) & 0x80) != 0) {
+                }
+                s = decodeMutf8(off);
+                strings[idx] = s;
+            }
+            return s;
+        }
+
+        String decodeMutf8(int off) {
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                int a = buf.get(off++) & 0xFF;
+                if (a == 0) {
+                    break;
+                }
+                if ((a & 0x80) == 0) {
+                    sb.append((char) a);
+                } else if ((a & 0xE0) == 0xC0) {
+                    int b = buf.get(off++) & 0x3F;
+                    sb.append((char) (((a & 0x1F) << 6) | b));
+                } else {
+                    int b = buf.get(off++) & 0x3F;
+                    int c = buf.get(off++) & 0x3F;
+                    sb.append((char) (((a & 0x0F) << 12) | (b << 6) | c));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    // "[Ljava/lang/String;" -> "java.lang.String[]"
+    static String toJavaType(String descriptor) {
+        int dims = 0;
+        while (descriptor.charAt(dims) == '[') {
+            dims++;
+        }
+        String base;
+        switch (descriptor.charAt(dims)) {
+            case 'V': base = "void"; break;
+            case 'Z': base = "boolean"; break;
+            case 'B': base = "byte"; break;
+            case 'S': base = "short"; break;
+            case 'C': base = "char"; break;
+            case 'I': base = "int"; break;
+            case 'J': base = "long"; break;
+            case 'F': base = "float"; break;
+            case 'D': base = "double"; break;
+            default:
+                base = descriptor.substring(dims + 1, descriptor.length() - 1).replace('/', '.');
+        }
+        StringBuilder sb = new StringBuilder(base);
+        for (int i = 0; i < dims; i++) {
+            sb.append("[]");
+        }
+        return sb.toString();
+    }
+}
@@ -18,6 +18,7 @@ import java.io.*;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public class PermissionMap {
@@ -27,8 +28,13 @@ public class PermissionMap {
 
     private final static Map<String, Set<String>> permissionGroupMap = Maps.newHashMap();
 
+    // The map only depends on the permission map file, so it survives across
+    // apps in server mode unless a job asks for a different file.
+    private static String loadedFile;
+
     public static synchronized PermissionMap v() {
-        if (instance == null) {
+        if (instance == null || !Objects.equals(loadedFile, Configs.permissionMapFile)) {
+            permissionMap.clear();
             instance = new PermissionMap();
         }
         return instance;
@@ -37,6 +43,7 @@ public class PermissionMap {
     private PermissionMap(){
         if (permissionMap.size() == 0) {
             parse();
+            loadedFile = Configs.permissionMapFile;
         }
         init();
     }
@@ -0,0 +1,290 @@
+/*
+ * AXmlDecoder.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+
+package presto.android.resources;
+
+import com.google.common.collect.Maps;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Decodes a compiled (binary) XML file of an APK into a DOM document that
+ * looks like the file apktool would write: attributes keep their namespace
+ * prefixes, and typed values are printed back as text, with resource
+ * references written as "@type/name" or "@android:type/name".
+ *
+ * Structure declarations follow ResourceTypes.h of the Android source.
+ */
+class AXmlDecoder {
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_XML_START_NAMESPACE_TYPE = 0x0100;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_END_ELEMENT_TYPE = 0x0103;
+    private static final int RES_XML_CDATA_TYPE = 0x0104;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+
+    private static final int UTF8_FLAG = 1 << 8;
+    private static final int NO_INDEX = 0xFFFFFFFF;
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final String AUTO_NS = "http://schemas.android.com/apk/res-auto";
+
+    private static final String[] DIMENSION_UNITS = {"px", "dp", "sp", "pt", "in", "mm"};
+    private static final String[] FRACTION_UNITS = {"%", "%p"};
+    private static final float[] RADIX_MULTS = {
+            1.0f / (1 << 8), 1.0f / (1 << 15), 1.0f / (1 << 23), 1.0f / (1 << 31)};
+
+    /**
+     * Maps resource ids to names.
+     */
+    interface Names {
+        /**
+         * Returns "type/name" for a resource id, or null if it is unknown.
+         */
+        String lookup(int id);
+    }
+
+    private final ByteBuffer buf;
+    private final Names names;
+    private String[] strings = new String[0];
+    private int[] resourceIds = new int[0];
+    private final Map<String, String> prefixes = Maps.newHashMap();
+
+    AXmlDecoder(byte[] bytes, Names names) {
+        this.buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        this.names = names;
+    }
+
+    Document decode() throws ParserConfigurationException {
+        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+        dbFactory.setNamespaceAware(true);
+        Document doc = dbFactory.newDocumentBuilder().newDocument();
+        Deque<Node> parents = new ArrayDeque<>();
+        parents.push(doc);
+        // namespaces declared right before the next element
+        Map<String, String> pending = Maps.newLinkedHashMap();
+
+        int offset = buf.getShort(2) & 0xFFFF;
+        while (offset + 8 <= buf.limit()) {
+            int type = buf.getShort(offset) & 0xFFFF;
+            int headerSize = buf.getShort(offset + 2) & 0xFFFF;
+            int size = buf.getInt(offset + 4);
+            if (size <= 0) {
+                break;
+            }
+            int ext = offset + headerSize;
+            switch (type) {
+                case RES_STRING_POOL_TYPE:
+                    readStringPool(offset);
+                    break;
+                case RES_XML_RESOURCE_MAP_TYPE:
+                    resourceIds = new int[(size - headerSize) / 4];
+                    for (int i = 0; i < resourceIds.length; i++) {
+                        resourceIds[i] = buf.getInt(ext + 4 * i);
+                    }
+                    break;
+                case RES_XML_START_NAMESPACE_TYPE: {
+                    String prefix = string(buf.getInt(ext));
+                    String uri = string(buf.getInt(ext + 4));
+                    if (uri != null) {
+                        prefixes.put(uri, prefix);
+                        pending.put(prefix, uri);
+                    }
+                    break;
+                }
+                case RES_XML_START_ELEMENT_TYPE: {
+                    Element element = startElement(doc, ext);
+                    for (Map.Entry<String, String> ns : pending.entrySet()) {
+                        element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                                XMLConstants.XMLNS_ATTRIBUTE + ":" + ns.getKey(), ns.getValue());
+                    }
+                    pending.clear();
+                    parents.peek().appendChild(element);
+                    parents.push(element);
+                    break;
+                }
+                case RES_XML_END_ELEMENT_TYPE:
+                    if (parents.size() > 1) {
+                        parents.pop();
+                    }
+                    break;
+                case RES_XML_CDATA_TYPE: {
+                    String text = string(buf.getInt(ext));
+                    if (text != null && parents.size() > 1) {
+                        parents.peek().appendChild(doc.createTextNode(text));
+                    }
+                    break;
+                }
+                default:
+                    // end of namespace, or chunks we do not need
+                    break;
+            }
+            offset += size;
+        }
+        return doc;
+    }
+
+    private Element startElement(Document doc, int ext) {
+        // ResXMLTree_attrExt: ns, name, attributeStart, attributeSize,
+        // attributeCount, idIndex, classIndex, styleIndex
+        String elementNs = string(buf.getInt(ext));
+        String name = string(buf.getInt(ext + 4));
+        int attributeStart = buf.getShort(ext + 8) & 0xFFFF;
+        int attributeSize = buf.getShort(ext + 10) & 0xFFFF;
+        int attributeCount = buf.getShort(ext + 12) & 0xFFFF;
+
+        Element element = elementNs == null
+                ? doc.createElement(name)
+                : doc.createElementNS(elementNs, qualify(elementNs, name));
+        for (int i = 0; i < attributeCount; i++) {
+            // ResXMLTree_attribute: ns, name, rawValue, Res_value typedValue
+            int attr = ext + attributeStart + i * attributeSize;
+            String ns = string(buf.getInt(attr));
+            int nameIdx = buf.getInt(attr + 4);
+            String attrName = attributeName(nameIdx);
+            String value = string(buf.getInt(attr + 8));
+            if (value == null) {
+                value = formatValue(buf.get(attr + 15) & 0xFF, buf.getInt(attr + 16));
+            }
+            if (ns == null) {
+                element.setAttribute(attrName, value);
+            } else {
+                element.setAttributeNS(ns, qualify(ns, attrName), value);
+            }
+        }
+        return element;
+    }
+
+    // Obfuscated APKs may drop attribute names; the resource map still
+    // has the id of the attribute.
+    private String attributeName(int idx) {
+        String name = string(idx);
+        if ((name == null || name.isEmpty()) && idx >= 0 && idx < resourceIds.length) {
+            String ref = names.lookup(resourceIds[idx]);
+            if (ref != null) {
+                name = ref.substring(ref.indexOf('/') + 1);
+            }
+        }
+        return name;
+    }
+
+    private String qualify(String ns, String name) {
+        String prefix = prefixes.get(ns);
+        if (prefix == null) {
+            if (ANDROID_NS.equals(ns)) {
+                prefix = "android";
+            } else if (AUTO_NS.equals(ns)) {
+                prefix = "app";
+            } else {
+                return name;
+            }
+            prefixes.put(ns, prefix);
+        }
+        return prefix + ":" + name;
+    }
+
+    private String formatValue(int type, int data) {
+        switch (type) {
+            case ARSCFileParser.TYPE_NULL:
+                return "";
+            case ARSCFileParser.TYPE_REFERENCE:
+                return data == 0 ? "@null" : "@" + reference(data);
+            case ARSCFileParser.TYPE_ATTRIBUTE:
+                return "?" + reference(data);
+            case ARSCFileParser.TYPE_STRING:
+                return string(data);
+            case ARSCFileParser.TYPE_FLOAT:
+                return Float.toString(Float.intBitsToFloat(data));
+            case ARSCFileParser.TYPE_DIMENSION:
+                return complex(data, DIMENSION_UNITS, 1.0f);
+            case ARSCFileParser.TYPE_FRACTION:
+                return complex(data, FRACTION_UNITS, 100.0f);
+            case ARSCFileParser.TYPE_INT_HEX:
+                return String.format("0x%08x", data);
+            case ARSCFileParser.TYPE_INT_BOOLEAN:
+                return data != 0 ? "true" : "false";
+            default:
+                if (type >= ARSCFileParser.TYPE_FIRST_COLOR_INT && type <= ARSCFileParser.TYPE_LAST_COLOR_INT) {
+                    return String.format("#%08x", data);
+                }
+                return Integer.toString(data);
+        }
+    }
+
+    private String reference(int id) {
+        String ref = names.lookup(id);
+        if (ref == null) {
+            return String.format("0x%08x", id);
+        }
+        return (id >>> 24 == 0x01 ? "android:" : "") + ref;
+    }
+
+    private static String complex(int data, String[] units, float scale) {
+        float value = (data & 0xFFFFFF00) * RADIX_MULTS[(data >> 4) & 0x3] * scale;
+        int unit = data & 0xF;
+        String s = value == (int) value ? Integer.toString((int) value) : Float.toString(value);
+        return unit < units.length ? s + units[unit] : s;
+    }
+
+    // --- string pool
+
+    private void readStringPool(int chunk) {
+        int count = buf.getInt(chunk + 8);
+        int flags = buf.getInt(chunk + 16);
+        int stringsStart = chunk + buf.getInt(chunk + 20);
+        int offsets = chunk + (buf.getShort(chunk + 2) & 0xFFFF);
+        strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int off = stringsStart + buf.getInt(offsets + 4 * i);
+            strings[i] = (flags & UTF8_FLAG) != 0 ? readUtf8(off) : readUtf16(off);
+        }
+    }
+
+    private String string(int idx) {
+        if (idx == NO_INDEX || idx < 0 || idx >= strings.length) {
+            return null;
+        }
+        return strings[idx];
+    }
+
+    private String readUtf8(int off) {
+        // length in UTF-16 units, then in bytes; each one or two bytes
+        off += (buf.get(off) & 0x80) != 0 ? 2 : 1;
+        int len = buf.get(off) & 0xFF;
+        if ((len & 0x80) != 0) {
+            len = ((len & 0x7F) << 8) | (buf.get(off + 1) & 0xFF);
+            off += 2;
+        } else {
+            off += 1;
+        }
+        return new String(buf.array(), off, len, StandardCharsets.UTF_8);
+    }
+
+    private String readUtf16(int off) {
+        int len = buf.getShort(off) & 0xFFFF;
+        if ((len & 0x8000) != 0) {
+            len = ((len & 0x7FFF) << 16) | (buf.getShort(off + 2) & 0xFFFF);
+            off += 4;
+        } else {
+            off += 2;
+        }
+        return new String(buf.array(), off, len * 2, StandardCharsets.UTF_16LE);
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * ApkResourceProvider.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+
+package presto.android.resources;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import presto.android.Configs;
+import presto.android.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Serves the manifest and the res/ tree of an APK from memory, without
+ * running apktool. Binary XML files are read from the zip once and decoded
+ * on each parse by AXmlDecoder. The directory layout is rebuilt from
+ * resources.arsc: every file resource of type T in configuration C shows up
+ * as "res/T-C/NAME.xml", whatever its (possibly obfuscated) name in the zip.
+ *
+ * The values/ directory only holds public.xml, strings.xml and styles.xml,
+ * generated from the default configuration, since those are the value files
+ * DefaultXMLParser reads.
+ *
+ * Paths look like "APK!/res/layout/main.xml" and "APK!/AndroidManifest.xml".
+ */
+public class ApkResourceProvider extends ResourceProvider implements AXmlDecoder.Names {
+    private static final String TAG = ApkResourceProvider.class.getSimpleName();
+
+    private static final String SEPARATOR = "!/";
+    private static final String MANIFEST = "AndroidManifest.xml";
+    private static final String RES = "res";
+    private static final String VALUES = "values";
+
+    // Names of the framework resources, from the resources.arsc of android.jar
+    private static String frameworkJar;
+    private static Map<Integer, String> frameworkNames;
+
+    private final String root;
+    // resource id -> "type/name"
+    private final Map<Integer, String> names = Maps.newHashMap();
+    // "layout-land" -> ("main.xml" -> zip entry)
+    private final Map<String, Map<String, String>> dirs = new TreeMap<>();
+    // zip entry -> content, for binary XML files only
+    private final Map<String, byte[]> entries = Maps.newHashMap();
+    // "values/strings.xml" etc.
+    private final Map<String, Document> values = Maps.newHashMap();
+
+    public static String resourceRoot(String apk) {
+        return apk + SEPARATOR + RES;
+    }
+
+    public static String manifestPath(String apk) {
+        return apk + SEPARATOR + MANIFEST;
+    }
+
+    ApkResourceProvider(String apk) {
+        root = apk + SEPARATOR;
+        ARSCFileParser arsc = new ARSCFileParser();
+        try (ZipFile zip = new ZipFile(apk)) {
+            ZipEntry table = zip.getEntry("resources.arsc");
+            if (table != null) {
+                try (InputStream in = zip.getInputStream(table)) {
+                    arsc.parse(in);
+                }
+            }
+            index(arsc, zip);
+            Set<String> wanted = Sets.newHashSet(MANIFEST);
+            for (Map<String, String> files : dirs.values()) {
+                for (String entry : files.values()) {
+                    if (entry.endsWith(".xml")) {
+                        wanted.add(entry);
+                    }
+                }
+            }
+            for (String name : wanted) {
+                ZipEntry entry = zip.getEntry(name);
+                if (entry != null) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        entries.put(name, IOUtils.toByteArray(in));
+                    }
+                }
+            }
+            generateValues(arsc);
+        } catch (IOException | ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+        Logger.verb(TAG, entries.size() + " XML files in " + dirs.size() + " directories of " + apk);
+    }
+
+    private void index(ARSCFileParser arsc, ZipFile zip) {
+        for (ARSCFileParser.ResPackage pkg : arsc.getPackages()) {
+            for (ARSCFileParser.ResType type : pkg.getDeclaredTypes()) {
+                Map<String, ARSCFileParser.ResTable_Config> seen = Maps.newHashMap();
+                for (ARSCFileParser.ResConfig config : type.getConfigurations()) {
+                    String dir = type.getTypeName() + qualifiers(config.getConfig());
+                    ARSCFileParser.ResTable_Config other = seen.get(dir);
+                    if (other != null && !other.equals(config.getConfig())) {
+                        // a qualifier we do not print; keep the files apart
+                        dir = dir + "-c" + seen.size();
+                    }
+                    seen.put(dir, config.getConfig());
+                    for (ARSCFileParser.AbstractResource res : config.getResources()) {
+                        names.put(res.getResourceID(), type.getTypeName() + "/" + res.getResourceName());
+                        if (!(res instanceof ARSCFileParser.StringResource)) {
+                            continue;
+                        }
+                        String file = ((ARSCFileParser.StringResource) res).getValue();
+                        if (file.startsWith(RES + "/") && zip.getEntry(file) != null) {
+                            String base = file.substring(file.lastIndexOf('/') + 1);
+                            String ext = base.indexOf('.') < 0 ? "" : base.substring(base.indexOf('.'));
+                            Map<String, String> files = dirs.get(dir);
+                            if (files == null) {
+                                files = new TreeMap<>();
+                                dirs.put(dir, files);
+                            }
+                            files.put(res.getResourceName() + ext, file);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The qualifiers of a configuration as in a directory name, e.g.
+     * "-fr-rCA-land-v21". Only the common ones are printed.
+     */
+    static String qualifiers(ARSCFileParser.ResTable_Config c) {
+        StringBuilder sb = new StringBuilder();
+        if (c.getMmc() != 0) {
+            sb.append("-mcc").append(c.getMmc());
+        }
+        if (c.getMnc() != 0) {
+            sb.append("-mnc").append(c.getMnc());
+        }
+        String language = letters(c.getLanguage());
+        if (!language.isEmpty()) {
+            sb.append('-').append(language);
+            String country = letters(c.getCountry());
+            if (!country.isEmpty()) {
+                sb.append("-r").append(country);
+            }
+        }
+        if (c.getSmallestScreenWidthDp() != 0) {
+            sb.append("-sw").append(c.getSmallestScreenWidthDp()).append("dp");
+        }
+        if (c.getScreenWidthDp() != 0) {
+            sb.append("-w").append(c.getScreenWidthDp()).append("dp");
+        }
+        if (c.getScreenHeightDp() != 0) {
+            sb.append("-h").append(c.getScreenHeightDp()).append("dp");
+        }
+        switch (c.getOrientation()) {
+            case 1: sb.append("-port"); break;
+            case 2: sb.append("-land"); break;
+            case 3: sb.append("-square"); break;
+            default: break;
+        }
+        switch (c.getDensity()) {
+            case 0: break;
+            case 120: sb.append("-ldpi"); break;
+            case 160: sb.append("-mdpi"); break;
+            case 213: sb.append("-tvdpi"); break;
+            case 240: sb.append("-hdpi"); break;
+            case 320: sb.append("-xhdpi"); break;
+            case 480: sb.append("-xxhdpi"); break;
+            case 640: sb.append("-xxxhdpi"); break;
+            case 0xFFFE: sb.append("-anydpi"); break;
+            case 0xFFFF: sb.append("-nodpi"); break;
+            default: sb.append('-').append(c.getDensity()).append("dpi");
+        }
+        if (c.getSdkVersion() != 0) {
+            sb.append("-v").append(c.getSdkVersion());
+        }
+        return sb.toString();
+    }
+
+    private static String letters(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (char ch : s.toCharArray()) {
+            if (Character.isLetter(ch)) {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    // --- values/*.xml
+
+    private void generateValues(ARSCFileParser arsc) throws ParserConfigurationException {
+        Document publicXml = newResources();
+        Document stringsXml = newResources();
+        Document stylesXml = newResources();
+        for (Map.Entry<Integer, String> e : new TreeMap<>(names).entrySet()) {
+            String ref = e.getValue();
+            Element pub = publicXml.createElement("public");
+            pub.setAttribute("type", ref.substring(0, ref.indexOf('/')));
+            pub.setAttribute("name", ref.substring(ref.indexOf('/') + 1));
+            pub.setAttribute("id", String.format("0x%08x", e.getKey()));
+            publicXml.getDocumentElement().appendChild(pub);
+        }
+        for (ARSCFileParser.ResPackage pkg : arsc.getPackages()) {
+            for (ARSCFileParser.ResType type : pkg.getDeclaredTypes()) {
+                boolean isString = "string".equals(type.getTypeName());
+                boolean isStyle = "style".equals(type.getTypeName());
+                if (!isString && !isStyle) {
+                    continue;
+                }
+                for (ARSCFileParser.ResConfig config : type.getConfigurations()) {
+                    if (!qualifiers(config.getConfig()).isEmpty()) {
+                        continue;
+                    }
+                    for (ARSCFileParser.AbstractResource res : config.getResources()) {
+                        if (isString && res instanceof ARSCFileParser.StringResource) {
+                            Element string = stringsXml.createElement("string");
+                            string.setAttribute("name", res.getResourceName());
+                            string.setTextContent(((ARSCFileParser.StringResource) res).getValue());
+                            stringsXml.getDocumentElement().appendChild(string);
+                        } else if (isStyle && res instanceof ARSCFileParser.ComplexResource) {
+                            stylesXml.getDocumentElement().appendChild(
+                                    style(stylesXml, (ARSCFileParser.ComplexResource) res));
+                        }
+                    }
+                }
+            }
+        }
+        values.put(VALUES + "/public.xml", publicXml);
+        values.put(VALUES + "/strings.xml", stringsXml);
+        values.put(VALUES + "/styles.xml", stylesXml);
+        Map<String, String> files = dirs.get(VALUES);
+        if (files == null) {
+            files = new TreeMap<>();
+            dirs.put(VALUES, files);
+        }
+        for (String name : values.keySet()) {
+            files.put(name.substring(VALUES.length() + 1), name);
+        }
+    }
+
+    private Element style(Document doc, ARSCFileParser.ComplexResource res) {
+        Element style = doc.createElement("style");
+        style.setAttribute("name", res.getResourceName());
+        for (Map.Entry<String, ARSCFileParser.AbstractResource> e : res.getValue().entrySet()) {
+            // keys are attribute ids
+            int id = Integer.parseInt(e.getKey());
+            String attr = lookup(id);
+            if (attr == null) {
+                continue;
+            }
+            Element item = doc.createElement("item");
+            item.setAttribute("name", (id >>> 24 == 0x01 ? "android:" : "") + attr.substring(attr.indexOf('/') + 1));
+            item.setTextContent(format(e.getValue()));
+            style.appendChild(item);
+        }
+        return style;
+    }
+
+    private String format(ARSCFileParser.AbstractResource value) {
+        if (value instanceof ARSCFileParser.ReferenceResource) {
+            int id = ((ARSCFileParser.ReferenceResource) value).getReferenceID();
+            String ref = lookup(id);
+            if (id == 0 || ref == null) {
+                return "@null";
+            }
+            return "@" + (id >>> 24 == 0x01 ? "android:" : "") + ref;
+        }
+        if (value instanceof ARSCFileParser.StringResource) {
+            return ((ARSCFileParser.StringResource) value).getValue();
+        }
+        return String.valueOf(value);
+    }
+
+    private static Document newResources() throws ParserConfigurationException {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        doc.appendChild(doc.createElement("resources"));
+        return doc;
+    }
+
+    // --- name lookup
+
+    @Override
+    public String lookup(int id) {
+        if (id >>> 24 == 0x01) {
+            return frameworkNames().get(id);
+        }
+        return names.get(id);
+    }
+
+    private static synchronized Map<Integer, String> frameworkNames() {
+        if (frameworkNames != null && Objects.equals(frameworkJar, Configs.android)) {
+            return frameworkNames;
+        }
+        frameworkJar = Configs.android;
+        frameworkNames = Maps.newHashMap();
+        if (frameworkJar == null || !new File(frameworkJar).isFile()) {
+            return frameworkNames;
+        }
+        ARSCFileParser arsc = new ARSCFileParser();
+        try {
+            arsc.parse(frameworkJar);
+        } catch (IOException e) {
+            Logger.warn(TAG, "Cannot read framework resources from " + frameworkJar + ": " + e.getMessage());
+            return frameworkNames;
+        }
+        for (ARSCFileParser.ResPackage pkg : arsc.getPackages()) {
+            for (ARSCFileParser.ResType type : pkg.getDeclaredTypes()) {
+                for (ARSCFileParser.ResConfig config : type.getConfigurations()) {
+                    for (ARSCFileParser.AbstractResource res : config.getResources()) {
+                        frameworkNames.put(res.getResourceID(), type.getTypeName() + "/" + res.getResourceName());
+                    }
+                }
+            }
+        }
+        return frameworkNames;
+    }
+
+    // --- ResourceProvider
+
+    // "APK!/res//layout/" -> "res/layout"; null for paths outside of the APK
+    private String relative(String path) {
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        String rel = path.substring(root.length()).replaceAll("/+", "/");
+        if (rel.startsWith("/")) {
+            rel = rel.substring(1);
+        }
+        if (rel.endsWith("/")) {
+            rel = rel.substring(0, rel.length() - 1);
+        }
+        return rel;
+    }
+
+    // "res/layout/main.xml" -> the zip entry, or the key in values
+    private String entry(String rel) {
+        if (MANIFEST.equals(rel)) {
+            return MANIFEST;
+        }
+        String[] parts = rel.split("/");
+        if (parts.length != 3 || !RES.equals(parts[0])) {
+            return null;
+        }
+        Map<String, String> files = dirs.get(parts[1]);
+        return files == null ? null : files.get(parts[2]);
+    }
+
+    @Override
+    public Document parse(String path, boolean namespaceAware) throws Exception {
+        String rel = relative(path);
+        if (rel == null) {
+            return super.parse(path, namespaceAware);
+        }
+        String entry = entry(rel);
+        if (entry != null && values.containsKey(entry)) {
+            return values.get(entry);
+        }
+        byte[] bytes = entry == null ? null : entries.get(entry);
+        if (bytes == null) {
+            throw new FileNotFoundException(path);
+        }
+        return new AXmlDecoder(bytes, this).decode();
+    }
+
+    @Override
+    public boolean exists(String path) {
+        String rel = relative(path);
+        if (rel == null) {
+            return super.exists(path);
+        }
+        return isDirectory(path) || entry(rel) != null;
+    }
+
+    @Override
+    public boolean isDirectory(String path) {
+        String rel = relative(path);
+        if (rel == null) {
+            return super.isDirectory(path);
+        }
+        if (rel.isEmpty() || RES.equals(rel)) {
+            return true;
+        }
+        return rel.startsWith(RES + "/") && dirs.containsKey(rel.substring(RES.length() + 1));
+    }
+
+    @Override
+    public String[] list(String dir) {
+        String rel = relative(dir);
+        if (rel == null) {
+            return super.list(dir);
+        }
+        if (rel.isEmpty()) {
+            return new String[]{MANIFEST, RES};
+        }
+        if (RES.equals(rel)) {
+            return dirs.keySet().toArray(new String[0]);
+        }
+        Map<String, String> files = rel.startsWith(RES + "/") ? dirs.get(rel.substring(RES.length() + 1)) : null;
+        return files == null ? null : files.keySet().toArray(new String[0]);
+    }
+}
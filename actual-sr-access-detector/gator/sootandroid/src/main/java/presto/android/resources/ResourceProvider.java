@@ -0,0 +1,63 @@
+/*
+ * ResourceProvider.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+
+package presto.android.resources;
+
+import org.w3c.dom.Document;
+import presto.android.Configs;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+
+/**
+ * Access to the manifest and the res/ files of the app for the XML parsers.
+ * By default these are the files apktool decoded to disk. With
+ * -resourcesFromApk, ApkResourceProvider decodes them in memory from the APK
+ * instead. Paths keep their on-disk shape ("RES/layout-land/main.xml")
+ * either way, and paths outside of the APK, such as the platform resources
+ * under Configs.sysProj, are always read from disk.
+ */
+public class ResourceProvider {
+    private static ResourceProvider instance;
+
+    public static synchronized ResourceProvider v() {
+        if (instance == null) {
+            instance = Configs.resourcesFromApk && Configs.apkMode
+                    ? new ApkResourceProvider(Configs.project)
+                    : new ResourceProvider();
+        }
+        return instance;
+    }
+
+    public static synchronized void reset() {
+        instance = null;
+    }
+
+    public Document parse(String path, boolean namespaceAware) throws Exception {
+        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+        dbFactory.setNamespaceAware(namespaceAware);
+        return dbFactory.newDocumentBuilder().parse(path);
+    }
+
+    public boolean exists(String path) {
+        return new File(path).exists();
+    }
+
+    public boolean isDirectory(String path) {
+        return new File(path).isDirectory();
+    }
+
+    /**
+     * Returns the names of the entries of a directory, or null if the path is
+     * not a directory.
+     */
+    public String[] list(String dir) {
+        return new File(dir).list();
+    }
+}
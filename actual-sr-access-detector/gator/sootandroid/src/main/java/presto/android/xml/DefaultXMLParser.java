@@ -15,19 +15,19 @@ import org.apache.commons.io.FilenameUtils;
 import org.w3c.dom.*;
 import presto.android.Configs;
 import presto.android.Logger;
+import presto.android.Metrics;
 import presto.android.gui.PropertyManager;
 import presto.android.gui.wtg.intent.IntentFilter;
 import presto.android.gui.wtg.intent.IntentFilterManager;
 import presto.android.gui.wtg.util.PatternMatcher;
 import presto.android.resources.ImageResourceParser;
+import presto.android.resources.ResourceProvider;
 import presto.android.xml.XMLParser.AbstractXMLParser;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootField;
 import soot.toolkits.scalar.Pair;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.util.*;
 
@@ -176,7 +176,9 @@ class DefaultXMLParser extends AbstractXMLParser {
   private static DefaultXMLParser theInst;
 
   private DefaultXMLParser() {
+    Metrics.Phase phase = Metrics.v().begin("xml.parse");
     doIt();
+    phase.end();
   }
 
   static synchronized DefaultXMLParser v() {
@@ -186,6 +188,10 @@ class DefaultXMLParser extends AbstractXMLParser {
     return theInst;
   }
 
+  static synchronized void reset() {
+    theInst = null;
+  }
+
   // === implementation details
   private void doIt() {
     rGeneralIdMap = Maps.newHashMap();
@@ -326,9 +332,7 @@ class DefaultXMLParser extends AbstractXMLParser {
   private void readPreference(String file, AndroidView root, Integer preferenceId) {
     Document doc;
     try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+      doc = ResourceProvider.v().parse(file, false);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -440,10 +444,8 @@ class DefaultXMLParser extends AbstractXMLParser {
 
   private void readPublicXML() {
     String fn = Configs.resourceLocation + "/values/public.xml";
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
     try {
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      Document doc = dBuilder.parse(fn);
+      Document doc = ResourceProvider.v().parse(fn, false);
 
       Node root = doc.getElementsByTagName("resources").item(0);
       NodeList children = root.getChildNodes();
@@ -560,13 +562,10 @@ class DefaultXMLParser extends AbstractXMLParser {
 
   private void readManifest() {
     String fn = Configs.manifestLocation;
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-    //Start from Android O. Android manifest file can contain namespaces other
-    //than android:
-    dbFactory.setNamespaceAware(true);
     try {
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      Document doc = dBuilder.parse(fn);
+      //Start from Android O. Android manifest file can contain namespaces other
+      //than android:
+      Document doc = ResourceProvider.v().parse(fn, true);
       Node root = doc.getElementsByTagName("manifest").item(0);
       appPkg = root.getAttributes().getNamedItem("package").getTextContent();
 
@@ -1047,10 +1046,7 @@ class DefaultXMLParser extends AbstractXMLParser {
   private void readLayout(String file, AndroidView root, boolean isSys) {
     Document doc;
     try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      dbFactory.setNamespaceAware(true);
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+      doc = ResourceProvider.v().parse(file, true);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -1270,7 +1266,7 @@ class DefaultXMLParser extends AbstractXMLParser {
       assert isSys;
       // use the value for portrait
       String ret = resRoot + "/layout/keyguard_emergency_carrier_area.xml";
-      assert new File(ret).exists() : "ret=" + ret;
+      assert ResourceProvider.v().exists(ret) : "ret=" + ret;
       return ret;
     }
     if ("status_bar_latest_event_ticker_large_icon".equals(layoutId)
@@ -1298,7 +1294,7 @@ class DefaultXMLParser extends AbstractXMLParser {
       if (file == null) {
         continue;
       }
-      if (new File(file).exists()) {
+      if (ResourceProvider.v().exists(file)) {
         return file;
       }
     }
@@ -1513,10 +1509,7 @@ class DefaultXMLParser extends AbstractXMLParser {
   private void readMenu(String file, AndroidView root, boolean isSys) {
     Document doc;
     try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      dbFactory.setNamespaceAware(true);
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+      doc = ResourceProvider.v().parse(file, true);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -1745,9 +1738,7 @@ class DefaultXMLParser extends AbstractXMLParser {
                            HashMap<String, Integer> stringFieldAndIds) {
     Document doc;
     try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+      doc = ResourceProvider.v().parse(file, false);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -1812,13 +1803,12 @@ class DefaultXMLParser extends AbstractXMLParser {
     ArrayList<String> xmlFiles = Lists.newArrayList();
     for (String proj : projectDirs) {
       String valuesDirectoryName = proj + "/values/";
-      File valuesDirectory = new File(valuesDirectoryName);
-      if (!valuesDirectory.exists()) {
+      if (!ResourceProvider.v().exists(valuesDirectoryName)) {
         Logger.verb(this.getClass().getSimpleName(),
-                "[WARNING] Directory " + valuesDirectory + " does not exist!");
+                "[WARNING] Directory " + valuesDirectoryName + " does not exist!");
         return Lists.newArrayList();
       }
-      for (String file : valuesDirectory.list()) {
+      for (String file : ResourceProvider.v().list(valuesDirectoryName)) {
         if (file.equals("strings.xml")
                 || (file.startsWith("strings-") && file.endsWith(".xml"))) {
           xmlFiles.add(valuesDirectoryName + file);
@@ -1832,17 +1822,17 @@ class DefaultXMLParser extends AbstractXMLParser {
   // === END
 
   private static String findFileExistence(String folderName, String dirName, String tgtFileName) {
-    File folder = new File(folderName);
-    for (File subFolder : folder.listFiles()) {
-      if (subFolder.isDirectory()) {
-        String subDirName = subFolder.getName();
+    ResourceProvider resources = ResourceProvider.v();
+    for (String subDirName : resources.list(folderName)) {
+      String subFolder = folderName + "/" + subDirName;
+      if (resources.isDirectory(subFolder)) {
         if (subDirName.length() < dirName.length()) {
           continue;
         }
         if (subDirName.startsWith(dirName)) {
-          for (File subFile : subFolder.listFiles()) {
-            if (subFile.getName().equals(tgtFileName))
-              return folderName + "/" + subDirName + "/" + tgtFileName;
+          for (String subFile : resources.list(subFolder)) {
+            if (subFile.equals(tgtFileName))
+              return subFolder + "/" + tgtFileName;
           }
         }
       }
@@ -2037,12 +2027,11 @@ class DefaultXMLParser extends AbstractXMLParser {
   public void readStyles() {
     ArrayList<String> xmlFiles = Lists.newArrayList();
     String valuesDirectoryName = Configs.resourceLocation + "/values/";
-    File valuesDirectory = new File(valuesDirectoryName);
-    if (!valuesDirectory.exists()) {
+    if (!ResourceProvider.v().exists(valuesDirectoryName)) {
       System.out.println(
-              "[WARNING] Directory " + valuesDirectory + " does not exist!");
+              "[WARNING] Directory " + valuesDirectoryName + " does not exist!");
     }
-    for (String file : valuesDirectory.list()) {
+    for (String file : ResourceProvider.v().list(valuesDirectoryName)) {
       if ((file.equals("styles.xml")
               || (file.startsWith("styles-")
               || file.equals("themes.xml")
@@ -2060,9 +2049,7 @@ class DefaultXMLParser extends AbstractXMLParser {
   private void readStyles(String file, HashMap<String, Set<String>> styleMap) {
     Document doc;
     try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+      doc = ResourceProvider.v().parse(file, false);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
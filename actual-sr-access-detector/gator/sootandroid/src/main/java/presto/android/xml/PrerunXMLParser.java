@@ -14,10 +14,8 @@ import com.google.common.collect.Sets;
 import org.w3c.dom.*;
 import presto.android.Configs;
 import presto.android.Logger;
+import presto.android.resources.ResourceProvider;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -92,6 +90,10 @@ public class PrerunXMLParser {
     return theInst;
   }
 
+  public static synchronized void reset() {
+    theInst = null;
+  }
+
   // === implementation details
   private void doIt() {
     readLayout();
@@ -117,9 +119,7 @@ public class PrerunXMLParser {
   private void readLayoutOnSingleFile(String file) {
     Document doc;
     try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+      doc = ResourceProvider.v().parse(file, false);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -195,15 +195,15 @@ public class PrerunXMLParser {
 
   private List<String> retriveXMLFilesFromDirectory(String baseDirName, String subDirName) {
     List<String> fileList = Lists.newArrayList();
-    File folder = new File(baseDirName);
-    if (folder.isDirectory()) {
-      for (File curFile : folder.listFiles()) {
-        if (curFile.isDirectory()
-                && curFile.getName().length() >= subDirName.length()
-                && curFile.getName().startsWith(subDirName)) {
-          for (File curSubFile : curFile.listFiles()) {
-            if (curSubFile.getName().endsWith(".xml")) {
-              fileList.add(curSubFile.getAbsolutePath());
+    ResourceProvider resources = ResourceProvider.v();
+    String[] dirNames = resources.list(baseDirName);
+    if (dirNames != null) {
+      for (String dirName : dirNames) {
+        String dir = baseDirName + "/" + dirName;
+        if (dirName.startsWith(subDirName) && resources.isDirectory(dir)) {
+          for (String fileName : resources.list(dir)) {
+            if (fileName.endsWith(".xml")) {
+              fileList.add(dir + "/" + fileName);
             }
           }
         }
@@ -230,9 +230,7 @@ public class PrerunXMLParser {
   private void readMenuOnSingleFile(String file) {
     Document doc;
     try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+      doc = ResourceProvider.v().parse(file, false);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -31,8 +31,7 @@ public class ResourceConstantHelper {
     String constDir = Configs.sootAndroidDir + "/scripts/consts/";
     File constDirFile = new File(constDir);
     if (!constDirFile.exists() || (!constDirFile.isDirectory())) {
-      Logger.verb("ERROR", "SootAndroid/consts/ directory not exist");
-      System.exit(-1);
+      throw new RuntimeException("SootAndroid/consts/ directory not exist: " + constDir);
     }
 
     Map<Integer, File> platformDirs = Maps.newHashMap();
@@ -0,0 +1,535 @@
+/*
+ * SnapshotXMLParser.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.xml;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import presto.android.gui.listener.EventType;
+import soot.Scene;
+import soot.SootClass;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The resources of an app as saved in a FlowgraphSnapshot: the id names, the
+ * string values, the manifest, and the view trees that findViewById() returns
+ * for the known ids. write() saves what the analysis asks an XMLParser after
+ * the flowgraph is built; the parser read back answers the same questions
+ * without the resource files.
+ *
+ * Image files are not saved, so getImageFiles() returns nothing, and
+ * getApplicationIdValue() and getSystemIdValue() only know layouts, menus,
+ * ids and strings.
+ */
+public class SnapshotXMLParser extends XMLParser.AbstractXMLParser {
+  private static final String LAYOUT = "layout";
+  private static final String MENU = "menu";
+  private static final String ID = "id";
+  private static final String STRING = "string";
+
+  // Resource type -> value -> name, for the application and the system
+  private final Map<String, Map<Integer, String>> appNames = Maps.newHashMap();
+  private final Map<String, Map<Integer, String>> sysNames = Maps.newHashMap();
+  private final Map<Integer, String> stringValues = Maps.newHashMap();
+  private final Map<Integer, String> preferenceNames = Maps.newLinkedHashMap();
+  private final Set<Integer> preferenceIds = Sets.newLinkedHashSet();
+  private final Set<Integer> preferenceHeaderIds = Sets.newLinkedHashSet();
+  private final Set<String> preferenceKeys = Sets.newLinkedHashSet();
+  private final Map<Integer, AndroidView> views = Maps.newHashMap();
+
+  /**
+   * Reads the resources saved by write(). The classes of the views and the
+   * main activity have to be in the Scene already.
+   */
+  public SnapshotXMLParser(DataInput in) throws IOException {
+    appPkg = readString(in);
+    String main = readString(in);
+    mainActivity = main == null ? null : Scene.v().getSootClass(main);
+    readStrings(in, activities);
+    readStrings(in, services);
+    readStrings(in, receivers);
+    readStringMap(in, activityLabels);
+    readStringMap(in, usesPermissions);
+    int launchModes = in.readInt();
+    for (int i = 0; i < launchModes; i++) {
+      String activity = readString(in);
+      activityAndLaunchModes.put(activity, ActivityLaunchMode.valueOf(readString(in)));
+    }
+
+    for (String type : new String[]{LAYOUT, MENU, ID, STRING}) {
+      appNames.put(type, readNames(in));
+      sysNames.put(type, readNames(in));
+    }
+    stringValues.putAll(readNames(in));
+    preferenceNames.putAll(readNames(in));
+    readInts(in, preferenceIds);
+    readInts(in, preferenceHeaderIds);
+    readStrings(in, preferenceKeys);
+
+    AndroidView[] all = new AndroidView[in.readInt()];
+    for (int i = 0; i < all.length; i++) {
+      all[i] = new AndroidView();
+    }
+    for (AndroidView view : all) {
+      String klass = readString(in);
+      if (klass != null) {
+        view.setSootClass(Scene.v().getSootClass(klass));
+      }
+      view.setId(in.readBoolean() ? in.readInt() : null);
+      view.setText(readString(in));
+      view.setHint(readString(in));
+      view.setTooltip(readString(in));
+      view.setContentDescription(readString(in));
+      view.setImageResource(readString(in));
+      view.setOrigin(readString(in));
+      int attrs = in.readInt();
+      for (int i = 0; i < attrs; i++) {
+        String attr = readString(in);
+        view.addAttr(attr, readString(in));
+      }
+      int handlers = in.readInt();
+      for (int i = 0; i < handlers; i++) {
+        EventType event = EventType.valueOf(readString(in));
+        view.getInlineClickHandlers().put(event, readString(in));
+      }
+      int children = in.readInt();
+      for (int i = 0; i < children; i++) {
+        all[in.readInt()].setParent(view);
+      }
+    }
+    int found = in.readInt();
+    for (int i = 0; i < found; i++) {
+      int id = in.readInt();
+      views.put(id, all[in.readInt()]);
+    }
+  }
+
+  /**
+   * Saves what the analysis can ask the given parser.
+   */
+  public static void write(XMLParser xml, DataOutput out) throws IOException {
+    writeString(out, xml.getAppPackageName());
+    SootClass main = xml.getMainActivity();
+    writeString(out, main == null ? null : main.getName());
+    List<String> activityNames = Lists.newArrayList(xml.getActivities());
+    writeStrings(out, activityNames);
+    writeStrings(out, Lists.newArrayList(xml.getServices()));
+    writeStrings(out, xml instanceof XMLParser.AbstractXMLParser
+            ? ((XMLParser.AbstractXMLParser) xml).receivers : Collections.<String>emptyList());
+    writeStringMap(out, xml.getActivityLabels());
+    writeStringMap(out, xml.getUsesPermissions());
+    Map<String, ActivityLaunchMode> launchModes = Maps.newLinkedHashMap();
+    for (String activity : activityNames) {
+      ActivityLaunchMode mode = xml.getLaunchMode(activity);
+      if (mode != null) {
+        launchModes.put(activity, mode);
+      }
+    }
+    out.writeInt(launchModes.size());
+    for (Map.Entry<String, ActivityLaunchMode> e : launchModes.entrySet()) {
+      writeString(out, e.getKey());
+      writeString(out, e.getValue().name());
+    }
+
+    Map<Integer, String> names = Maps.newLinkedHashMap();
+    for (Integer i : xml.getApplicationLayoutIdValues()) {
+      names.put(i, xml.getApplicationRLayoutName(i));
+    }
+    writeNames(out, names);
+    names.clear();
+    for (Integer i : xml.getSystemLayoutIdValues()) {
+      names.put(i, xml.getSystemRLayoutName(i));
+    }
+    writeNames(out, names);
+    names.clear();
+    for (Integer i : xml.getApplicationMenuIdValues()) {
+      names.put(i, xml.getApplicationRMenuName(i));
+    }
+    writeNames(out, names);
+    names.clear();
+    for (Integer i : xml.getSystemMenuIdValues()) {
+      names.put(i, xml.getSystemRMenuName(i));
+    }
+    writeNames(out, names);
+    names.clear();
+    for (Integer i : xml.getApplicationRIdValues()) {
+      names.put(i, xml.getApplicationRIdName(i));
+    }
+    writeNames(out, names);
+    names.clear();
+    for (Integer i : xml.getSystemRIdValues()) {
+      names.put(i, xml.getSystemRIdName(i));
+    }
+    writeNames(out, names);
+    names.clear();
+    for (Integer i : xml.getStringIdValues()) {
+      names.put(i, xml.getRStringName(i));
+    }
+    writeNames(out, names);
+    // No system strings
+    writeNames(out, Collections.<Integer, String>emptyMap());
+    names.clear();
+    for (Integer i : xml.getStringIdValues()) {
+      names.put(i, xml.getStringValue(i));
+    }
+    writeNames(out, names);
+    names.clear();
+    for (Integer i : xml.getApplicationPreferenceIdValues()) {
+      names.put(i, xml.getApplicationPreferenceName(i));
+    }
+    for (Integer i : xml.getApplicationPreferenceHeaderIdValues()) {
+      names.put(i, xml.getApplicationPreferenceName(i));
+    }
+    writeNames(out, names);
+    writeInts(out, xml.getApplicationPreferenceIdValues());
+    writeInts(out, xml.getApplicationPreferenceHeaderIdValues());
+    writeStrings(out, xml.getApplicationPreferenceKeys());
+
+    // The views of all ids, with the whole trees they are in
+    Set<Integer> ids = Sets.newLinkedHashSet();
+    ids.addAll(xml.getApplicationLayoutIdValues());
+    ids.addAll(xml.getSystemLayoutIdValues());
+    ids.addAll(xml.getApplicationMenuIdValues());
+    ids.addAll(xml.getSystemMenuIdValues());
+    ids.addAll(xml.getApplicationRIdValues());
+    ids.addAll(xml.getSystemRIdValues());
+    ids.addAll(xml.getApplicationPreferenceIdValues());
+    ids.addAll(xml.getApplicationPreferenceHeaderIdValues());
+    Map<Integer, AndroidView> found = Maps.newLinkedHashMap();
+    Map<AndroidView, Integer> index = new IdentityHashMap<>();
+    List<AndroidView> all = Lists.newArrayList();
+    for (Integer id : ids) {
+      AndroidView view = xml.findViewById(id);
+      if (view == null) {
+        continue;
+      }
+      found.put(id, view);
+      AndroidView root = view;
+      while (root.getParent() != null) {
+        root = root.getParent();
+      }
+      if (index.containsKey(root)) {
+        continue;
+      }
+      List<AndroidView> worklist = Lists.newArrayList(root);
+      while (!worklist.isEmpty()) {
+        AndroidView v = worklist.remove(worklist.size() - 1);
+        index.put(v, all.size());
+        all.add(v);
+        for (int i = 0; i < v.getNumberOfChildren(); i++) {
+          // Unresolved includes are dropped
+          IAndroidView child = v.getChildInternal(i);
+          if (child instanceof AndroidView) {
+            worklist.add((AndroidView) child);
+          }
+        }
+      }
+    }
+    out.writeInt(all.size());
+    for (AndroidView view : all) {
+      SootClass klass = view.getSootClass();
+      writeString(out, klass == null ? null : klass.getName());
+      out.writeBoolean(view.getId() != null);
+      if (view.getId() != null) {
+        out.writeInt(view.getId());
+      }
+      writeString(out, view.getText());
+      writeString(out, view.getHint());
+      writeString(out, view.getTooltip());
+      writeString(out, view.getContentDescription());
+      writeString(out, view.getImageResource());
+      writeString(out, view.getOrigin());
+      writeStringMap(out, view.getAttrs());
+      Map<EventType, String> handlers = view.getInlineClickHandlers();
+      out.writeInt(handlers.size());
+      for (Map.Entry<EventType, String> e : handlers.entrySet()) {
+        writeString(out, e.getKey().name());
+        writeString(out, e.getValue());
+      }
+      List<Integer> children = Lists.newArrayList();
+      for (int i = 0; i < view.getNumberOfChildren(); i++) {
+        IAndroidView child = view.getChildInternal(i);
+        if (child instanceof AndroidView) {
+          children.add(index.get(child));
+        }
+      }
+      out.writeInt(children.size());
+      for (Integer child : children) {
+        out.writeInt(child);
+      }
+    }
+    out.writeInt(found.size());
+    for (Map.Entry<Integer, AndroidView> e : found.entrySet()) {
+      out.writeInt(e.getKey());
+      out.writeInt(index.get(e.getValue()));
+    }
+  }
+
+  // --- encoding; strings are length-prefixed UTF-8, since writeUTF() stops
+  // at 64K
+
+  static void writeString(DataOutput out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeStrings(DataOutput out, Iterable<String> strings) throws IOException {
+    List<String> list = Lists.newArrayList(strings);
+    out.writeInt(list.size());
+    for (String s : list) {
+      writeString(out, s);
+    }
+  }
+
+  private static void readStrings(DataInput in, Collection<String> into) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      into.add(readString(in));
+    }
+  }
+
+  private static void writeStringMap(DataOutput out, Map<String, String> map) throws IOException {
+    if (map == null) {
+      out.writeInt(0);
+      return;
+    }
+    out.writeInt(map.size());
+    for (Map.Entry<String, String> e : map.entrySet()) {
+      writeString(out, e.getKey());
+      writeString(out, e.getValue());
+    }
+  }
+
+  private static void readStringMap(DataInput in, Map<String, String> into) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      String key = readString(in);
+      into.put(key, readString(in));
+    }
+  }
+
+  private static void writeNames(DataOutput out, Map<Integer, String> names) throws IOException {
+    out.writeInt(names.size());
+    for (Map.Entry<Integer, String> e : names.entrySet()) {
+      out.writeInt(e.getKey());
+      writeString(out, e.getValue());
+    }
+  }
+
+  private static Map<Integer, String> readNames(DataInput in) throws IOException {
+    int size = in.readInt();
+    Map<Integer, String> names = Maps.newLinkedHashMapWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      int value = in.readInt();
+      names.put(value, readString(in));
+    }
+    return names;
+  }
+
+  private static void writeInts(DataOutput out, Set<Integer> ints) throws IOException {
+    out.writeInt(ints.size());
+    for (Integer i : ints) {
+      out.writeInt(i);
+    }
+  }
+
+  private static void readInts(DataInput in, Set<Integer> into) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      into.add(in.readInt());
+    }
+  }
+
+  // --- XMLParser
+
+  private Integer lookupValue(Map<String, Map<Integer, String>> names, String type, String name) {
+    Map<Integer, String> typeNames = names.get(type);
+    if (typeNames == null) {
+      return null;
+    }
+    for (Map.Entry<Integer, String> e : typeNames.entrySet()) {
+      if (name.equals(e.getValue())) {
+        return e.getKey();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Set<Integer> getApplicationLayoutIdValues() {
+    return appNames.get(LAYOUT).keySet();
+  }
+
+  @Override
+  public Set<Integer> getSystemLayoutIdValues() {
+    return sysNames.get(LAYOUT).keySet();
+  }
+
+  @Override
+  public Integer getSystemRLayoutValue(String layoutName) {
+    return lookupValue(sysNames, LAYOUT, layoutName);
+  }
+
+  @Override
+  public String getApplicationRLayoutName(Integer value) {
+    return appNames.get(LAYOUT).get(value);
+  }
+
+  @Override
+  public String getSystemRLayoutName(Integer value) {
+    return sysNames.get(LAYOUT).get(value);
+  }
+
+  @Override
+  public Set<Integer> getApplicationMenuIdValues() {
+    return appNames.get(MENU).keySet();
+  }
+
+  @Override
+  public Set<Integer> getSystemMenuIdValues() {
+    return sysNames.get(MENU).keySet();
+  }
+
+  @Override
+  public String getApplicationRMenuName(Integer value) {
+    return appNames.get(MENU).get(value);
+  }
+
+  @Override
+  public String getSystemRMenuName(Integer value) {
+    return sysNames.get(MENU).get(value);
+  }
+
+  @Override
+  public Set<Integer> getApplicationRIdValues() {
+    return appNames.get(ID).keySet();
+  }
+
+  @Override
+  public Set<Integer> getSystemRIdValues() {
+    return sysNames.get(ID).keySet();
+  }
+
+  @Override
+  public Integer getSystemRIdValue(String idName) {
+    return lookupValue(sysNames, ID, idName);
+  }
+
+  @Override
+  public String getApplicationRIdName(Integer value) {
+    return appNames.get(ID).get(value);
+  }
+
+  @Override
+  public String getSystemRIdName(Integer value) {
+    return sysNames.get(ID).get(value);
+  }
+
+  @Override
+  public Set<Integer> getStringIdValues() {
+    return appNames.get(STRING).keySet();
+  }
+
+  @Override
+  public String getRStringName(Integer value) {
+    return appNames.get(STRING).get(value);
+  }
+
+  @Override
+  public String getStringValue(Integer idValue) {
+    return stringValues.get(idValue);
+  }
+
+  @Override
+  public Iterator<String> getServices() {
+    return services.iterator();
+  }
+
+  @Override
+  public Integer getApplicationIdValue(String type, String name) {
+    return lookupValue(appNames, type, name);
+  }
+
+  @Override
+  public Integer getSystemIdValue(String type, String name) {
+    return lookupValue(sysNames, type, name);
+  }
+
+  @Override
+  public AndroidView findViewById(Integer id) {
+    return views.get(id);
+  }
+
+  @Override
+  public Set<Integer> getApplicationPreferenceIdValues() {
+    return preferenceIds;
+  }
+
+  @Override
+  public Set<Integer> getApplicationPreferenceHeaderIdValues() {
+    return preferenceHeaderIds;
+  }
+
+  @Override
+  public String getApplicationPreferenceName(Integer value) {
+    return preferenceNames.get(value);
+  }
+
+  @Override
+  public Set<String> getApplicationPreferenceKeys() {
+    return preferenceKeys;
+  }
+
+  @Override
+  public Set<String> getImageFiles(String resName) {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<String> getImageFiles(int resId) {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public HashMap<String, String> getActivityLabels() {
+    return activityLabels;
+  }
+
+  @Override
+  public HashMap<String, String> getUsesPermissions() {
+    return usesPermissions;
+  }
+}
@@ -101,9 +101,25 @@ public interface XMLParser {
   // XMLParser implementations is very limited. We may even end up with only
   // one and push the diff logic into the existing parser.
   class Factory {
-    public static XMLParser getXMLParser() {
+    // Replaces the parser of the app, e.g., for the synthetic scenes of
+    // presto.android.gui.synthetic. Cleared by reset().
+    private static XMLParser installed;
+
+    public static synchronized XMLParser getXMLParser() {
+      if (installed != null) {
+        return installed;
+      }
       return DefaultXMLParser.v();
     }
+
+    public static synchronized void install(XMLParser parser) {
+      installed = parser;
+    }
+
+    public static synchronized void reset() {
+      installed = null;
+      DefaultXMLParser.reset();
+    }
   }
   // === layout, id, string, menu xml files
 
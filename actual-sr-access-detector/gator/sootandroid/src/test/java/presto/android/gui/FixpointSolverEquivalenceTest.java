@@ -0,0 +1,95 @@
+/*
+ * FixpointSolverEquivalenceTest.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+
+package presto.android.gui;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import presto.android.Configs;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.synthetic.FlowgraphGenerator;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the semi-naive viewAndListenerPropagation() against the full sweep
+ * it replaced. Each solve runs with Configs.sanityCheck, so checkFixedPoint()
+ * recomputes all paths and runs every op node once more, which is one more
+ * round of the full sweep; the solver fails if anything grows. Every step
+ * only adds what the full sweep would add, so no growth means the same
+ * solution. The solution is also compared between one and several workers.
+ */
+public class FixpointSolverEquivalenceTest {
+  // nodes, fanOut, opPercent, cycleDensity, seed, callDensity
+  private static final Object[][] SHAPES = {
+          {500, 1, 15, 0.05, 7L, 0.9},
+          {500, 1, 15, 0.05, 4L, 0.9},
+          {2000, 2, 10, 0.01, 42L, 0.5},
+          {3000, 1, 20, 0.05, 3L, 0.9},
+  };
+
+  @Before
+  public void setUp() {
+    Configs.listenerSpecFile = "listeners.xml";
+    Configs.permissionMapFile = "protected_apis.txt";
+    Configs.sanityCheck = true;
+  }
+
+  @After
+  public void tearDown() {
+    Configs.sanityCheck = false;
+    Configs.solverWorkers = 1;
+  }
+
+  @Test
+  public void semiNaiveReachesFullSweepFixedPoint() {
+    for (Object[] shape : SHAPES) {
+      String sequential = solve(shape, 1);
+      String parallel = solve(shape, 4);
+      assertEquals("workers differ for shape " + shape[4], sequential, parallel);
+    }
+  }
+
+  private String solve(Object[] shape, int workers) {
+    Configs.solverWorkers = workers;
+    FlowgraphGenerator generator = new FlowgraphGenerator();
+    generator.nodes = (Integer) shape[0];
+    generator.fanOut = (Integer) shape[1];
+    generator.opPercent = (Integer) shape[2];
+    generator.cycleDensity = (Double) shape[3];
+    generator.seed = (Long) shape[4];
+    generator.callDensity = (Double) shape[5];
+    FixpointSolver solver = new FixpointSolver(generator.generate());
+    solver.solve();
+    return canonical(solver.solutionResults) + canonical(solver.solutionReceivers)
+            + canonical(solver.solutionParameters) + canonical(solver.solutionListeners)
+            + canonical(solver.viewProducers) + canonical(solver.activityRoots);
+  }
+
+  // By node id, which generate() hands out the same way for a shape
+  private static String canonical(Map<? extends NNode, ? extends Set<? extends NNode>> map) {
+    TreeMap<Integer, TreeSet<Integer>> ids = new TreeMap<Integer, TreeSet<Integer>>();
+    for (Map.Entry<? extends NNode, ? extends Set<? extends NNode>> entry : map.entrySet()) {
+      TreeSet<Integer> values = new TreeSet<Integer>();
+      for (NNode n : entry.getValue()) {
+        values.add(n.id);
+      }
+      if (!values.isEmpty()) {
+        ids.put(entry.getKey().id, values);
+      }
+    }
+    return ids + "\n";
+  }
+}
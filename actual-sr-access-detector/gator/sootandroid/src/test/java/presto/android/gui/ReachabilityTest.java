@@ -0,0 +1,80 @@
+/*
+ * ReachabilityTest.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+
+package presto.android.gui;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.graph.NVarNode;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReachabilityTest {
+  // More than the 16 neighbors the engine starts with
+  private static final int PARENTS = 40;
+
+  @Before
+  public void setUp() {
+    NNode.reset();
+  }
+
+  @Test
+  public void ancestorsOfNodeWithManyParents() {
+    NNode child = new NVarNode();
+    Set<NNode> expected = Sets.newHashSet(child);
+    for (int i = 0; i < PARENTS; i++) {
+      NNode parent = new NVarNode();
+      NNode grandParent = new NVarNode();
+      child.addParent(parent);
+      parent.addParent(grandParent);
+      expected.add(parent);
+      expected.add(grandParent);
+    }
+    assertEquals(expected, GraphUtil.v().ancestorNodes(child));
+
+    Set<NNode> batch = Sets.newHashSet();
+    GraphUtil.v().findAncestorNodes(Lists.newArrayList(child), batch);
+    assertEquals(expected, batch);
+  }
+
+  @Test
+  public void descendantsOfNodeWithManyChildren() {
+    NNode root = new NVarNode();
+    Set<NNode> expected = Sets.newHashSet(root);
+    for (int i = 0; i < PARENTS; i++) {
+      NNode child = new NVarNode();
+      child.addParent(root);
+      expected.add(child);
+    }
+    assertEquals(expected, GraphUtil.v().descendantNodes(root));
+  }
+
+  @Test
+  public void reachableNodesWithManySuccessors() {
+    NNode source = new NVarNode();
+    List<NNode> targets = Lists.newArrayList();
+    Set<NNode> expected = Sets.newHashSet(source);
+    for (int i = 0; i < PARENTS; i++) {
+      NNode target = new NVarNode();
+      source.addEdgeTo(target);
+      targets.add(target);
+      expected.add(target);
+    }
+    assertEquals(expected, GraphUtil.v().reachableNodes(source));
+    for (NNode target : targets) {
+      assertEquals(Sets.newHashSet(source, target), GraphUtil.v().backwardReachableNodes(target));
+    }
+  }
+}